@@ -28,6 +28,7 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Modifier;
+import java.util.List;
 import java.util.TimeZone;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -88,6 +89,11 @@ enum Variable {
     /** Advisor that suggests completion hints for SQL statements. */
     SQL_ADVISOR("sqlAdvisor", SqlAdvisor.class),
 
+    /** Runtime filters, each a {@link org.apache.calcite.runtime.RuntimeFilter.Slot},
+     * that a hash join will publish for the table scanned by an interpreter;
+     * see {@link org.apache.calcite.schema.RuntimeFilterableTable}. */
+    RUNTIME_FILTERS("runtimeFilters", List.class),
+
     /** Writer to the standard error (stderr). */
     STDERR("stderr", OutputStream.class),
 
@@ -0,0 +1,531 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.sql.SqlKind;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Operator that implements {@link BatchAggregate}.
+ *
+ * <p>Reads all input batches into a hash table, then returns one row per
+ * group. For each batch, it first computes the group of every row, then
+ * updates the accumulators of each aggregate function in a separate loop.
+ *
+ * <p>If the key columns fit into 64 bits, the key of each row is packed
+ * into a {@code long}; otherwise it is a list of objects.
+ */
+class AggregateOperator implements BatchOperator {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final BatchOperator input;
+  private final int[] keys;
+  private final List<Primitive> keyPrimitives;
+  private final boolean[] keyNullable;
+  private final ImmutableList<Call> calls;
+
+  /** Whether the keys are packed into a {@code long}. */
+  private final boolean packed;
+
+  AggregateOperator(BatchOperator input, int[] keys,
+      List<Primitive> keyPrimitives, boolean[] keyNullable,
+      List<Call> calls) {
+    this.input = input;
+    this.keys = keys;
+    this.keyPrimitives = ImmutableList.copyOf(keyPrimitives);
+    this.keyNullable = keyNullable;
+    this.calls = ImmutableList.copyOf(calls);
+    int bits = 0;
+    for (int i = 0; i < keys.length; i++) {
+      bits += bits(keyPrimitives.get(i), keyNullable[i]);
+    }
+    this.packed = bits <= 64;
+  }
+
+  /** Returns the number of bits that a key column occupies in a packed key,
+   * or a large number if it cannot be packed. */
+  private static int bits(Primitive primitive, boolean nullable) {
+    final int nullBits = nullable ? 1 : 0;
+    switch (ColumnVector.Kind.of(primitive)) {
+    case INT:
+      return 32 + nullBits;
+    case LONG:
+      return 64 + nullBits;
+    case BOOLEAN:
+      return 1 + nullBits;
+    default:
+      return 65;
+    }
+  }
+
+  public Enumerator<ColumnBatch> open(Context context) {
+    return new AggregateEnumerator(input.open(context));
+  }
+
+  /** Aggregate function call. */
+  static class Call {
+    final SqlKind kind;
+    /** Ordinal of the argument, or -1 for {@code COUNT(*)}. */
+    final int arg;
+    final Primitive primitive;
+
+    Call(SqlKind kind, int arg, Primitive primitive) {
+      this.kind = kind;
+      this.arg = arg;
+      this.primitive = primitive;
+    }
+  }
+
+  /** Enumerator that reads its input when first called, then returns the
+   * groups. */
+  private class AggregateEnumerator implements Enumerator<ColumnBatch> {
+    private final Enumerator<ColumnBatch> inputs;
+    private boolean loaded;
+    private int groupCount;
+    private int capacity;
+    private int[] slots;
+    private int[] hashes;
+    private long[] longKeys;
+    private Object[] objectKeys;
+    /** Accumulator of each call: a {@code long[]}, {@code double[]} or
+     * {@code Object[]}. */
+    private final Object[] accumulators = new Object[calls.size()];
+    /** Whether each call has seen a non-null value, for each group. */
+    private final boolean[][] seen = new boolean[calls.size()][];
+    private int emitted;
+    private ColumnBatch current;
+
+    AggregateEnumerator(Enumerator<ColumnBatch> inputs) {
+      this.inputs = inputs;
+    }
+
+    public ColumnBatch current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (!loaded) {
+        load();
+        loaded = true;
+      }
+      if (emitted >= groupCount) {
+        current = null;
+        return false;
+      }
+      final int n = Math.min(groupCount - emitted, ColumnBatch.DEFAULT_SIZE);
+      current = emit(emitted, n);
+      emitted += n;
+      return true;
+    }
+
+    public void reset() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      inputs.close();
+    }
+
+    private void load() {
+      capacity = INITIAL_CAPACITY;
+      slots = new int[capacity * 2];
+      hashes = new int[capacity];
+      if (packed) {
+        longKeys = new long[capacity];
+      } else {
+        objectKeys = new Object[capacity];
+      }
+      for (int c = 0; c < calls.size(); c++) {
+        final Call call = calls.get(c);
+        seen[c] = new boolean[capacity];
+        switch (call.kind) {
+        case COUNT:
+          accumulators[c] = new long[capacity];
+          break;
+        default:
+          switch (ColumnVector.Kind.of(call.primitive)) {
+          case DOUBLE:
+            accumulators[c] = new double[capacity];
+            break;
+          case OBJECT:
+            accumulators[c] = new Object[capacity];
+            break;
+          default:
+            accumulators[c] = new long[capacity];
+          }
+        }
+      }
+      int[] groups = new int[ColumnBatch.DEFAULT_SIZE];
+      while (inputs.moveNext()) {
+        final ColumnBatch batch = inputs.current();
+        if (groups.length < batch.rowCount) {
+          groups = new int[batch.rowCount];
+        }
+        assignGroups(batch, groups);
+        for (int c = 0; c < calls.size(); c++) {
+          accumulate(c, batch, groups);
+        }
+      }
+      if (groupCount == 0 && keys.length == 0) {
+        // "GROUP BY ()" returns one row even if the input is empty.
+        groupCount = 1;
+      }
+    }
+
+    /** Sets {@code groups[i]} to the group of row {@code i}, creating groups
+     * as necessary. */
+    private void assignGroups(ColumnBatch batch, int[] groups) {
+      final int n = batch.rowCount;
+      if (packed) {
+        final long[] batchKeys = new long[n];
+        int shift = 0;
+        for (int k = 0; k < keys.length; k++) {
+          shift = pack(batch.vectors[keys[k]], keyNullable[k], shift,
+              batchKeys, n);
+        }
+        for (int i = 0; i < n; i++) {
+          groups[i] = group(batchKeys[i], null);
+        }
+      } else {
+        for (int i = 0; i < n; i++) {
+          final Object key;
+          if (keys.length == 1) {
+            key = batch.vectors[keys[0]].get(i);
+          } else {
+            final Object[] values = new Object[keys.length];
+            for (int k = 0; k < keys.length; k++) {
+              values[k] = batch.vectors[keys[k]].get(i);
+            }
+            key = Arrays.asList(values);
+          }
+          groups[i] = group(0L, key);
+        }
+      }
+    }
+
+    /** Finds or creates the group with a given key. */
+    private int group(long longKey, Object objectKey) {
+      final int hash = packed
+          ? hash(longKey)
+          : hash(Objects.hashCode(objectKey));
+      final int mask = slots.length - 1;
+      int i = hash & mask;
+      for (;;) {
+        final int slot = slots[i];
+        if (slot == 0) {
+          break;
+        }
+        final int group = slot - 1;
+        if (hashes[group] == hash
+            && (packed
+                ? longKeys[group] == longKey
+                : Objects.equals(objectKeys[group], objectKey))) {
+          return group;
+        }
+        i = (i + 1) & mask;
+      }
+      if (groupCount == capacity) {
+        grow();
+        return group(longKey, objectKey);
+      }
+      final int group = groupCount++;
+      hashes[group] = hash;
+      if (packed) {
+        longKeys[group] = longKey;
+      } else {
+        objectKeys[group] = objectKey;
+      }
+      slots[i] = group + 1;
+      return group;
+    }
+
+    private void grow() {
+      capacity *= 2;
+      hashes = Arrays.copyOf(hashes, capacity);
+      if (packed) {
+        longKeys = Arrays.copyOf(longKeys, capacity);
+      } else {
+        objectKeys = Arrays.copyOf(objectKeys, capacity);
+      }
+      for (int c = 0; c < calls.size(); c++) {
+        seen[c] = Arrays.copyOf(seen[c], capacity);
+        final Object a = accumulators[c];
+        if (a instanceof long[]) {
+          accumulators[c] = Arrays.copyOf((long[]) a, capacity);
+        } else if (a instanceof double[]) {
+          accumulators[c] = Arrays.copyOf((double[]) a, capacity);
+        } else {
+          accumulators[c] = Arrays.copyOf((Object[]) a, capacity);
+        }
+      }
+      slots = new int[capacity * 2];
+      final int mask = slots.length - 1;
+      for (int group = 0; group < groupCount; group++) {
+        int i = hashes[group] & mask;
+        while (slots[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        slots[i] = group + 1;
+      }
+    }
+
+    /** Updates the accumulators of a call with the rows of a batch. */
+    private void accumulate(int c, ColumnBatch batch, int[] groups) {
+      final Call call = calls.get(c);
+      final int n = batch.rowCount;
+      final boolean[] seen = this.seen[c];
+      if (call.arg < 0) {
+        final long[] counts = (long[]) accumulators[c];
+        for (int i = 0; i < n; i++) {
+          ++counts[groups[i]];
+        }
+        return;
+      }
+      final ColumnVector v = batch.vectors[call.arg];
+      final boolean hasNulls = v.nulls != null;
+      switch (call.kind) {
+      case COUNT:
+        final long[] counts = (long[]) accumulators[c];
+        for (int i = 0; i < n; i++) {
+          if (!hasNulls || !v.isNull(i)) {
+            ++counts[groups[i]];
+          }
+        }
+        return;
+      case SUM:
+      case SUM0:
+        switch (v.kind) {
+        case INT:
+          final long[] isums = (long[]) accumulators[c];
+          final int[] ints = v.ints;
+          for (int i = 0; i < n; i++) {
+            if (!hasNulls || !v.isNull(i)) {
+              isums[groups[i]] += ints[i];
+              seen[groups[i]] = true;
+            }
+          }
+          return;
+        case LONG:
+          final long[] lsums = (long[]) accumulators[c];
+          final long[] longs = v.longs;
+          for (int i = 0; i < n; i++) {
+            if (!hasNulls || !v.isNull(i)) {
+              lsums[groups[i]] += longs[i];
+              seen[groups[i]] = true;
+            }
+          }
+          return;
+        default:
+          final double[] dsums = (double[]) accumulators[c];
+          final double[] doubles = v.doubles;
+          for (int i = 0; i < n; i++) {
+            if (!hasNulls || !v.isNull(i)) {
+              dsums[groups[i]] += doubles[i];
+              seen[groups[i]] = true;
+            }
+          }
+          return;
+        }
+      default:
+        final boolean min = call.kind == SqlKind.MIN;
+        for (int i = 0; i < n; i++) {
+          if (hasNulls && v.isNull(i)) {
+            continue;
+          }
+          final int g = groups[i];
+          switch (v.kind) {
+          case INT:
+          case LONG:
+            final long[] lvalues = (long[]) accumulators[c];
+            final long lv = v.kind == ColumnVector.Kind.INT
+                ? v.ints[i]
+                : v.longs[i];
+            if (!seen[g] || (min ? lv < lvalues[g] : lv > lvalues[g])) {
+              lvalues[g] = lv;
+            }
+            break;
+          case DOUBLE:
+            final double[] dvalues = (double[]) accumulators[c];
+            final double dv = v.doubles[i];
+            if (!seen[g] || (min ? dv < dvalues[g] : dv > dvalues[g])) {
+              dvalues[g] = dv;
+            }
+            break;
+          default:
+            final Object[] ovalues = (Object[]) accumulators[c];
+            //noinspection unchecked
+            final Comparable<Object> ov = (Comparable<Object>) v.objects[i];
+            if (!seen[g]) {
+              ovalues[g] = ov;
+            } else {
+              final int cmp = ov.compareTo(ovalues[g]);
+              if (min ? cmp < 0 : cmp > 0) {
+                ovalues[g] = ov;
+              }
+            }
+          }
+          seen[g] = true;
+        }
+      }
+    }
+
+    /** Creates a batch containing {@code n} groups, starting with
+     * {@code start}. */
+    private ColumnBatch emit(int start, int n) {
+      final ColumnVector[] vectors =
+          new ColumnVector[keys.length + calls.size()];
+      for (int k = 0; k < keys.length; k++) {
+        vectors[k] = ColumnVector.create(keyPrimitives.get(k), n);
+      }
+      if (packed) {
+        int shift = 0;
+        for (int k = 0; k < keys.length; k++) {
+          shift = unpack(vectors[k], keyNullable[k], shift, longKeys, start,
+              n);
+        }
+      } else {
+        for (int i = 0; i < n; i++) {
+          final Object key = objectKeys[start + i];
+          if (keys.length == 1) {
+            vectors[0].set(i, key);
+          } else {
+            final List list = (List) key;
+            for (int k = 0; k < keys.length; k++) {
+              vectors[k].set(i, list.get(k));
+            }
+          }
+        }
+      }
+      for (int c = 0; c < calls.size(); c++) {
+        final Call call = calls.get(c);
+        final ColumnVector v = ColumnVector.create(call.primitive, n);
+        final Object a = accumulators[c];
+        for (int i = 0; i < n; i++) {
+          final int g = start + i;
+          if (call.kind == SqlKind.COUNT) {
+            v.longs[i] = ((long[]) a)[g];
+          } else if (!seen[c][g] && call.kind != SqlKind.SUM0) {
+            v.setNull(i);
+          } else {
+            switch (v.kind) {
+            case INT:
+              v.ints[i] = (int) ((long[]) a)[g];
+              break;
+            case LONG:
+              v.longs[i] = ((long[]) a)[g];
+              break;
+            case DOUBLE:
+              v.doubles[i] = ((double[]) a)[g];
+              break;
+            default:
+              v.objects[i] = ((Object[]) a)[g];
+            }
+          }
+        }
+        vectors[keys.length + c] = v;
+      }
+      return new ColumnBatch(n, vectors);
+    }
+  }
+
+  /** Packs the values of a key column into the keys of a batch, and returns
+   * the shift of the next column. */
+  private static int pack(ColumnVector v, boolean nullable, int shift,
+      long[] batchKeys, int n) {
+    if (nullable) {
+      if (v.nulls != null) {
+        for (int i = 0; i < n; i++) {
+          if (v.isNull(i)) {
+            batchKeys[i] |= 1L << shift;
+          }
+        }
+      }
+      ++shift;
+    }
+    final boolean hasNulls = v.nulls != null;
+    switch (v.kind) {
+    case INT:
+      for (int i = 0; i < n; i++) {
+        if (!hasNulls || !v.isNull(i)) {
+          batchKeys[i] |= (v.ints[i] & 0xFFFFFFFFL) << shift;
+        }
+      }
+      return shift + 32;
+    case LONG:
+      for (int i = 0; i < n; i++) {
+        if (!hasNulls || !v.isNull(i)) {
+          batchKeys[i] |= v.longs[i] << shift;
+        }
+      }
+      return shift + 64;
+    default:
+      for (int i = 0; i < n; i++) {
+        if (v.booleans[i] && (!hasNulls || !v.isNull(i))) {
+          batchKeys[i] |= 1L << shift;
+        }
+      }
+      return shift + 1;
+    }
+  }
+
+  /** Unpacks the values of a key column from packed keys, and returns the
+   * shift of the next column. */
+  private static int unpack(ColumnVector v, boolean nullable, int shift,
+      long[] longKeys, int start, int n) {
+    if (nullable) {
+      for (int i = 0; i < n; i++) {
+        if ((longKeys[start + i] & (1L << shift)) != 0) {
+          v.setNull(i);
+        }
+      }
+      ++shift;
+    }
+    switch (v.kind) {
+    case INT:
+      for (int i = 0; i < n; i++) {
+        v.ints[i] = (int) (longKeys[start + i] >>> shift);
+      }
+      return shift + 32;
+    case LONG:
+      for (int i = 0; i < n; i++) {
+        v.longs[i] = longKeys[start + i] >>> shift;
+      }
+      return shift + 64;
+    default:
+      for (int i = 0; i < n; i++) {
+        v.booleans[i] = (longKeys[start + i] & (1L << shift)) != 0;
+      }
+      return shift + 1;
+    }
+  }
+
+  private static int hash(long v) {
+    v ^= v >>> 33;
+    v *= 0xFF51AFD7ED558CCDL;
+    v ^= v >>> 33;
+    return (int) v;
+  }
+}
+
+// End AggregateOperator.java
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.sql.type.SqlTypeUtil;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Implementation of {@link org.apache.calcite.rel.core.Aggregate} in
+ * {@link BatchConvention batch calling convention}.
+ *
+ * <p>Supports a single grouping set, and the aggregate functions
+ * {@code COUNT}, {@code SUM}, {@code $SUM0}, {@code MIN} and {@code MAX},
+ * without {@code DISTINCT} or {@code FILTER}. {@code SUM} and
+ * {@code $SUM0} require an argument of type {@code int}, {@code long} or
+ * {@code double}; {@code MIN} and {@code MAX} also allow character strings
+ * and {@code DECIMAL} values. */
+public class BatchAggregate extends Aggregate implements BatchRel {
+  /** Creates a BatchAggregate. */
+  public BatchAggregate(RelOptCluster cluster, RelTraitSet traitSet,
+      RelNode input, ImmutableBitSet groupSet,
+      List<ImmutableBitSet> groupSets, List<AggregateCall> aggCalls)
+      throws InvalidRelException {
+    super(cluster, traitSet, input, false, groupSet, groupSets, aggCalls);
+    assert getConvention() instanceof BatchConvention;
+    if (getGroupType() != Group.SIMPLE) {
+      throw new InvalidRelException("grouping sets not supported");
+    }
+    final JavaTypeFactory typeFactory =
+        (JavaTypeFactory) cluster.getTypeFactory();
+    for (AggregateCall aggCall : aggCalls) {
+      if (!canImplement(typeFactory, input.getRowType(), aggCall)) {
+        throw new InvalidRelException("aggregation " + aggCall
+            + " not supported");
+      }
+    }
+  }
+
+  @Override public BatchAggregate copy(RelTraitSet traitSet, RelNode input,
+      boolean indicator, ImmutableBitSet groupSet,
+      List<ImmutableBitSet> groupSets, List<AggregateCall> aggCalls) {
+    try {
+      return new BatchAggregate(getCluster(), traitSet, input, groupSet,
+          groupSets, aggCalls);
+    } catch (InvalidRelException e) {
+      // Semantic error not possible. Must be a bug. Convert to
+      // internal error.
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    return super.computeSelfCost(planner, mq)
+        .multiplyBy(BatchConvention.COST_MULTIPLIER);
+  }
+
+  private static boolean canImplement(JavaTypeFactory typeFactory,
+      RelDataType inputRowType, AggregateCall aggCall) {
+    if (aggCall.isDistinct() || aggCall.filterArg >= 0) {
+      return false;
+    }
+    final ColumnVector.Kind kind = ColumnVector.Kind.of(
+        BatchRules.primitive(typeFactory, aggCall.getType()));
+    final SqlKind aggKind = aggCall.getAggregation().getKind();
+    if (aggKind == SqlKind.COUNT) {
+      return aggCall.getArgList().size() <= 1
+          && kind == ColumnVector.Kind.LONG;
+    }
+    if (aggCall.getArgList().size() != 1) {
+      return false;
+    }
+    final RelDataType argType =
+        inputRowType.getFieldList().get(aggCall.getArgList().get(0))
+            .getType();
+    if (ColumnVector.Kind.of(BatchRules.primitive(typeFactory, argType))
+        != kind) {
+      return false;
+    }
+    switch (aggKind) {
+    case SUM:
+    case SUM0:
+      return SqlTypeUtil.isNumeric(argType)
+          && kind != ColumnVector.Kind.OBJECT;
+    case MIN:
+    case MAX:
+      switch (kind) {
+      case INT:
+      case LONG:
+      case DOUBLE:
+        return true;
+      case OBJECT:
+        return SqlTypeUtil.inCharFamily(argType)
+            || argType.getSqlTypeName() == SqlTypeName.DECIMAL;
+      default:
+        return false;
+      }
+    default:
+      return false;
+    }
+  }
+
+  public BatchOperator implement(BatchImplementor implementor) {
+    final JavaTypeFactory typeFactory = implementor.getTypeFactory();
+    final List<Primitive> inputPrimitives =
+        implementor.primitives(getInput().getRowType());
+    final int[] keys = groupSet.toArray();
+    final List<Primitive> keyPrimitives = new ArrayList<>();
+    final boolean[] keyNullable = new boolean[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      keyPrimitives.add(inputPrimitives.get(keys[i]));
+      keyNullable[i] = getInput().getRowType().getFieldList().get(keys[i])
+          .getType().isNullable();
+    }
+    final List<AggregateOperator.Call> calls = new ArrayList<>();
+    for (AggregateCall aggCall : aggCalls) {
+      calls.add(
+          new AggregateOperator.Call(aggCall.getAggregation().getKind(),
+              aggCall.getArgList().isEmpty()
+                  ? -1
+                  : aggCall.getArgList().get(0),
+              BatchRules.primitive(typeFactory, aggCall.getType())));
+    }
+    return new AggregateOperator(implementor.visitChild(getInput()), keys,
+        keyPrimitives, keyNullable, calls);
+  }
+}
+
+// End BatchAggregate.java
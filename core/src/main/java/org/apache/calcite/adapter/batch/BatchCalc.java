@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelCollationTraitDef;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Calc;
+import org.apache.calcite.rel.metadata.RelMdCollation;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexLocalRef;
+import org.apache.calcite.rex.RexProgram;
+
+import com.google.common.base.Supplier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Implementation of {@link org.apache.calcite.rel.core.Calc} in
+ * {@link BatchConvention batch calling convention}.
+ *
+ * <p>Can only be created if every expression in the program can be
+ * evaluated by {@link VectorExpression}; see {@link #canImplement}. */
+public class BatchCalc extends Calc implements BatchRel {
+  /** Creates a BatchCalc. */
+  public BatchCalc(RelOptCluster cluster, RelTraitSet traitSet,
+      RelNode input, RexProgram program) {
+    super(cluster, traitSet, input, program);
+    assert getConvention() instanceof BatchConvention;
+  }
+
+  /** Creates a BatchCalc. */
+  public static BatchCalc create(final RelNode input,
+      final RexProgram program) {
+    final RelOptCluster cluster = input.getCluster();
+    final RelMetadataQuery mq = cluster.getMetadataQuery();
+    final RelTraitSet traitSet = cluster.traitSet()
+        .replace(BatchConvention.INSTANCE)
+        .replaceIfs(RelCollationTraitDef.INSTANCE,
+            new Supplier<List<RelCollation>>() {
+              public List<RelCollation> get() {
+                return RelMdCollation.calc(mq, input, program);
+              }
+            });
+    return new BatchCalc(cluster, traitSet, input, program);
+  }
+
+  @Override public BatchCalc copy(RelTraitSet traitSet, RelNode child,
+      RexProgram program) {
+    return new BatchCalc(getCluster(), traitSet, child, program);
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    return super.computeSelfCost(planner, mq)
+        .multiplyBy(BatchConvention.COST_MULTIPLIER);
+  }
+
+  /** Returns whether every expression in a program can be evaluated over
+   * batches. */
+  public static boolean canImplement(JavaTypeFactory typeFactory,
+      RexProgram program) {
+    final List<Primitive> inputs =
+        BatchRules.primitives(typeFactory, program.getInputRowType());
+    if (program.getCondition() != null
+        && translate(typeFactory, inputs, program, program.getCondition())
+            == null) {
+      return false;
+    }
+    for (RexLocalRef project : program.getProjectList()) {
+      if (translate(typeFactory, inputs, program, project) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static VectorExpression translate(JavaTypeFactory typeFactory,
+      List<Primitive> inputs, RexProgram program, RexLocalRef ref) {
+    return VectorExpression.translate(typeFactory, inputs,
+        program.expandLocalRef(ref));
+  }
+
+  public BatchOperator implement(BatchImplementor implementor) {
+    final JavaTypeFactory typeFactory = implementor.getTypeFactory();
+    final List<Primitive> inputs =
+        BatchRules.primitives(typeFactory, program.getInputRowType());
+    final VectorExpression condition = program.getCondition() == null
+        ? null
+        : translate(typeFactory, inputs, program, program.getCondition());
+    final List<VectorExpression> projects = new ArrayList<>();
+    for (RexLocalRef project : program.getProjectList()) {
+      projects.add(translate(typeFactory, inputs, program, project));
+    }
+    return new CalcOperator(implementor.visitChild(getInput()), condition,
+        projects);
+  }
+}
+
+// End BatchCalc.java
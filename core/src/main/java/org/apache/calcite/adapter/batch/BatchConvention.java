@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.ConventionTraitDef;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTrait;
+import org.apache.calcite.plan.RelTraitDef;
+import org.apache.calcite.plan.RelTraitSet;
+
+/**
+ * Calling convention that passes data between operators as
+ * {@link ColumnBatch column batches}, rather than one row at a time.
+ *
+ * <p>Relational expressions in this convention are converted to and from
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention} by
+ * {@link BatchToEnumerableConverter} and
+ * {@link EnumerableToBatchConverter}.
+ */
+public enum BatchConvention implements Convention {
+  INSTANCE;
+
+  /** Cost of a relational expression in batch convention, relative to the
+   * cost of the equivalent enumerable relational expression. */
+  public static final double COST_MULTIPLIER = 0.5d;
+
+  /** Cost of converting rows to or from batches, relative to the cost of a
+   * typical relational expression with the same number of rows. Small, so
+   * that when batch execution is enabled the planner uses batch operators
+   * even for short sequences of operators. */
+  public static final double CONVERTER_COST_MULTIPLIER = 0.05d;
+
+  @Override public String toString() {
+    return getName();
+  }
+
+  public Class getInterface() {
+    return BatchRel.class;
+  }
+
+  public String getName() {
+    return "BATCH";
+  }
+
+  public RelTraitDef getTraitDef() {
+    return ConventionTraitDef.INSTANCE;
+  }
+
+  public boolean satisfies(RelTrait trait) {
+    return this == trait;
+  }
+
+  public void register(RelOptPlanner planner) {}
+
+  public boolean canConvertConvention(Convention toConvention) {
+    return false;
+  }
+
+  public boolean useAbstractConvertersForConversion(RelTraitSet fromTraits,
+      RelTraitSet toTraits) {
+    return false;
+  }
+}
+
+// End BatchConvention.java
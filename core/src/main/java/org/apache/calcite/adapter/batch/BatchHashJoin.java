@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.CorrelationId;
+import org.apache.calcite.rel.core.EquiJoin;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.ImmutableIntList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/** Implementation of {@link org.apache.calcite.rel.core.Join} in
+ * {@link BatchConvention batch calling convention}, that builds a hash table
+ * on its right input.
+ *
+ * <p>Supports inner and left joins whose condition is a conjunction of
+ * equalities between columns of the same Java type. */
+public class BatchHashJoin extends EquiJoin implements BatchRel {
+  /** Creates a BatchHashJoin. */
+  public BatchHashJoin(RelOptCluster cluster, RelTraitSet traits,
+      RelNode left, RelNode right, RexNode condition,
+      ImmutableIntList leftKeys, ImmutableIntList rightKeys,
+      Set<CorrelationId> variablesSet, JoinRelType joinType)
+      throws InvalidRelException {
+    super(cluster, traits, left, right, condition, leftKeys, rightKeys,
+        variablesSet, joinType);
+    assert getConvention() instanceof BatchConvention;
+    if (!canImplement((JavaTypeFactory) cluster.getTypeFactory(), left,
+        right, leftKeys, rightKeys, joinType)) {
+      throw new InvalidRelException("join not supported");
+    }
+  }
+
+  @Override public BatchHashJoin copy(RelTraitSet traitSet, RexNode condition,
+      RelNode left, RelNode right, JoinRelType joinType,
+      boolean semiJoinDone) {
+    final JoinInfo joinInfo = JoinInfo.of(left, right, condition);
+    assert joinInfo.isEqui();
+    try {
+      return new BatchHashJoin(getCluster(), traitSet, left, right,
+          condition, joinInfo.leftKeys, joinInfo.rightKeys, variablesSet,
+          joinType);
+    } catch (InvalidRelException e) {
+      // Semantic error not possible. Must be a bug. Convert to
+      // internal error.
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    return super.computeSelfCost(planner, mq)
+        .multiplyBy(BatchConvention.COST_MULTIPLIER);
+  }
+
+  /** Returns whether a join can be implemented over batches. */
+  static boolean canImplement(JavaTypeFactory typeFactory, RelNode left,
+      RelNode right, List<Integer> leftKeys, List<Integer> rightKeys,
+      JoinRelType joinType) {
+    switch (joinType) {
+    case INNER:
+    case LEFT:
+      break;
+    default:
+      return false;
+    }
+    if (leftKeys.isEmpty()) {
+      return false;
+    }
+    final List<Primitive> leftPrimitives =
+        BatchRules.primitives(typeFactory, left.getRowType());
+    final List<Primitive> rightPrimitives =
+        BatchRules.primitives(typeFactory, right.getRowType());
+    for (int i = 0; i < leftKeys.size(); i++) {
+      if (leftPrimitives.get(leftKeys.get(i))
+          != rightPrimitives.get(rightKeys.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public BatchOperator implement(BatchImplementor implementor) {
+    final List<Primitive> leftPrimitives =
+        implementor.primitives(left.getRowType());
+    final List<Primitive> leftKeyPrimitives = new ArrayList<>();
+    for (int key : leftKeys) {
+      leftKeyPrimitives.add(leftPrimitives.get(key));
+    }
+    return new HashJoinOperator(implementor.visitChild(left),
+        implementor.visitChild(right), leftKeys.toIntArray(),
+        rightKeys.toIntArray(), leftKeyPrimitives,
+        implementor.primitives(right.getRowType()),
+        joinType == JoinRelType.LEFT);
+  }
+}
+
+// End BatchHashJoin.java
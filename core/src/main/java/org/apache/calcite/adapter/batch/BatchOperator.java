@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+
+import java.util.List;
+
+/**
+ * Run-time implementation of a {@link BatchRel}.
+ *
+ * <p>An operator is created when a statement is prepared, and may be
+ * executed several times; each execution calls {@link #open}.
+ */
+public interface BatchOperator {
+  /** Starts executing this operator, and returns an enumerator over the
+   * batches that it produces. */
+  Enumerator<ColumnBatch> open(Context context);
+
+  /** State of one execution of a tree of operators. */
+  class Context {
+    public final DataContext root;
+
+    /** Results of the enumerable relational expressions that are inputs to
+     * the tree, in the order registered by
+     * {@link BatchRel.BatchImplementor#registerInput}. */
+    public final List<Enumerable<Object[]>> inputs;
+
+    public Context(DataContext root, List<Enumerable<Object[]>> inputs) {
+      this.root = root;
+      this.inputs = inputs;
+    }
+  }
+}
+
+// End BatchOperator.java
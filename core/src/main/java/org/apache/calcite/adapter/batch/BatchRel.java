@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.type.RelDataType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Relational expression that uses the
+ * {@link BatchConvention batch calling convention}.
+ */
+public interface BatchRel extends RelNode {
+  /** Creates the operator that implements this relational expression at
+   * run time. */
+  BatchOperator implement(BatchImplementor implementor);
+
+  /** Context when a tree of {@link BatchRel} is being converted to a tree
+   * of {@link BatchOperator}.
+   *
+   * <p>Enumerable inputs to the tree are implemented using the enclosing
+   * {@link EnumerableRelImplementor}, and their code is added to a block;
+   * at run time, their results are passed to the operators in
+   * {@link BatchOperator.Context#inputs}. */
+  class BatchImplementor {
+    public final EnumerableRelImplementor implementor;
+    private final BlockBuilder builder;
+    final List<Expression> inputs = new ArrayList<>();
+
+    public BatchImplementor(EnumerableRelImplementor implementor,
+        BlockBuilder builder) {
+      this.implementor = implementor;
+      this.builder = builder;
+    }
+
+    public JavaTypeFactory getTypeFactory() {
+      return implementor.getTypeFactory();
+    }
+
+    /** Converts a child relational expression to an operator. */
+    public BatchOperator visitChild(RelNode child) {
+      return ((BatchRel) child).implement(this);
+    }
+
+    /** Generates code for an enumerable input, and returns its ordinal in
+     * {@link BatchOperator.Context#inputs}. */
+    public int registerInput(EnumerableRel input) {
+      final EnumerableRel.Result result =
+          implementor.visitChild(null, inputs.size(), input,
+              EnumerableRel.Prefer.ARRAY);
+      final Expression expression =
+          builder.append("input" + inputs.size(), result.block);
+      final PhysType physType =
+          PhysTypeImpl.of(getTypeFactory(), input.getRowType(),
+              JavaRowFormat.ARRAY, false);
+      inputs.add(result.physType.convertTo(expression, physType));
+      return inputs.size() - 1;
+    }
+
+    /** Returns the Java type of each field of a row type, as represented in
+     * a row of an enumerable relational expression. */
+    public List<Primitive> primitives(RelDataType rowType) {
+      return BatchRules.primitives(getTypeFactory(), rowType);
+    }
+  }
+}
+
+// End BatchRel.java
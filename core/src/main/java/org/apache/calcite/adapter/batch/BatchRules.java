@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.adapter.enumerable.EnumerableTableScan;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.RelFactories;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.logical.LogicalAggregate;
+import org.apache.calcite.rel.logical.LogicalCalc;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalJoin;
+import org.apache.calcite.rel.logical.LogicalProject;
+import org.apache.calcite.rel.logical.LogicalTableScan;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexOver;
+import org.apache.calcite.rex.RexProgram;
+import org.apache.calcite.rex.RexProgramBuilder;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Rules and utilities for the
+ * {@link BatchConvention batch calling convention}.
+ *
+ * <p>The rules are registered by
+ * {@link org.apache.calcite.prepare.CalcitePrepareImpl} if the
+ * {@link org.apache.calcite.config.CalciteConnectionProperty#BATCH_EXECUTION}
+ * connection property is true.
+ */
+public class BatchRules {
+  private BatchRules() {}
+
+  static final Logger LOGGER = LoggerFactory.getLogger(BatchRules.class);
+
+  public static final RelOptRule BATCH_TABLE_SCAN_RULE =
+      new BatchTableScanRule();
+
+  public static final RelOptRule BATCH_CALC_RULE = new BatchCalcRule();
+
+  public static final RelOptRule BATCH_FILTER_RULE = new BatchFilterRule();
+
+  public static final RelOptRule BATCH_PROJECT_RULE = new BatchProjectRule();
+
+  public static final RelOptRule BATCH_AGGREGATE_RULE =
+      new BatchAggregateRule();
+
+  public static final RelOptRule BATCH_JOIN_RULE = new BatchJoinRule();
+
+  public static final RelOptRule BATCH_TO_ENUMERABLE_RULE =
+      new BatchToEnumerableConverterRule();
+
+  public static final RelOptRule ENUMERABLE_TO_BATCH_RULE =
+      new EnumerableToBatchConverterRule();
+
+  /** All rules for batch convention. */
+  public static final ImmutableList<RelOptRule> RULES =
+      ImmutableList.of(BATCH_TABLE_SCAN_RULE,
+          BATCH_CALC_RULE,
+          BATCH_FILTER_RULE,
+          BATCH_PROJECT_RULE,
+          BATCH_AGGREGATE_RULE,
+          BATCH_JOIN_RULE,
+          BATCH_TO_ENUMERABLE_RULE,
+          ENUMERABLE_TO_BATCH_RULE);
+
+  /** Returns the Java type of a value of a given SQL type, as it is
+   * represented in a row of an enumerable relational expression. */
+  public static Primitive primitive(JavaTypeFactory typeFactory,
+      RelDataType type) {
+    final Primitive primitive =
+        Primitive.ofBoxOr(typeFactory.getJavaClass(type));
+    return primitive == null ? Primitive.OTHER : primitive;
+  }
+
+  /** Returns the Java type of each field of a row type. */
+  public static List<Primitive> primitives(JavaTypeFactory typeFactory,
+      RelDataType rowType) {
+    final ImmutableList.Builder<Primitive> builder = ImmutableList.builder();
+    for (RelDataTypeField field : rowType.getFieldList()) {
+      builder.add(primitive(typeFactory, field.getType()));
+    }
+    return builder.build();
+  }
+
+  private static JavaTypeFactory typeFactory(RelNode rel) {
+    return rel.getCluster().getTypeFactory() instanceof JavaTypeFactory
+        ? (JavaTypeFactory) rel.getCluster().getTypeFactory()
+        : null;
+  }
+
+  private static RelNode convert(RelNode rel) {
+    return RelOptRule.convert(rel,
+        rel.getTraitSet().replace(BatchConvention.INSTANCE));
+  }
+
+  /** Converts a program to a {@link BatchCalc}, or returns null if the
+   * program cannot be evaluated over batches. */
+  private static RelNode calc(RelNode input, RexProgram program) {
+    final JavaTypeFactory typeFactory = typeFactory(input);
+    if (typeFactory == null
+        || RexOver.containsOver(program)
+        || !BatchCalc.canImplement(typeFactory, program)) {
+      return null;
+    }
+    return BatchCalc.create(convert(input), program);
+  }
+
+  /** Rule that converts a {@link LogicalTableScan} or
+   * {@link EnumerableTableScan} of a {@link BatchTable} to a
+   * {@link BatchTableScan}. */
+  private static class BatchTableScanRule extends RelOptRule {
+    BatchTableScanRule() {
+      super(
+          operand(TableScan.class, null,
+              new Predicate<TableScan>() {
+                public boolean apply(TableScan scan) {
+                  return scan instanceof LogicalTableScan
+                      || scan instanceof EnumerableTableScan;
+                }
+              },
+              none()),
+          RelFactories.LOGICAL_BUILDER, "BatchTableScanRule");
+    }
+
+    @Override public void onMatch(RelOptRuleCall call) {
+      final TableScan scan = call.rel(0);
+      final RelOptTable table = scan.getTable();
+      if (BatchTableScan.canHandle(table)) {
+        call.transformTo(BatchTableScan.create(scan.getCluster(), table));
+      }
+    }
+  }
+
+  /** Rule that converts a {@link LogicalCalc} to a {@link BatchCalc}. */
+  private static class BatchCalcRule extends ConverterRule {
+    BatchCalcRule() {
+      super(LogicalCalc.class, RelOptUtil.CALC_PREDICATE, Convention.NONE,
+          BatchConvention.INSTANCE, RelFactories.LOGICAL_BUILDER,
+          "BatchCalcRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final LogicalCalc calc = (LogicalCalc) rel;
+      return calc(calc.getInput(), calc.getProgram());
+    }
+  }
+
+  /** Rule that converts a {@link LogicalFilter} to a {@link BatchCalc}. */
+  private static class BatchFilterRule extends ConverterRule {
+    BatchFilterRule() {
+      super(LogicalFilter.class, RelOptUtil.FILTER_PREDICATE, Convention.NONE,
+          BatchConvention.INSTANCE, RelFactories.LOGICAL_BUILDER,
+          "BatchFilterRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final LogicalFilter filter = (LogicalFilter) rel;
+      final RexProgramBuilder programBuilder =
+          new RexProgramBuilder(filter.getInput().getRowType(),
+              filter.getCluster().getRexBuilder());
+      programBuilder.addIdentity();
+      programBuilder.addCondition(filter.getCondition());
+      return calc(filter.getInput(), programBuilder.getProgram());
+    }
+  }
+
+  /** Rule that converts a {@link LogicalProject} to a {@link BatchCalc}. */
+  private static class BatchProjectRule extends ConverterRule {
+    BatchProjectRule() {
+      super(LogicalProject.class, RelOptUtil.PROJECT_PREDICATE,
+          Convention.NONE, BatchConvention.INSTANCE,
+          RelFactories.LOGICAL_BUILDER, "BatchProjectRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final LogicalProject project = (LogicalProject) rel;
+      return calc(project.getInput(),
+          RexProgram.create(project.getInput().getRowType(),
+              project.getProjects(), null, project.getRowType(),
+              project.getCluster().getRexBuilder()));
+    }
+  }
+
+  /** Rule that converts a {@link LogicalAggregate} to a
+   * {@link BatchAggregate}. */
+  private static class BatchAggregateRule extends ConverterRule {
+    BatchAggregateRule() {
+      super(LogicalAggregate.class, Convention.NONE, BatchConvention.INSTANCE,
+          "BatchAggregateRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final LogicalAggregate agg = (LogicalAggregate) rel;
+      if (agg.indicator || typeFactory(agg) == null) {
+        return null;
+      }
+      try {
+        return new BatchAggregate(agg.getCluster(),
+            agg.getTraitSet().replace(BatchConvention.INSTANCE),
+            BatchRules.convert(agg.getInput()), agg.getGroupSet(),
+            agg.getGroupSets(), agg.getAggCallList());
+      } catch (InvalidRelException e) {
+        LOGGER.debug(e.toString());
+        return null;
+      }
+    }
+  }
+
+  /** Rule that converts a {@link LogicalJoin} whose condition is an
+   * equi-join to a {@link BatchHashJoin}. */
+  private static class BatchJoinRule extends ConverterRule {
+    BatchJoinRule() {
+      super(LogicalJoin.class, Convention.NONE, BatchConvention.INSTANCE,
+          "BatchJoinRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final LogicalJoin join = (LogicalJoin) rel;
+      final JavaTypeFactory typeFactory = typeFactory(join);
+      final JoinInfo info =
+          JoinInfo.of(join.getLeft(), join.getRight(), join.getCondition());
+      if (typeFactory == null
+          || !info.isEqui()
+          || !BatchHashJoin.canImplement(typeFactory, join.getLeft(),
+              join.getRight(), info.leftKeys, info.rightKeys,
+              join.getJoinType())) {
+        return null;
+      }
+      final RelOptCluster cluster = join.getCluster();
+      final RelNode left = BatchRules.convert(join.getLeft());
+      final RelNode right = BatchRules.convert(join.getRight());
+      try {
+        return new BatchHashJoin(cluster,
+            join.getTraitSet().replace(BatchConvention.INSTANCE), left, right,
+            info.getEquiCondition(left, right, cluster.getRexBuilder()),
+            info.leftKeys, info.rightKeys, join.getVariablesSet(),
+            join.getJoinType());
+      } catch (InvalidRelException e) {
+        LOGGER.debug(e.toString());
+        return null;
+      }
+    }
+  }
+
+  /** Rule that converts any relational expression in batch convention to
+   * enumerable convention. */
+  private static class BatchToEnumerableConverterRule extends ConverterRule {
+    BatchToEnumerableConverterRule() {
+      super(RelNode.class, BatchConvention.INSTANCE,
+          EnumerableConvention.INSTANCE, "BatchToEnumerableConverterRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      return new BatchToEnumerableConverter(rel.getCluster(),
+          rel.getTraitSet().replace(EnumerableConvention.INSTANCE), rel);
+    }
+  }
+
+  /** Rule that converts any relational expression in enumerable convention
+   * to batch convention. */
+  private static class EnumerableToBatchConverterRule extends ConverterRule {
+    EnumerableToBatchConverterRule() {
+      super(RelNode.class,
+          new Predicate<RelNode>() {
+            public boolean apply(RelNode rel) {
+              // Converting back and forth achieves nothing
+              return !(rel instanceof BatchToEnumerableConverter);
+            }
+          },
+          EnumerableConvention.INSTANCE, BatchConvention.INSTANCE,
+          RelFactories.LOGICAL_BUILDER, "EnumerableToBatchConverterRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      return new EnumerableToBatchConverter(rel.getCluster(),
+          rel.getTraitSet().replace(BatchConvention.INSTANCE), rel);
+    }
+  }
+}
+
+// End BatchRules.java
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.schema.Table;
+
+import java.util.List;
+
+/**
+ * Table that can return its contents as {@link ColumnBatch column batches},
+ * and can therefore be scanned by a {@link BatchTableScan} without
+ * converting rows to batches.
+ */
+public interface BatchTable extends Table {
+  /** Returns the contents of this table as a sequence of batches.
+   *
+   * @param root Data context
+   * @param primitives Java type of each column; the values of each column
+   *                   are the same as in the rows that the table would
+   *                   return if scanned as an enumerable
+   * @param batchSize Maximum number of rows in a batch
+   */
+  Enumerator<ColumnBatch> batches(DataContext root, List<Primitive> primitives,
+      int batchSize);
+}
+
+// End BatchTable.java
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelCollationTraitDef;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.schema.Table;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/** Scan of a table that implements {@link BatchTable}, in
+ * {@link BatchConvention batch calling convention}. */
+public class BatchTableScan extends TableScan implements BatchRel {
+  /** Creates a BatchTableScan.
+   *
+   * <p>Use {@link #create} unless you know what you are doing. */
+  BatchTableScan(RelOptCluster cluster, RelTraitSet traitSet,
+      RelOptTable table) {
+    super(cluster, traitSet, table);
+    Preconditions.checkArgument(canHandle(table));
+  }
+
+  /** Creates a BatchTableScan. */
+  public static BatchTableScan create(RelOptCluster cluster,
+      final RelOptTable relOptTable) {
+    final RelTraitSet traitSet =
+        cluster.traitSetOf(BatchConvention.INSTANCE)
+            .replaceIfs(RelCollationTraitDef.INSTANCE,
+                new Supplier<List<RelCollation>>() {
+                  public List<RelCollation> get() {
+                    final Table table = relOptTable.unwrap(Table.class);
+                    if (table != null) {
+                      return table.getStatistic().getCollations();
+                    }
+                    return ImmutableList.of();
+                  }
+                });
+    return new BatchTableScan(cluster, traitSet, relOptTable);
+  }
+
+  /** Returns whether a table can be scanned in batches. */
+  public static boolean canHandle(RelOptTable table) {
+    return table.unwrap(BatchTable.class) != null;
+  }
+
+  @Override public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+    assert inputs.isEmpty();
+    return new BatchTableScan(getCluster(), traitSet, table);
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    return super.computeSelfCost(planner, mq)
+        .multiplyBy(BatchConvention.COST_MULTIPLIER);
+  }
+
+  public BatchOperator implement(BatchImplementor implementor) {
+    return new TableScanOperator(table.unwrap(BatchTable.class),
+        implementor.primitives(getRowType()));
+  }
+}
+
+// End BatchTableScan.java
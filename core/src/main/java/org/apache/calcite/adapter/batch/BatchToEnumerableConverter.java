@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.ConventionTraitDef;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterImpl;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.util.BuiltInMethod;
+
+import java.util.List;
+
+/**
+ * Relational expression that converts an input in
+ * {@link BatchConvention batch calling convention} to
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}.
+ *
+ * <p>Converts its input tree to a tree of {@link BatchOperator}, which it
+ * stashes in the generated code, and generates code for the enumerable
+ * inputs of that tree. At run time, the operators return batches, and the
+ * converter returns each row of each batch.
+ */
+public class BatchToEnumerableConverter extends ConverterImpl
+    implements EnumerableRel {
+  protected BatchToEnumerableConverter(RelOptCluster cluster,
+      RelTraitSet traits, RelNode input) {
+    super(cluster, ConventionTraitDef.INSTANCE, traits, input);
+  }
+
+  @Override public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+    return new BatchToEnumerableConverter(getCluster(), traitSet,
+        sole(inputs));
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    return super.computeSelfCost(planner, mq)
+        .multiplyBy(BatchConvention.CONVERTER_COST_MULTIPLIER);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    final BlockBuilder builder = new BlockBuilder();
+    final BatchRel.BatchImplementor batchImplementor =
+        new BatchRel.BatchImplementor(implementor, builder);
+    final BatchOperator operator = batchImplementor.visitChild(getInput());
+    final PhysType physType =
+        PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(),
+            JavaRowFormat.ARRAY);
+    final Expression enumerable_ = builder.append("batches",
+        Expressions.call(BuiltInMethod.BATCHES_TO_ENUMERABLE.method,
+            implementor.stash(operator, BatchOperator.class),
+            implementor.getRootExpression(),
+            Expressions.newArrayInit(Enumerable.class,
+                batchImplementor.inputs)));
+    final Expression sliced_ =
+        getRowType().getFieldCount() == 1
+            ? Expressions.call(BuiltInMethod.SLICE0.method, enumerable_)
+            : enumerable_;
+    builder.add(sliced_);
+    return implementor.result(physType, builder.toBlock());
+  }
+}
+
+// End BatchToEnumerableConverter.java
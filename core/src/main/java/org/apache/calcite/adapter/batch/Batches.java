@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.tree.Primitive;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Utilities for executing trees of {@link BatchOperator}.
+ */
+public class Batches {
+  private Batches() {}
+
+  /** Executes a tree of operators and returns its result as an enumerable
+   * of rows. Called from code generated by
+   * {@link BatchToEnumerableConverter}.
+   *
+   * @param operator Root of operator tree
+   * @param root Data context
+   * @param inputs Results of enumerable inputs to the tree
+   */
+  public static Enumerable<Object[]> toEnumerable(
+      final BatchOperator operator, final DataContext root,
+      Enumerable... inputs) {
+    //noinspection unchecked
+    final List<Enumerable<Object[]>> inputList =
+        (List) Arrays.asList(inputs);
+    return new AbstractEnumerable<Object[]>() {
+      public Enumerator<Object[]> enumerator() {
+        return new RowEnumerator(
+            operator.open(new BatchOperator.Context(root, inputList)));
+      }
+    };
+  }
+
+  /** Enumerator that returns each row of a sequence of batches. */
+  private static class RowEnumerator implements Enumerator<Object[]> {
+    private final Enumerator<ColumnBatch> batches;
+    private ColumnBatch batch;
+    private int i;
+    private Object[] current;
+
+    RowEnumerator(Enumerator<ColumnBatch> batches) {
+      this.batches = batches;
+    }
+
+    public Object[] current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      while (batch == null || ++i >= batch.rowCount) {
+        if (!batches.moveNext()) {
+          batch = null;
+          return false;
+        }
+        batch = batches.current();
+        i = -1;
+      }
+      current = batch.row(i);
+      return true;
+    }
+
+    public void reset() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      batches.close();
+    }
+  }
+
+  /** Operator that reads the rows of an enumerable input into batches. */
+  static class RowsOperator implements BatchOperator {
+    private final int ordinal;
+    private final List<Primitive> primitives;
+
+    RowsOperator(int ordinal, List<Primitive> primitives) {
+      this.ordinal = ordinal;
+      this.primitives = primitives;
+    }
+
+    public Enumerator<ColumnBatch> open(Context context) {
+      final Enumerator<Object[]> rows =
+          context.inputs.get(ordinal).enumerator();
+      return new Enumerator<ColumnBatch>() {
+        private ColumnBatch current;
+
+        public ColumnBatch current() {
+          return current;
+        }
+
+        public boolean moveNext() {
+          final ColumnVector[] vectors =
+              ColumnBatch.allocate(primitives, ColumnBatch.DEFAULT_SIZE);
+          int n = 0;
+          while (n < ColumnBatch.DEFAULT_SIZE && rows.moveNext()) {
+            final Object[] row = rows.current();
+            for (int j = 0; j < vectors.length; j++) {
+              vectors[j].set(n, row[j]);
+            }
+            ++n;
+          }
+          if (n == 0) {
+            current = null;
+            return false;
+          }
+          current = new ColumnBatch(n, vectors);
+          return true;
+        }
+
+        public void reset() {
+          throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+          rows.close();
+        }
+      };
+    }
+  }
+}
+
+// End Batches.java
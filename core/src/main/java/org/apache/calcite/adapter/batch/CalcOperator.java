@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.linq4j.Enumerator;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Operator that implements {@link BatchCalc}.
+ *
+ * <p>For each input batch, evaluates the condition and removes rows for
+ * which it is not true, then evaluates each projected expression over the
+ * remaining rows.
+ */
+class CalcOperator implements BatchOperator {
+  private final BatchOperator input;
+  private final VectorExpression condition;
+  private final ImmutableList<VectorExpression> projects;
+
+  CalcOperator(BatchOperator input, VectorExpression condition,
+      List<VectorExpression> projects) {
+    this.input = input;
+    this.condition = condition;
+    this.projects = ImmutableList.copyOf(projects);
+  }
+
+  public Enumerator<ColumnBatch> open(Context context) {
+    final Enumerator<ColumnBatch> inputs = input.open(context);
+    return new Enumerator<ColumnBatch>() {
+      private ColumnBatch current;
+
+      public ColumnBatch current() {
+        return current;
+      }
+
+      public boolean moveNext() {
+        while (inputs.moveNext()) {
+          ColumnBatch batch = inputs.current();
+          if (condition != null) {
+            batch = filter(batch);
+            if (batch == null) {
+              continue;
+            }
+          }
+          final ColumnVector[] vectors = new ColumnVector[projects.size()];
+          for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = projects.get(i).evaluate(batch);
+          }
+          current = new ColumnBatch(batch.rowCount, vectors);
+          return true;
+        }
+        current = null;
+        return false;
+      }
+
+      public void reset() {
+        throw new UnsupportedOperationException();
+      }
+
+      public void close() {
+        inputs.close();
+      }
+    };
+  }
+
+  /** Returns the rows of a batch for which the condition is true, or null
+   * if there are none. */
+  private ColumnBatch filter(ColumnBatch batch) {
+    final ColumnVector v = condition.evaluate(batch);
+    final int[] rows = new int[batch.rowCount];
+    int n = 0;
+    for (int i = 0; i < batch.rowCount; i++) {
+      if (v.booleans[i] && !v.isNull(i)) {
+        rows[n++] = i;
+      }
+    }
+    if (n == 0) {
+      return null;
+    }
+    if (n == batch.rowCount) {
+      return batch;
+    }
+    return batch.select(rows, n);
+  }
+}
+
+// End CalcOperator.java
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.linq4j.tree.Primitive;
+
+import java.util.List;
+
+/**
+ * Set of rows, stored as one {@link ColumnVector} per column.
+ *
+ * <p>A batch has at most {@link #DEFAULT_SIZE} rows, unless the operator
+ * that produced it was configured otherwise. Its vectors may have more
+ * capacity than it has rows.
+ */
+public class ColumnBatch {
+  /** Number of rows that an operator puts into a batch. */
+  public static final int DEFAULT_SIZE = 1024;
+
+  public final int rowCount;
+  public final ColumnVector[] vectors;
+
+  /** Creates a ColumnBatch. */
+  public ColumnBatch(int rowCount, ColumnVector[] vectors) {
+    this.rowCount = rowCount;
+    this.vectors = vectors;
+  }
+
+  /** Creates an empty batch, with vectors of given types, that can hold
+   * {@code capacity} rows. */
+  public static ColumnVector[] allocate(List<Primitive> primitives,
+      int capacity) {
+    final ColumnVector[] vectors = new ColumnVector[primitives.size()];
+    for (int i = 0; i < vectors.length; i++) {
+      vectors[i] = ColumnVector.create(primitives.get(i), capacity);
+    }
+    return vectors;
+  }
+
+  /** Returns a batch that contains the rows at the first {@code count}
+   * positions of {@code rows}. */
+  public ColumnBatch select(int[] rows, int count) {
+    final ColumnVector[] newVectors = new ColumnVector[vectors.length];
+    for (int i = 0; i < vectors.length; i++) {
+      newVectors[i] = vectors[i].gather(rows, count);
+    }
+    return new ColumnBatch(count, newVectors);
+  }
+
+  /** Returns the values of a row, boxed. */
+  public Object[] row(int i) {
+    final Object[] values = new Object[vectors.length];
+    for (int j = 0; j < values.length; j++) {
+      values[j] = vectors[j].get(i);
+    }
+    return values;
+  }
+}
+
+// End ColumnBatch.java
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.linq4j.tree.Primitive;
+
+import java.util.Arrays;
+
+/**
+ * Values of one column for each row in a {@link ColumnBatch}.
+ *
+ * <p>Values are stored in an array of the primitive type given by the
+ * vector's {@link Kind}. Whether each value is null is recorded in a bitmap,
+ * {@link #nulls}, which is null if no value in the vector is null; the
+ * primitive value at a null position is undefined.
+ *
+ * <p>Values of types {@code byte} and {@code short} are stored as
+ * {@code int}, and converted back when they are boxed by {@link #get(int)}.
+ */
+public class ColumnVector {
+  /** How values are stored. */
+  public final Kind kind;
+
+  /** Java type of the values, used when they are boxed. {@link Primitive#OTHER}
+   * if the values are objects. */
+  public final Primitive primitive;
+
+  public final int[] ints;
+  public final long[] longs;
+  public final double[] doubles;
+  public final boolean[] booleans;
+  public final Object[] objects;
+
+  /** Bitmap with a bit set for each null value, or null if there are no
+   * null values. */
+  public long[] nulls;
+
+  private ColumnVector(Primitive primitive, int capacity) {
+    this.primitive = primitive;
+    this.kind = Kind.of(primitive);
+    this.ints = kind == Kind.INT ? new int[capacity] : null;
+    this.longs = kind == Kind.LONG ? new long[capacity] : null;
+    this.doubles = kind == Kind.DOUBLE ? new double[capacity] : null;
+    this.booleans = kind == Kind.BOOLEAN ? new boolean[capacity] : null;
+    this.objects = kind == Kind.OBJECT ? new Object[capacity] : null;
+  }
+
+  /** Creates a vector that can hold {@code capacity} values of a given
+   * type. */
+  public static ColumnVector create(Primitive primitive, int capacity) {
+    return new ColumnVector(primitive, capacity);
+  }
+
+  /** Returns the number of values that this vector can hold. */
+  public int capacity() {
+    switch (kind) {
+    case INT:
+      return ints.length;
+    case LONG:
+      return longs.length;
+    case DOUBLE:
+      return doubles.length;
+    case BOOLEAN:
+      return booleans.length;
+    default:
+      return objects.length;
+    }
+  }
+
+  /** Returns whether the value at a given position is null. */
+  public boolean isNull(int i) {
+    return nulls != null && (nulls[i >>> 6] & (1L << i)) != 0;
+  }
+
+  /** Marks the value at a given position as null. */
+  public void setNull(int i) {
+    if (nulls == null) {
+      nulls = new long[(capacity() + 63) >>> 6];
+    }
+    nulls[i >>> 6] |= 1L << i;
+  }
+
+  /** Returns the value at a given position, boxed. */
+  public Object get(int i) {
+    if (isNull(i)) {
+      return null;
+    }
+    switch (primitive) {
+    case BYTE:
+      return (byte) ints[i];
+    case SHORT:
+      return (short) ints[i];
+    case INT:
+      return ints[i];
+    case LONG:
+      return longs[i];
+    case DOUBLE:
+      return doubles[i];
+    case BOOLEAN:
+      return booleans[i];
+    default:
+      return objects[i];
+    }
+  }
+
+  /** Sets the value at a given position from a boxed value, which may be
+   * null. */
+  public void set(int i, Object o) {
+    if (o == null) {
+      setNull(i);
+      return;
+    }
+    switch (kind) {
+    case INT:
+      ints[i] = ((Number) o).intValue();
+      break;
+    case LONG:
+      longs[i] = ((Number) o).longValue();
+      break;
+    case DOUBLE:
+      doubles[i] = ((Number) o).doubleValue();
+      break;
+    case BOOLEAN:
+      booleans[i] = (Boolean) o;
+      break;
+    default:
+      objects[i] = o;
+    }
+  }
+
+  /** Copies the value at position {@code from} in this vector to position
+   * {@code to} in {@code target}, which must have the same kind. */
+  public void copyTo(int from, ColumnVector target, int to) {
+    if (isNull(from)) {
+      target.setNull(to);
+      return;
+    }
+    switch (kind) {
+    case INT:
+      target.ints[to] = ints[from];
+      break;
+    case LONG:
+      target.longs[to] = longs[from];
+      break;
+    case DOUBLE:
+      target.doubles[to] = doubles[from];
+      break;
+    case BOOLEAN:
+      target.booleans[to] = booleans[from];
+      break;
+    default:
+      target.objects[to] = objects[from];
+    }
+  }
+
+  /** Returns a vector that contains, for each of the first {@code count}
+   * elements of {@code rows}, the value at that position in this vector;
+   * or null if the position is negative. */
+  public ColumnVector gather(int[] rows, int count) {
+    final ColumnVector v = new ColumnVector(primitive, count);
+    for (int i = 0; i < count; i++) {
+      final int row = rows[i];
+      if (row < 0) {
+        v.setNull(i);
+      } else {
+        copyTo(row, v, i);
+      }
+    }
+    return v;
+  }
+
+  /** Returns a copy of this vector with a given capacity. */
+  public ColumnVector copyOf(int capacity) {
+    final ColumnVector v = new ColumnVector(primitive, capacity);
+    final int n = Math.min(capacity, capacity());
+    switch (kind) {
+    case INT:
+      System.arraycopy(ints, 0, v.ints, 0, n);
+      break;
+    case LONG:
+      System.arraycopy(longs, 0, v.longs, 0, n);
+      break;
+    case DOUBLE:
+      System.arraycopy(doubles, 0, v.doubles, 0, n);
+      break;
+    case BOOLEAN:
+      System.arraycopy(booleans, 0, v.booleans, 0, n);
+      break;
+    default:
+      System.arraycopy(objects, 0, v.objects, 0, n);
+    }
+    if (nulls != null) {
+      v.nulls = Arrays.copyOf(nulls, (capacity + 63) >>> 6);
+    }
+    return v;
+  }
+
+  /** Returns a bitmap that has a bit set for each position that is null in
+   * either of two vectors, or null if neither has null values. */
+  static long[] unionNulls(ColumnVector v0, ColumnVector v1, int rowCount) {
+    if (v0.nulls == null && v1.nulls == null) {
+      return null;
+    }
+    final long[] nulls = new long[(rowCount + 63) >>> 6];
+    for (int i = 0; i < nulls.length; i++) {
+      nulls[i] = (v0.nulls == null ? 0L : v0.nulls[i])
+          | (v1.nulls == null ? 0L : v1.nulls[i]);
+    }
+    return nulls;
+  }
+
+  /** How the values of a vector are stored. */
+  public enum Kind {
+    INT, LONG, DOUBLE, BOOLEAN, OBJECT;
+
+    /** Returns the kind of vector that holds values of a given Java type. */
+    public static Kind of(Primitive primitive) {
+      switch (primitive) {
+      case BYTE:
+      case SHORT:
+      case INT:
+        return INT;
+      case LONG:
+        return LONG;
+      case DOUBLE:
+        return DOUBLE;
+      case BOOLEAN:
+        return BOOLEAN;
+      default:
+        return OBJECT;
+      }
+    }
+  }
+}
+
+// End ColumnVector.java
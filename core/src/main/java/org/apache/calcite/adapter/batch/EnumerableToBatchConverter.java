@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.plan.ConventionTraitDef;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterImpl;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+
+import java.util.List;
+
+/**
+ * Relational expression that converts an input in
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}
+ * to {@link BatchConvention batch calling convention}.
+ *
+ * <p>Its operator reads the rows of the input into batches of
+ * {@link ColumnBatch#DEFAULT_SIZE} rows.
+ */
+public class EnumerableToBatchConverter extends ConverterImpl
+    implements BatchRel {
+  protected EnumerableToBatchConverter(RelOptCluster cluster,
+      RelTraitSet traits, RelNode input) {
+    super(cluster, ConventionTraitDef.INSTANCE, traits, input);
+  }
+
+  @Override public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+    return new EnumerableToBatchConverter(getCluster(), traitSet,
+        sole(inputs));
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    return super.computeSelfCost(planner, mq)
+        .multiplyBy(BatchConvention.CONVERTER_COST_MULTIPLIER);
+  }
+
+  public BatchOperator implement(BatchImplementor implementor) {
+    final int ordinal = implementor.registerInput((EnumerableRel) getInput());
+    return new Batches.RowsOperator(ordinal,
+        implementor.primitives(getRowType()));
+  }
+}
+
+// End EnumerableToBatchConverter.java
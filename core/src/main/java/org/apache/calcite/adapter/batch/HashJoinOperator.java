@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.tree.Primitive;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Operator that implements {@link BatchHashJoin}.
+ *
+ * <p>Reads the right input into column vectors and builds a hash table on
+ * its keys, each bucket being a chain of row ordinals. Then probes the table
+ * with each batch of the left input. The rows of an output batch all come
+ * from the same left batch; if a left batch produces more than
+ * {@link ColumnBatch#DEFAULT_SIZE} rows, probing resumes where it left off
+ * when the next output batch is requested.
+ *
+ * <p>Rows whose key contains a null value never match.
+ */
+class HashJoinOperator implements BatchOperator {
+  private final BatchOperator left;
+  private final BatchOperator right;
+  private final int[] leftKeys;
+  private final int[] rightKeys;
+  private final List<Primitive> rightPrimitives;
+  private final boolean generateNullsOnRight;
+
+  /** Whether there is a single key column, of kind {@code INT} or
+   * {@code LONG}, whose values are used directly as keys. */
+  private final boolean longKeys;
+
+  HashJoinOperator(BatchOperator left, BatchOperator right, int[] leftKeys,
+      int[] rightKeys, List<Primitive> leftKeyPrimitives,
+      List<Primitive> rightPrimitives, boolean generateNullsOnRight) {
+    this.left = left;
+    this.right = right;
+    this.leftKeys = leftKeys;
+    this.rightKeys = rightKeys;
+    this.rightPrimitives = ImmutableList.copyOf(rightPrimitives);
+    this.generateNullsOnRight = generateNullsOnRight;
+    if (leftKeys.length == 1) {
+      final ColumnVector.Kind kind =
+          ColumnVector.Kind.of(leftKeyPrimitives.get(0));
+      this.longKeys = kind == ColumnVector.Kind.INT
+          || kind == ColumnVector.Kind.LONG;
+    } else {
+      this.longKeys = false;
+    }
+  }
+
+  public Enumerator<ColumnBatch> open(Context context) {
+    return new JoinEnumerator(left.open(context), right.open(context));
+  }
+
+  /** Computes the keys of the rows of a batch. Sets {@code nulls[i]} if the
+   * key of row {@code i} contains a null value. */
+  private void keys(ColumnBatch batch, int[] keyColumns, long[] longValues,
+      Object[] objectValues, boolean[] nulls, int offset) {
+    final int n = batch.rowCount;
+    if (longKeys) {
+      final ColumnVector v = batch.vectors[keyColumns[0]];
+      for (int i = 0; i < n; i++) {
+        nulls[offset + i] = v.isNull(i);
+        longValues[offset + i] = v.kind == ColumnVector.Kind.INT
+            ? v.ints[i]
+            : v.longs[i];
+      }
+      return;
+    }
+    for (int i = 0; i < n; i++) {
+      final Object[] values = new Object[keyColumns.length];
+      boolean isNull = false;
+      for (int k = 0; k < keyColumns.length; k++) {
+        values[k] = batch.vectors[keyColumns[k]].get(i);
+        isNull |= values[k] == null;
+      }
+      nulls[offset + i] = isNull;
+      objectValues[offset + i] =
+          values.length == 1 ? values[0] : Arrays.asList(values);
+    }
+  }
+
+  private static int hash(long v) {
+    v ^= v >>> 33;
+    v *= 0xFF51AFD7ED558CCDL;
+    v ^= v >>> 33;
+    return (int) v;
+  }
+
+  /** Enumerator that builds the hash table when first called, then probes
+   * it. */
+  private class JoinEnumerator implements Enumerator<ColumnBatch> {
+    private final Enumerator<ColumnBatch> lefts;
+    private final Enumerator<ColumnBatch> rights;
+    private boolean built;
+
+    // Build side
+    private ColumnVector[] buildVectors;
+    private int buildCount;
+    private long[] buildLongKeys;
+    private Object[] buildObjectKeys;
+    private boolean[] buildNulls;
+    private int[] buildHashes;
+    private int[] heads;
+    private int[] next;
+
+    // Probe side
+    private ColumnBatch leftBatch;
+    private long[] probeLongKeys;
+    private Object[] probeObjectKeys;
+    private boolean[] probeNulls;
+    private int row;
+    private int probeHash;
+    private int chain;
+    private boolean matched;
+    private final int[] leftRows = new int[ColumnBatch.DEFAULT_SIZE];
+    private final int[] rightRows = new int[ColumnBatch.DEFAULT_SIZE];
+    private ColumnBatch current;
+
+    JoinEnumerator(Enumerator<ColumnBatch> lefts,
+        Enumerator<ColumnBatch> rights) {
+      this.lefts = lefts;
+      this.rights = rights;
+    }
+
+    public ColumnBatch current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (!built) {
+        build();
+        built = true;
+      }
+      int n = 0;
+      for (;;) {
+        if (leftBatch == null) {
+          if (!lefts.moveNext()) {
+            break;
+          }
+          leftBatch = lefts.current();
+          final int count = leftBatch.rowCount;
+          probeNulls = new boolean[count];
+          if (longKeys) {
+            probeLongKeys = new long[count];
+          } else {
+            probeObjectKeys = new Object[count];
+          }
+          keys(leftBatch, leftKeys, probeLongKeys, probeObjectKeys,
+              probeNulls, 0);
+          row = 0;
+          startRow();
+        }
+        while (row < leftBatch.rowCount && n < leftRows.length) {
+          if (chain >= 0) {
+            if (matches(chain)) {
+              leftRows[n] = row;
+              rightRows[n] = chain;
+              ++n;
+              matched = true;
+            }
+            chain = next[chain];
+            continue;
+          }
+          if (generateNullsOnRight && !matched) {
+            leftRows[n] = row;
+            rightRows[n] = -1;
+            ++n;
+          }
+          ++row;
+          startRow();
+        }
+        if (n > 0) {
+          break;
+        }
+        leftBatch = null;
+      }
+      if (n == 0) {
+        current = null;
+        return false;
+      }
+      final ColumnVector[] vectors =
+          new ColumnVector[leftBatch.vectors.length + buildVectors.length];
+      for (int i = 0; i < leftBatch.vectors.length; i++) {
+        vectors[i] = leftBatch.vectors[i].gather(leftRows, n);
+      }
+      for (int i = 0; i < buildVectors.length; i++) {
+        vectors[leftBatch.vectors.length + i] =
+            buildVectors[i].gather(rightRows, n);
+      }
+      current = new ColumnBatch(n, vectors);
+      if (row >= leftBatch.rowCount) {
+        leftBatch = null;
+      }
+      return true;
+    }
+
+    /** Positions the chain at the first candidate match for the current
+     * left row. */
+    private void startRow() {
+      matched = false;
+      chain = -1;
+      if (row >= leftBatch.rowCount || probeNulls[row]) {
+        return;
+      }
+      probeHash = longKeys
+          ? hash(probeLongKeys[row])
+          : hash(Objects.hashCode(probeObjectKeys[row]));
+      chain = heads[probeHash & (heads.length - 1)];
+    }
+
+    private boolean matches(int buildRow) {
+      return longKeys
+          ? buildLongKeys[buildRow] == probeLongKeys[row]
+          : buildHashes[buildRow] == probeHash
+              && buildObjectKeys[buildRow].equals(probeObjectKeys[row]);
+    }
+
+    private void build() {
+      int capacity = ColumnBatch.DEFAULT_SIZE;
+      buildVectors = ColumnBatch.allocate(rightPrimitives, capacity);
+      buildNulls = new boolean[capacity];
+      if (longKeys) {
+        buildLongKeys = new long[capacity];
+      } else {
+        buildObjectKeys = new Object[capacity];
+      }
+      while (rights.moveNext()) {
+        final ColumnBatch batch = rights.current();
+        if (buildCount + batch.rowCount > capacity) {
+          while (buildCount + batch.rowCount > capacity) {
+            capacity *= 2;
+          }
+          for (int i = 0; i < buildVectors.length; i++) {
+            buildVectors[i] = buildVectors[i].copyOf(capacity);
+          }
+          buildNulls = Arrays.copyOf(buildNulls, capacity);
+          if (longKeys) {
+            buildLongKeys = Arrays.copyOf(buildLongKeys, capacity);
+          } else {
+            buildObjectKeys = Arrays.copyOf(buildObjectKeys, capacity);
+          }
+        }
+        for (int i = 0; i < buildVectors.length; i++) {
+          final ColumnVector v = batch.vectors[i];
+          for (int j = 0; j < batch.rowCount; j++) {
+            v.copyTo(j, buildVectors[i], buildCount + j);
+          }
+        }
+        keys(batch, rightKeys, buildLongKeys, buildObjectKeys, buildNulls,
+            buildCount);
+        buildCount += batch.rowCount;
+      }
+      rights.close();
+      int slotCount = 16;
+      while (slotCount < buildCount * 2) {
+        slotCount *= 2;
+      }
+      heads = new int[slotCount];
+      Arrays.fill(heads, -1);
+      next = new int[buildCount];
+      buildHashes = new int[buildCount];
+      // Insert in reverse order, so that each chain returns rows in the
+      // order they were read.
+      for (int i = buildCount - 1; i >= 0; i--) {
+        if (buildNulls[i]) {
+          continue;
+        }
+        final int hash = longKeys
+            ? hash(buildLongKeys[i])
+            : hash(Objects.hashCode(buildObjectKeys[i]));
+        buildHashes[i] = hash;
+        final int slot = hash & (slotCount - 1);
+        next[i] = heads[slot];
+        heads[slot] = i;
+      }
+    }
+
+    public void reset() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      lefts.close();
+      rights.close();
+    }
+  }
+}
+
+// End HashJoinOperator.java
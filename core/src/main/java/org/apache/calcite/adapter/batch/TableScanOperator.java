@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.tree.Primitive;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Operator that implements {@link BatchTableScan}.
+ */
+class TableScanOperator implements BatchOperator {
+  private final BatchTable table;
+  private final ImmutableList<Primitive> primitives;
+
+  TableScanOperator(BatchTable table, List<Primitive> primitives) {
+    this.table = table;
+    this.primitives = ImmutableList.copyOf(primitives);
+  }
+
+  public Enumerator<ColumnBatch> open(Context context) {
+    return table.batches(context.root, primitives, ColumnBatch.DEFAULT_SIZE);
+  }
+}
+
+// End TableScanOperator.java
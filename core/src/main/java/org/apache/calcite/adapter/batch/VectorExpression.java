@@ -0,0 +1,722 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.sql.type.SqlTypeUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scalar expression that is evaluated for all rows of a
+ * {@link ColumnBatch} at a time.
+ *
+ * <p>{@link #translate} converts a {@link RexNode} to a vector expression.
+ * It supports column references; numeric, boolean and character literals;
+ * arithmetic on {@code int}, {@code long} and {@code double} values;
+ * widening casts; comparisons of numeric and character values;
+ * {@code AND}, {@code OR}, {@code NOT}, {@code IS NULL} and
+ * {@code IS NOT NULL}. Each has the same semantics as the code that
+ * {@link org.apache.calcite.adapter.enumerable.RexToLixTranslator}
+ * generates for it.
+ */
+abstract class VectorExpression {
+  /** Java type of the values of this expression. */
+  final Primitive primitive;
+  final ColumnVector.Kind kind;
+
+  VectorExpression(Primitive primitive) {
+    this.primitive = primitive;
+    this.kind = ColumnVector.Kind.of(primitive);
+  }
+
+  /** Evaluates this expression for every row in a batch. The result has
+   * at least {@link ColumnBatch#rowCount} values, and must not be
+   * modified. */
+  abstract ColumnVector evaluate(ColumnBatch batch);
+
+  /** Converts a row expression to a vector expression, or returns null if it
+   * contains an operator or type that is not supported.
+   *
+   * @param typeFactory Type factory
+   * @param inputs Java type of each field of the input row
+   * @param node Row expression
+   */
+  static VectorExpression translate(JavaTypeFactory typeFactory,
+      List<Primitive> inputs, RexNode node) {
+    final Primitive primitive = BatchRules.primitive(typeFactory,
+        node.getType());
+    switch (node.getKind()) {
+    case INPUT_REF:
+      final int index = ((RexInputRef) node).getIndex();
+      return new InputRef(inputs.get(index), index);
+    case LITERAL:
+      return literal((RexLiteral) node, primitive);
+    default:
+      break;
+    }
+    if (!(node instanceof RexCall)) {
+      return null;
+    }
+    final RexCall call = (RexCall) node;
+    final List<VectorExpression> operands = new ArrayList<>();
+    for (RexNode operand : call.getOperands()) {
+      final VectorExpression e = translate(typeFactory, inputs, operand);
+      if (e == null) {
+        return null;
+      }
+      operands.add(e);
+    }
+    switch (call.getKind()) {
+    case CAST:
+      return cast(typeFactory, operands.get(0),
+          call.getOperands().get(0).getType(), call.getType(), primitive);
+    case PLUS:
+    case MINUS:
+    case TIMES:
+    case DIVIDE:
+      if (!isNumeric(call.getOperands())
+          || !SqlTypeUtil.isNumeric(call.getType())) {
+        return null;
+      }
+      final VectorExpression left = operands.get(0);
+      final VectorExpression right = operands.get(1);
+      final Primitive widest = widest(left, right);
+      if (widest == null
+          || call.getKind() == SqlKind.DIVIDE && widest != Primitive.DOUBLE) {
+        // Integer division fails if the divisor is zero; leave it to
+        // generated code.
+        return null;
+      }
+      return widen(
+          new Arithmetic(widest, call.getKind(), widen(left, widest),
+              widen(right, widest)),
+          primitive);
+    case MINUS_PREFIX:
+      if (!isNumeric(call.getOperands())) {
+        return null;
+      }
+      final VectorExpression operand = operands.get(0);
+      final Primitive p = widest(operand, operand);
+      if (p == null) {
+        return null;
+      }
+      return widen(new Negate(widen(operand, p)), primitive);
+    case EQUALS:
+    case NOT_EQUALS:
+    case LESS_THAN:
+    case LESS_THAN_OR_EQUAL:
+    case GREATER_THAN:
+    case GREATER_THAN_OR_EQUAL:
+      return comparison(call, operands.get(0), operands.get(1));
+    case AND:
+    case OR:
+      VectorExpression e = operands.get(0);
+      if (e.kind != ColumnVector.Kind.BOOLEAN) {
+        return null;
+      }
+      for (VectorExpression operand2 : operands.subList(1, operands.size())) {
+        if (operand2.kind != ColumnVector.Kind.BOOLEAN) {
+          return null;
+        }
+        e = new Logical(call.getKind(), e, operand2);
+      }
+      return e;
+    case NOT:
+      return operands.get(0).kind == ColumnVector.Kind.BOOLEAN
+          ? new Not(operands.get(0))
+          : null;
+    case IS_NULL:
+    case IS_NOT_NULL:
+      return new IsNull(operands.get(0), call.getKind() == SqlKind.IS_NULL);
+    default:
+      return null;
+    }
+  }
+
+  private static boolean isNumeric(List<RexNode> nodes) {
+    for (RexNode node : nodes) {
+      if (!SqlTypeUtil.isNumeric(node.getType())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static VectorExpression literal(RexLiteral literal,
+      Primitive primitive) {
+    if (literal.isNull()) {
+      return new Literal(primitive, null);
+    }
+    final SqlTypeName typeName = literal.getType().getSqlTypeName();
+    switch (ColumnVector.Kind.of(primitive)) {
+    case INT:
+      return SqlTypeName.INT_TYPES.contains(typeName)
+          ? new Literal(primitive, literal.getValueAs(Integer.class))
+          : null;
+    case LONG:
+      return SqlTypeName.INT_TYPES.contains(typeName)
+          ? new Literal(primitive, literal.getValueAs(Long.class))
+          : null;
+    case DOUBLE:
+      return SqlTypeName.APPROX_TYPES.contains(typeName)
+          ? new Literal(primitive, literal.getValueAs(Double.class))
+          : null;
+    case BOOLEAN:
+      return new Literal(primitive, literal.getValueAs(Boolean.class));
+    default:
+      return SqlTypeName.CHAR_TYPES.contains(typeName)
+          ? new Literal(primitive, literal.getValueAs(String.class))
+          : null;
+    }
+  }
+
+  /** Translates a cast. Supports casts that change only nullability, and
+   * casts between numeric types that cannot overflow. */
+  private static VectorExpression cast(JavaTypeFactory typeFactory,
+      VectorExpression operand, RelDataType fromType, RelDataType toType,
+      Primitive primitive) {
+    if (SqlTypeUtil.equalSansNullability(typeFactory, fromType, toType)
+        && operand.kind == ColumnVector.Kind.of(primitive)) {
+      return new Cast(primitive, operand);
+    }
+    if (!SqlTypeUtil.isNumeric(fromType) || !SqlTypeUtil.isNumeric(toType)) {
+      return null;
+    }
+    return widen(operand, primitive);
+  }
+
+  private static VectorExpression comparison(RexCall call,
+      VectorExpression left, VectorExpression right) {
+    final RelDataType leftType = call.getOperands().get(0).getType();
+    final RelDataType rightType = call.getOperands().get(1).getType();
+    if (left.kind == ColumnVector.Kind.OBJECT
+        && right.kind == ColumnVector.Kind.OBJECT
+        && SqlTypeUtil.inCharFamily(leftType)
+        && SqlTypeUtil.inCharFamily(rightType)) {
+      return new Comparison(call.getKind(), left, right);
+    }
+    if (!isNumeric(call.getOperands())
+        && leftType.getSqlTypeName() != rightType.getSqlTypeName()) {
+      return null;
+    }
+    final Primitive widest = widest(left, right);
+    if (widest == null) {
+      return null;
+    }
+    return new Comparison(call.getKind(), widen(left, widest),
+        widen(right, widest));
+  }
+
+  /** Returns the primitive type in which binary arithmetic on two
+   * expressions is performed, following the rules of binary numeric
+   * promotion in Java; or null if either is not {@code int}, {@code long}
+   * or {@code double}. */
+  private static Primitive widest(VectorExpression left,
+      VectorExpression right) {
+    if (!isArithmetic(left.kind) || !isArithmetic(right.kind)) {
+      return null;
+    }
+    switch (left.kind.compareTo(right.kind) >= 0 ? left.kind : right.kind) {
+    case INT:
+      return Primitive.INT;
+    case LONG:
+      return Primitive.LONG;
+    default:
+      return Primitive.DOUBLE;
+    }
+  }
+
+  private static boolean isArithmetic(ColumnVector.Kind kind) {
+    switch (kind) {
+    case INT:
+    case LONG:
+    case DOUBLE:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /** Converts an expression to a given primitive type, if it is not already
+   * of that type. */
+  private static VectorExpression widen(VectorExpression e,
+      Primitive primitive) {
+    if (e == null) {
+      return null;
+    }
+    if (e.primitive == primitive) {
+      return e;
+    }
+    if (rank(e.primitive) == 0 || rank(primitive) <= rank(e.primitive)) {
+      // Narrowing, e.g. the result of "int + int" assigned to "short".
+      return null;
+    }
+    return new Cast(primitive, e);
+  }
+
+  /** Returns the position of a primitive type in the chain of widening
+   * conversions {@code byte}, {@code short}, {@code int}, {@code long},
+   * {@code double}; or 0 if it is not in the chain. */
+  private static int rank(Primitive primitive) {
+    switch (primitive) {
+    case BYTE:
+      return 1;
+    case SHORT:
+      return 2;
+    case INT:
+      return 3;
+    case LONG:
+      return 4;
+    case DOUBLE:
+      return 5;
+    default:
+      return 0;
+    }
+  }
+
+  /** Reference to a column of the input batch. */
+  private static class InputRef extends VectorExpression {
+    private final int index;
+
+    InputRef(Primitive primitive, int index) {
+      super(primitive);
+      this.index = index;
+    }
+
+    ColumnVector evaluate(ColumnBatch batch) {
+      return batch.vectors[index];
+    }
+  }
+
+  /** Literal value, which may be null. */
+  private static class Literal extends VectorExpression {
+    private final Object value;
+
+    Literal(Primitive primitive, Object value) {
+      super(primitive);
+      this.value = value;
+    }
+
+    ColumnVector evaluate(ColumnBatch batch) {
+      final int n = batch.rowCount;
+      final ColumnVector v = ColumnVector.create(primitive, n);
+      if (value == null) {
+        v.nulls = new long[(n + 63) >>> 6];
+        Arrays.fill(v.nulls, -1L);
+        return v;
+      }
+      switch (kind) {
+      case INT:
+        Arrays.fill(v.ints, 0, n, (Integer) value);
+        break;
+      case LONG:
+        Arrays.fill(v.longs, 0, n, (Long) value);
+        break;
+      case DOUBLE:
+        Arrays.fill(v.doubles, 0, n, (Double) value);
+        break;
+      case BOOLEAN:
+        Arrays.fill(v.booleans, 0, n, (Boolean) value);
+        break;
+      default:
+        Arrays.fill(v.objects, 0, n, value);
+      }
+      return v;
+    }
+  }
+
+  /** Conversion to a primitive type of the same or a wider kind. */
+  private static class Cast extends VectorExpression {
+    private final VectorExpression operand;
+
+    Cast(Primitive primitive, VectorExpression operand) {
+      super(primitive);
+      this.operand = operand;
+    }
+
+    ColumnVector evaluate(ColumnBatch batch) {
+      final ColumnVector v0 = operand.evaluate(batch);
+      final int n = batch.rowCount;
+      final ColumnVector v = ColumnVector.create(primitive, n);
+      v.nulls = v0.nulls;
+      switch (operand.kind) {
+      case INT:
+        switch (kind) {
+        case INT:
+          System.arraycopy(v0.ints, 0, v.ints, 0, n);
+          break;
+        case LONG:
+          for (int i = 0; i < n; i++) {
+            v.longs[i] = v0.ints[i];
+          }
+          break;
+        default:
+          for (int i = 0; i < n; i++) {
+            v.doubles[i] = v0.ints[i];
+          }
+        }
+        break;
+      case LONG:
+        if (kind == ColumnVector.Kind.LONG) {
+          System.arraycopy(v0.longs, 0, v.longs, 0, n);
+        } else {
+          for (int i = 0; i < n; i++) {
+            v.doubles[i] = v0.longs[i];
+          }
+        }
+        break;
+      case DOUBLE:
+        System.arraycopy(v0.doubles, 0, v.doubles, 0, n);
+        break;
+      case BOOLEAN:
+        System.arraycopy(v0.booleans, 0, v.booleans, 0, n);
+        break;
+      default:
+        System.arraycopy(v0.objects, 0, v.objects, 0, n);
+      }
+      return v;
+    }
+  }
+
+  /** Binary arithmetic on two operands of the same primitive type. */
+  private static class Arithmetic extends VectorExpression {
+    private final SqlKind op;
+    private final VectorExpression left;
+    private final VectorExpression right;
+
+    Arithmetic(Primitive primitive, SqlKind op, VectorExpression left,
+        VectorExpression right) {
+      super(primitive);
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    ColumnVector evaluate(ColumnBatch batch) {
+      final ColumnVector v0 = left.evaluate(batch);
+      final ColumnVector v1 = right.evaluate(batch);
+      final int n = batch.rowCount;
+      final ColumnVector v = ColumnVector.create(primitive, n);
+      v.nulls = ColumnVector.unionNulls(v0, v1, n);
+      switch (kind) {
+      case INT:
+        evaluate(v0.ints, v1.ints, v.ints, n);
+        break;
+      case LONG:
+        evaluate(v0.longs, v1.longs, v.longs, n);
+        break;
+      default:
+        evaluate(v0.doubles, v1.doubles, v.doubles, n);
+      }
+      return v;
+    }
+
+    private void evaluate(int[] a, int[] b, int[] c, int n) {
+      switch (op) {
+      case PLUS:
+        for (int i = 0; i < n; i++) {
+          c[i] = a[i] + b[i];
+        }
+        break;
+      case MINUS:
+        for (int i = 0; i < n; i++) {
+          c[i] = a[i] - b[i];
+        }
+        break;
+      default:
+        for (int i = 0; i < n; i++) {
+          c[i] = a[i] * b[i];
+        }
+      }
+    }
+
+    private void evaluate(long[] a, long[] b, long[] c, int n) {
+      switch (op) {
+      case PLUS:
+        for (int i = 0; i < n; i++) {
+          c[i] = a[i] + b[i];
+        }
+        break;
+      case MINUS:
+        for (int i = 0; i < n; i++) {
+          c[i] = a[i] - b[i];
+        }
+        break;
+      default:
+        for (int i = 0; i < n; i++) {
+          c[i] = a[i] * b[i];
+        }
+      }
+    }
+
+    private void evaluate(double[] a, double[] b, double[] c, int n) {
+      switch (op) {
+      case PLUS:
+        for (int i = 0; i < n; i++) {
+          c[i] = a[i] + b[i];
+        }
+        break;
+      case MINUS:
+        for (int i = 0; i < n; i++) {
+          c[i] = a[i] - b[i];
+        }
+        break;
+      case TIMES:
+        for (int i = 0; i < n; i++) {
+          c[i] = a[i] * b[i];
+        }
+        break;
+      default:
+        for (int i = 0; i < n; i++) {
+          c[i] = a[i] / b[i];
+        }
+      }
+    }
+  }
+
+  /** Arithmetic negation. */
+  private static class Negate extends VectorExpression {
+    private final VectorExpression operand;
+
+    Negate(VectorExpression operand) {
+      super(operand.primitive);
+      this.operand = operand;
+    }
+
+    ColumnVector evaluate(ColumnBatch batch) {
+      final ColumnVector v0 = operand.evaluate(batch);
+      final int n = batch.rowCount;
+      final ColumnVector v = ColumnVector.create(primitive, n);
+      v.nulls = v0.nulls;
+      switch (kind) {
+      case INT:
+        for (int i = 0; i < n; i++) {
+          v.ints[i] = -v0.ints[i];
+        }
+        break;
+      case LONG:
+        for (int i = 0; i < n; i++) {
+          v.longs[i] = -v0.longs[i];
+        }
+        break;
+      default:
+        for (int i = 0; i < n; i++) {
+          v.doubles[i] = -v0.doubles[i];
+        }
+      }
+      return v;
+    }
+  }
+
+  /** Comparison of two operands of the same kind. */
+  private static class Comparison extends VectorExpression {
+    private final SqlKind op;
+    private final VectorExpression left;
+    private final VectorExpression right;
+
+    Comparison(SqlKind op, VectorExpression left, VectorExpression right) {
+      super(Primitive.BOOLEAN);
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    ColumnVector evaluate(ColumnBatch batch) {
+      final ColumnVector v0 = left.evaluate(batch);
+      final ColumnVector v1 = right.evaluate(batch);
+      final int n = batch.rowCount;
+      final ColumnVector v = ColumnVector.create(primitive, n);
+      v.nulls = ColumnVector.unionNulls(v0, v1, n);
+      final boolean[] c = v.booleans;
+      switch (left.kind) {
+      case INT:
+        final int[] ia = v0.ints;
+        final int[] ib = v1.ints;
+        for (int i = 0; i < n; i++) {
+          c[i] = test(Integer.compare(ia[i], ib[i]));
+        }
+        break;
+      case LONG:
+        final long[] la = v0.longs;
+        final long[] lb = v1.longs;
+        for (int i = 0; i < n; i++) {
+          c[i] = test(Long.compare(la[i], lb[i]));
+        }
+        break;
+      case DOUBLE:
+        final double[] da = v0.doubles;
+        final double[] db = v1.doubles;
+        for (int i = 0; i < n; i++) {
+          c[i] = test(da[i], db[i]);
+        }
+        break;
+      default:
+        final Object[] oa = v0.objects;
+        final Object[] ob = v1.objects;
+        for (int i = 0; i < n; i++) {
+          if (oa[i] != null && ob[i] != null) {
+            c[i] = test(((String) oa[i]).compareTo((String) ob[i]));
+          }
+        }
+      }
+      return v;
+    }
+
+    private boolean test(int c) {
+      switch (op) {
+      case EQUALS:
+        return c == 0;
+      case NOT_EQUALS:
+        return c != 0;
+      case LESS_THAN:
+        return c < 0;
+      case LESS_THAN_OR_EQUAL:
+        return c <= 0;
+      case GREATER_THAN:
+        return c > 0;
+      default:
+        return c >= 0;
+      }
+    }
+
+    /** Compares two {@code double} values using Java's operators, which
+     * differ from {@link Double#compare} for NaN and negative zero. */
+    private boolean test(double a, double b) {
+      switch (op) {
+      case EQUALS:
+        return a == b;
+      case NOT_EQUALS:
+        return a != b;
+      case LESS_THAN:
+        return a < b;
+      case LESS_THAN_OR_EQUAL:
+        return a <= b;
+      case GREATER_THAN:
+        return a > b;
+      default:
+        return a >= b;
+      }
+    }
+  }
+
+  /** {@code AND} or {@code OR}, with SQL three-valued logic. */
+  private static class Logical extends VectorExpression {
+    private final SqlKind op;
+    private final VectorExpression left;
+    private final VectorExpression right;
+
+    Logical(SqlKind op, VectorExpression left, VectorExpression right) {
+      super(Primitive.BOOLEAN);
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    ColumnVector evaluate(ColumnBatch batch) {
+      final ColumnVector v0 = left.evaluate(batch);
+      final ColumnVector v1 = right.evaluate(batch);
+      final int n = batch.rowCount;
+      final ColumnVector v = ColumnVector.create(primitive, n);
+      final boolean[] a = v0.booleans;
+      final boolean[] b = v1.booleans;
+      final boolean[] c = v.booleans;
+      if (v0.nulls == null && v1.nulls == null) {
+        if (op == SqlKind.AND) {
+          for (int i = 0; i < n; i++) {
+            c[i] = a[i] && b[i];
+          }
+        } else {
+          for (int i = 0; i < n; i++) {
+            c[i] = a[i] || b[i];
+          }
+        }
+        return v;
+      }
+      // For AND, the result is FALSE if either operand is FALSE, otherwise
+      // UNKNOWN if either is UNKNOWN; OR is the dual.
+      final boolean decisive = op != SqlKind.AND;
+      for (int i = 0; i < n; i++) {
+        final boolean null0 = v0.isNull(i);
+        final boolean null1 = v1.isNull(i);
+        if (!null0 && a[i] == decisive || !null1 && b[i] == decisive) {
+          c[i] = decisive;
+        } else if (null0 || null1) {
+          v.setNull(i);
+        } else {
+          c[i] = !decisive;
+        }
+      }
+      return v;
+    }
+  }
+
+  /** {@code NOT}. */
+  private static class Not extends VectorExpression {
+    private final VectorExpression operand;
+
+    Not(VectorExpression operand) {
+      super(Primitive.BOOLEAN);
+      this.operand = operand;
+    }
+
+    ColumnVector evaluate(ColumnBatch batch) {
+      final ColumnVector v0 = operand.evaluate(batch);
+      final int n = batch.rowCount;
+      final ColumnVector v = ColumnVector.create(primitive, n);
+      v.nulls = v0.nulls;
+      for (int i = 0; i < n; i++) {
+        v.booleans[i] = !v0.booleans[i];
+      }
+      return v;
+    }
+  }
+
+  /** {@code IS NULL} or {@code IS NOT NULL}. */
+  private static class IsNull extends VectorExpression {
+    private final VectorExpression operand;
+    private final boolean isNull;
+
+    IsNull(VectorExpression operand, boolean isNull) {
+      super(Primitive.BOOLEAN);
+      this.operand = operand;
+      this.isNull = isNull;
+    }
+
+    ColumnVector evaluate(ColumnBatch batch) {
+      final ColumnVector v0 = operand.evaluate(batch);
+      final int n = batch.rowCount;
+      final ColumnVector v = ColumnVector.create(primitive, n);
+      for (int i = 0; i < n; i++) {
+        v.booleans[i] = v0.isNull(i) == isNull;
+      }
+      return v;
+    }
+  }
+}
+
+// End VectorExpression.java
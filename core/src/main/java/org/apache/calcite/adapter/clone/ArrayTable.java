@@ -17,6 +17,9 @@
 package org.apache.calcite.adapter.clone;
 
 import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.batch.BatchTable;
+import org.apache.calcite.adapter.batch.ColumnBatch;
+import org.apache.calcite.adapter.batch.ColumnVector;
 import org.apache.calcite.adapter.java.AbstractQueryableTable;
 import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
@@ -55,7 +58,8 @@
  * values in the column; see {@link Representation} and
  * {@link RepresentationType}.
  */
-class ArrayTable extends AbstractQueryableTable implements ScannableTable {
+class ArrayTable extends AbstractQueryableTable
+    implements ScannableTable, BatchTable {
   private final RelProtoDataType protoRowType;
   private final Supplier<Content> supplier;
 
@@ -91,6 +95,12 @@ public Enumerator<Object[]> enumerator() {
     };
   }
 
+  public Enumerator<ColumnBatch> batches(DataContext root,
+      List<Primitive> primitives, int batchSize) {
+    final Content content = supplier.get();
+    return content.batchEnumerator(primitives, batchSize);
+  }
+
   public <T> Queryable<T> asQueryable(final QueryProvider queryProvider,
       SchemaPlus schema, String tableName) {
     return new AbstractTableQueryable<T>(queryProvider, schema, this,
@@ -832,6 +842,11 @@ public Enumerator<Object[]> arrayEnumerator() {
       return new ArrayEnumerator(size, columns);
     }
 
+    public Enumerator<ColumnBatch> batchEnumerator(List<Primitive> primitives,
+        int batchSize) {
+      return new BatchEnumerator(size, columns, primitives, batchSize);
+    }
+
     /** Enumerator over a table with a single column; each element
      * returned is an object. */
     private static class ObjectEnumerator implements Enumerator<Object> {
@@ -894,6 +909,77 @@ public void reset() {
       public void close() {
       }
     }
+
+    /** Enumerator over a table that returns batches of rows. Copies the
+     * values of a column that is stored in a primitive array of the
+     * required type in bulk; otherwise reads each value as an object. */
+    private static class BatchEnumerator implements Enumerator<ColumnBatch> {
+      final int rowCount;
+      final List<Column> columns;
+      final List<Primitive> primitives;
+      final int batchSize;
+      int start;
+      ColumnBatch current;
+
+      BatchEnumerator(int rowCount, List<Column> columns,
+          List<Primitive> primitives, int batchSize) {
+        this.rowCount = rowCount;
+        this.columns = columns;
+        this.primitives = primitives;
+        this.batchSize = batchSize;
+      }
+
+      public ColumnBatch current() {
+        return current;
+      }
+
+      public boolean moveNext() {
+        if (start >= rowCount) {
+          current = null;
+          return false;
+        }
+        final int n = Math.min(batchSize, rowCount - start);
+        final ColumnVector[] vectors = new ColumnVector[columns.size()];
+        for (int j = 0; j < vectors.length; j++) {
+          vectors[j] = vector(columns.get(j), primitives.get(j), n);
+        }
+        current = new ColumnBatch(n, vectors);
+        start += n;
+        return true;
+      }
+
+      private ColumnVector vector(Column column, Primitive primitive, int n) {
+        final ColumnVector v = ColumnVector.create(primitive, n);
+        final Object dataSet = column.dataSet;
+        if (column.representation.getType()
+            == RepresentationType.PRIMITIVE_ARRAY) {
+          if (dataSet instanceof int[] && v.kind == ColumnVector.Kind.INT) {
+            System.arraycopy(dataSet, start, v.ints, 0, n);
+            return v;
+          } else if (dataSet instanceof long[]
+              && v.kind == ColumnVector.Kind.LONG) {
+            System.arraycopy(dataSet, start, v.longs, 0, n);
+            return v;
+          } else if (dataSet instanceof double[]
+              && v.kind == ColumnVector.Kind.DOUBLE) {
+            System.arraycopy(dataSet, start, v.doubles, 0, n);
+            return v;
+          }
+        }
+        for (int i = 0; i < n; i++) {
+          v.set(i, column.representation.getObject(dataSet, start + i));
+        }
+        return v;
+      }
+
+      public void reset() {
+        start = 0;
+        current = null;
+      }
+
+      public void close() {
+      }
+    }
   }
 }
 
@@ -17,8 +17,12 @@
 package org.apache.calcite.adapter.enumerable;
 
 import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.config.CalciteConnectionConfig;
+import org.apache.calcite.config.CalciteConnectionProperty;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.function.Function2;
+import org.apache.calcite.linq4j.function.Predicate2;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.BlockStatement;
 import org.apache.calcite.linq4j.tree.ConstantUntypedNull;
 import org.apache.calcite.linq4j.tree.Expression;
@@ -26,11 +30,15 @@
 import org.apache.calcite.linq4j.tree.MethodDeclaration;
 import org.apache.calcite.linq4j.tree.ParameterExpression;
 import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.JoinRelType;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexProgramBuilder;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Pair;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
@@ -170,6 +178,113 @@ static Expression joinSelector(JoinRelType joinType, PhysType physType,
         parameters);
   }
 
+  /** Generates a predicate on a row of each input of a join. */
+  static Expression joinPredicate(EnumerableRelImplementor implementor,
+      RexBuilder rexBuilder, RelNode left, RelNode right,
+      PhysType leftPhysType, PhysType rightPhysType, RexNode condition) {
+    final BlockBuilder builder = new BlockBuilder();
+    final ParameterExpression left_ =
+        Expressions.parameter(leftPhysType.getJavaRowType(), "left");
+    final ParameterExpression right_ =
+        Expressions.parameter(rightPhysType.getJavaRowType(), "right");
+    final RexProgramBuilder program =
+        new RexProgramBuilder(
+            implementor.getTypeFactory().builder()
+                .addAll(left.getRowType().getFieldList())
+                .addAll(right.getRowType().getFieldList())
+                .build(),
+            rexBuilder);
+    program.addCondition(condition);
+    builder.add(
+        Expressions.return_(null,
+            RexToLixTranslator.translateCondition(program.getProgram(),
+                implementor.getTypeFactory(),
+                builder,
+                new RexToLixTranslator.InputGetterImpl(
+                    ImmutableList.of(Pair.of((Expression) left_, leftPhysType),
+                        Pair.of((Expression) right_, rightPhysType))),
+                implementor.allCorrelateVariables)));
+    return Expressions.lambda(Predicate2.class, builder.toBlock(), left_,
+        right_);
+  }
+
+  /** Returns the number of bytes of rows that a relational expression may
+   * hold in memory before it spills to disk, or 0 if there is no limit.
+   *
+   * @see CalciteConnectionConfig#memoryBudget() */
+  static long memoryBudget(RelNode rel) {
+    final CalciteConnectionConfig config =
+        rel.getCluster().getPlanner().getContext()
+            .unwrap(CalciteConnectionConfig.class);
+    return config == null ? 0L : config.memoryBudget();
+  }
+
+  /** Returns the number of partitions into which a relational expression may
+   * split its input to evaluate it in parallel.
+   *
+   * @see CalciteConnectionConfig#parallelism() */
+  static int parallelism(RelNode rel) {
+    final CalciteConnectionConfig config =
+        rel.getCluster().getPlanner().getContext()
+            .unwrap(CalciteConnectionConfig.class);
+    return config == null ? 1 : Math.max(config.parallelism(), 1);
+  }
+
+  /** Returns the number of values of the correlation variables for which a
+   * correlating relational expression may cache the rows of its right input.
+   *
+   * @see CalciteConnectionConfig#correlateCacheSize() */
+  static int correlateCacheSize(RelNode rel) {
+    final CalciteConnectionConfig config =
+        rel.getCluster().getPlanner().getContext()
+            .unwrap(CalciteConnectionConfig.class);
+    return config == null
+        ? (Integer) CalciteConnectionProperty.CORRELATE_CACHE_SIZE.defaultValue()
+        : config.correlateCacheSize();
+  }
+
+  /** Returns whether rows of a given format can be written to disk by a
+   * {@link org.apache.calcite.linq4j.SpillFile}. */
+  static boolean canSpill(JavaRowFormat format) {
+    return format != JavaRowFormat.CUSTOM;
+  }
+
+  /** Returns whether rows of two physical types, each a single field of a
+   * primitive type with the same Java representation, can be compared by
+   * the {@code long} key of the field; see
+   * {@link PhysType#generateLongKey(int)}. */
+  static boolean isLongKeyed(PhysType physType0, PhysType physType1) {
+    return physType0.getRowType().getFieldCount() == 1
+        && physType1.getRowType().getFieldCount() == 1
+        && physType0.getJavaRowType().equals(physType1.getJavaRowType())
+        && physType0.fieldClass(0) == physType1.fieldClass(0)
+        && physType1.generateLongKey(0) != null;
+  }
+
+  /** Returns whether values of a given type can be held in a field of a
+   * generated key class ({@link JavaRowFormat#KEY}) and be compared as they
+   * would be in a list. */
+  static boolean isKeyFieldType(RelDataType type) {
+    switch (type.getSqlTypeName()) {
+    case ANY:
+    case ARRAY:
+    case MAP:
+    case MULTISET:
+    case OTHER:
+    case ROW:
+      // Values might be Java arrays, which are not equal by value.
+      return false;
+    case FLOAT:
+    case REAL:
+    case DOUBLE:
+      // The generated class would compare primitive values using "==", which
+      // is not consistent with Double.equals for NaN and -0.0.
+      return false;
+    default:
+      return true;
+    }
+  }
+
   /** Converts from internal representation to JDBC representation used by
    * arguments of user-defined functions. For example, converts date values from
    * {@code int} to {@link java.sql.Date}. */
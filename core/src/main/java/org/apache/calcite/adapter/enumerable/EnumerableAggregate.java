@@ -16,48 +16,52 @@
  */
 package org.apache.calcite.adapter.enumerable;
 
-import org.apache.calcite.adapter.enumerable.impl.AggAddContextImpl;
 import org.apache.calcite.adapter.enumerable.impl.AggResultContextImpl;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
-import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.linq4j.HashAggregator;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.function.Function0;
 import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.function.Function2;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Blocks;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.MemberDeclaration;
 import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.linq4j.tree.Primitive;
 import org.apache.calcite.linq4j.tree.Types;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelTraitSet;
-import org.apache.calcite.prepare.CalcitePrepareImpl;
 import org.apache.calcite.rel.InvalidRelException;
 import org.apache.calcite.rel.RelNode;
-import org.apache.calcite.rel.core.Aggregate;
 import org.apache.calcite.rel.core.AggregateCall;
-import org.apache.calcite.rel.type.RelDataType;
-import org.apache.calcite.rel.type.RelDataTypeField;
-import org.apache.calcite.rex.RexInputRef;
-import org.apache.calcite.rex.RexNode;
-import org.apache.calcite.sql.SqlAggFunction;
+import org.apache.calcite.sql.SqlKind;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.ImmutableBitSet;
-import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
 
-import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /** Implementation of {@link org.apache.calcite.rel.core.Aggregate} in
  * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}. */
-public class EnumerableAggregate extends Aggregate implements EnumerableRel {
+public class EnumerableAggregate extends EnumerableAggregateBase
+    implements EnumerableRel {
+  /** Kinds of aggregate function that
+   * {@link org.apache.calcite.linq4j.HashAggregator} may compute; their state
+   * can be stored in arrays. */
+  private static final Set<SqlKind> HASH_AGGREGATE_KINDS =
+      EnumSet.of(SqlKind.COUNT, SqlKind.SUM, SqlKind.SUM0, SqlKind.MIN,
+          SqlKind.MAX);
+
   public EnumerableAggregate(
       RelOptCluster cluster,
       RelTraitSet traitSet,
@@ -68,22 +72,6 @@ public EnumerableAggregate(
       List<AggregateCall> aggCalls)
       throws InvalidRelException {
     super(cluster, traitSet, child, indicator, groupSet, groupSets, aggCalls);
-    Preconditions.checkArgument(!indicator,
-        "EnumerableAggregate no longer supports indicator fields");
-    assert getConvention() instanceof EnumerableConvention;
-
-    for (AggregateCall aggCall : aggCalls) {
-      if (aggCall.isDistinct()) {
-        throw new InvalidRelException(
-            "distinct aggregation not supported");
-      }
-      AggImplementor implementor2 =
-          RexImpTable.INSTANCE.get(aggCall.getAggregation(), false);
-      if (implementor2 == null) {
-        throw new InvalidRelException(
-            "aggregation " + aggCall.getAggregation() + " not supported");
-      }
-    }
   }
 
   @Override public EnumerableAggregate copy(RelTraitSet traitSet, RelNode input,
@@ -179,7 +167,7 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
 
     final PhysType keyPhysType =
         inputPhysType.project(groupSet.asList(), getGroupType() != Group.SIMPLE,
-            JavaRowFormat.LIST);
+            keyFormat());
     final int groupCount = getGroupCount();
 
     final List<AggImpState> aggs = new ArrayList<>(aggCalls.size());
@@ -187,186 +175,34 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
       aggs.add(new AggImpState(call.i, call.e, false));
     }
 
-    // Function0<Object[]> accumulatorInitializer =
-    //     new Function0<Object[]>() {
-    //         public Object[] apply() {
-    //             return new Object[] {0, 0};
-    //         }
-    //     };
-    final List<Expression> initExpressions = new ArrayList<>();
-    final BlockBuilder initBlock = new BlockBuilder();
-
-    final List<Type> aggStateTypes = new ArrayList<>();
-    for (final AggImpState agg : aggs) {
-      agg.context = new AggContextImpl(agg, typeFactory);
-      final List<Type> state = agg.implementor.getStateType(agg.context);
-
-      if (state.isEmpty()) {
-        agg.state = ImmutableList.of();
-        continue;
-      }
-
-      aggStateTypes.addAll(state);
-
-      final List<Expression> decls = new ArrayList<>(state.size());
-      for (int i = 0; i < state.size(); i++) {
-        String aggName = "a" + agg.aggIdx;
-        if (CalcitePrepareImpl.DEBUG) {
-          aggName = Util.toJavaId(agg.call.getAggregation().getName(), 0)
-              .substring("ID$0$".length()) + aggName;
-        }
-        Type type = state.get(i);
-        ParameterExpression pe =
-            Expressions.parameter(type,
-                initBlock.newName(aggName + "s" + i));
-        initBlock.add(Expressions.declare(0, pe, null));
-        decls.add(pe);
-      }
-      agg.state = decls;
-      initExpressions.addAll(decls);
-      agg.implementor.implementReset(agg.context,
-          new AggResultContextImpl(initBlock, agg.call, decls, null, null));
-    }
-
-    final PhysType accPhysType =
-        PhysTypeImpl.of(typeFactory,
-            typeFactory.createSyntheticType(aggStateTypes));
-
-
-    if (accPhysType.getJavaRowType() instanceof JavaTypeFactoryImpl.SyntheticRecordType) {
-      // We have to initialize the SyntheticRecordType instance this way, to avoid using
-      // class constructor with too many parameters.
-      JavaTypeFactoryImpl.SyntheticRecordType synType =
-          (JavaTypeFactoryImpl.SyntheticRecordType)
-          accPhysType.getJavaRowType();
-      final ParameterExpression record0_ =
-          Expressions.parameter(accPhysType.getJavaRowType(), "record0");
-      initBlock.add(Expressions.declare(0, record0_, null));
-      initBlock.add(
-          Expressions.statement(
-              Expressions.assign(record0_,
-                  Expressions.new_(accPhysType.getJavaRowType()))));
-      List<Types.RecordField> fieldList = synType.getRecordFields();
-      for (int i = 0; i < initExpressions.size(); i++) {
-        Expression right = initExpressions.get(i);
-        initBlock.add(
-            Expressions.statement(
-                Expressions.assign(
-                    Expressions.field(record0_, fieldList.get(i)),
-                    right)));
-      }
-      initBlock.add(record0_);
-    } else {
-      initBlock.add(accPhysType.record(initExpressions));
+    if (getGroupType() == Group.SIMPLE
+        && groupCount > 0
+        && !(aggCalls.isEmpty()
+            && groupSet.equals(
+                ImmutableBitSet.range(child.getRowType().getFieldCount())))
+        && keyPhysType.comparer() == null
+        && canHashAggregate(typeFactory, inputPhysType, aggs)) {
+      final long memoryBudget = EnumUtils.canSpill(result.format)
+          ? EnumUtils.memoryBudget(this)
+          : 0L;
+      builder.add(
+          Expressions.return_(null,
+              Expressions.call(BuiltInMethod.HASH_AGGREGATE.method,
+                  childExp,
+                  implementHashAggregator(typeFactory, inputPhysType,
+                      physType, aggs, memoryBudget))));
+      return implementor.result(physType, builder.toBlock());
     }
 
-    final Expression accumulatorInitializer =
-        builder.append(
-            "accumulatorInitializer",
-            Expressions.lambda(
-                Function0.class,
-                initBlock.toBlock()));
-
-    // Function2<Object[], Employee, Object[]> accumulatorAdder =
-    //     new Function2<Object[], Employee, Object[]>() {
-    //         public Object[] apply(Object[] acc, Employee in) {
-    //              acc[0] = ((Integer) acc[0]) + 1;
-    //              acc[1] = ((Integer) acc[1]) + in.salary;
-    //             return acc;
-    //         }
-    //     };
-    final BlockBuilder builder2 = new BlockBuilder();
-    final ParameterExpression inParameter =
-        Expressions.parameter(inputPhysType.getJavaRowType(), "in");
-    final ParameterExpression acc_ =
-        Expressions.parameter(accPhysType.getJavaRowType(), "acc");
-    for (int i = 0, stateOffset = 0; i < aggs.size(); i++) {
-      final AggImpState agg = aggs.get(i);
-
-      final int stateSize = agg.state.size();
-      final List<Expression> accumulator = new ArrayList<>(stateSize);
-      for (int j = 0; j < stateSize; j++) {
-        accumulator.add(accPhysType.fieldReference(acc_, j + stateOffset));
-      }
-      agg.state = accumulator;
-
-      stateOffset += stateSize;
+    final Accumulators accumulators =
+        implementAccumulators(typeFactory, builder, inputPhysType,
+            keyPhysType, physType, aggs);
+    final Expression accumulatorInitializer = accumulators.initializer;
+    final Expression accumulatorAdder = accumulators.adder;
+    final BlockBuilder resultBlock = accumulators.resultBlock;
+    final ParameterExpression key_ = accumulators.key;
+    final ParameterExpression acc_ = accumulators.acc;
 
-      AggAddContext addContext =
-          new AggAddContextImpl(builder2, accumulator) {
-            public List<RexNode> rexArguments() {
-              List<RelDataTypeField> inputTypes =
-                  inputPhysType.getRowType().getFieldList();
-              List<RexNode> args = new ArrayList<>();
-              for (int index : agg.call.getArgList()) {
-                args.add(RexInputRef.of(index, inputTypes));
-              }
-              return args;
-            }
-
-            public RexNode rexFilterArgument() {
-              return agg.call.filterArg < 0
-                  ? null
-                  : RexInputRef.of(agg.call.filterArg,
-                      inputPhysType.getRowType());
-            }
-
-            public RexToLixTranslator rowTranslator() {
-              return RexToLixTranslator.forAggregation(typeFactory,
-                  currentBlock(),
-                  new RexToLixTranslator.InputGetterImpl(
-                      Collections.singletonList(
-                          Pair.of((Expression) inParameter, inputPhysType))))
-                  .setNullable(currentNullables());
-            }
-          };
-
-      agg.implementor.implementAdd(agg.context, addContext);
-    }
-    builder2.add(acc_);
-    final Expression accumulatorAdder =
-        builder.append(
-            "accumulatorAdder",
-            Expressions.lambda(
-                Function2.class,
-                builder2.toBlock(),
-                acc_,
-                inParameter));
-
-    // Function2<Integer, Object[], Object[]> resultSelector =
-    //     new Function2<Integer, Object[], Object[]>() {
-    //         public Object[] apply(Integer key, Object[] acc) {
-    //             return new Object[] { key, acc[0], acc[1] };
-    //         }
-    //     };
-    final BlockBuilder resultBlock = new BlockBuilder();
-    final List<Expression> results = Expressions.list();
-    final ParameterExpression key_;
-    if (groupCount == 0) {
-      key_ = null;
-    } else {
-      final Type keyType = keyPhysType.getJavaRowType();
-      key_ = Expressions.parameter(keyType, "key");
-      for (int j = 0; j < groupCount; j++) {
-        final Expression ref = keyPhysType.fieldReference(key_, j);
-        if (getGroupType() == Group.SIMPLE) {
-          results.add(ref);
-        } else {
-          results.add(
-              Expressions.condition(
-                  keyPhysType.fieldReference(key_, groupCount + j),
-                  Expressions.constant(null),
-                  Expressions.box(ref)));
-        }
-      }
-    }
-    for (final AggImpState agg : aggs) {
-      results.add(
-          agg.implementor.implementResult(agg.context,
-              new AggResultContextImpl(resultBlock, agg.call, agg.state, key_,
-                  keyPhysType)));
-    }
-    resultBlock.add(physType.record(results));
     if (getGroupType() != Group.SIMPLE) {
       final List<Expression> list = Lists.newArrayList();
       for (ImmutableBitSet set : groupSets) {
@@ -413,6 +249,21 @@ public RexToLixTranslator rowTranslator() {
                       Expressions.call(accumulatorInitializer, "apply"),
                       accumulatorAdder,
                       resultSelector))));
+    } else if (aggCalls.isEmpty()
+        && groupSet.equals(
+            ImmutableBitSet.range(child.getRowType().getFieldCount()))
+        && EnumUtils.isLongKeyed(physType, physType)) {
+      // A single field of a primitive type can be held in a set of long
+      // values, without boxing
+      builder.add(
+          Expressions.return_(
+              null,
+              Expressions.call(
+                  BuiltInMethod.DISTINCT_LONG.method,
+                  inputPhysType.convertTo(childExp, physType),
+                  physType.generateLongKey(0),
+                  Util.first(physType.generateNullTest(0),
+                      Expressions.constant(null)))));
     } else if (aggCalls.isEmpty()
         && groupSet.equals(
             ImmutableBitSet.range(child.getRowType().getFieldCount()))) {
@@ -449,54 +300,288 @@ public RexToLixTranslator rowTranslator() {
     return implementor.result(physType, builder.toBlock());
   }
 
-  /** An implementation of {@link AggContext}. */
-  private class AggContextImpl implements AggContext {
-    private final AggImpState agg;
-    private final JavaTypeFactory typeFactory;
-
-    AggContextImpl(AggImpState agg, JavaTypeFactory typeFactory) {
-      this.agg = agg;
-      this.typeFactory = typeFactory;
+  /** Returns the format of the key of each group. If there is one grouping
+   * set and its columns can be held in a generated class, uses
+   * {@link JavaRowFormat#KEY}, which caches its hash code and does not box
+   * primitive values. */
+  private JavaRowFormat keyFormat() {
+    if (getGroupType() != Group.SIMPLE || getGroupCount() < 2) {
+      return JavaRowFormat.LIST;
     }
-
-    public SqlAggFunction aggregation() {
-      return agg.call.getAggregation();
+    for (int key : groupSet) {
+      if (!EnumUtils.isKeyFieldType(
+          getInput().getRowType().getFieldList().get(key).getType())) {
+        return JavaRowFormat.LIST;
+      }
     }
+    return JavaRowFormat.KEY;
+  }
 
-    public RelDataType returnRelType() {
-      return agg.call.type;
+  /** Returns whether the key columns and the state of every aggregate
+   * function can be stored in arrays, as required by
+   * {@link #implementHashAggregator}. */
+  private boolean canHashAggregate(JavaTypeFactory typeFactory,
+      PhysType inputPhysType, List<AggImpState> aggs) {
+    for (AggImpState agg : aggs) {
+      if (!HASH_AGGREGATE_KINDS.contains(agg.call.getAggregation().getKind())
+          || agg.call.isDistinct()) {
+        return false;
+      }
+      agg.context = new AggContextImpl(agg, typeFactory);
+      for (Type type : agg.implementor.getStateType(agg.context)) {
+        if (!(type instanceof Class)) {
+          return false;
+        }
+      }
     }
-
-    public Type returnType() {
-      return EnumUtils.javaClass(typeFactory, returnRelType());
+    for (int key : groupSet) {
+      if (inputPhysType.fieldClass(key) == null) {
+        return false;
+      }
     }
+    return true;
+  }
 
-    public List<? extends RelDataType> parameterRelTypes() {
-      return EnumUtils.fieldRowTypes(getInput().getRowType(), null,
-          agg.call.getArgList());
+  /** Generates a function that creates a
+   * {@link org.apache.calcite.linq4j.HashAggregator}. Its key columns and the
+   * state of its aggregate functions are stored in arrays, one element per
+   * group.
+   *
+   * <p>For example, for {@code SELECT deptno, SUM(sal) FROM emp GROUP BY
+   * deptno}, where {@code deptno} is a {@code NOT NULL} integer, generates
+   *
+   * <blockquote><pre>
+   * new Function0() {
+   *   public Object apply() {
+   *     return new HashAggregator(true, 0L, 12L) {
+   *       int[] k0 = new int[0];
+   *       long[] a0s0 = new long[0];
+   *
+   *       protected long longKey(Object element) {
+   *         return ((Employee) element).deptno;
+   *       }
+   *       protected void grow(int groupCount, int capacity) { ... }
+   *       protected void init(int group, Object element) {
+   *         k0[group] = ((Employee) element).deptno;
+   *         a0s0[group] = 0L;
+   *       }
+   *       protected void add(int group, Object element) {
+   *         a0s0[group] = a0s0[group] + ((Employee) element).sal;
+   *       }
+   *       protected Object result(int group) {
+   *         return new Object[] {k0[group], a0s0[group]};
+   *       }
+   *     };
+   *   }
+   * }</pre></blockquote>
+   *
+   * <p>If every key column is a primitive and they fit into 64 bits, keys are
+   * packed into a {@code long}; otherwise the table holds key objects. */
+  private Expression implementHashAggregator(JavaTypeFactory typeFactory,
+      PhysType inputPhysType, PhysType physType, List<AggImpState> aggs,
+      long memoryBudget) {
+    final ParameterExpression group_ =
+        Expressions.parameter(int.class, "group");
+    final ParameterExpression element_ =
+        Expressions.parameter(Object.class, "element");
+    final ParameterExpression in_ =
+        Expressions.parameter(inputPhysType.getJavaRowType(), "in");
+    final Expression inValue_ =
+        RexToLixTranslator.convert(element_, inputPhysType.getJavaRowType());
+    final List<MemberDeclaration> members = new ArrayList<>();
+    final List<ParameterExpression> arrays = new ArrayList<>();
+    long bytesPerGroup = 0;
+
+    // Fields "k0", "k1", ... hold key columns; "a0s0", "a0s1", "a1s0", ...
+    // hold the state of aggregate functions.
+    final List<Integer> keys = groupSet.asList();
+    final List<Expression> keyElements = new ArrayList<>();
+    int keyBits = 0;
+    for (Ord<Integer> key : Ord.zip(keys)) {
+      final Class<?> clazz = inputPhysType.fieldClass(key.e);
+      final ParameterExpression array =
+          arrayField(members, arrays, "k" + key.i, clazz);
+      keyElements.add(Expressions.arrayIndex(array, group_));
+      bytesPerGroup += bytesPerElement(clazz);
+      final int bits = packedBits(clazz);
+      keyBits = bits < 0 || keyBits < 0 ? -1 : keyBits + bits;
+    }
+    final boolean longKeys = keyBits >= 0 && keyBits <= Long.SIZE;
+    final BlockBuilder initBlock = new BlockBuilder();
+    initBlock.add(Expressions.declare(Modifier.FINAL, in_, inValue_));
+    for (Ord<Integer> key : Ord.zip(keys)) {
+      initBlock.add(
+          Expressions.statement(
+              Expressions.assign(keyElements.get(key.i),
+                  keyColumn(inputPhysType, in_, key.e))));
+    }
+    final BlockBuilder addBlock = new BlockBuilder();
+    addBlock.add(Expressions.declare(Modifier.FINAL, in_, inValue_));
+    for (AggImpState agg : aggs) {
+      final List<Type> stateTypes =
+          agg.implementor.getStateType(agg.context);
+      final List<Expression> state = new ArrayList<>();
+      for (Ord<Type> stateType : Ord.zip(stateTypes)) {
+        final ParameterExpression array =
+            arrayField(members, arrays, "a" + agg.aggIdx + "s" + stateType.i,
+                (Class) stateType.e);
+        state.add(Expressions.arrayIndex(array, group_));
+        bytesPerGroup += bytesPerElement((Class) stateType.e);
+      }
+      agg.state = state;
+      agg.implementor.implementReset(agg.context,
+          new AggResultContextImpl(initBlock, agg.call, state, null, null));
+      agg.implementor.implementAdd(agg.context,
+          addContext(typeFactory, addBlock, state, agg, in_, inputPhysType));
+    }
+    if (!longKeys) {
+      bytesPerGroup += 32;
     }
 
-    public List<? extends Type> parameterTypes() {
-      return EnumUtils.fieldTypes(
-          typeFactory,
-          parameterRelTypes());
+    final BlockBuilder keyBlock = new BlockBuilder();
+    keyBlock.add(Expressions.declare(Modifier.FINAL, in_, inValue_));
+    if (longKeys) {
+      // Pack the key columns into a long. If there is one column, there is
+      // no need to mask it.
+      Expression packed = null;
+      for (int key : keys) {
+        final Class<?> clazz = inputPhysType.fieldClass(key);
+        final int bits = packedBits(clazz);
+        final Expression column = keyColumn(inputPhysType, in_, key);
+        Expression e = clazz == boolean.class
+            ? Expressions.condition(column, Expressions.constant(1L),
+                Expressions.constant(0L))
+            : Expressions.convert_(column, long.class);
+        if (keys.size() > 1 && bits > 1 && bits < Long.SIZE) {
+          e = Expressions.and(e, Expressions.constant((1L << bits) - 1L));
+        }
+        packed = packed == null
+            ? e
+            : Expressions.or(
+                Expressions.leftShift(packed, Expressions.constant(bits)), e);
+      }
+      keyBlock.add(Expressions.return_(null, packed));
+    } else {
+      final PhysType keyPhysType =
+          inputPhysType.project(keys, JavaRowFormat.LIST);
+      final List<Expression> keyColumns = new ArrayList<>();
+      for (int key : keys) {
+        keyColumns.add(inputPhysType.fieldReference(in_, key));
+      }
+      keyBlock.add(
+          Expressions.return_(null, keyPhysType.record(keyColumns)));
     }
 
-    public List<ImmutableBitSet> groupSets() {
-      return groupSets;
+    final ParameterExpression groupCount_ =
+        Expressions.parameter(int.class, "groupCount");
+    final ParameterExpression capacity_ =
+        Expressions.parameter(int.class, "capacity");
+    // Do not optimize; each "new int[capacity]" must remain distinct.
+    final BlockBuilder growBlock = new BlockBuilder(false);
+    for (ParameterExpression array : arrays) {
+      final Expression newArray =
+          growBlock.append(array.name + "_",
+              Expressions.newArrayBounds(
+                  Types.getComponentType(array.getType()), 1, capacity_));
+      growBlock.add(
+          Expressions.statement(
+              Expressions.call(System.class, "arraycopy", array,
+                  Expressions.constant(0), newArray, Expressions.constant(0),
+                  groupCount_)));
+      growBlock.add(
+          Expressions.statement(Expressions.assign(array, newArray)));
     }
 
-    public List<Integer> keyOrdinals() {
-      return groupSet.asList();
+    final BlockBuilder resultBlock = new BlockBuilder();
+    final List<Expression> results = new ArrayList<>(keyElements);
+    for (AggImpState agg : aggs) {
+      results.add(
+          agg.implementor.implementResult(agg.context,
+              new AggResultContextImpl(resultBlock, agg.call, agg.state, null,
+                  null)));
     }
+    resultBlock.add(Expressions.return_(null, physType.record(results)));
+
+    members.add(
+        Expressions.methodDecl(Modifier.PROTECTED,
+            longKeys ? long.class : Object.class,
+            longKeys ? "longKey" : "key",
+            ImmutableList.of(element_), keyBlock.toBlock()));
+    members.add(
+        Expressions.methodDecl(Modifier.PROTECTED, void.class, "grow",
+            ImmutableList.of(groupCount_, capacity_), growBlock.toBlock()));
+    members.add(
+        Expressions.methodDecl(Modifier.PROTECTED, void.class, "init",
+            ImmutableList.of(group_, element_), initBlock.toBlock()));
+    members.add(
+        Expressions.methodDecl(Modifier.PROTECTED, void.class, "add",
+            ImmutableList.of(group_, element_), addBlock.toBlock()));
+    members.add(
+        Expressions.methodDecl(Modifier.PROTECTED, Object.class, "result",
+            ImmutableList.of(group_), resultBlock.toBlock()));
+    return Expressions.lambda(Function0.class,
+        Blocks.toFunctionBlock(
+            Expressions.new_(HashAggregator.class,
+                ImmutableList.<Expression>of(
+                    Expressions.constant(longKeys),
+                    Expressions.constant(memoryBudget),
+                    Expressions.constant(bytesPerGroup)),
+                members)));
+  }
+
+  /** Declares a field that is an array with one element per group. */
+  private static ParameterExpression arrayField(
+      List<MemberDeclaration> members, List<ParameterExpression> arrays,
+      String name, Class<?> elementClass) {
+    final Expression initializer =
+        Expressions.newArrayBounds(elementClass, 1, Expressions.constant(0));
+    final ParameterExpression array =
+        Expressions.parameter(initializer.getType(), name);
+    members.add(Expressions.fieldDecl(0, array, initializer));
+    arrays.add(array);
+    return array;
+  }
+
+  /** Generates a reference to a column of the input row, converted to the
+   * type of the array in which it is stored. */
+  private static Expression keyColumn(PhysType inputPhysType,
+      ParameterExpression in_, int key) {
+    final Class<?> clazz = inputPhysType.fieldClass(key);
+    return RexToLixTranslator.convert(
+        inputPhysType.fieldReference(in_, key, clazz), clazz);
+  }
 
-    public List<? extends RelDataType> keyRelTypes() {
-      return EnumUtils.fieldRowTypes(getInput().getRowType(), null,
-          groupSet.asList());
+  /** Returns the number of bits that a key column of a given class occupies
+   * when packed into a {@code long}, or -1 if it cannot be packed. */
+  private static int packedBits(Class<?> clazz) {
+    final Primitive primitive = Primitive.of(clazz);
+    if (primitive == null) {
+      return -1;
     }
+    switch (primitive) {
+    case BOOLEAN:
+      return 1;
+    case BYTE:
+    case CHAR:
+    case SHORT:
+    case INT:
+    case LONG:
+      return primitive.size;
+    default:
+      return -1;
+    }
+  }
 
-    public List<? extends Type> keyTypes() {
-      return EnumUtils.fieldTypes(typeFactory, keyRelTypes());
+  /** Estimates the number of bytes used by an array element of a given
+   * class, including the object that it references. */
+  private static long bytesPerElement(Class<?> clazz) {
+    final Primitive primitive = Primitive.of(clazz);
+    if (primitive == null) {
+      return 32;
+    } else if (primitive == Primitive.BOOLEAN) {
+      return 1;
+    } else {
+      return primitive.size / 8;
     }
   }
 }
@@ -17,15 +17,34 @@
 package org.apache.calcite.adapter.enumerable;
 
 import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.RelOptRuleCall;
 import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.plan.volcano.RelSubset;
 import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelCollationTraitDef;
+import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.core.Aggregate;
 import org.apache.calcite.rel.logical.LogicalAggregate;
+import org.apache.calcite.rel.metadata.RelMdCollation;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Rule to convert a {@link org.apache.calcite.rel.logical.LogicalAggregate}
  * to an {@link EnumerableAggregate}.
+ *
+ * <p>If the input is sorted on the group keys, the rule also generates an
+ * {@link EnumerableSortedAggregate}, and the planner chooses between the two
+ * on cost.
  */
 class EnumerableAggregateRule extends ConverterRule {
   EnumerableAggregateRule() {
@@ -33,6 +52,72 @@ class EnumerableAggregateRule extends ConverterRule {
         EnumerableConvention.INSTANCE, "EnumerableAggregateRule");
   }
 
+  @Override public void onMatch(RelOptRuleCall call) {
+    super.onMatch(call);
+    final LogicalAggregate agg = call.rel(0);
+    if (agg.getGroupType() != Aggregate.Group.SIMPLE
+        || agg.getTraitSet().getTrait(RelCollationTraitDef.INSTANCE) == null) {
+      // Without the collation trait, the planner cannot guarantee that the
+      // input is sorted
+      return;
+    }
+    final List<RelCollation> collations =
+        sortedCollations(call.getMetadataQuery(), agg.getInput(),
+            agg.getGroupSet());
+    if (collations.isEmpty()) {
+      return;
+    }
+
+    // The output is sorted on the keys in the same order as the input. Map
+    // the output collation back to the input fields, and ask for an input
+    // with that collation.
+    final RelCollation collation = collations.get(0);
+    final List<Integer> keys = agg.getGroupSet().asList();
+    final List<RelFieldCollation> inputFieldCollations = new ArrayList<>();
+    for (RelFieldCollation fieldCollation : collation.getFieldCollations()) {
+      inputFieldCollations.add(
+          fieldCollation.copy(keys.get(fieldCollation.getFieldIndex())));
+    }
+    final RelNode input =
+        convert(agg.getInput(),
+            agg.getInput().getTraitSet()
+                .replace(EnumerableConvention.INSTANCE)
+                .replace(RelCollations.of(inputFieldCollations)));
+    final RelTraitSet traitSet =
+        agg.getTraitSet().replace(EnumerableConvention.INSTANCE)
+            .replace(collation);
+    try {
+      call.transformTo(
+          new EnumerableSortedAggregate(agg.getCluster(), traitSet, input,
+              agg.indicator, agg.getGroupSet(), agg.getGroupSets(),
+              agg.getAggCallList()));
+    } catch (InvalidRelException e) {
+      EnumerableRules.LOGGER.debug(e.toString());
+    }
+  }
+
+  /** Returns the collations that a sorted aggregate over {@code input}
+   * would have, or an empty list if the input is not sorted on the group
+   * keys.
+   *
+   * <p>In a Volcano planner, the input is a {@link RelSubset} whose traits
+   * are what the aggregate asked for, usually no collation, so we look at
+   * the collations of the expressions in the subset. */
+  private static List<RelCollation> sortedCollations(RelMetadataQuery mq,
+      RelNode input, ImmutableBitSet groupSet) {
+    final List<RelNode> rels = input instanceof RelSubset
+        ? ((RelSubset) input).getRelList()
+        : ImmutableList.of(input);
+    for (RelNode rel : rels) {
+      final List<RelCollation> collations =
+          RelMdCollation.sortedAggregate(mq, rel, groupSet);
+      if (!collations.isEmpty()) {
+        return collations;
+      }
+    }
+    return ImmutableList.of();
+  }
+
   public RelNode convert(RelNode rel) {
     final LogicalAggregate agg = (LogicalAggregate) rel;
     final RelTraitSet traitSet =
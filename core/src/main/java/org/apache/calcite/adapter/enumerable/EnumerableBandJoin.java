@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.CorrelationId;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexProgramBuilder;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.type.SqlTypeUtil;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.Pair;
+import org.apache.calcite.util.Util;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.Set;
+
+/** Implementation of {@link org.apache.calcite.rel.core.Join} in
+ * {@link EnumerableConvention enumerable calling convention} whose condition
+ * has no equality keys but bounds an expression on one input by expressions
+ * on the other; for example, joins events to the time windows or address
+ * ranges that contain them.
+ *
+ * <p>At least one conjunct of the condition must compare an expression on
+ * the right input with an expression on the left input using {@code <},
+ * {@code <=}, {@code >} or {@code >=} (as {@code BETWEEN} does). The join
+ * sorts the right input into an interval index on those expressions, and
+ * for each row of the left input, evaluates the whole condition only
+ * against the rows of the right input whose range overlaps; see
+ * {@link org.apache.calcite.linq4j.EnumerableDefaults#bandJoin}. */
+public class EnumerableBandJoin extends Join implements EnumerableRel {
+  /** Creates an EnumerableBandJoin. */
+  protected EnumerableBandJoin(RelOptCluster cluster, RelTraitSet traits,
+      RelNode left, RelNode right, RexNode condition,
+      Set<CorrelationId> variablesSet, JoinRelType joinType)
+      throws InvalidRelException {
+    super(cluster, traits, left, right, condition, variablesSet, joinType);
+    if (Band.of(left, right, condition, cluster.getRexBuilder()) == null) {
+      throw new InvalidRelException(
+          "band join requires a range condition between its inputs");
+    }
+  }
+
+  @Override public EnumerableBandJoin copy(RelTraitSet traitSet,
+      RexNode condition, RelNode left, RelNode right, JoinRelType joinType,
+      boolean semiJoinDone) {
+    try {
+      return new EnumerableBandJoin(getCluster(), traitSet, left, right,
+          condition, variablesSet, joinType);
+    } catch (InvalidRelException e) {
+      // Semantic error not possible. Must be a bug. Convert to
+      // internal error.
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    double rowCount = mq.getRowCount(this);
+
+    // Sorting the right input costs R log R, and each probe by a row of the
+    // left input costs log R.
+    final double rightRowCount = right.estimateRowCount(mq);
+    final double leftRowCount = left.estimateRowCount(mq);
+    if (Double.isInfinite(leftRowCount) || Double.isInfinite(rightRowCount)) {
+      rowCount = Double.POSITIVE_INFINITY;
+    } else {
+      rowCount += Util.nLogN(rightRowCount)
+          + leftRowCount * Math.log(Math.max(rightRowCount, 1d));
+    }
+    return planner.getCostFactory().makeCost(rowCount, 0, 0);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    final BlockBuilder builder = new BlockBuilder();
+    final Result leftResult =
+        implementor.visitChild(this, 0, (EnumerableRel) left, pref);
+    final Expression leftExpression =
+        builder.append("left", leftResult.block);
+    final Result rightResult =
+        implementor.visitChild(this, 1, (EnumerableRel) right, pref);
+    final Expression rightExpression =
+        builder.append("right", rightResult.block);
+    final PhysType physType =
+        PhysTypeImpl.of(implementor.getTypeFactory(),
+            getRowType(),
+            pref.preferArray());
+    final RexBuilder rexBuilder = getCluster().getRexBuilder();
+    final Band band = Band.of(left, right, condition, rexBuilder);
+    assert band != null;
+    return implementor.result(
+        physType,
+        builder.append(
+            Expressions.call(BuiltInMethod.BAND_JOIN.method,
+                leftExpression,
+                rightExpression,
+                keySelector(implementor, rexBuilder, left,
+                    leftResult.physType, band.outerLow),
+                keySelector(implementor, rexBuilder, left,
+                    leftResult.physType, band.outerHigh),
+                keySelector(implementor, rexBuilder, right,
+                    rightResult.physType, band.innerLow),
+                keySelector(implementor, rexBuilder, right,
+                    rightResult.physType, band.innerHigh),
+                EnumUtils.joinPredicate(implementor,
+                    rexBuilder,
+                    left,
+                    right,
+                    leftResult.physType,
+                    rightResult.physType,
+                    condition),
+                EnumUtils.joinSelector(joinType,
+                    physType,
+                    ImmutableList.of(leftResult.physType,
+                        rightResult.physType)),
+                Expressions.constant(joinType.generatesNullsOnLeft()),
+                Expressions.constant(joinType.generatesNullsOnRight())))
+            .toBlock());
+  }
+
+  /** Generates a function that evaluates {@code key} on a row of
+   * {@code input}, or returns a null constant if {@code key} is null. */
+  private static Expression keySelector(EnumerableRelImplementor implementor,
+      RexBuilder rexBuilder, RelNode input, PhysType physType, RexNode key) {
+    if (key == null) {
+      return Expressions.constant(null, Function1.class);
+    }
+    final BlockBuilder builder = new BlockBuilder();
+    final ParameterExpression row_ =
+        Expressions.parameter(physType.getJavaRowType(), "row");
+    final RexProgramBuilder program =
+        new RexProgramBuilder(input.getRowType(), rexBuilder);
+    program.addProject(key, null);
+    final List<Expression> expressions =
+        RexToLixTranslator.translateProjects(program.getProgram(),
+            implementor.getTypeFactory(),
+            builder,
+            null,
+            DataContext.ROOT,
+            new RexToLixTranslator.InputGetterImpl(
+                ImmutableList.of(Pair.of((Expression) row_, physType))),
+            implementor.allCorrelateVariables);
+    Expression expression = expressions.get(0);
+    if (Primitive.is(expression.getType())) {
+      expression = Expressions.box(expression);
+    }
+    builder.add(Expressions.return_(null, expression));
+    return Expressions.lambda(Function1.class, builder.toBlock(), row_);
+  }
+
+  /** The range conditions of a band join.
+   *
+   * <p>A row of the right input can match a row of the left input only if
+   * {@code innerLow <= outerHigh} and {@code innerHigh >= outerLow}.
+   * {@code innerLow} and {@code innerHigh} are expressions on the right
+   * input, {@code outerLow} and {@code outerHigh} on the left input; one of
+   * each pair may be null, meaning unbounded. */
+  static class Band {
+    final RexNode outerLow;
+    final RexNode outerHigh;
+    final RexNode innerLow;
+    final RexNode innerHigh;
+
+    private Band(RexNode outerLow, RexNode outerHigh, RexNode innerLow,
+        RexNode innerHigh) {
+      this.outerLow = outerLow;
+      this.outerHigh = outerHigh;
+      this.innerLow = innerLow;
+      this.innerHigh = innerHigh;
+    }
+
+    /** Finds the range conditions in a join condition, or returns null if
+     * there are none. Uses at most one condition in each direction; the
+     * others, like conditions of any other kind, are evaluated only for rows
+     * whose ranges overlap. */
+    static Band of(RelNode left, RelNode right, RexNode condition,
+        RexBuilder rexBuilder) {
+      final RelDataTypeFactory typeFactory = rexBuilder.getTypeFactory();
+      final int leftCount = left.getRowType().getFieldCount();
+      final ImmutableBitSet leftBits = ImmutableBitSet.range(leftCount);
+      final ImmutableBitSet rightBits = ImmutableBitSet.range(leftCount,
+          leftCount + right.getRowType().getFieldCount());
+      RexNode outerLow = null;
+      RexNode outerHigh = null;
+      RexNode innerLow = null;
+      RexNode innerHigh = null;
+      for (RexNode e : RelOptUtil.conjunctions(condition)) {
+        final boolean less;
+        switch (e.getKind()) {
+        case LESS_THAN:
+        case LESS_THAN_OR_EQUAL:
+          less = true;
+          break;
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQUAL:
+          less = false;
+          break;
+        default:
+          continue;
+        }
+        final List<RexNode> operands = ((RexCall) e).getOperands();
+        final ImmutableBitSet bits0 =
+            RelOptUtil.InputFinder.bits(operands.get(0));
+        final ImmutableBitSet bits1 =
+            RelOptUtil.InputFinder.bits(operands.get(1));
+        if (bits0.isEmpty() || bits1.isEmpty()) {
+          continue;
+        }
+        // Rewrite the condition as "innerKey op outerKey"
+        final RexNode innerKey;
+        final RexNode outerKey;
+        final boolean innerLess;
+        if (rightBits.contains(bits0) && leftBits.contains(bits1)) {
+          innerKey = operands.get(0);
+          outerKey = operands.get(1);
+          innerLess = less;
+        } else if (leftBits.contains(bits0) && rightBits.contains(bits1)) {
+          innerKey = operands.get(1);
+          outerKey = operands.get(0);
+          innerLess = !less;
+        } else {
+          continue;
+        }
+        if (innerLess ? innerLow != null : innerHigh != null) {
+          continue;
+        }
+        final RelDataType type =
+            typeFactory.leastRestrictive(
+                ImmutableList.of(innerKey.getType(), outerKey.getType()));
+        if (type == null
+            || !SqlTypeUtil.isNumeric(type)
+            && !SqlTypeUtil.isDatetime(type)
+            && !SqlTypeUtil.isInterval(type)) {
+          // Keys must be compared as values of the same Java class, in the
+          // same order as SQL compares them
+          continue;
+        }
+        final RexNode inner =
+            cast(rexBuilder, type, RexUtil.shift(innerKey, -leftCount));
+        final RexNode outer = cast(rexBuilder, type, outerKey);
+        if (innerLess) {
+          innerLow = inner;
+          outerHigh = outer;
+        } else {
+          innerHigh = inner;
+          outerLow = outer;
+        }
+      }
+      if (innerLow == null && innerHigh == null) {
+        return null;
+      }
+      return new Band(outerLow, outerHigh, innerLow, innerHigh);
+    }
+
+    private static RexNode cast(RexBuilder rexBuilder, RelDataType type,
+        RexNode e) {
+      final RelDataType type2 =
+          rexBuilder.getTypeFactory().createTypeWithNullability(type,
+              e.getType().isNullable());
+      return rexBuilder.ensureType(type2, e, true);
+    }
+  }
+}
+
+// End EnumerableBandJoin.java
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.logical.LogicalJoin;
+
+/** Planner rule that converts a
+ * {@link org.apache.calcite.rel.logical.LogicalJoin} relational expression
+ * whose condition has no equality keys but has range conditions between its
+ * inputs to an {@link EnumerableBandJoin}.
+ *
+ * @see org.apache.calcite.adapter.enumerable.EnumerableJoinRule
+ */
+class EnumerableBandJoinRule extends ConverterRule {
+  EnumerableBandJoinRule() {
+    super(LogicalJoin.class,
+        Convention.NONE,
+        EnumerableConvention.INSTANCE,
+        "EnumerableBandJoinRule");
+  }
+
+  @Override public RelNode convert(RelNode rel) {
+    LogicalJoin join = (LogicalJoin) rel;
+    final JoinInfo info =
+        JoinInfo.of(join.getLeft(), join.getRight(), join.getCondition());
+    if (!info.leftKeys.isEmpty()) {
+      // EnumerableJoin is better if there are equality keys
+      return null;
+    }
+    final RelTraitSet traits =
+        join.getTraitSet().replace(EnumerableConvention.INSTANCE);
+    final RelNode left = convert(join.getLeft(),
+        join.getLeft().getTraitSet().replace(EnumerableConvention.INSTANCE));
+    final RelNode right = convert(join.getRight(),
+        join.getRight().getTraitSet().replace(EnumerableConvention.INSTANCE));
+    try {
+      return new EnumerableBandJoin(join.getCluster(), traits, left, right,
+          join.getCondition(), join.getVariablesSet(), join.getJoinType());
+    } catch (InvalidRelException e) {
+      EnumerableRules.LOGGER.debug(e.toString());
+      return null;
+    }
+  }
+}
+
+// End EnumerableBandJoinRule.java
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.adapter.enumerable;
 
+import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
@@ -27,6 +28,9 @@
 import org.apache.calcite.rel.core.Correlate;
 import org.apache.calcite.rel.core.CorrelationId;
 import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexShuttle;
 import org.apache.calcite.sql.SemiJoinType;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.ImmutableBitSet;
@@ -35,9 +39,18 @@
 
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.util.List;
 
 /** Implementation of {@link org.apache.calcite.rel.core.Correlate} in
- * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}. */
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}.
+ *
+ * <p>The right input is evaluated for each row of the left input. But its
+ * rows depend only on the required columns of the left input, so if the
+ * right input is deterministic, the join caches its rows for recently seen
+ * values of those columns; see
+ * {@link org.apache.calcite.config.CalciteConnectionProperty#CORRELATE_CACHE_SIZE}.
+ * If the right input is {@link Batchable}, it is evaluated for many rows of
+ * the left input at a time. */
 public class EnumerableCorrelate extends Correlate
     implements EnumerableRel {
 
@@ -65,6 +78,31 @@ public Result implement(EnumerableRelImplementor implementor,
         builder.append(
             "left", leftResult.block);
 
+    final int cacheSize = EnumUtils.correlateCacheSize(this);
+    final PhysType physType =
+        PhysTypeImpl.of(
+            implementor.getTypeFactory(),
+            getRowType(),
+            pref.prefer(JavaRowFormat.CUSTOM));
+    if (right instanceof Batchable && cacheSize > 0) {
+      final Batchable batchable = (Batchable) right;
+      final ParameterExpression rows_ =
+          Expressions.parameter(Modifier.FINAL, List.class, "rows");
+      final Result rightResult =
+          batchable.implementBatch(implementor, pref, correlationId,
+              leftResult.physType, rows_);
+      builder.append(
+          Expressions.call(BuiltInMethod.CORRELATE_BATCH_JOIN.method,
+              Expressions.constant(joinType.toLinq4j()),
+              leftExpression,
+              Expressions.lambda(Function1.class, rightResult.block, rows_),
+              selector(physType, leftResult, rightResult),
+              keySelector(leftResult.physType),
+              Expressions.constant(batchable.batchSize()),
+              Expressions.constant(cacheSize)));
+      return implementor.result(physType, builder.toBlock());
+    }
+
     final BlockBuilder corrBlock = new BlockBuilder();
     Type corrVarType = leftResult.physType.getJavaRowType();
     ParameterExpression corrRef; // correlate to be used in inner loop
@@ -92,25 +130,99 @@ public Result implement(EnumerableRelImplementor implementor,
 
     corrBlock.add(rightResult.block);
 
-    final PhysType physType =
-        PhysTypeImpl.of(
-            implementor.getTypeFactory(),
-            getRowType(),
-            pref.prefer(JavaRowFormat.CUSTOM));
+    final Expression selector = selector(physType, leftResult, rightResult);
+
+    if (cacheSize > 0 && isDeterministic(right)) {
+      // The right input depends only on the required columns of the left
+      // input, so cache its rows for each value of those columns.
+      builder.append(
+          Expressions.call(BuiltInMethod.CORRELATE_JOIN_CACHED.method,
+              Expressions.constant(joinType.toLinq4j()),
+              leftExpression,
+              Expressions.lambda(corrBlock.toBlock(), corrArg),
+              selector,
+              keySelector(leftResult.physType),
+              Expressions.constant(cacheSize)));
+    } else {
+      builder.append(
+          Expressions.call(leftExpression,
+              BuiltInMethod.CORRELATE_JOIN.method,
+              Expressions.constant(joinType.toLinq4j()),
+              Expressions.lambda(corrBlock.toBlock(), corrArg),
+              selector));
+    }
 
-    Expression selector =
-        EnumUtils.joinSelector(
-            joinType.returnsJustFirstInput() ? joinType.toJoinType()
-                : JoinRelType.INNER, physType,
-            ImmutableList.of(leftResult.physType, rightResult.physType));
+    return implementor.result(physType, builder.toBlock());
+  }
 
-    builder.append(
-        Expressions.call(leftExpression, BuiltInMethod.CORRELATE_JOIN.method,
-            Expressions.constant(joinType.toLinq4j()),
-        Expressions.lambda(corrBlock.toBlock(), corrArg),
-        selector));
+  private Expression selector(PhysType physType, Result leftResult,
+      Result rightResult) {
+    return EnumUtils.joinSelector(
+        joinType.returnsJustFirstInput() ? joinType.toJoinType()
+            : JoinRelType.INNER, physType,
+        ImmutableList.of(leftResult.physType, rightResult.physType));
+  }
 
-    return implementor.result(physType, builder.toBlock());
+  /** Generates a function that returns the values of the required columns
+   * of a row of the left input. */
+  private Expression keySelector(PhysType leftPhysType) {
+    final ParameterExpression row_ =
+        Expressions.parameter(leftPhysType.getJavaRowType(), "row");
+    return leftPhysType.generateSelector(row_, requiredColumns.asList(),
+        JavaRowFormat.LIST);
+  }
+
+  /** Returns whether a relational expression and its inputs return the same
+   * rows each time they are evaluated with the same values of the
+   * correlation variables; that is, whether none of their expressions calls
+   * a non-deterministic function. */
+  private static boolean isDeterministic(RelNode rel) {
+    final boolean[] deterministic = {true};
+    rel.accept(
+        new RexShuttle() {
+          @Override public RexNode visitCall(RexCall call) {
+            if (!call.getOperator().isDeterministic()) {
+              deterministic[0] = false;
+            }
+            return super.visitCall(call);
+          }
+        });
+    if (!deterministic[0]) {
+      return false;
+    }
+    for (RelNode input : rel.getInputs()) {
+      if (!isDeterministic(input)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Relational expression that can be the right input of an
+   * {@link EnumerableCorrelate} and can evaluate itself for many values of
+   * the correlation variable at a time.
+   *
+   * <p>An adapter whose relational expression would otherwise query its
+   * back end once per row of the left input can implement this interface to
+   * send one query for many rows; for example, a query whose condition is an
+   * {@code IN} list. */
+  public interface Batchable extends EnumerableRel {
+    /** Returns the maximum number of rows of the left input in a batch. */
+    int batchSize();
+
+    /** Generates code that evaluates this relational expression for a
+     * batch of rows of the left input.
+     *
+     * <p>When executed, the code has in scope {@code rows}, a list of rows
+     * of the left input, each with the physical type
+     * {@code correlationPhysType}, and the code returns a list of the same
+     * size, each member of which is an {@code Enumerable} of the rows of this
+     * relational expression for the row in the same position. The rows must
+     * depend only on the columns of the left input that are referenced via
+     * {@code correlationId}. */
+    Result implementBatch(EnumerableRelImplementor implementor, Prefer pref,
+        CorrelationId correlationId, PhysType correlationPhysType,
+        ParameterExpression rows);
   }
 }
 
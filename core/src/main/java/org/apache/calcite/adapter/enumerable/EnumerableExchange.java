@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Blocks;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelDistribution;
+import org.apache.calcite.rel.RelDistributionTraitDef;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Exchange;
+import org.apache.calcite.util.BuiltInMethod;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Implementation of {@link org.apache.calcite.rel.core.Exchange} in
+ * {@link EnumerableConvention enumerable calling convention}.
+ *
+ * <p>Exchanges work in pairs. An exchange whose distribution is
+ * {@link RelDistribution.Type#SINGLETON} gathers the results of the
+ * relational expressions beneath it, down to and including the first
+ * exchange on each path whose distribution is
+ * {@link RelDistribution.Type#HASH_DISTRIBUTED hash},
+ * {@link RelDistribution.Type#RANDOM_DISTRIBUTED random} or
+ * {@link RelDistribution.Type#ROUND_ROBIN_DISTRIBUTED round-robin}. At run
+ * time, the gathering exchange reads the inputs of those exchanges, splits
+ * them into partitions, and evaluates the relational expressions in between
+ * once per partition, in parallel on a fork-join pool. The number of
+ * partitions is the value of the
+ * {@link org.apache.calcite.config.CalciteConnectionProperty#PARALLELISM}
+ * connection property.
+ *
+ * <p>An exchange that is not part of such a pair passes its input through
+ * unchanged.
+ *
+ * @see EnumerableParallelAggregateRule
+ * @see EnumerableParallelJoinRule */
+public class EnumerableExchange extends Exchange implements EnumerableRel {
+  /** Creates an EnumerableExchange.
+   *
+   * <p>Use {@link #create} unless you know what you're doing. */
+  public EnumerableExchange(RelOptCluster cluster, RelTraitSet traitSet,
+      RelNode input, RelDistribution distribution) {
+    super(cluster, traitSet, input, distribution);
+    assert getConvention() instanceof EnumerableConvention;
+  }
+
+  /** Creates an EnumerableExchange.
+   *
+   * <p>Rows are not returned in the order of the input, so the result has
+   * no collation. */
+  public static EnumerableExchange create(RelNode input,
+      RelDistribution distribution) {
+    final RelOptCluster cluster = input.getCluster();
+    distribution = RelDistributionTraitDef.INSTANCE.canonize(distribution);
+    final RelTraitSet traitSet =
+        input.getTraitSet().replace(EnumerableConvention.INSTANCE)
+            .replace(RelCollations.EMPTY)
+            .replace(distribution);
+    return new EnumerableExchange(cluster, traitSet, input, distribution);
+  }
+
+  @Override public EnumerableExchange copy(RelTraitSet traitSet,
+      RelNode newInput, RelDistribution newDistribution) {
+    return new EnumerableExchange(getCluster(), traitSet, newInput,
+        newDistribution);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    if (distribution.getType() != RelDistribution.Type.SINGLETON) {
+      final Result partition = implementor.getPartition(this);
+      if (partition != null) {
+        return partition;
+      }
+      return implementor.visitChild(this, 0, (EnumerableRel) getInput(),
+          pref);
+    }
+
+    final List<EnumerableExchange> scatters = new ArrayList<>();
+    findScatters(getInput(), scatters);
+    if (scatters.isEmpty()) {
+      return implementor.visitChild(this, 0, (EnumerableRel) getInput(),
+          pref);
+    }
+
+    // Generate code for the input of each partitioning exchange. Within the
+    // region, each partitioning exchange returns one partition of its input.
+    final BlockBuilder builder = new BlockBuilder();
+    final ParameterExpression partitions_ =
+        Expressions.parameter(Modifier.FINAL, List.class, "partitions");
+    final List<Expression> inputs = new ArrayList<>();
+    final List<Expression> keySelectors = new ArrayList<>();
+    for (EnumerableExchange scatter : scatters) {
+      final Result result =
+          implementor.visitChild(scatter, 0,
+              (EnumerableRel) scatter.getInput(), pref);
+      inputs.add(builder.append("scatter", result.block));
+      keySelectors.add(
+          scatter.distribution.getType()
+              == RelDistribution.Type.HASH_DISTRIBUTED
+              ? result.physType.generateAccessor(
+                  scatter.distribution.getKeys())
+              : Expressions.constant(null, Function1.class));
+      final Expression partition_ =
+          Expressions.convert_(
+              Expressions.call(partitions_, BuiltInMethod.LIST_GET.method,
+                  Expressions.constant(inputs.size() - 1)),
+              Enumerable.class);
+      implementor.registerPartition(scatter,
+          implementor.result(result.physType, Blocks.toBlock(partition_)));
+    }
+
+    final Result regionResult =
+        implementor.visitChild(this, 0, (EnumerableRel) getInput(), pref);
+    for (EnumerableExchange scatter : scatters) {
+      implementor.clearPartition(scatter);
+    }
+
+    builder.add(
+        Expressions.call(BuiltInMethod.GATHER.method,
+            Expressions.constant(EnumUtils.parallelism(this)),
+            Expressions.newArrayInit(Enumerable.class, inputs),
+            Expressions.newArrayInit(Function1.class, keySelectors),
+            Expressions.lambda(regionResult.block, partitions_)));
+    return implementor.result(regionResult.physType, builder.toBlock());
+  }
+
+  /** Finds the partitioning exchanges that are gathered by this exchange. */
+  private static void findScatters(RelNode rel,
+      List<EnumerableExchange> scatters) {
+    if (rel instanceof EnumerableExchange) {
+      final EnumerableExchange exchange = (EnumerableExchange) rel;
+      switch (exchange.distribution.getType()) {
+      case SINGLETON:
+        // A nested gather, which handles its own partitions
+        return;
+      case HASH_DISTRIBUTED:
+      case RANDOM_DISTRIBUTED:
+      case ROUND_ROBIN_DISTRIBUTED:
+        scatters.add(exchange);
+        return;
+      }
+    }
+    for (RelNode input : rel.getInputs()) {
+      findScatters(input, scatters);
+    }
+  }
+}
+
+// End EnumerableExchange.java
@@ -18,6 +18,7 @@
 
 import org.apache.calcite.DataContext;
 import org.apache.calcite.avatica.Helper;
+import org.apache.calcite.avatica.util.ByteString;
 import org.apache.calcite.interpreter.Compiler;
 import org.apache.calcite.interpreter.InterpretableConvention;
 import org.apache.calcite.interpreter.InterpretableRel;
@@ -28,8 +29,14 @@
 import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.function.Deterministic;
 import org.apache.calcite.linq4j.tree.ClassDeclaration;
+import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.FieldDeclaration;
+import org.apache.calcite.linq4j.tree.MemberDeclaration;
+import org.apache.calcite.linq4j.tree.NewExpression;
+import org.apache.calcite.linq4j.tree.Shuttle;
 import org.apache.calcite.plan.ConventionTraitDef;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelTraitSet;
@@ -41,17 +48,31 @@
 import org.apache.calcite.runtime.Hook;
 import org.apache.calcite.runtime.Typed;
 import org.apache.calcite.runtime.Utilities;
+import org.apache.calcite.util.SaffronProperties;
 import org.apache.calcite.util.Util;
+import org.apache.calcite.util.javac.BytecodeCompiler;
+import org.apache.calcite.util.javac.ClassBodyCompiler;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import org.codehaus.commons.compiler.CompileException;
-import org.codehaus.commons.compiler.CompilerFactoryFactory;
-import org.codehaus.commons.compiler.IClassBodyEvaluator;
-import org.codehaus.commons.compiler.ICompilerFactory;
 
 import java.io.IOException;
-import java.io.StringReader;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Relational expression that converts an enumerable input to interpretable
@@ -62,6 +83,21 @@
  */
 public class EnumerableInterpretable extends ConverterImpl
     implements InterpretableRel {
+  /** Cache of classes compiled from generated code.
+   *
+   * <p>If the class was compiled by the {@link BytecodeCompiler}, the key is
+   * its bytecode, so the Java source code is not needed. Otherwise the key is
+   * the source code and whether the class returns rows of a single field.
+   *
+   * <p>The cache holds classes, not instances, because an instance holds
+   * the {@link DataContext} that it is bound to. Each class is loaded by its
+   * own class loader, so a class that is evicted can be unloaded once its
+   * instances are no longer used. */
+  private static final Cache<List<Object>, Class<?>> BINDABLE_CACHE =
+      maxSize(CacheBuilder.newBuilder().recordStats(),
+          SaffronProperties.INSTANCE.bindableCacheMaximumSize().get())
+          .build();
+
   protected EnumerableInterpretable(RelOptCluster cluster, RelNode input) {
     super(cluster, ConventionTraitDef.INSTANCE,
         cluster.traitSetOf(InterpretableConvention.INSTANCE), input);
@@ -85,59 +121,298 @@ public Node implement(final InterpreterImplementor implementor) {
   public static Bindable toBindable(Map<String, Object> parameters,
       CalcitePrepare.SparkHandler spark, EnumerableRel rel,
       EnumerableRel.Prefer prefer) {
+    final ClassDeclaration expr = generate(parameters, rel, prefer);
+    final Supplier<String> s = toJava(expr);
+    return compileBindable(spark, expr, s, rel.getRowType().getFieldCount());
+  }
+
+  /** Creates a {@link Bindable} that interprets a relational expression
+   * until the code generated for it has been compiled in a background
+   * thread.
+   *
+   * <p>Generates code immediately; only compilation is deferred. Returns
+   * the same as {@link #toBindable} if the interpreter cannot execute the
+   * expression, or cannot return rows in the same format as the generated
+   * code.
+   *
+   * @param rowThreshold Number of rows after which an interpreted execution
+   *                     is considered long-running; later executions wait
+   *                     for the compiled code
+   *
+   * @see org.apache.calcite.config.CalciteConnectionProperty#TIERED_EXECUTION
+   */
+  public static Bindable toTieredBindable(Map<String, Object> parameters,
+      final CalcitePrepare.SparkHandler spark, EnumerableRel rel,
+      EnumerableRel.Prefer prefer, int rowThreshold) {
+    final ClassDeclaration expr = generate(parameters, rel, prefer);
+    final Supplier<String> s = toJava(expr);
+    final int fieldCount = rel.getRowType().getFieldCount();
+    final Type elementType = TieredBindable.elementType(expr);
+    if (spark != null && spark.enabled()
+        || isCompiled(expr, s, fieldCount)
+        || !TieredBindable.canInterpret(rel, elementType)) {
+      return compileBindable(spark, expr, s, fieldCount);
+    }
+    return new TieredBindable(rel, elementType, fieldCount, rowThreshold,
+        new Callable<Bindable>() {
+          public Bindable call() {
+            Hook.TIERED_COMPILE.run(s.get());
+            return compileBindable(spark, expr, s, fieldCount);
+          }
+        });
+  }
+
+  /** Generates a class declaration that implements a relational
+   * expression. */
+  private static ClassDeclaration generate(Map<String, Object> parameters,
+      EnumerableRel rel, EnumerableRel.Prefer prefer) {
     EnumerableRelImplementor relImplementor =
         new EnumerableRelImplementor(rel.getCluster().getRexBuilder(),
             parameters);
+    return relImplementor.implementRoot(rel, prefer);
+  }
 
-    final ClassDeclaration expr = relImplementor.implementRoot(rel, prefer);
-    String s = Expressions.toString(expr.memberDeclarations, "\n", false);
+  /** Returns a supplier of the Java source code of a generated class
+   * declaration.
+   *
+   * <p>The source code is generated only if it is needed: to compile it
+   * using Janino, or because {@link CalcitePrepareImpl#DEBUG} is set or a
+   * handler is registered for {@link Hook#JAVA_PLAN}, in which case it is
+   * generated and published immediately. */
+  private static Supplier<String> toJava(final ClassDeclaration expr) {
+    final Supplier<String> s =
+        Suppliers.memoize(
+            new Supplier<String>() {
+              public String get() {
+                return Expressions.toString(expr.memberDeclarations, "\n",
+                    false);
+              }
+            });
 
     if (CalcitePrepareImpl.DEBUG) {
-      Util.debugCode(System.out, s);
+      Util.debugCode(System.out, s.get());
     }
 
-    Hook.JAVA_PLAN.run(s);
+    if (Hook.JAVA_PLAN.hasHandlers()) {
+      Hook.JAVA_PLAN.run(s.get());
+    }
+    return s;
+  }
 
+  private static Bindable compileBindable(CalcitePrepare.SparkHandler spark,
+      ClassDeclaration expr, Supplier<String> s, int fieldCount) {
     try {
       if (spark != null && spark.enabled()) {
-        return spark.compile(expr, s);
+        return spark.compile(expr, s.get());
       } else {
-        return getBindable(expr, s, rel.getRowType().getFieldCount());
+        return getBindable(expr, s, fieldCount);
       }
     } catch (Exception e) {
       throw Helper.INSTANCE.wrap("Error while compiling generated Java code:\n"
-          + s, e);
+          + s.get(), e);
+    }
+  }
+
+  /** Returns whether the cache already holds the class compiled from some
+   * generated code. */
+  private static boolean isCompiled(ClassDeclaration expr, Supplier<String> s,
+      int fieldCount) {
+    if (!isCacheable(expr)) {
+      return false;
+    }
+    if (BytecodeCompiler.enabled()) {
+      try {
+        return BINDABLE_CACHE.getIfPresent(
+            key(generateBytecode(expr, fieldCount))) != null;
+      } catch (BytecodeCompiler.UnsupportedException e) {
+        // fall back to Janino
+      }
+    }
+    return BINDABLE_CACHE.getIfPresent(key(s.get(), fieldCount)) != null;
+  }
+
+  /** Returns the key of a class compiled from Java source code by Janino in
+   * the cache of compiled classes. */
+  private static List<Object> key(String s, int fieldCount) {
+    return ImmutableList.<Object>of(s, fieldCount == 1);
+  }
+
+  /** Returns the key of a class compiled by the {@link BytecodeCompiler} in
+   * the cache of compiled classes. */
+  private static List<Object> key(Map<String, byte[]> bytecodes) {
+    final ImmutableList.Builder<Object> b = ImmutableList.builder();
+    for (String name : new TreeSet<>(bytecodes.keySet())) {
+      b.add(name, new ByteString(bytecodes.get(name)));
     }
+    return b.build();
   }
 
   static ArrayBindable getArrayBindable(ClassDeclaration expr, String s,
       int fieldCount) throws CompileException, IOException {
-    Bindable bindable = getBindable(expr, s, fieldCount);
+    Bindable bindable =
+        getBindable(expr, Suppliers.ofInstance(s), fieldCount);
     return box(bindable);
   }
 
-  static Bindable getBindable(ClassDeclaration expr, String s, int fieldCount)
+  /** Returns a {@link Bindable} that executes generated code.
+   *
+   * <p>If {@link BytecodeCompiler#enabled()}, compiles the class declaration
+   * directly to bytecode, and does not generate Java source code unless the
+   * declaration uses a construct that the bytecode compiler does not
+   * support; the fallback calls {@link Hook#COMPILER_FALLBACK}. */
+  static Bindable getBindable(final ClassDeclaration expr,
+      final Supplier<String> s, final int fieldCount)
+      throws CompileException, IOException {
+    if (BytecodeCompiler.enabled()) {
+      try {
+        final Map<String, byte[]> bytecodes =
+            generateBytecode(expr, fieldCount);
+        if (!isCacheable(expr)) {
+          return instantiate(loadBytecode(expr, bytecodes));
+        }
+        return instantiate(
+            getCached(expr, key(bytecodes),
+                new Callable<Class<?>>() {
+                  public Class<?> call() {
+                    return loadBytecode(expr, bytecodes);
+                  }
+                }));
+      } catch (BytecodeCompiler.UnsupportedException e) {
+        // fall back to Janino
+        Hook.COMPILER_FALLBACK.run(e.getMessage());
+      }
+    }
+    if (!isCacheable(expr)) {
+      return instantiate(compile(expr, s.get(), fieldCount));
+    }
+    return instantiate(
+        getCached(expr, key(s.get(), fieldCount),
+            new Callable<Class<?>>() {
+              public Class<?> call() throws Exception {
+                return compile(expr, s.get(), fieldCount);
+              }
+            }));
+  }
+
+  /** Returns a class from the cache of compiled classes, compiling it if it
+   * is not present. */
+  private static Class<?> getCached(final ClassDeclaration expr,
+      List<Object> key, final Callable<Class<?>> compiler)
       throws CompileException, IOException {
-    ICompilerFactory compilerFactory;
     try {
-      compilerFactory = CompilerFactoryFactory.getDefaultCompilerFactory();
-    } catch (Exception e) {
+      return BINDABLE_CACHE.get(key,
+          new Callable<Class<?>>() {
+            public Class<?> call() throws Exception {
+              Hook.BINDABLE_COMPILE.run(expr);
+              return compiler.call();
+            }
+          });
+    } catch (UncheckedExecutionException e) {
+      if (e.getCause() instanceof BytecodeCompiler.UnsupportedException) {
+        throw (BytecodeCompiler.UnsupportedException) e.getCause();
+      }
+      throw e;
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof CompileException) {
+        throw (CompileException) cause;
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  private static Bindable instantiate(Class<?> clazz) {
+    try {
+      return (Bindable) clazz.getConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
       throw new IllegalStateException(
-          "Unable to instantiate java compiler", e);
+          "Unable to instantiate generated class " + clazz, e);
     }
-    IClassBodyEvaluator cbe = compilerFactory.newClassBodyEvaluator();
-    cbe.setClassName(expr.name);
-    cbe.setExtendedClass(Utilities.class);
-    cbe.setImplementedInterfaces(
-        fieldCount == 1
-            ? new Class[] {Bindable.class, Typed.class}
-            : new Class[] {ArrayBindable.class});
-    cbe.setParentClassLoader(EnumerableInterpretable.class.getClassLoader());
-    if (CalcitePrepareImpl.DEBUG) {
-      // Add line numbers to the generated janino class
-      cbe.setDebuggingInformation(true, true, true);
+  }
+
+  /** Returns whether a class compiled from generated code can be cached and
+   * used by later queries that generate the same code.
+   *
+   * <p>It cannot if a static field holds an object that may have state.
+   * For example, the code generator creates one instance per class of
+   * {@link org.apache.calcite.runtime.RandomFunction}, whose constructor is
+   * {@link Deterministic}; if the instance were shared, a query that uses a
+   * random number generator with a seed would return different values each
+   * time it is executed. */
+  static boolean isCacheable(ClassDeclaration expr) {
+    final boolean[] cacheable = {true};
+    expr.accept(
+        new Shuttle() {
+          @Override public MemberDeclaration visit(
+              FieldDeclaration fieldDeclaration, Expression initializer) {
+            if ((fieldDeclaration.modifier & Modifier.STATIC) != 0
+                && initializer instanceof NewExpression
+                && !isImmutable(initializer.getType())) {
+              cacheable[0] = false;
+            }
+            return super.visit(fieldDeclaration, initializer);
+          }
+        });
+    return cacheable[0];
+  }
+
+  private static boolean isImmutable(Type type) {
+    return type == BigDecimal.class
+        || type == BigInteger.class
+        || type instanceof Class
+        && ((Class) type).isAnnotationPresent(Deterministic.class);
+  }
+
+  /** Returns the interfaces implemented by a generated class: {@link Bindable}
+   * (and {@link Typed}, if rows have a single field) or
+   * {@link ArrayBindable}. */
+  private static Class[] interfaces(int fieldCount) {
+    return fieldCount == 1
+        ? new Class[] {Bindable.class, Typed.class}
+        : new Class[] {ArrayBindable.class};
+  }
+
+  /** Compiles generated Java source code using Janino. */
+  private static Class<?> compile(ClassDeclaration expr, String s,
+      int fieldCount) throws CompileException, IOException {
+    return ClassBodyCompiler.INSTANCE.compile(expr.name, Utilities.class,
+        interfaces(fieldCount), EnumerableInterpretable.class.getClassLoader(),
+        CalcitePrepareImpl.DEBUG, s);
+  }
+
+  /** Compiles a generated class declaration directly to bytecode.
+   *
+   * @throws BytecodeCompiler.UnsupportedException if the declaration uses a
+   *   construct that the bytecode compiler does not support */
+  private static Map<String, byte[]> generateBytecode(ClassDeclaration expr,
+      int fieldCount) {
+    return BytecodeCompiler.generate(expr.name, Utilities.class,
+        interfaces(fieldCount), expr.memberDeclarations);
+  }
+
+  private static Class<?> loadBytecode(ClassDeclaration expr,
+      Map<String, byte[]> bytecodes) {
+    return BytecodeCompiler.load(expr.name, bytecodes,
+        EnumerableInterpretable.class.getClassLoader());
+  }
+
+  /** Returns statistics of the cache of classes compiled from generated
+   * code, such as the number of hits, misses and evictions.
+   *
+   * @see SaffronProperties#bindableCacheMaximumSize() */
+  public static CacheStats bindableCacheStats() {
+    return BINDABLE_CACHE.stats();
+  }
+
+  private static <K, V> CacheBuilder<K, V> maxSize(CacheBuilder<K, V> builder,
+      int size) {
+    if (size >= 0) {
+      builder.maximumSize(size);
     }
-    return (Bindable) cbe.createInstance(new StringReader(s));
+    return builder;
   }
 
   /** Converts a bindable over scalar values into an array bindable, with each
@@ -27,8 +27,14 @@
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.SingleRel;
+import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.runtime.RuntimeFilter;
+import org.apache.calcite.schema.RuntimeFilterableTable;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Pair;
+
+import com.google.common.collect.ImmutableList;
 
 import java.util.List;
 
@@ -88,14 +94,36 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     final BlockBuilder builder = new BlockBuilder();
     final PhysType physType =
         PhysTypeImpl.of(typeFactory, getRowType(), JavaRowFormat.ARRAY);
+    final List<Pair<Integer, Expression>> runtimeFilters =
+        implementor.getRuntimeFilters(this);
+    final boolean tableFilters = !runtimeFilters.isEmpty()
+        && getInput() instanceof TableScan
+        && getInput().getTable().unwrap(RuntimeFilterableTable.class) != null;
+    Expression root_ = implementor.getRootExpression();
+    if (tableFilters) {
+      // The table will apply the filters itself
+      root_ = Expressions.call(BuiltInMethod.RUNTIME_FILTER_CONTEXT.method,
+          root_,
+          Expressions.newArrayInit(RuntimeFilter.Slot.class,
+              Pair.right(runtimeFilters)));
+    }
     final Expression interpreter_ = builder.append("interpreter",
         Expressions.new_(Interpreter.class,
-            implementor.getRootExpression(),
+            root_,
             implementor.stash(getInput(), RelNode.class)));
-    final Expression sliced_ =
+    Expression sliced_ =
         getRowType().getFieldCount() == 1
             ? Expressions.call(BuiltInMethod.SLICE0.method, interpreter_)
             : interpreter_;
+    if (!tableFilters) {
+      for (Pair<Integer, Expression> pair : runtimeFilters) {
+        sliced_ =
+            Expressions.call(BuiltInMethod.APPLY_RUNTIME_FILTER.method,
+                sliced_,
+                physType.generateAccessor(ImmutableList.of(pair.left)),
+                pair.right);
+      }
+    }
     builder.add(sliced_);
     return implementor.result(physType, builder.toBlock());
   }
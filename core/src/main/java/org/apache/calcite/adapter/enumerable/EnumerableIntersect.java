@@ -25,6 +25,7 @@
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Intersect;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Util;
 
 import java.util.List;
 
@@ -45,6 +46,7 @@ public EnumerableIntersect copy(RelTraitSet traitSet, List<RelNode> inputs,
   public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     final BlockBuilder builder = new BlockBuilder();
     Expression intersectExp = null;
+    PhysType physType0 = null;
     for (Ord<RelNode> ord : Ord.zip(inputs)) {
       EnumerableRel input = (EnumerableRel) ord.e;
       final Result result = implementor.visitChild(this, ord.i, input, pref);
@@ -55,6 +57,17 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
 
       if (intersectExp == null) {
         intersectExp = childExp;
+        physType0 = result.physType;
+      } else if (EnumUtils.isLongKeyed(physType0, result.physType)) {
+        // Rows are values of a single primitive field, and can be held in a
+        // set of long values, without boxing
+        intersectExp =
+            Expressions.call(BuiltInMethod.INTERSECT_LONG.method,
+                intersectExp,
+                childExp,
+                result.physType.generateLongKey(0),
+                Util.first(result.physType.generateNullTest(0),
+                    Expressions.constant(null)));
       } else {
         intersectExp =
             Expressions.call(intersectExp,
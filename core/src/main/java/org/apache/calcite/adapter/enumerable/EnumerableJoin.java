@@ -16,9 +16,14 @@
  */
 package org.apache.calcite.adapter.enumerable;
 
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.interpreter.Bindables.BindableTableScan;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptCost;
 import org.apache.calcite.plan.RelOptPlanner;
@@ -31,17 +36,30 @@
 import org.apache.calcite.rel.core.JoinInfo;
 import org.apache.calcite.rel.core.JoinRelType;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexProgram;
+import org.apache.calcite.runtime.RuntimeFilter;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.ImmutableIntList;
+import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
 
 import com.google.common.collect.ImmutableList;
 
+import java.util.List;
 import java.util.Set;
 
 /** Implementation of {@link org.apache.calcite.rel.core.Join} in
- * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}. */
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}.
+ *
+ * <p>The join hashes rows on its keys. Its condition may also contain
+ * conditions other than key equality, which it evaluates only on pairs of
+ * rows whose keys are equal. Such a condition is useful for outer joins,
+ * which cannot be implemented by an equi-join followed by a filter. */
 public class EnumerableJoin extends EquiJoin implements EnumerableRel {
   /** Creates an EnumerableJoin.
    *
@@ -113,7 +131,6 @@ public static EnumerableJoin create(
       RelNode left, RelNode right, JoinRelType joinType,
       boolean semiJoinDone) {
     final JoinInfo joinInfo = JoinInfo.of(left, right, condition);
-    assert joinInfo.isEqui();
     try {
       return new EnumerableJoin(getCluster(), traitSet, left, right,
           condition, joinInfo.leftKeys, joinInfo.rightKeys, variablesSet,
@@ -125,6 +142,11 @@ public static EnumerableJoin create(
     }
   }
 
+  @Override public JoinInfo analyzeCondition() {
+    // The condition may contain conditions other than key equality
+    return JoinInfo.of(left, right, condition);
+  }
+
   @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
       RelMetadataQuery mq) {
     double rowCount = mq.getRowCount(this);
@@ -182,6 +204,31 @@ private double addEpsilon(double d) {
 
   public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     BlockBuilder builder = new BlockBuilder();
+    final long memoryBudget = EnumUtils.memoryBudget(this);
+
+    // If the key of one input comes straight from a scan, ask the scan to
+    // apply a runtime filter, which this join will build from the keys of the
+    // other input. Each join has its own slot.
+    final int filteredInput = runtimeFilterInput(memoryBudget > 0);
+    final Pair<EnumerableRel, Integer> filterScan =
+        filteredInput < 0
+            ? null
+            : findRuntimeFilterScan(getInputs().get(filteredInput),
+                (filteredInput == 0 ? leftKeys : rightKeys).get(0));
+    Expression slot = null;
+    if (filterScan != null) {
+      final int column = filterScan.left instanceof EnumerableInterpreter
+          ? ((BindableTableScan) filterScan.left.getInput(0)).projects
+              .get(filterScan.right)
+          : filterScan.right;
+      slot =
+          builder.append("slot",
+              Expressions.new_(RuntimeFilter.Slot.class,
+                  Expressions.constant(column)),
+              false);
+      implementor.registerRuntimeFilter(filterScan.left, filterScan.right,
+          slot);
+    }
     final Result leftResult =
         implementor.visitChild(this, 0, (EnumerableRel) left, pref);
     Expression leftExpression =
@@ -192,36 +239,304 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     Expression rightExpression =
         builder.append(
             "right", rightResult.block);
+    if (filterScan != null) {
+      implementor.clearRuntimeFilter(filterScan.left, slot);
+      if (filteredInput == 0) {
+        // The join reads the right input before the left, so the filter is
+        // published before the scan starts.
+        rightExpression =
+            builder.append("right",
+                Expressions.call(BuiltInMethod.PUBLISH_RUNTIME_FILTER.method,
+                    rightExpression,
+                    rightResult.physType.generateAccessor(rightKeys),
+                    slot));
+      }
+    }
     final PhysType physType =
         PhysTypeImpl.of(
             implementor.getTypeFactory(), getRowType(), pref.preferArray());
     final PhysType keyPhysType =
         leftResult.physType.project(
             leftKeys, JavaRowFormat.LIST);
+    final Expression comparer =
+        Util.first(keyPhysType.comparer(), Expressions.constant(null));
+    final Expression selector =
+        EnumUtils.joinSelector(joinType,
+            physType,
+            ImmutableList.of(
+                leftResult.physType, rightResult.physType));
+    // Conditions other than key equality are evaluated on each pair of rows
+    // whose keys are equal.
+    final RexBuilder rexBuilder = getCluster().getRexBuilder();
+    final JoinInfo joinInfo = analyzeCondition();
+    final Expression predicate =
+        joinInfo.isEqui()
+            ? null
+            : EnumUtils.joinPredicate(implementor, rexBuilder, left, right,
+                leftResult.physType, rightResult.physType,
+                joinInfo.getRemaining(rexBuilder));
+    if (memoryBudget > 0
+        && EnumUtils.canSpill(leftResult.format)
+        && EnumUtils.canSpill(rightResult.format)) {
+      // Rows of both inputs can be written to disk, so generate a join that
+      // spills if the right input does not fit within the budget.
+      return implementor.result(
+          physType,
+          builder.append(
+              join(leftExpression, rightExpression, leftResult.physType,
+                  rightResult.physType, selector, comparer, predicate,
+                  memoryBudget)).toBlock());
+    }
+    if (filterScan != null && filteredInput == 1) {
+      // Read the left input into memory and publish the filter before the
+      // join starts to read the right input.
+      final ParameterExpression left_ =
+          Expressions.parameter(Enumerable.class, "left");
+      return implementor.result(
+          physType,
+          builder.append(
+              Expressions.call(
+                  BuiltInMethod.PUBLISH_RUNTIME_FILTER_FIRST.method,
+                  leftExpression,
+                  leftResult.physType.generateAccessor(leftKeys),
+                  slot,
+                  Expressions.lambda(
+                      join(left_, rightExpression, leftResult.physType,
+                          rightResult.physType, selector, comparer, predicate,
+                          0L),
+                      left_))).toBlock());
+    }
     return implementor.result(
         physType,
         builder.append(
-            Expressions.call(
-                leftExpression,
-                BuiltInMethod.JOIN.method,
-                Expressions.list(
-                    rightExpression,
-                    leftResult.physType.generateAccessor(leftKeys),
-                    rightResult.physType.generateAccessor(rightKeys),
-                    EnumUtils.joinSelector(joinType,
-                        physType,
-                        ImmutableList.of(
-                            leftResult.physType, rightResult.physType)))
-                    .append(
-                        Util.first(keyPhysType.comparer(),
-                            Expressions.constant(null)))
-                    .append(
-                        Expressions.constant(joinType.generatesNullsOnLeft()))
-                    .append(
-                        Expressions.constant(
-                            joinType.generatesNullsOnRight())))).toBlock());
+            join(leftExpression, rightExpression, leftResult.physType,
+                rightResult.physType, selector, comparer, predicate, 0L))
+            .toBlock());
   }
 
+  /** Generates a call to a hash join that reads the right input into memory
+   * and probes with the left input.
+   *
+   * <p>If {@code predicate} is not null, rows match only if their keys are
+   * equal and the predicate holds. If {@code memoryBudget} is positive, the
+   * join spills if the right input does not fit within the budget.
+   *
+   * <p>If the join does not spill and has a single key of a primitive type,
+   * the join holds the right input in a table of {@code long} keys, and does
+   * not box the keys. If it does not spill and has several keys, the keys
+   * are held in instances of a generated class; see
+   * {@link #compositeKeyPhysType()}. */
+  private Expression join(Expression leftExpression,
+      Expression rightExpression, PhysType leftPhysType,
+      PhysType rightPhysType, Expression selector, Expression comparer,
+      Expression predicate, long memoryBudget) {
+    if (memoryBudget <= 0 && leftKeys.size() == 1) {
+      final RelDataType leftType = left.getRowType().getFieldList()
+          .get(leftKeys.get(0)).getType();
+      final RelDataType rightType = right.getRowType().getFieldList()
+          .get(rightKeys.get(0)).getType();
+      final Expression leftKey = leftPhysType.generateLongKey(leftKeys.get(0));
+      final Expression rightKey =
+          rightPhysType.generateLongKey(rightKeys.get(0));
+      if (leftType.getSqlTypeName() == rightType.getSqlTypeName()
+          && leftKey != null
+          && rightKey != null) {
+        return Expressions.call(BuiltInMethod.HASH_JOIN_LONG.method,
+            leftExpression,
+            rightExpression,
+            leftKey,
+            Util.first(leftPhysType.generateNullTest(leftKeys.get(0)),
+                Expressions.constant(null)),
+            rightKey,
+            Util.first(rightPhysType.generateNullTest(rightKeys.get(0)),
+                Expressions.constant(null)),
+            selector,
+            Expressions.constant(joinType.generatesNullsOnLeft()),
+            Expressions.constant(joinType.generatesNullsOnRight()),
+            Util.first(predicate, Expressions.constant(null)));
+      }
+    }
+    final PhysType keyPhysType =
+        memoryBudget <= 0 ? compositeKeyPhysType() : null;
+    final Expression leftAccessor;
+    final Expression rightAccessor;
+    final Expression keyComparer;
+    if (keyPhysType != null) {
+      leftAccessor = leftPhysType.generateAccessor(leftKeys, keyPhysType);
+      rightAccessor = rightPhysType.generateAccessor(rightKeys, keyPhysType);
+      keyComparer = Expressions.constant(null);
+    } else {
+      leftAccessor = leftPhysType.generateAccessor(leftKeys);
+      rightAccessor = rightPhysType.generateAccessor(rightKeys);
+      keyComparer = comparer;
+    }
+    if (predicate == null && memoryBudget <= 0) {
+      return Expressions.call(
+          leftExpression,
+          BuiltInMethod.JOIN.method,
+          Expressions.list(
+              rightExpression,
+              leftAccessor,
+              rightAccessor,
+              selector)
+              .append(keyComparer)
+              .append(
+                  Expressions.constant(joinType.generatesNullsOnLeft()))
+              .append(
+                  Expressions.constant(joinType.generatesNullsOnRight())));
+    }
+    final List<Expression> args =
+        Expressions.list(
+            leftExpression,
+            rightExpression,
+            leftAccessor,
+            rightAccessor,
+            selector,
+            keyComparer,
+            Expressions.constant(joinType.generatesNullsOnLeft()),
+            Expressions.constant(joinType.generatesNullsOnRight()),
+            Expressions.constant(memoryBudget));
+    if (predicate == null) {
+      return Expressions.call(BuiltInMethod.HASH_JOIN.method, args);
+    }
+    args.add(predicate);
+    return Expressions.call(BuiltInMethod.HASH_JOIN_WITH_PREDICATE.method,
+        args);
+  }
+
+  /** Returns the physical type of a generated class
+   * ({@link JavaRowFormat#KEY}) that can hold the keys of both inputs of this
+   * join, or null if there are fewer than two keys or the keys are not
+   * suitable.
+   *
+   * <p>Each pair of keys must be of the same SQL type, so that both sides
+   * are held in a field of the same Java type. A field is nullable if either
+   * key is nullable. */
+  private PhysType compositeKeyPhysType() {
+    if (leftKeys.size() < 2) {
+      return null;
+    }
+    final JavaTypeFactory typeFactory =
+        (JavaTypeFactory) getCluster().getTypeFactory();
+    final RelDataTypeFactory.Builder builder = typeFactory.builder();
+    for (Ord<Integer> leftKey : Ord.zip(leftKeys)) {
+      final RelDataType leftType = left.getRowType().getFieldList()
+          .get(leftKey.e).getType();
+      final RelDataType rightType = right.getRowType().getFieldList()
+          .get(rightKeys.get(leftKey.i)).getType();
+      if (leftType.getSqlTypeName() != rightType.getSqlTypeName()
+          || !EnumUtils.isKeyFieldType(leftType)) {
+        return null;
+      }
+      builder.add("f" + leftKey.i,
+          typeFactory.createTypeWithNullability(leftType,
+              leftType.isNullable() || rightType.isNullable()));
+    }
+    return PhysTypeImpl.of(typeFactory, builder.build(), JavaRowFormat.KEY);
+  }
+
+  /** Returns which input of this join a runtime filter should be applied
+   * to: 0 for the left, 1 for the right, or -1 for neither.
+   *
+   * <p>The filter is built from the keys of the smaller input, and applied
+   * to the larger input, which must be an input whose rows are discarded if
+   * they have no match. The join reads the right input first, so if the left
+   * input is the smaller, the join must read it into memory before it reads
+   * the right input; it does not do so if it needs to stay within a memory
+   * budget. */
+  private int runtimeFilterInput(boolean spill) {
+    if (leftKeys.size() != 1) {
+      return -1;
+    }
+    final RelDataType leftType = left.getRowType().getFieldList()
+        .get(leftKeys.get(0)).getType();
+    final RelDataType rightType = right.getRowType().getFieldList()
+        .get(rightKeys.get(0)).getType();
+    if (leftType.getSqlTypeName() != rightType.getSqlTypeName()) {
+      // Keys are compared as Java objects, and an INTEGER 1 is not equal to
+      // a BIGINT 1.
+      return -1;
+    }
+    switch (leftType.getSqlTypeName()) {
+    case ANY:
+    case ARRAY:
+    case MAP:
+    case MULTISET:
+    case OTHER:
+    case ROW:
+      // Values might be Java arrays, whose hash codes are not consistent
+      // with the comparer that the join uses.
+      return -1;
+    }
+    final RelMetadataQuery mq = getCluster().getMetadataQuery();
+    final Double leftRowCount = mq.getRowCount(left);
+    final Double rightRowCount = mq.getRowCount(right);
+    if (leftRowCount == null || rightRowCount == null) {
+      return -1;
+    }
+    if (rightRowCount < leftRowCount
+        && !joinType.generatesNullsOnRight()) {
+      return 0;
+    }
+    if (leftRowCount < rightRowCount
+        && !joinType.generatesNullsOnLeft()
+        && !spill) {
+      return 1;
+    }
+    return -1;
+  }
+
+  /** Returns the scan, and the field of the scan, that produces a given
+   * field of an input of this join, or null if there is none.
+   *
+   * <p>The path from the input to the scan may contain projects, filters and
+   * other joins, but no operator (such as a sort with a limit) for which
+   * discarding input rows would change which rows reach this join. Other
+   * joins are allowed because a row whose key is rejected by the filter
+   * produces join rows that are rejected by it too (or that have a null key,
+   * and do not match), so it may be discarded early. */
+  private static Pair<EnumerableRel, Integer> findRuntimeFilterScan(
+      RelNode rel, int field) {
+    for (;;) {
+      if (rel instanceof EnumerableTableScan) {
+        return Pair.of((EnumerableRel) rel, field);
+      } else if (rel instanceof EnumerableInterpreter) {
+        if (rel.getInput(0) instanceof BindableTableScan) {
+          return Pair.of((EnumerableRel) rel, field);
+        }
+        return null;
+      } else if (rel instanceof EnumerableCalc) {
+        final RexProgram program = ((EnumerableCalc) rel).getProgram();
+        final RexNode e =
+            program.expandLocalRef(program.getProjectList().get(field));
+        if (!(e instanceof RexInputRef)) {
+          return null;
+        }
+        field = ((RexInputRef) e).getIndex();
+        rel = rel.getInput(0);
+      } else if (rel instanceof EnumerableProject) {
+        final RexNode e = ((EnumerableProject) rel).getProjects().get(field);
+        if (!(e instanceof RexInputRef)) {
+          return null;
+        }
+        field = ((RexInputRef) e).getIndex();
+        rel = rel.getInput(0);
+      } else if (rel instanceof EnumerableFilter) {
+        rel = rel.getInput(0);
+      } else if (rel instanceof EnumerableJoin) {
+        final int leftCount =
+            rel.getInput(0).getRowType().getFieldCount();
+        if (field < leftCount) {
+          rel = rel.getInput(0);
+        } else {
+          field -= leftCount;
+          rel = rel.getInput(1);
+        }
+      } else {
+        return null;
+      }
+    }
+  }
 }
 
 // End EnumerableJoin.java
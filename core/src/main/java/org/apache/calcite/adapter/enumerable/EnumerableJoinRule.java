@@ -60,9 +60,12 @@ class EnumerableJoinRule extends ConverterRule {
     final RelNode left = newInputs.get(0);
     final RelNode right = newInputs.get(1);
     final JoinInfo info = JoinInfo.of(left, right, join.getCondition());
-    if (!info.isEqui() && join.getJoinType() != JoinRelType.INNER) {
-      // EnumerableJoinRel only supports equi-join. We can put a filter on top
-      // if it is an inner join.
+    if (!info.isEqui()
+        && join.getJoinType() != JoinRelType.INNER
+        && info.leftKeys.isEmpty()) {
+      // There are no keys to hash on. (If there are keys, EnumerableJoin
+      // evaluates the rest of an outer join's condition within each bucket.
+      // If it is an inner join, we put a filter on top.)
       try {
         return new EnumerableThetaJoin(cluster, traitSet, left, right,
             join.getCondition(), join.getVariablesSet(), join.getJoinType());
@@ -71,6 +74,8 @@ class EnumerableJoinRule extends ConverterRule {
         return null;
       }
     }
+    final boolean filter =
+        !info.isEqui() && join.getJoinType() == JoinRelType.INNER;
     RelNode newRel;
     try {
       newRel = new EnumerableJoin(
@@ -78,7 +83,9 @@ class EnumerableJoinRule extends ConverterRule {
           join.getTraitSet().replace(EnumerableConvention.INSTANCE),
           left,
           right,
-          info.getEquiCondition(left, right, cluster.getRexBuilder()),
+          info.isEqui() || filter
+              ? info.getEquiCondition(left, right, cluster.getRexBuilder())
+              : join.getCondition(),
           info.leftKeys,
           info.rightKeys,
           join.getVariablesSet(),
@@ -87,7 +94,7 @@ class EnumerableJoinRule extends ConverterRule {
       EnumerableRules.LOGGER.debug(e.toString());
       return null;
     }
-    if (!info.isEqui()) {
+    if (filter) {
       newRel = new EnumerableFilter(cluster, newRel.getTraitSet(),
           newRel, info.getRemaining(cluster.getRexBuilder()));
     }
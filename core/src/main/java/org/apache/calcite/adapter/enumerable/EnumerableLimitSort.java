@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Pair;
+import org.apache.calcite.util.Util;
+
+/** Implementation of {@link org.apache.calcite.rel.core.Sort} in
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}
+ * that has a literal {@code fetch}, and optionally a literal {@code offset}.
+ *
+ * <p>Rather than sorting its whole input, it keeps the first
+ * {@code offset + fetch} rows in a bounded heap.
+ *
+ * @see EnumerableLimitSortRule */
+public class EnumerableLimitSort extends Sort implements EnumerableRel {
+  /**
+   * Creates an EnumerableLimitSort.
+   *
+   * <p>Use {@link #create} unless you know what you're doing.
+   */
+  public EnumerableLimitSort(RelOptCluster cluster, RelTraitSet traitSet,
+      RelNode input, RelCollation collation, RexNode offset, RexNode fetch) {
+    super(cluster, traitSet, input, collation, offset, fetch);
+    assert getConvention() instanceof EnumerableConvention;
+    assert getConvention() == input.getConvention();
+    assert fetch instanceof RexLiteral;
+    assert offset == null || offset instanceof RexLiteral;
+  }
+
+  /** Creates an EnumerableLimitSort. */
+  public static EnumerableLimitSort create(RelNode child,
+      RelCollation collation, RexNode offset, RexNode fetch) {
+    final RelOptCluster cluster = child.getCluster();
+    final RelTraitSet traitSet =
+        cluster.traitSetOf(EnumerableConvention.INSTANCE)
+            .replace(collation);
+    return new EnumerableLimitSort(cluster, traitSet, child, collation,
+        offset, fetch);
+  }
+
+  @Override public EnumerableLimitSort copy(
+      RelTraitSet traitSet,
+      RelNode newInput,
+      RelCollation newCollation,
+      RexNode offset,
+      RexNode fetch) {
+    return new EnumerableLimitSort(getCluster(), traitSet, newInput,
+        newCollation, offset, fetch);
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    // Reads every row of its input, like a full sort, but only keeps
+    // "offset + fetch" rows in its heap. So it is cheaper than a Sort followed
+    // by a Limit, but more expensive than a Limit whose input is already
+    // sorted.
+    final double rowCount = mq.getRowCount(this);
+    final double inputRowCount = mq.getRowCount(getInput());
+    final double limit = limit();
+    final double heapFactor =
+        Math.min(1d, Math.log(limit + 2d) / Math.log(inputRowCount + 2d));
+    final double bytesPerRow = getRowType().getFieldCount() * 4;
+    final double cpu = inputRowCount * Math.log(limit + 2d) * bytesPerRow;
+    return planner.getCostFactory().makeCost(
+        rowCount + inputRowCount * heapFactor, cpu, 0);
+  }
+
+  /** Returns the maximum number of rows that this sort holds in memory. */
+  private double limit() {
+    return (offset == null ? 0d : RexLiteral.intValue(offset))
+        + (double) RexLiteral.intValue(fetch);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    final BlockBuilder builder = new BlockBuilder();
+    final EnumerableRel child = (EnumerableRel) getInput();
+    final Result result = implementor.visitChild(this, 0, child, pref);
+    final PhysType physType =
+        PhysTypeImpl.of(
+            implementor.getTypeFactory(),
+            getRowType(),
+            result.format);
+    final Expression childExp =
+        builder.append("child", result.block);
+
+    final PhysType inputPhysType = result.physType;
+    final Pair<Expression, Expression> pair =
+        inputPhysType.generateCollationKey(
+            collation.getFieldCollations());
+
+    builder.add(
+        Expressions.return_(null,
+            Expressions.call(
+                BuiltInMethod.ORDER_BY_WITH_FETCH_AND_OFFSET.method,
+                childExp,
+                builder.append("keySelector", pair.left),
+                Util.first(
+                    builder.appendIfNotNull("comparator", pair.right),
+                    Expressions.constant(null)),
+                Expressions.constant(
+                    offset == null ? 0 : RexLiteral.intValue(offset)),
+                Expressions.constant(RexLiteral.intValue(fetch)))));
+    return implementor.result(physType, builder.toBlock());
+  }
+}
+
+// End EnumerableLimitSort.java
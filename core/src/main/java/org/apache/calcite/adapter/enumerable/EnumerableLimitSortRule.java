@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.logical.LogicalSort;
+import org.apache.calcite.rex.RexLiteral;
+
+/**
+ * Rule to convert a {@link org.apache.calcite.rel.core.Sort} that has a sort
+ * key and a literal {@code fetch} (and, if it has an {@code offset}, a literal
+ * {@code offset}) to an {@link EnumerableLimitSort}.
+ *
+ * <p>It is an alternative to {@link EnumerableLimitRule}, which converts the
+ * same {@code Sort} to an {@link EnumerableLimit} on top of a full sort; the
+ * planner chooses between them on cost.
+ */
+class EnumerableLimitSortRule extends RelOptRule {
+  EnumerableLimitSortRule() {
+    super(
+        operand(LogicalSort.class, any()),
+        "EnumerableLimitSortRule");
+  }
+
+  @Override public void onMatch(RelOptRuleCall call) {
+    final LogicalSort sort = call.rel(0);
+    if (sort.getCollation().getFieldCollations().isEmpty()
+        || !(sort.fetch instanceof RexLiteral)
+        || sort.offset != null && !(sort.offset instanceof RexLiteral)) {
+      return;
+    }
+    final RelNode input = sort.getInput();
+    call.transformTo(
+        EnumerableLimitSort.create(
+            convert(
+                input,
+                input.getTraitSet().replace(EnumerableConvention.INSTANCE)),
+            sort.getCollation(),
+            sort.offset,
+            sort.fetch));
+  }
+}
+
+// End EnumerableLimitSortRule.java
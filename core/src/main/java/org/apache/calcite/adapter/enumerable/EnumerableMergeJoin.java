@@ -17,6 +17,7 @@
 package org.apache.calcite.adapter.enumerable;
 
 import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
@@ -30,6 +31,7 @@
 import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelCollationTraitDef;
 import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.CorrelationId;
 import org.apache.calcite.rel.core.EquiJoin;
@@ -38,6 +40,7 @@
 import org.apache.calcite.rel.metadata.RelMdCollation;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.util.BuiltInMethod;
@@ -54,7 +57,13 @@
 
 /** Implementation of {@link org.apache.calcite.rel.core.Join} in
  * {@link EnumerableConvention enumerable calling convention} using
- * a merge algorithm. */
+ * a merge algorithm.
+ *
+ * <p>Both inputs must be sorted on the join keys. Supports inner, left,
+ * right and full joins; it holds in memory only the rows of each input that
+ * have the current key.
+ *
+ * @see EnumerableSemiJoin */
 public class EnumerableMergeJoin extends EquiJoin implements EnumerableRel {
   EnumerableMergeJoin(
       RelOptCluster cluster,
@@ -71,7 +80,9 @@ public class EnumerableMergeJoin extends EquiJoin implements EnumerableRel {
         variablesSet, joinType);
     final List<RelCollation> collations =
         traits.getTraits(RelCollationTraitDef.INSTANCE);
-    assert collations == null || RelCollations.contains(collations, leftKeys);
+    assert collations == null
+        || joinType.generatesNullsOnLeft()
+        || RelCollations.contains(collations, leftKeys);
   }
 
   @Deprecated // to be removed before 2.0
@@ -92,7 +103,8 @@ public static EnumerableMergeJoin create(RelNode left, RelNode right,
     if (traitSet.isEnabled(RelCollationTraitDef.INSTANCE)) {
       final RelMetadataQuery mq = cluster.getMetadataQuery();
       final List<RelCollation> collations =
-          RelMdCollation.mergeJoin(mq, left, right, leftKeys, rightKeys);
+          RelMdCollation.mergeJoin(mq, left, right, leftKeys, rightKeys,
+              joinType);
       traitSet = traitSet.replace(collations);
     }
     return new EnumerableMergeJoin(cluster, traitSet, left, right, condition,
@@ -104,6 +116,16 @@ public static EnumerableMergeJoin create(RelNode left, RelNode right,
       boolean semiJoinDone) {
     final JoinInfo joinInfo = JoinInfo.of(left, right, condition);
     assert joinInfo.isEqui();
+    if (joinType != this.joinType
+        && traitSet.isEnabled(RelCollationTraitDef.INSTANCE)) {
+      // The output collation depends on the join type. For example, a RIGHT
+      // join is sorted only on the right keys, but an INNER join must be
+      // sorted on the left keys too.
+      final RelMetadataQuery mq = getCluster().getMetadataQuery();
+      traitSet = traitSet.replace(
+          RelMdCollation.mergeJoin(mq, left, right, joinInfo.leftKeys,
+              joinInfo.rightKeys, joinType));
+    }
     try {
       return new EnumerableMergeJoin(getCluster(), traitSet, left, right,
           condition, joinInfo.leftKeys, joinInfo.rightKeys, variablesSet,
@@ -133,37 +155,16 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
         implementor.visitChild(this, 0, (EnumerableRel) left, pref);
     final Expression leftExpression =
         builder.append("left", leftResult.block);
-    final ParameterExpression left_ =
-        Expressions.parameter(leftResult.physType.getJavaRowType(), "left");
     final Result rightResult =
         implementor.visitChild(this, 1, (EnumerableRel) right, pref);
     final Expression rightExpression =
         builder.append("right", rightResult.block);
-    final ParameterExpression right_ =
-        Expressions.parameter(rightResult.physType.getJavaRowType(), "right");
     final JavaTypeFactory typeFactory = implementor.getTypeFactory();
     final PhysType physType =
         PhysTypeImpl.of(typeFactory, getRowType(), pref.preferArray());
-    final List<Expression> leftExpressions = new ArrayList<>();
-    final List<Expression> rightExpressions = new ArrayList<>();
-    for (Pair<Integer, Integer> pair : Pair.zip(leftKeys, rightKeys)) {
-      final RelDataType keyType =
-          typeFactory.leastRestrictive(
-              ImmutableList.of(
-                  left.getRowType().getFieldList().get(pair.left).getType(),
-                  right.getRowType().getFieldList().get(pair.right).getType()));
-      final Type keyClass = typeFactory.getJavaClass(keyType);
-      leftExpressions.add(
-          Types.castIfNecessary(keyClass,
-              leftResult.physType.fieldReference(left_, pair.left)));
-      rightExpressions.add(
-          Types.castIfNecessary(keyClass,
-              rightResult.physType.fieldReference(right_, pair.right)));
-    }
-    final PhysType leftKeyPhysType =
-        leftResult.physType.project(leftKeys, JavaRowFormat.LIST);
-    final PhysType rightKeyPhysType =
-        rightResult.physType.project(rightKeys, JavaRowFormat.LIST);
+    final Pair<Expression, Expression> keySelectors =
+        keySelectors(typeFactory, this, leftResult.physType,
+            rightResult.physType);
     return implementor.result(
         physType,
         builder.append(
@@ -172,10 +173,8 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
                 Expressions.list(
                     leftExpression,
                     rightExpression,
-                    Expressions.lambda(
-                        leftKeyPhysType.record(leftExpressions), left_),
-                    Expressions.lambda(
-                        rightKeyPhysType.record(rightExpressions), right_),
+                    keySelectors.left,
+                    keySelectors.right,
                     EnumUtils.joinSelector(joinType,
                         physType,
                         ImmutableList.of(
@@ -185,6 +184,106 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
                     Expressions.constant(
                         joinType.generatesNullsOnRight())))).toBlock());
   }
+
+  /** Generates the functions that extract the keys of the left and right
+   * inputs of a merge join.
+   *
+   * <p>The keys of both sides are converted to a common type, so that they
+   * can be compared. A key is null if any of its fields is null, because
+   * such a key matches no row of the other input. */
+  static Pair<Expression, Expression> keySelectors(
+      JavaTypeFactory typeFactory, EquiJoin join, PhysType leftPhysType,
+      PhysType rightPhysType) {
+    final ParameterExpression left_ =
+        Expressions.parameter(leftPhysType.getJavaRowType(), "left");
+    final ParameterExpression right_ =
+        Expressions.parameter(rightPhysType.getJavaRowType(), "right");
+    final List<Expression> leftExpressions = new ArrayList<>();
+    final List<Expression> rightExpressions = new ArrayList<>();
+    final List<Expression> leftNulls = new ArrayList<>();
+    final List<Expression> rightNulls = new ArrayList<>();
+    final List<RelDataTypeField> leftFields =
+        join.getLeft().getRowType().getFieldList();
+    final List<RelDataTypeField> rightFields =
+        join.getRight().getRowType().getFieldList();
+    for (Pair<Integer, Integer> pair
+        : Pair.zip(join.getLeftKeys(), join.getRightKeys())) {
+      final RelDataType leftType = leftFields.get(pair.left).getType();
+      final RelDataType rightType = rightFields.get(pair.right).getType();
+      final RelDataType keyType =
+          typeFactory.leastRestrictive(ImmutableList.of(leftType, rightType));
+      final Type keyClass = typeFactory.getJavaClass(keyType);
+      final Expression leftField =
+          leftPhysType.fieldReference(left_, pair.left);
+      final Expression rightField =
+          rightPhysType.fieldReference(right_, pair.right);
+      leftExpressions.add(Types.castIfNecessary(keyClass, leftField));
+      rightExpressions.add(Types.castIfNecessary(keyClass, rightField));
+      if (leftType.isNullable()) {
+        leftNulls.add(Expressions.equal(leftField, RexImpTable.NULL_EXPR));
+      }
+      if (rightType.isNullable()) {
+        rightNulls.add(Expressions.equal(rightField, RexImpTable.NULL_EXPR));
+      }
+    }
+    final PhysType leftKeyPhysType =
+        leftPhysType.project(join.getLeftKeys(), JavaRowFormat.LIST);
+    final PhysType rightKeyPhysType =
+        rightPhysType.project(join.getRightKeys(), JavaRowFormat.LIST);
+    return Pair.<Expression, Expression>of(
+        Expressions.lambda(
+            nullIf(leftNulls, leftKeyPhysType.record(leftExpressions)),
+            left_),
+        Expressions.lambda(
+            nullIf(rightNulls, rightKeyPhysType.record(rightExpressions)),
+            right_));
+  }
+
+  /** Returns an expression that is null if any of the conditions is true,
+   * otherwise the given expression. */
+  private static Expression nullIf(List<Expression> conditions,
+      Expression e) {
+    if (conditions.isEmpty()) {
+      return e;
+    }
+    return Expressions.condition(Expressions.foldOr(conditions),
+        Expressions.constant(null, Object.class),
+        Expressions.box(e));
+  }
+
+  /** Returns whether a relational expression is sorted in ascending order on
+   * the given keys, in the given order, and can therefore be an input to a
+   * merge join. */
+  static boolean isSortedOnKeys(RelMetadataQuery mq, RelNode rel,
+      List<Integer> keys) {
+    final List<RelCollation> collations = mq.collations(rel);
+    if (collations == null) {
+      return false;
+    }
+  outer:
+    for (RelCollation collation : collations) {
+      final List<RelFieldCollation> fieldCollations =
+          collation.getFieldCollations();
+      if (fieldCollations.size() < keys.size()) {
+        continue;
+      }
+      for (Ord<Integer> key : Ord.zip(keys)) {
+        final RelFieldCollation fieldCollation = fieldCollations.get(key.i);
+        if (fieldCollation.getFieldIndex() != key.e) {
+          continue outer;
+        }
+        switch (fieldCollation.getDirection()) {
+        case ASCENDING:
+        case STRICTLY_ASCENDING:
+          break;
+        default:
+          continue outer;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
 }
 
 // End EnumerableMergeJoin.java
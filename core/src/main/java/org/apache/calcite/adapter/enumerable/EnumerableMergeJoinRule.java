@@ -52,9 +52,10 @@ class EnumerableMergeJoinRule extends ConverterRule {
     LogicalJoin join = (LogicalJoin) rel;
     final JoinInfo info =
         JoinInfo.of(join.getLeft(), join.getRight(), join.getCondition());
-    if (join.getJoinType() != JoinRelType.INNER) {
-      // EnumerableMergeJoin only supports inner join.
-      // (It supports non-equi join, using a post-filter; see below.)
+    if (!info.isEqui() && join.getJoinType() != JoinRelType.INNER) {
+      // EnumerableMergeJoin supports non-equi inner join, using a
+      // post-filter (see below), but the post-filter would be wrong for
+      // an outer join.
       return null;
     }
     if (info.pairs().size() == 0) {
@@ -75,7 +76,11 @@ class EnumerableMergeJoinRule extends ConverterRule {
                   RelFieldCollation.NullDirection.LAST));
         }
         final RelCollation collation = RelCollations.of(fieldCollations);
-        collations.add(RelCollations.shift(collation, offset));
+        if (!join.getJoinType().generatesNullsOn(ord.i)) {
+          // An outer join does not preserve the order of the input on which
+          // it generates nulls
+          collations.add(RelCollations.shift(collation, offset));
+        }
         traits = traits.replace(collation);
       }
       newInputs.add(convert(ord.e, traits));
@@ -25,6 +25,7 @@
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Minus;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Util;
 
 import java.util.List;
 
@@ -45,6 +46,7 @@ public EnumerableMinus copy(RelTraitSet traitSet, List<RelNode> inputs,
   public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     final BlockBuilder builder = new BlockBuilder();
     Expression minusExp = null;
+    PhysType physType0 = null;
     for (Ord<RelNode> ord : Ord.zip(inputs)) {
       EnumerableRel input = (EnumerableRel) ord.e;
       final Result result = implementor.visitChild(this, ord.i, input, pref);
@@ -55,6 +57,17 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
 
       if (minusExp == null) {
         minusExp = childExp;
+        physType0 = result.physType;
+      } else if (EnumUtils.isLongKeyed(physType0, result.physType)) {
+        // Rows are values of a single primitive field, and can be held in a
+        // set of long values, without boxing
+        minusExp =
+            Expressions.call(BuiltInMethod.EXCEPT_LONG.method,
+                minusExp,
+                childExp,
+                result.physType.generateLongKey(0),
+                Util.first(result.physType.generateNullTest(0),
+                    Expressions.constant(null)));
       } else {
         minusExp =
             Expressions.call(minusExp,
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelCollationTraitDef;
+import org.apache.calcite.rel.RelDistributions;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.core.Exchange;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexProgram;
+import org.apache.calcite.sql.SqlSplittableAggFunction;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rule that splits an {@link EnumerableAggregate} whose input is large into
+ * a partial aggregate, which is evaluated in parallel over partitions of the
+ * input, and a final aggregate that combines the partial results.
+ *
+ * <p>The partial aggregate sits between a round-robin
+ * {@link EnumerableExchange} and a singleton one. Every aggregate function
+ * must be splittable (see {@link SqlSplittableAggFunction}); the final
+ * aggregate calls are generated by
+ * {@link SqlSplittableAggFunction#topSplit}.
+ *
+ * <p>The rule works on physical expressions, after the Volcano planner has
+ * finished, so that it does not need to reason about the cost of
+ * exchanges.
+ */
+public class EnumerableParallelAggregateRule extends RelOptRule {
+  /** Default for the minimum number of input rows. */
+  public static final double DEFAULT_MIN_ROW_COUNT = 10000d;
+
+  private final double minRowCount;
+
+  /** Creates an EnumerableParallelAggregateRule.
+   *
+   * @param minRowCount Minimum estimated number of input rows for the
+   *                    aggregate to be split */
+  public EnumerableParallelAggregateRule(double minRowCount) {
+    super(
+        operand(EnumerableAggregate.class,
+            operand(RelNode.class, any())),
+        "EnumerableParallelAggregateRule");
+    this.minRowCount = minRowCount;
+  }
+
+  @Override public void onMatch(RelOptRuleCall call) {
+    final EnumerableAggregate aggregate = call.rel(0);
+    final RelNode input = call.rel(1);
+    if (input instanceof Exchange
+        || aggregate.getGroupType() != Aggregate.Group.SIMPLE
+        || !isUnordered(aggregate)
+        || call.getMetadataQuery().getRowCount(input) < minRowCount) {
+      return;
+    }
+    for (AggregateCall aggCall : aggregate.getAggCallList()) {
+      if (aggCall.isDistinct()
+          || aggCall.getAggregation().unwrap(SqlSplittableAggFunction.class)
+              == null) {
+        return;
+      }
+    }
+
+    final RelNode scatter =
+        EnumerableExchange.create(input,
+            RelDistributions.ROUND_ROBIN_DISTRIBUTED);
+    final EnumerableAggregate partial =
+        aggregate.copy(aggregate.getTraitSet(), scatter, false,
+            aggregate.getGroupSet(), null, aggregate.getAggCallList());
+    final RelNode gather =
+        EnumerableExchange.create(partial, RelDistributions.SINGLETON);
+
+    // Combine the partial results. Most calls refer directly to a field of
+    // the partial aggregate; any that need an expression get a project.
+    final RexBuilder rexBuilder = aggregate.getCluster().getRexBuilder();
+    final int groupCount = aggregate.getGroupCount();
+    final List<RexNode> projects =
+        new ArrayList<>(rexBuilder.identityProjects(partial.getRowType()));
+    final SqlSplittableAggFunction.Registry<RexNode> registry =
+        new SqlSplittableAggFunction.Registry<RexNode>() {
+          public int register(RexNode e) {
+            int i = projects.indexOf(e);
+            if (i < 0) {
+              i = projects.size();
+              projects.add(e);
+            }
+            return i;
+          }
+        };
+    final List<AggregateCall> finalCalls = new ArrayList<>();
+    for (AggregateCall aggCall : aggregate.getAggCallList()) {
+      final SqlSplittableAggFunction splitter =
+          aggCall.getAggregation().unwrap(SqlSplittableAggFunction.class);
+      finalCalls.add(
+          splitter.topSplit(rexBuilder, registry, groupCount,
+              partial.getRowType(), aggCall, groupCount + finalCalls.size(),
+              -1));
+    }
+    RelNode finalInput = gather;
+    if (projects.size() > partial.getRowType().getFieldCount()) {
+      finalInput = EnumerableCalc.create(gather,
+          RexProgram.create(gather.getRowType(), projects, null,
+              (List<String>) null, rexBuilder));
+    }
+    call.transformTo(
+        aggregate.copy(aggregate.getTraitSet(), finalInput, false,
+            ImmutableBitSet.range(groupCount), null, finalCalls));
+  }
+
+  /** Returns whether a relational expression promises no particular order,
+   * and therefore may be evaluated in parallel. */
+  static boolean isUnordered(RelNode rel) {
+    final RelCollation collation =
+        rel.getTraitSet().getTrait(RelCollationTraitDef.INSTANCE);
+    return collation == null || collation.getFieldCollations().isEmpty();
+  }
+}
+
+// End EnumerableParallelAggregateRule.java
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.rel.RelDistributions;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Exchange;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+
+/**
+ * Rule that evaluates an {@link EnumerableJoin} whose inputs are large in
+ * parallel, by partitioning both inputs on the hash of their join keys.
+ *
+ * <p>Each input goes through a hash-distributed {@link EnumerableExchange},
+ * and the join is followed by a singleton exchange that gathers the results
+ * of all partitions. Rows with equal keys are in the same partition, so
+ * inner, semi, anti and outer joins all give the same result as if the
+ * inputs were not partitioned.
+ *
+ * <p>The rule works on physical expressions, after the Volcano planner has
+ * finished, so that it does not need to reason about the cost of
+ * exchanges.
+ */
+public class EnumerableParallelJoinRule extends RelOptRule {
+  /** Default for the minimum total number of input rows. */
+  public static final double DEFAULT_MIN_ROW_COUNT = 10000d;
+
+  private final double minRowCount;
+
+  /** Creates an EnumerableParallelJoinRule.
+   *
+   * @param minRowCount Minimum estimated total number of rows in the inputs
+   *                    for the join to be partitioned */
+  public EnumerableParallelJoinRule(double minRowCount) {
+    super(
+        operand(EnumerableJoin.class,
+            operand(RelNode.class, any()),
+            operand(RelNode.class, any())),
+        "EnumerableParallelJoinRule");
+    this.minRowCount = minRowCount;
+  }
+
+  @Override public void onMatch(RelOptRuleCall call) {
+    final EnumerableJoin join = call.rel(0);
+    final RelNode left = call.rel(1);
+    final RelNode right = call.rel(2);
+    if (left instanceof Exchange
+        || right instanceof Exchange
+        || join.getLeftKeys().isEmpty()
+        || !EnumerableParallelAggregateRule.isUnordered(join)) {
+      return;
+    }
+    final RelMetadataQuery mq = call.getMetadataQuery();
+    if (mq.getRowCount(left) + mq.getRowCount(right) < minRowCount) {
+      return;
+    }
+    // Keys are hashed as Java objects, and an INTEGER 1 does not have the
+    // same hash code as a BIGINT 1.
+    for (int i = 0; i < join.getLeftKeys().size(); i++) {
+      final RelDataType leftType = left.getRowType().getFieldList()
+          .get(join.getLeftKeys().get(i)).getType();
+      final RelDataType rightType = right.getRowType().getFieldList()
+          .get(join.getRightKeys().get(i)).getType();
+      if (leftType.getSqlTypeName() != rightType.getSqlTypeName()) {
+        return;
+      }
+    }
+
+    final RelNode newLeft =
+        EnumerableExchange.create(left,
+            RelDistributions.hash(join.getLeftKeys()));
+    final RelNode newRight =
+        EnumerableExchange.create(right,
+            RelDistributions.hash(join.getRightKeys()));
+    final EnumerableJoin newJoin =
+        join.copy(join.getTraitSet(), join.getCondition(), newLeft, newRight,
+            join.getJoinType(), join.isSemiJoinDone());
+    call.transformTo(
+        EnumerableExchange.create(newJoin, RelDistributions.SINGLETON));
+  }
+}
+
+// End EnumerableParallelJoinRule.java
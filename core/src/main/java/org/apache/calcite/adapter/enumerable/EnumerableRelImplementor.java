@@ -38,9 +38,12 @@
 import org.apache.calcite.linq4j.tree.Statement;
 import org.apache.calcite.linq4j.tree.Types;
 import org.apache.calcite.linq4j.tree.VisitorImpl;
+import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.runtime.Bindable;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Pair;
+import org.apache.calcite.util.SaffronProperties;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
@@ -78,6 +81,10 @@ public class EnumerableRelImplementor extends JavaRelImplementor {
       Maps.newHashMap();
   private final Map<Object, ParameterExpression> stashedParameters =
       Maps.newIdentityHashMap();
+  private final Map<RelNode, EnumerableRel.Result> partitions =
+      Maps.newIdentityHashMap();
+  private final Map<RelNode, List<Pair<Integer, Expression>>> runtimeFilters =
+      Maps.newIdentityHashMap();
 
   protected final Function1<String, RexToLixTranslator.InputGetter> allCorrelateVariables =
       new Function1<String, RexToLixTranslator.InputGetter>() {
@@ -129,6 +136,17 @@ public ClassDeclaration implementRoot(EnumerableRel rootRel,
       }
     }
 
+    // Split methods that are too large for the JVM to compile efficiently.
+    // Do this before registering types, because it creates frame types.
+    final int maxMethodSize =
+        SaffronProperties.INSTANCE.generatedMethodMaximumSize().get();
+    if (maxMethodSize > 0) {
+      result = new EnumerableRel.Result(
+          new MethodSplitter(getTypeFactory(), maxMethodSize)
+              .split(result.block),
+          result.physType, result.format);
+    }
+
     final List<MemberDeclaration> memberDeclarations = new ArrayList<>();
     new TypeRegistrar(memberDeclarations).go(result);
 
@@ -208,6 +226,15 @@ private ClassDeclaration classDecl(
               null));
     }
 
+    // A key also has a field to cache its hash code:
+    //   private int hash;
+    final ParameterExpression hashParameter =
+        Expressions.parameter(int.class, "hash");
+    if (type.isKey()) {
+      classDeclaration.memberDeclarations.add(
+          Expressions.fieldDecl(Modifier.PRIVATE, hashParameter, null));
+    }
+
     // Constructor:
     //   Foo(T0 f0, ...) { this.f0 = f0; ... }
     final BlockBuilder blockBuilder = new BlockBuilder();
@@ -224,6 +251,28 @@ private ClassDeclaration classDecl(
             parameters,
             blockBuilder.toBlock()));
 
+    // A key also has a constructor that initializes every field:
+    //   Foo(T0 f0, ...) { this.f0 = f0; ... }
+    if (type.isKey()) {
+      final BlockBuilder blockBuilder1 = new BlockBuilder();
+      final List<ParameterExpression> parameters1 = new ArrayList<>();
+      for (Types.RecordField field : type.getRecordFields()) {
+        final ParameterExpression parameter =
+            Expressions.parameter(field.getType(), field.getName());
+        parameters1.add(parameter);
+        blockBuilder1.add(
+            Expressions.statement(
+                Expressions.assign(
+                    Expressions.field(thisParameter, field), parameter)));
+      }
+      classDeclaration.memberDeclarations.add(
+          Expressions.constructorDecl(
+              Modifier.PUBLIC,
+              type,
+              parameters1,
+              blockBuilder1.toBlock()));
+    }
+
     // equals method():
     //   public boolean equals(Object o) {
     //       if (this == o) return true;
@@ -253,6 +302,15 @@ private ClassDeclaration classDecl(
             thatParameter,
             Expressions.convert_(oParameter, type)));
     final List<Expression> conditions = new ArrayList<>();
+    if (type.isKey()) {
+      // Keys that are not equal usually have different hash codes, which
+      // are cheap to compare because they are cached
+      final Method hashCode = Types.lookupMethod(Object.class, "hashCode");
+      conditions.add(
+          Expressions.equal(
+              Expressions.call(thisParameter, hashCode),
+              Expressions.call(thatParameter, hashCode)));
+    }
     for (Types.RecordField field : type.getRecordFields()) {
       conditions.add(
           Primitive.is(field.getType())
@@ -280,6 +338,17 @@ private ClassDeclaration classDecl(
     //     ...
     //     return h;
     //   }
+    //
+    // A key computes its hash code once:
+    //   public int hashCode() {
+    //     if (hash == 0) {
+    //       int h = 0;
+    //       h = hash(h, f0);
+    //       ...
+    //       hash = h;
+    //     }
+    //     return hash;
+    //   }
     final BlockBuilder blockBuilder3 = new BlockBuilder();
     final ParameterExpression hParameter =
         Expressions.parameter(int.class, "h");
@@ -300,15 +369,29 @@ private ClassDeclaration classDecl(
                           hParameter,
                           Expressions.field(thisParameter, field))))));
     }
-    blockBuilder3.add(
-        Expressions.return_(null, hParameter));
+    final BlockStatement hashBlock;
+    if (type.isKey()) {
+      blockBuilder3.add(
+          Expressions.statement(
+              Expressions.assign(hashParameter, hParameter)));
+      hashBlock =
+          Expressions.block(
+              Expressions.ifThen(
+                  Expressions.equal(hashParameter, constantZero),
+                  blockBuilder3.toBlock()),
+              Expressions.return_(null, hashParameter));
+    } else {
+      blockBuilder3.add(
+          Expressions.return_(null, hParameter));
+      hashBlock = blockBuilder3.toBlock();
+    }
     classDeclaration.memberDeclarations.add(
         Expressions.methodDecl(
             Modifier.PUBLIC,
             int.class,
             "hashCode",
             Collections.<ParameterExpression>emptyList(),
-            blockBuilder3.toBlock()));
+            hashBlock));
 
     // compareTo method:
     //   public int compareTo(MyClass that) {
@@ -481,6 +564,65 @@ public RexToLixTranslator.InputGetter getCorrelVariableGetter(String name) {
     return corrVars.get(name);
   }
 
+  /** Registers the code that returns one partition of the input of a
+   * partitioning {@link EnumerableExchange}, while code is being generated
+   * for the region of the plan that is evaluated once per partition. */
+  public void registerPartition(RelNode exchange,
+      EnumerableRel.Result result) {
+    partitions.put(exchange, result);
+  }
+
+  public void clearPartition(RelNode exchange) {
+    assert partitions.containsKey(exchange) : "Partition of " + exchange
+        + " should be defined";
+    partitions.remove(exchange);
+  }
+
+  /** Returns the code that returns one partition of the input of a
+   * partitioning exchange, or null if the exchange is not inside a
+   * region. */
+  public EnumerableRel.Result getPartition(RelNode exchange) {
+    return partitions.get(exchange);
+  }
+
+  /** Registers a runtime filter that a hash join will publish, at run time,
+   * to a slot, so that a scan beneath the probe input of the join can skip
+   * rows that the filter rejects.
+   *
+   * @param scan Scan
+   * @param field Ordinal of the field of the scan to which the filter applies
+   * @param slot Expression for the
+   *             {@link org.apache.calcite.runtime.RuntimeFilter.Slot}
+   */
+  public void registerRuntimeFilter(RelNode scan, int field, Expression slot) {
+    List<Pair<Integer, Expression>> list = runtimeFilters.get(scan);
+    if (list == null) {
+      list = new ArrayList<>();
+      runtimeFilters.put(scan, list);
+    }
+    list.add(Pair.of(field, slot));
+  }
+
+  public void clearRuntimeFilter(RelNode scan, Expression slot) {
+    final List<Pair<Integer, Expression>> list = runtimeFilters.get(scan);
+    assert list != null && Pair.right(list).contains(slot)
+        : "Runtime filter of " + scan + " should be defined";
+    list.remove(Pair.right(list).indexOf(slot));
+    if (list.isEmpty()) {
+      runtimeFilters.remove(scan);
+    }
+  }
+
+  /** Returns the runtime filters registered for a scan, each a pair of the
+   * field ordinal and the expression for the slot; empty if there are
+   * none. */
+  public List<Pair<Integer, Expression>> getRuntimeFilters(RelNode scan) {
+    final List<Pair<Integer, Expression>> list = runtimeFilters.get(scan);
+    return list == null
+        ? ImmutableList.<Pair<Integer, Expression>>of()
+        : ImmutableList.copyOf(list);
+  }
+
   public EnumerableRel.Result result(PhysType physType, BlockStatement block) {
     return new EnumerableRel.Result(
         block, physType, ((PhysTypeImpl) physType).format);
@@ -37,6 +37,9 @@ public class EnumerableRules {
   public static final RelOptRule ENUMERABLE_MERGE_JOIN_RULE =
       new EnumerableMergeJoinRule();
 
+  public static final RelOptRule ENUMERABLE_BAND_JOIN_RULE =
+      new EnumerableBandJoinRule();
+
   public static final RelOptRule ENUMERABLE_SEMI_JOIN_RULE =
       new EnumerableSemiJoinRule();
 
@@ -64,6 +67,21 @@ private EnumerableRules() {
   public static final EnumerableLimitRule ENUMERABLE_LIMIT_RULE =
       new EnumerableLimitRule();
 
+  public static final EnumerableLimitSortRule ENUMERABLE_LIMIT_SORT_RULE =
+      new EnumerableLimitSortRule();
+
+  public static final EnumerableExchangeRule ENUMERABLE_EXCHANGE_RULE =
+      new EnumerableExchangeRule();
+
+  public static final EnumerableParallelAggregateRule
+      ENUMERABLE_PARALLEL_AGGREGATE_RULE =
+      new EnumerableParallelAggregateRule(
+          EnumerableParallelAggregateRule.DEFAULT_MIN_ROW_COUNT);
+
+  public static final EnumerableParallelJoinRule ENUMERABLE_PARALLEL_JOIN_RULE =
+      new EnumerableParallelJoinRule(
+          EnumerableParallelJoinRule.DEFAULT_MIN_ROW_COUNT);
+
   public static final EnumerableUnionRule ENUMERABLE_UNION_RULE =
       new EnumerableUnionRule();
 
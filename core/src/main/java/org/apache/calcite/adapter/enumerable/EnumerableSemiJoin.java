@@ -29,13 +29,19 @@
 import org.apache.calcite.rel.core.JoinRelType;
 import org.apache.calcite.rel.core.SemiJoin;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.ImmutableIntList;
+import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
 
 /** Implementation of {@link org.apache.calcite.rel.core.SemiJoin} in
- * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}. */
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}.
+ *
+ * <p>If both inputs are sorted on the join keys, merges them, using
+ * constant memory; otherwise builds a hash table of the keys of the right
+ * input. */
 public class EnumerableSemiJoin extends SemiJoin implements EnumerableRel {
   /** Creates an EnumerableSemiJoin.
    *
@@ -116,6 +122,59 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
         builder.append(
             "right", rightResult.block);
     final PhysType physType = leftResult.physType;
+    final RelMetadataQuery mq = getCluster().getMetadataQuery();
+    if (EnumerableMergeJoin.isSortedOnKeys(mq, left, leftKeys)
+        && EnumerableMergeJoin.isSortedOnKeys(mq, right, rightKeys)) {
+      // Both inputs are sorted on the keys, so merge them rather than
+      // building a hash table of the right input
+      final Pair<Expression, Expression> keySelectors =
+          EnumerableMergeJoin.keySelectors(implementor.getTypeFactory(), this,
+              leftResult.physType, rightResult.physType);
+      return implementor.result(
+          physType,
+          builder.append(
+              Expressions.call(
+                  BuiltInMethod.MERGE_SEMI_JOIN.method,
+                  Expressions.list(
+                      leftExpression,
+                      rightExpression,
+                      keySelectors.left,
+                      keySelectors.right)))
+              .toBlock());
+    }
+    if (leftKeys.size() == 1) {
+      // A single key of a primitive type can be held in a set of long values,
+      // without boxing
+      final RelDataType leftType = left.getRowType().getFieldList()
+          .get(leftKeys.get(0)).getType();
+      final RelDataType rightType = right.getRowType().getFieldList()
+          .get(rightKeys.get(0)).getType();
+      final Expression leftKey =
+          leftResult.physType.generateLongKey(leftKeys.get(0));
+      final Expression rightKey =
+          rightResult.physType.generateLongKey(rightKeys.get(0));
+      if (leftType.getSqlTypeName() == rightType.getSqlTypeName()
+          && leftKey != null
+          && rightKey != null) {
+        return implementor.result(
+            physType,
+            builder.append(
+                Expressions.call(
+                    BuiltInMethod.SEMI_JOIN_LONG.method,
+                    leftExpression,
+                    rightExpression,
+                    leftKey,
+                    Util.first(
+                        leftResult.physType.generateNullTest(leftKeys.get(0)),
+                        Expressions.constant(null)),
+                    rightKey,
+                    Util.first(
+                        rightResult.physType.generateNullTest(
+                            rightKeys.get(0)),
+                        Expressions.constant(null))))
+                .toBlock());
+      }
+    }
     return implementor.result(
         physType,
         builder.append(
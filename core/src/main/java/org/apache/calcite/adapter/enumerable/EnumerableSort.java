@@ -27,6 +27,7 @@
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.Pair;
+import org.apache.calcite.util.Util;
 
 /** Implementation of {@link org.apache.calcite.rel.core.Sort} in
  * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}. */
@@ -81,6 +82,36 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
         inputPhysType.generateCollationKey(
             collation.getFieldCollations());
 
+    final long memoryBudget = EnumUtils.memoryBudget(this);
+    if (memoryBudget > 0 && EnumUtils.canSpill(result.format)) {
+      // Rows can be written to disk, so generate an external sort that spills
+      // sorted runs if the input does not fit within the budget.
+      builder.add(
+          Expressions.return_(null,
+              Expressions.call(
+                  BuiltInMethod.ORDER_BY_SPILL.method,
+                  childExp,
+                  builder.append("keySelector", pair.left),
+                  Util.first(
+                      builder.appendIfNotNull("comparator", pair.right),
+                      Expressions.constant(null)),
+                  Expressions.constant(memoryBudget))));
+      return implementor.result(physType, builder.toBlock());
+    }
+    final Expression normalizedKey =
+        inputPhysType.generateNormalizedCollationKey(
+            collation.getFieldCollations());
+    if (normalizedKey != null) {
+      // The sort keys are primitive, so generate a radix sort on a single
+      // long key, rather than a sort that calls a comparator.
+      builder.add(
+          Expressions.return_(null,
+              Expressions.call(
+                  BuiltInMethod.ORDER_BY_NORMALIZED_KEY.method,
+                  childExp,
+                  builder.append("keySelector", normalizedKey))));
+      return implementor.result(physType, builder.toBlock());
+    }
     builder.add(
         Expressions.return_(null,
             Expressions.call(childExp,
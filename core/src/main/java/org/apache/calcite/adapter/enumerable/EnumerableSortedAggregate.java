@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.Ord;
+import org.apache.calcite.linq4j.function.Function2;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.metadata.RelMdCollation;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Implementation of {@link org.apache.calcite.rel.core.Aggregate} in
+ * {@link EnumerableConvention enumerable calling convention} whose input is
+ * sorted on the group keys.
+ *
+ * <p>Rows with the same key are adjacent, so the aggregate keeps the
+ * accumulators of only the current group, and emits the group as soon as
+ * the key changes. It uses constant memory, returns its first row before it
+ * has read all of its input, and returns groups in the order of its input.
+ *
+ * @see RelMdCollation#sortedAggregate */
+public class EnumerableSortedAggregate extends EnumerableAggregateBase
+    implements EnumerableRel {
+  public EnumerableSortedAggregate(
+      RelOptCluster cluster,
+      RelTraitSet traitSet,
+      RelNode child,
+      boolean indicator,
+      ImmutableBitSet groupSet,
+      List<ImmutableBitSet> groupSets,
+      List<AggregateCall> aggCalls)
+      throws InvalidRelException {
+    super(cluster, traitSet, child, indicator, groupSet, groupSets, aggCalls);
+    if (getGroupType() != Group.SIMPLE || groupSet.isEmpty()) {
+      throw new InvalidRelException(
+          "sorted aggregate requires a single, non-empty group set");
+    }
+  }
+
+  @Override public EnumerableSortedAggregate copy(RelTraitSet traitSet,
+      RelNode input, boolean indicator, ImmutableBitSet groupSet,
+      List<ImmutableBitSet> groupSets, List<AggregateCall> aggCalls) {
+    try {
+      return new EnumerableSortedAggregate(getCluster(), traitSet, input,
+          indicator, groupSet, groupSets, aggCalls);
+    } catch (InvalidRelException e) {
+      // Semantic error not possible. Must be a bug. Convert to
+      // internal error.
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    // Same work per row as EnumerableAggregate, but without a hash table.
+    // The cost of sorting the input, if any, is paid by the input.
+    return super.computeSelfCost(planner, mq).multiplyBy(0.9d);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    final JavaTypeFactory typeFactory = implementor.getTypeFactory();
+    final BlockBuilder builder = new BlockBuilder();
+    final EnumerableRel child = (EnumerableRel) getInput();
+    final Result result = implementor.visitChild(this, 0, child, pref);
+    final Expression childExp = builder.append("child", result.block);
+
+    final PhysType physType =
+        PhysTypeImpl.of(typeFactory, getRowType(), pref.preferCustom());
+    final PhysType inputPhysType = result.physType;
+    final ParameterExpression parameter =
+        Expressions.parameter(inputPhysType.getJavaRowType(), "a0");
+    final PhysType keyPhysType =
+        inputPhysType.project(groupSet.asList(), JavaRowFormat.LIST);
+
+    final List<AggImpState> aggs = new ArrayList<>(aggCalls.size());
+    for (Ord<AggregateCall> call : Ord.zip(aggCalls)) {
+      aggs.add(new AggImpState(call.i, call.e, false));
+    }
+    final Accumulators accumulators =
+        implementAccumulators(typeFactory, builder, inputPhysType,
+            keyPhysType, physType, aggs);
+
+    // return EnumerableDefaults.sortedGroupBy(child, keySelector,
+    //     accumulatorInitializer, accumulatorAdder, resultSelector);
+    final Expression keySelector_ =
+        builder.append("keySelector",
+            inputPhysType.generateSelector(parameter, groupSet.asList(),
+                keyPhysType.getFormat()));
+    final Expression resultSelector_ =
+        builder.append("resultSelector",
+            Expressions.lambda(Function2.class,
+                accumulators.resultBlock.toBlock(),
+                accumulators.key,
+                accumulators.acc));
+    builder.add(
+        Expressions.return_(null,
+            Expressions.call(BuiltInMethod.SORTED_GROUP_BY.method,
+                Expressions.list(childExp,
+                    keySelector_,
+                    accumulators.initializer,
+                    accumulators.adder,
+                    resultSelector_)
+                    .appendIfNotNull(keyPhysType.comparer()))));
+    return implementor.result(physType, builder.toBlock());
+  }
+}
+
+// End EnumerableSortedAggregate.java
@@ -44,6 +44,7 @@
 import org.apache.calcite.schema.StreamableTable;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Pair;
 
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
@@ -263,7 +264,15 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
             implementor.getTypeFactory(),
             getRowType(),
             format());
-    final Expression expression = getExpression(physType);
+    Expression expression = getExpression(physType);
+    for (Pair<Integer, Expression> pair
+        : implementor.getRuntimeFilters(this)) {
+      expression =
+          Expressions.call(BuiltInMethod.APPLY_RUNTIME_FILTER.method,
+              expression,
+              physType.generateAccessor(ImmutableList.of(pair.left)),
+              pair.right);
+    }
     return implementor.result(physType, Blocks.toBlock(expression));
   }
 }
@@ -16,11 +16,9 @@
  */
 package org.apache.calcite.adapter.enumerable;
 
-import org.apache.calcite.linq4j.function.Predicate2;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
-import org.apache.calcite.linq4j.tree.ParameterExpression;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptCost;
 import org.apache.calcite.plan.RelOptPlanner;
@@ -32,9 +30,7 @@
 import org.apache.calcite.rel.core.JoinRelType;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rex.RexNode;
-import org.apache.calcite.rex.RexProgramBuilder;
 import org.apache.calcite.util.BuiltInMethod;
-import org.apache.calcite.util.Pair;
 
 import com.google.common.collect.ImmutableList;
 
@@ -90,8 +86,10 @@ protected EnumerableThetaJoin(RelOptCluster cluster, RelTraitSet traits,
       }
     }
 
+    // The condition is evaluated for every pair of rows.
     final double rightRowCount = right.estimateRowCount(mq);
     final double leftRowCount = left.estimateRowCount(mq);
+    rowCount += leftRowCount * rightRowCount;
     if (Double.isInfinite(leftRowCount)) {
       rowCount = leftRowCount;
     }
@@ -136,15 +134,16 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
         PhysTypeImpl.of(implementor.getTypeFactory(),
             getRowType(),
             pref.preferArray());
-    final BlockBuilder builder2 = new BlockBuilder();
     return implementor.result(
         physType,
         builder.append(
             Expressions.call(BuiltInMethod.THETA_JOIN.method,
                 leftExpression,
                 rightExpression,
-                predicate(implementor,
-                    builder2,
+                EnumUtils.joinPredicate(implementor,
+                    getCluster().getRexBuilder(),
+                    left,
+                    right,
                     leftResult.physType,
                     rightResult.physType,
                     condition),
@@ -156,34 +155,6 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
                 Expressions.constant(joinType.generatesNullsOnRight())))
             .toBlock());
   }
-
-  Expression predicate(EnumerableRelImplementor implementor,
-      BlockBuilder builder, PhysType leftPhysType, PhysType rightPhysType,
-      RexNode condition) {
-    final ParameterExpression left_ =
-        Expressions.parameter(leftPhysType.getJavaRowType(), "left");
-    final ParameterExpression right_ =
-        Expressions.parameter(rightPhysType.getJavaRowType(), "right");
-    final RexProgramBuilder program =
-        new RexProgramBuilder(
-            implementor.getTypeFactory().builder()
-                .addAll(left.getRowType().getFieldList())
-                .addAll(right.getRowType().getFieldList())
-                .build(),
-            getCluster().getRexBuilder());
-    program.addCondition(condition);
-    builder.add(
-        Expressions.return_(null,
-            RexToLixTranslator.translateCondition(program.getProgram(),
-                implementor.getTypeFactory(),
-                builder,
-                new RexToLixTranslator.InputGetterImpl(
-                    ImmutableList.of(Pair.of((Expression) left_, leftPhysType),
-                        Pair.of((Expression) right_, rightPhysType))),
-                implementor.allCorrelateVariables)));
-    return Expressions.lambda(Predicate2.class, builder.toBlock(), left_,
-        right_);
-  }
 }
 
 // End EnumerableThetaJoin.java
@@ -46,6 +46,7 @@
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.rex.RexWindowBound;
+import org.apache.calcite.runtime.SegmentTree;
 import org.apache.calcite.runtime.SortedMultiMap;
 import org.apache.calcite.sql.SqlAggFunction;
 import org.apache.calcite.util.BuiltInMethod;
@@ -139,6 +140,10 @@ private void sampleOfTheGeneratedWindowedAggregate() {
           actualStart = start;
           // implementReset
         } else { // must be start == prevStart && end > prevEnd
+          // (or start > prevStart, if every aggregate can remove rows)
+          // for (int j = prevStart; j < start; j++) {
+          //   implementRemove
+          // }
           actualStart = prevEnd + 1;
         }
         prevStart = start;
@@ -288,6 +293,12 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
       declareAndResetState(typeFactory, builder, result, windowIdx, aggs,
           outputPhysType, outputRow);
 
+      final List<AggImpState> treeAggs = new ArrayList<AggImpState>();
+      final List<AggImpState> accAggs = new ArrayList<AggImpState>();
+      final boolean invertible = splitAggs(aggs, group, treeAggs, accAggs);
+      final Function<AggImpState, List<RexNode>> rexArguments =
+          getRexArguments(result);
+
       // There are assumptions that minX==0. If ever change this, look for
       // frameRowCount, bounds checking, etc
       final Expression minX = Expressions.constant(0);
@@ -296,6 +307,12 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
       final Expression maxX = builder3.append("maxX",
           Expressions.subtract(
               partitionRowCount, Expressions.constant(1)));
+      final List<Expression> trees = new ArrayList<Expression>();
+      for (AggImpState agg : treeAggs) {
+        trees.add(
+            buildSegmentTree(typeFactory, builder3, result, inputPhysType,
+                translatedConstants, rows_, agg, rexArguments));
+      }
 
       final Expression startUnchecked = builder4.append("start",
           translateBound(translator, i_, row_, minX, maxX, rows_,
@@ -377,7 +394,7 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
       builder6.add(
           Expressions.statement(Expressions.assign(actualStart, startX)));
 
-      for (final AggImpState agg : aggs) {
+      for (final AggImpState agg : accAggs) {
         agg.implementor.implementReset(agg.context,
             new WinAggResetContextImpl(builder6, agg.state, i_, startX, endX,
                 hasRows, partitionRowCount, frameRowCount));
@@ -391,8 +408,31 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
           lowerBoundCanChange,
           Expressions.lessThan(endX, prevEnd));
 
+      final DeclarationStatement jDecl =
+          Expressions.declare(0, "j", actualStart);
+      final Function<BlockBuilder, WinAggFrameResultContext>
+          resultContextBuilder =
+          getBlockBuilderWinAggFrameResultContextFunction(typeFactory, result,
+              translatedConstants, comparator_, rows_, i_, startX, endX,
+              minX, maxX,
+              hasRows, frameRowCount, partitionRowCount,
+              jDecl, inputPhysType);
+
+      final BlockBuilder builder8 = new BlockBuilder(true, builder5);
+      if (invertible) {
+        needRecomputeWindow = implementRemove(accAggs, builder8,
+            resultContextBuilder, rexArguments, jDecl, startX, endX,
+            prevStart, prevEnd);
+      }
+      builder8.add(
+          Expressions.statement(
+              Expressions.assign(actualStart,
+                  Expressions.add(prevEnd, Expressions.constant(1)))));
+
       BlockStatement resetWindowState = builder6.toBlock();
-      if (resetWindowState.statements.size() == 1) {
+      BlockStatement keepWindowState = builder8.toBlock();
+      if (resetWindowState.statements.size() == 1
+          && keepWindowState.statements.size() == 1) {
         builder5.add(
             Expressions.declare(0, actualStart,
                 Expressions.condition(needRecomputeWindow, startX,
@@ -402,10 +442,7 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
             Expressions.declare(0, actualStart, null));
         builder5.add(
             Expressions.ifThenElse(needRecomputeWindow,
-                resetWindowState,
-                Expressions.statement(
-                    Expressions.assign(actualStart,
-                    Expressions.add(prevEnd, Expressions.constant(1))))));
+                resetWindowState, keepWindowState));
       }
 
       if (lowerBoundCanChange instanceof BinaryExpression) {
@@ -416,38 +453,8 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
           Expressions.statement(Expressions.assign(prevEnd, endX)));
 
       final BlockBuilder builder7 = new BlockBuilder(true, builder5);
-      final DeclarationStatement jDecl =
-          Expressions.declare(0, "j", actualStart);
-
-      final PhysType inputPhysTypeFinal = inputPhysType;
-      final Function<BlockBuilder, WinAggFrameResultContext>
-          resultContextBuilder =
-          getBlockBuilderWinAggFrameResultContextFunction(typeFactory, result,
-              translatedConstants, comparator_, rows_, i_, startX, endX,
-              minX, maxX,
-              hasRows, frameRowCount, partitionRowCount,
-              jDecl, inputPhysTypeFinal);
-
-      final Function<AggImpState, List<RexNode>> rexArguments =
-          new Function<AggImpState, List<RexNode>>() {
-            public List<RexNode> apply(AggImpState agg) {
-              List<Integer> argList = agg.call.getArgList();
-              List<RelDataType> inputTypes =
-                  EnumUtils.fieldRowTypes(
-                      result.physType.getRowType(),
-                      constants,
-                      argList);
-              List<RexNode> args = new ArrayList<RexNode>(
-                  inputTypes.size());
-              for (int i = 0; i < argList.size(); i++) {
-                Integer idx = argList.get(i);
-                args.add(new RexInputRef(idx, inputTypes.get(i)));
-              }
-              return args;
-            }
-          };
-
-      implementAdd(aggs, builder7, resultContextBuilder, rexArguments, jDecl);
+      implementAdd(accAggs, builder7, resultContextBuilder, rexArguments,
+          jDecl, false);
 
       BlockStatement forBlock = builder7.toBlock();
       if (!forBlock.statements.isEmpty()) {
@@ -463,8 +470,11 @@ public List<RexNode> apply(AggImpState agg) {
         builder5.add(forAggLoop);
       }
 
-      if (implementResult(aggs, builder5, resultContextBuilder, rexArguments,
-              true)) {
+      final boolean treeResults =
+          implementSegmentTreeResults(treeAggs, trees, builder5, startX, endX);
+      if (implementResult(accAggs, builder5, resultContextBuilder,
+              rexArguments, true)
+          || treeResults) {
         builder4.add(
             Expressions.ifThen(
                 Expressions.orElse(lowerBoundCanChange,
@@ -472,7 +482,7 @@ public List<RexNode> apply(AggImpState agg) {
                 builder5.toBlock()));
       }
 
-      implementResult(aggs, builder4, resultContextBuilder, rexArguments,
+      implementResult(accAggs, builder4, resultContextBuilder, rexArguments,
           false);
 
       builder4.add(
@@ -692,24 +702,14 @@ private Pair<Expression, Expression> getPartitionIterator(
             builder2.newName("v"));
 
     Pair<Type, List<Expression>> selector =
-        inputPhysType.selector(v_, group.keys.asList(), JavaRowFormat.CUSTOM);
+        inputPhysType.selector(v_, group.keys.asList(), JavaRowFormat.KEY);
     final ParameterExpression key_;
     if (selector.left instanceof Types.RecordType) {
       Types.RecordType keyJavaType = (Types.RecordType) selector.left;
-      List<Expression> initExpressions = selector.right;
       key_ = Expressions.parameter(keyJavaType, "key");
-      builder2.add(Expressions.declare(0, key_, null));
       builder2.add(
-          Expressions.statement(
-              Expressions.assign(key_, Expressions.new_(keyJavaType))));
-      List<Types.RecordField> fieldList = keyJavaType.getRecordFields();
-      for (int i = 0; i < initExpressions.size(); i++) {
-        Expression right = initExpressions.get(i);
-        builder2.add(
-            Expressions.statement(
-                Expressions.assign(
-                    Expressions.field(key_, fieldList.get(i)), right)));
-      }
+          Expressions.declare(0, key_,
+              Expressions.new_(keyJavaType, selector.right)));
     } else {
       DeclarationStatement declare =
           Expressions.declare(0, "key", selector.right.get(0));
@@ -848,11 +848,182 @@ public List<? extends Type> keyTypes() {
     }
   }
 
+  private Function<AggImpState, List<RexNode>> getRexArguments(
+      final Result result) {
+    return new Function<AggImpState, List<RexNode>>() {
+      public List<RexNode> apply(AggImpState agg) {
+        List<Integer> argList = agg.call.getArgList();
+        List<RelDataType> inputTypes =
+            EnumUtils.fieldRowTypes(
+                result.physType.getRowType(),
+                constants,
+                argList);
+        List<RexNode> args = new ArrayList<RexNode>(
+            inputTypes.size());
+        for (int i = 0; i < argList.size(); i++) {
+          Integer idx = argList.get(i);
+          args.add(new RexInputRef(idx, inputTypes.get(i)));
+        }
+        return args;
+      }
+    };
+  }
+
+  /** Divides the aggregate calls of a window into those that are computed
+   * from a segment tree and those that use an accumulator, and returns
+   * whether rows can be removed from all of the accumulators.
+   *
+   * <p>Neither technique helps unless the lower bound of the frame can
+   * move. */
+  private static boolean splitAggs(List<AggImpState> aggs, Group group,
+      List<AggImpState> treeAggs, List<AggImpState> accAggs) {
+    final boolean lowerBoundFixed =
+        group.lowerBound.isUnbounded() && group.lowerBound.isPreceding();
+    boolean invertible = !lowerBoundFixed;
+    for (AggImpState agg : aggs) {
+      if (!lowerBoundFixed && useSegmentTree(agg, group)) {
+        treeAggs.add(agg);
+      } else {
+        accAggs.add(agg);
+        invertible &= supportsRemove(agg);
+      }
+    }
+    return invertible;
+  }
+
+  /** Returns whether an aggregate call can be computed from a segment
+   * tree. The tree returns null for an empty frame, so the result must be
+   * nullable unless the frame is never empty. */
+  private static boolean useSegmentTree(AggImpState agg, Group group) {
+    if (!(agg.implementor instanceof SegmentTreeWinAggImplementor)
+        || agg.call.isDistinct()
+        || !agg.call.type.isNullable() && !group.isAlwaysNonEmpty()) {
+      return false;
+    }
+    return ((SegmentTreeWinAggImplementor) agg.implementor)
+        .supportsSegmentTree((WinAggContext) agg.context);
+  }
+
+  /** Returns whether rows can be removed from the accumulator of an
+   * aggregate call. */
+  private static boolean supportsRemove(AggImpState agg) {
+    return agg.implementor instanceof InvertibleWinAggImplementor
+        && !agg.call.isDistinct()
+        && ((InvertibleWinAggImplementor) agg.implementor)
+            .supportsRemove((WinAggContext) agg.context);
+  }
+
+  /** Generates code that builds, for each partition, a segment tree over
+   * the argument values of an aggregate call. */
+  private Expression buildSegmentTree(JavaTypeFactory typeFactory,
+      BlockBuilder builder3, Result result, PhysType inputPhysType,
+      List<Expression> translatedConstants, Expression rows_,
+      AggImpState agg, Function<AggImpState, List<RexNode>> rexArguments) {
+    //   final Object[] values = new Object[rows.length];
+    //   for (int k = 0; k < rows.length; k++) {
+    //     values[k] = ((Employee) rows[k]).salary;
+    //   }
+    //   final SegmentTree tree = new SegmentTree(values, SegmentTree.min());
+    final Expression length_ = Expressions.field(rows_, "length");
+    final Expression values_ =
+        builder3.append("values",
+            Expressions.newArrayBounds(Object.class, 1, length_), false);
+    final BlockBuilder builder = new BlockBuilder(true, builder3);
+    final ParameterExpression k_ =
+        Expressions.parameter(int.class, builder.newName("k"));
+    final Expression row_ =
+        builder.append("jRow",
+            RexToLixTranslator.convert(
+                Expressions.arrayIndex(rows_, k_),
+                inputPhysType.getJavaRowType()));
+    final RexToLixTranslator translator =
+        RexToLixTranslator.forAggregation(typeFactory, builder,
+            new WindowRelInputGetter(row_, inputPhysType,
+                result.physType.getRowType().getFieldCount(),
+                translatedConstants));
+    final Expression value =
+        translator.translate(rexArguments.apply(agg).get(0),
+            RexImpTable.NullAs.NULL);
+    builder.add(
+        Expressions.statement(
+            Expressions.assign(Expressions.arrayIndex(values_, k_),
+                RexToLixTranslator.convert(value,
+                    Primitive.box(agg.context.returnType())))));
+    builder3.add(
+        Expressions.for_(
+            Expressions.declare(0, k_, Expressions.constant(0)),
+            Expressions.lessThan(k_, length_),
+            Expressions.preIncrementAssign(k_),
+            builder.toBlock()));
+    return builder3.append("tree",
+        Expressions.new_(SegmentTree.class, values_,
+            ((SegmentTreeWinAggImplementor) agg.implementor)
+                .implementCombine((WinAggContext) agg.context)),
+        false);
+  }
+
+  /** Generates code that assigns the results of aggregate calls that are
+   * computed from segment trees, and returns whether there are any. */
+  private boolean implementSegmentTreeResults(List<AggImpState> treeAggs,
+      List<Expression> trees, BlockBuilder builder, Expression startX,
+      Expression endX) {
+    for (int i = 0; i < treeAggs.size(); i++) {
+      //   a0w0 = (Integer) tree.query(start, end);
+      final AggImpState agg = treeAggs.get(i);
+      final Expression value =
+          Expressions.convert_(
+              Expressions.call(trees.get(i),
+                  BuiltInMethod.SEGMENT_TREE_QUERY.method, startX, endX),
+              Primitive.box(agg.result.getType()));
+      builder.add(
+          Expressions.statement(
+              Expressions.assign(agg.result,
+                  RexToLixTranslator.convert(value, agg.result.getType()))));
+    }
+    return !treeAggs.isEmpty();
+  }
+
+  /** Generates code that removes the rows that have left the frame from the
+   * accumulators, and returns the condition under which the frame must be
+   * recomputed instead.
+   *
+   * <p>The loop re-uses the variable of the loop that adds rows, so that
+   * both loops can use the same frame context. */
+  private Expression implementRemove(List<AggImpState> aggs,
+      BlockBuilder builder8,
+      Function<BlockBuilder, WinAggFrameResultContext> frame,
+      Function<AggImpState, List<RexNode>> rexArguments,
+      DeclarationStatement jDecl, Expression startX, Expression endX,
+      Expression prevStart, Expression prevEnd) {
+    //   for (int j = prevStart; j < start; j++) {
+    //     // implementRemove
+    //   }
+    final BlockBuilder builder9 = new BlockBuilder(true, builder8);
+    final DeclarationStatement removeDecl =
+        Expressions.declare(0, jDecl.parameter, prevStart);
+    implementAdd(aggs, builder9, frame, rexArguments, removeDecl, true);
+    final BlockStatement removeBlock = builder9.toBlock();
+    if (!removeBlock.statements.isEmpty()) {
+      builder8.add(
+          Expressions.for_(removeDecl,
+              Expressions.lessThan(jDecl.parameter, startX),
+              Expressions.preIncrementAssign(jDecl.parameter),
+              removeBlock));
+    }
+    // If the frame does not overlap the previous frame (which includes the
+    // case that either is empty), it is cheaper to recompute.
+    return Expressions.orElse(
+        Expressions.orElse(
+            Expressions.lessThan(startX, prevStart),
+            Expressions.greaterThan(startX, prevEnd)),
+        Expressions.lessThan(endX, prevEnd));
+  }
+
   private void implementAdd(List<AggImpState> aggs,
       final BlockBuilder builder7,
       final Function<BlockBuilder, WinAggFrameResultContext> frame,
       final Function<AggImpState, List<RexNode>> rexArguments,
-      final DeclarationStatement jDecl) {
+      final DeclarationStatement jDecl, boolean remove) {
     for (final AggImpState agg : aggs) {
       final WinAggAddContext addContext =
           new WinAggAddContextImpl(builder7, agg.state, frame) {
@@ -868,7 +1039,12 @@ public RexNode rexFilterArgument() {
               return null; // REVIEW
             }
           };
-      agg.implementor.implementAdd(agg.context, addContext);
+      if (remove) {
+        ((InvertibleWinAggImplementor) agg.implementor).implementRemove(
+            (WinAggContext) agg.context, addContext);
+      } else {
+        agg.implementor.implementAdd(agg.context, addContext);
+      }
     }
   }
 
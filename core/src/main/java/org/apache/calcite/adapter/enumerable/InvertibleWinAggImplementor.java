@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+/**
+ * Windowed aggregate function whose accumulator can be updated when a row
+ * leaves the window frame.
+ *
+ * <p>When the frame slides, as in
+ * {@code ROWS BETWEEN 10 PRECEDING AND CURRENT ROW}, {@link EnumerableWindow}
+ * removes the rows that have left the frame and adds the rows that have
+ * entered it, rather than resetting the accumulator and adding every row of
+ * the new frame. It does so only if every aggregate function of the window
+ * supports removal.
+ *
+ * @see org.apache.calcite.adapter.enumerable.RexImpTable.CountWinImplementor
+ * @see org.apache.calcite.adapter.enumerable.RexImpTable.SumImplementor
+ */
+public interface InvertibleWinAggImplementor extends WinAggImplementor {
+  /**
+   * Returns whether this implementor can remove rows for a particular call.
+   * For example, {@code SUM} of a floating-point value cannot, because the
+   * rounding errors would accumulate.
+   *
+   * <p>Called before
+   * {@link AggImplementor#getStateType(AggContext)}.
+   */
+  boolean supportsRemove(WinAggContext info);
+
+  /**
+   * Generates code to remove a row from the accumulator; the inverse of
+   * {@link AggImplementor#implementAdd(AggContext, AggAddContext)}.
+   * The row being removed is at {@link WinAggAddContext#currentPosition()}.
+   */
+  void implementRemove(WinAggContext info, WinAggAddContext remove);
+}
+
+// End InvertibleWinAggImplementor.java
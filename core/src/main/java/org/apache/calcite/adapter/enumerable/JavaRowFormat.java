@@ -25,11 +25,13 @@
 import org.apache.calcite.linq4j.tree.MethodCallExpression;
 import org.apache.calcite.linq4j.tree.Types;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.runtime.FlatLists;
 import org.apache.calcite.runtime.Unit;
 import org.apache.calcite.util.BuiltInMethod;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -246,6 +248,39 @@ public Expression field(Expression expression, int field, Type fromType,
       }
       return RexToLixTranslator.convert(e, fromType, fieldType);
     }
+  },
+
+  /** A synthetic class that holds a key of 2 or more fields, with primitive
+   * fields where possible. Unlike {@link #CUSTOM}, the class caches its hash
+   * code, and its constructor initializes every field, so it is efficient as
+   * the key of a hash table.
+   *
+   * @see JavaTypeFactory#createSyntheticKeyType(List) */
+  KEY {
+    Type javaRowClass(
+        JavaTypeFactory typeFactory,
+        RelDataType type) {
+      assert type.getFieldCount() > 1;
+      final List<Type> types = new ArrayList<>();
+      for (RelDataTypeField field : type.getFieldList()) {
+        types.add(typeFactory.getJavaClass(field.getType()));
+      }
+      return typeFactory.createSyntheticKeyType(types);
+    }
+
+    @Override Type javaFieldClass(JavaTypeFactory typeFactory, RelDataType type,
+        int index) {
+      return typeFactory.getJavaClass(type.getFieldList().get(index).getType());
+    }
+
+    public Expression record(Type javaRowClass, List<Expression> expressions) {
+      return Expressions.new_(javaRowClass, expressions);
+    }
+
+    public Expression field(Expression expression, int field, Type fromType,
+        Type fieldType) {
+      return CUSTOM.field(expression, field, fromType, fieldType);
+    }
   };
 
   public JavaRowFormat optimize(RelDataType rowType) {
@@ -0,0 +1,634 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.tree.BinaryExpression;
+import org.apache.calcite.linq4j.tree.BlockStatement;
+import org.apache.calcite.linq4j.tree.CatchBlock;
+import org.apache.calcite.linq4j.tree.ConditionalStatement;
+import org.apache.calcite.linq4j.tree.ConstantExpression;
+import org.apache.calcite.linq4j.tree.ConstructorDeclaration;
+import org.apache.calcite.linq4j.tree.DeclarationStatement;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.ExpressionType;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.FieldDeclaration;
+import org.apache.calcite.linq4j.tree.ForStatement;
+import org.apache.calcite.linq4j.tree.FunctionExpression;
+import org.apache.calcite.linq4j.tree.GotoExpressionKind;
+import org.apache.calcite.linq4j.tree.GotoStatement;
+import org.apache.calcite.linq4j.tree.IndexExpression;
+import org.apache.calcite.linq4j.tree.MemberDeclaration;
+import org.apache.calcite.linq4j.tree.MemberExpression;
+import org.apache.calcite.linq4j.tree.MethodCallExpression;
+import org.apache.calcite.linq4j.tree.MethodDeclaration;
+import org.apache.calcite.linq4j.tree.NewArrayExpression;
+import org.apache.calcite.linq4j.tree.NewExpression;
+import org.apache.calcite.linq4j.tree.Node;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.linq4j.tree.Shuttle;
+import org.apache.calcite.linq4j.tree.Statement;
+import org.apache.calcite.linq4j.tree.TernaryExpression;
+import org.apache.calcite.linq4j.tree.ThrowStatement;
+import org.apache.calcite.linq4j.tree.TryStatement;
+import org.apache.calcite.linq4j.tree.TypeBinaryExpression;
+import org.apache.calcite.linq4j.tree.Types;
+import org.apache.calcite.linq4j.tree.UnaryExpression;
+import org.apache.calcite.linq4j.tree.WhileStatement;
+import org.apache.calcite.util.BuiltInMethod;
+
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Shuttle that splits the bodies of large methods in generated code into
+ * several smaller methods.
+ *
+ * <p>The JVM does not compile a method whose bytecode is larger than 8,000
+ * bytes to native code, and cannot load a method larger than 64 KB. Wide
+ * projections, large CASE expressions and queries with many aggregate
+ * functions generate such methods. This shuttle estimates the size of the
+ * bytecode of each method body and, if it is larger than a limit, moves runs
+ * of its top-level statements into helper functions:
+ *
+ * <blockquote><pre>
+ * public Object current() {
+ *   final Record3_0 frame = new Record3_0();
+ *   new Function1() {
+ *     public Object apply(final Record3_0 frame) {
+ *       frame.f0 = (Employee) inputEnumerator.current();
+ *       frame.f1 = ((Employee) frame.f0).empid;
+ *       frame.f2 = new Object[500];
+ *       ((Object[]) frame.f2)[0] = frame.f1 + 0;
+ *       ...
+ *       return null;
+ *     }
+ *   }.apply(frame);
+ *   new Function1() { ... }.apply(frame);
+ *   return (Object[]) frame.f2;
+ * }</pre></blockquote>
+ *
+ * <p>A variable that is used by more than one part of the method becomes a
+ * field of a frame object that is passed to each helper; other variables
+ * remain local. Fields of reference types are declared as {@code Object}.
+ * The statements from the first one that may return from the method remain
+ * in the method. If the method returns an array initializer,
+ * as {@link EnumerableCalc} does, the elements are first assigned one at a
+ * time, so that they can be split.
+ *
+ * <p>Methods that use constructs that this shuttle does not understand, or
+ * whose variables cannot safely be moved, are left as they are.
+ */
+class MethodSplitter extends Shuttle {
+  private final JavaTypeFactory typeFactory;
+  private final int maxSize;
+  private final int chunkSize;
+
+  /** Creates a MethodSplitter.
+   *
+   * @param typeFactory Type factory, used to create frame types
+   * @param maxSize Estimated size, in bytes of bytecode, above which a method
+   *                body is split
+   */
+  MethodSplitter(JavaTypeFactory typeFactory, int maxSize) {
+    this.typeFactory = typeFactory;
+    this.maxSize = maxSize;
+    this.chunkSize = maxSize / 2;
+  }
+
+  /** Splits the large methods in a block of generated code, and the block
+   * itself if it is large. */
+  public BlockStatement split(BlockStatement block) {
+    return split(block.accept(this),
+        Collections.<ParameterExpression>emptyList());
+  }
+
+  @Override public MemberDeclaration visit(MethodDeclaration methodDeclaration,
+      BlockStatement body) {
+    return super.visit(methodDeclaration,
+        split(body, methodDeclaration.parameters));
+  }
+
+  @Override public Expression visit(FunctionExpression functionExpression,
+      BlockStatement body) {
+    return lambda(functionExpression,
+        split(body, functionExpression.parameterList));
+  }
+
+  @Override public Statement visit(TryStatement tryStatement) {
+    return accept(tryStatement, this);
+  }
+
+  /** Returns a lambda like a given lambda but with a different body.
+   * Unlike {@link Shuttle#visit(FunctionExpression, BlockStatement)}, keeps
+   * the function type. */
+  private static Expression lambda(FunctionExpression<?> functionExpression,
+      BlockStatement body) {
+    if (body.equals(functionExpression.body)) {
+      return functionExpression;
+    }
+    //noinspection unchecked
+    return Expressions.lambda((Class) functionExpression.type, body,
+        functionExpression.parameterList);
+  }
+
+  /** Applies a shuttle to the body, catch blocks and finally block of a
+   * try statement; {@link TryStatement#accept(Shuttle)} does not. */
+  private static Statement accept(TryStatement tryStatement, Shuttle shuttle) {
+    final Statement body = tryStatement.body.accept(shuttle);
+    final Statement fynally = tryStatement.fynally == null
+        ? null
+        : tryStatement.fynally.accept(shuttle);
+    boolean changed = !body.equals(tryStatement.body)
+        || !Objects.equals(fynally, tryStatement.fynally);
+    final List<CatchBlock> catchBlocks = new ArrayList<>();
+    for (CatchBlock catchBlock : tryStatement.catchBlocks) {
+      final Statement catchBody = catchBlock.body.accept(shuttle);
+      if (catchBody.equals(catchBlock.body)) {
+        catchBlocks.add(catchBlock);
+      } else {
+        catchBlocks.add(Expressions.catch_(catchBlock.parameter, catchBody));
+        changed = true;
+      }
+    }
+    return changed
+        ? Expressions.tryCatchFinally(body, catchBlocks, fynally)
+        : tryStatement;
+  }
+
+  /** Splits the body of a method, if it is large. */
+  private BlockStatement split(BlockStatement body,
+      List<ParameterExpression> parameters) {
+    final Scan bodyScan = new Scan();
+    bodyScan.scan(body, 0, 0);
+    if (bodyScan.size <= maxSize || bodyScan.unsupported) {
+      return body;
+    }
+    final Set<String> names = new HashSet<>(bodyScan.used);
+    names.addAll(bodyScan.declared);
+    final List<Statement> statements =
+        expandArray(body.statements, newName("array", names));
+
+    // Scan the top-level statements. Those before the first one that may
+    // leave the method are grouped into chunks; the rest are the tail.
+    final List<Scan> scans = new ArrayList<>();
+    final Map<String, Integer> declarations = new HashMap<>();
+    int tail = statements.size();
+    for (Statement statement : statements) {
+      final Scan scan = new Scan();
+      if (statement instanceof DeclarationStatement) {
+        final DeclarationStatement declaration =
+            (DeclarationStatement) statement;
+        scan.size += 2;
+        scan.scan(declaration.initializer, 0, 0);
+        declarations.put(declaration.parameter.name, scans.size());
+      } else {
+        scan.scan(statement, 0, 0);
+      }
+      if (scan.escapes && tail == statements.size()) {
+        tail = scans.size();
+      }
+      scans.add(scan);
+    }
+    final List<Integer> chunkStarts = new ArrayList<>();
+    final int[] units = new int[statements.size()];
+    int size = 0;
+    for (int i = 0; i < statements.size(); i++) {
+      if (i < tail) {
+        if (chunkStarts.isEmpty()
+            || size > 0 && size + scans.get(i).size > chunkSize) {
+          chunkStarts.add(i);
+          size = 0;
+        }
+        size += scans.get(i).size;
+        if (scans.get(i).usesThis) {
+          return body;
+        }
+      }
+      units[i] = i < tail ? chunkStarts.size() - 1 : chunkStarts.size();
+    }
+    if (chunkStarts.isEmpty()) {
+      return body;
+    }
+
+    // A variable is in the frame if it is a parameter used in a chunk, or is
+    // declared in one part of the method and used in another.
+    final Map<String, ParameterExpression> frameVariables =
+        new LinkedHashMap<>();
+    for (ParameterExpression parameter : parameters) {
+      for (int i = 0; i < tail; i++) {
+        if (scans.get(i).used.contains(parameter.name)) {
+          frameVariables.put(parameter.name, parameter);
+          break;
+        }
+      }
+    }
+    for (int i = 0; i < statements.size(); i++) {
+      if (!(statements.get(i) instanceof DeclarationStatement)) {
+        continue;
+      }
+      final ParameterExpression parameter =
+          ((DeclarationStatement) statements.get(i)).parameter;
+      if (declarations.get(parameter.name) != i) {
+        return body; // declared more than once
+      }
+      for (int j = 0; j < statements.size(); j++) {
+        if (units[j] != units[i]
+            && scans.get(j).used.contains(parameter.name)) {
+          frameVariables.put(parameter.name, parameter);
+          break;
+        }
+      }
+    }
+    for (Scan scan : scans) {
+      if (!Collections.disjoint(scan.declared, frameVariables.keySet())) {
+        return body; // a nested declaration hides a frame variable
+      }
+    }
+
+    final List<Statement> list = new ArrayList<>();
+    final ParameterExpression frame;
+    final Shuttle shuttle;
+    if (frameVariables.isEmpty()) {
+      frame = null;
+      shuttle = new Shuttle();
+    } else {
+      // Fields of reference types are declared as Object, and cast whenever
+      // they are read. The frame is a record type, and the equals, hashCode
+      // and compareTo methods generated for a record cannot handle fields of
+      // every type (say, another record type, or a list that is also
+      // comparable).
+      final List<Type> types = new ArrayList<>();
+      for (ParameterExpression parameter : frameVariables.values()) {
+        types.add(Primitive.is(parameter.type) ? parameter.type : Object.class);
+      }
+      final Types.RecordType frameType =
+          (Types.RecordType) typeFactory.createSyntheticType(types);
+      frame = Expressions.parameter(Modifier.FINAL, frameType,
+          newName("frame", names));
+      final Map<String, Expression> fields = new HashMap<>();
+      final Map<String, Expression> reads = new HashMap<>();
+      for (ParameterExpression parameter : frameVariables.values()) {
+        final Expression field =
+            Expressions.field(frame,
+                frameType.getRecordFields().get(fields.size()));
+        fields.put(parameter.name, field);
+        reads.put(parameter.name,
+            Primitive.is(parameter.type)
+                ? field
+                : Expressions.convert_(field, parameter.type));
+      }
+      shuttle = new FrameShuttle(fields, reads);
+      list.add(
+          Expressions.declare(Modifier.FINAL, frame,
+              Expressions.new_(frameType)));
+      for (ParameterExpression parameter : parameters) {
+        if (fields.containsKey(parameter.name)) {
+          list.add(
+              Expressions.statement(
+                  Expressions.assign(fields.get(parameter.name),
+                      parameter)));
+        }
+      }
+    }
+    for (int c = 0; c < chunkStarts.size(); c++) {
+      final int end = c + 1 < chunkStarts.size() ? chunkStarts.get(c + 1) : tail;
+      final List<Statement> chunk = new ArrayList<>();
+      for (int i = chunkStarts.get(c); i < end; i++) {
+        rewrite(statements.get(i), frameVariables, shuttle, chunk);
+      }
+      chunk.add(Expressions.return_(null, Expressions.constant(null)));
+      final Expression call;
+      if (frame == null) {
+        call = Expressions.call(
+            Expressions.lambda(Function0.class, Expressions.block(chunk)),
+            BuiltInMethod.FUNCTION0_APPLY.method);
+      } else {
+        call = Expressions.call(
+            Expressions.lambda(Function1.class, Expressions.block(chunk),
+                frame),
+            BuiltInMethod.FUNCTION1_APPLY.method, frame);
+      }
+      list.add(Expressions.statement(call));
+    }
+    for (int i = tail; i < statements.size(); i++) {
+      rewrite(statements.get(i), frameVariables, shuttle, list);
+    }
+    return Expressions.block(body.type, list);
+  }
+
+  /** Adds a statement, rewritten to use the frame, to a list. The
+   * declaration of a frame variable becomes an assignment. */
+  private static void rewrite(Statement statement,
+      Map<String, ParameterExpression> frameVariables, Shuttle shuttle,
+      List<Statement> list) {
+    if (statement instanceof DeclarationStatement) {
+      final DeclarationStatement declaration =
+          (DeclarationStatement) statement;
+      if (frameVariables.containsKey(declaration.parameter.name)) {
+        if (declaration.initializer != null) {
+          list.add(
+              Expressions.statement(
+                  Expressions.assign(declaration.parameter,
+                      declaration.initializer).accept(shuttle)));
+        }
+        return;
+      }
+    }
+    list.add(statement.accept(shuttle));
+  }
+
+  /** If the last statement returns a large array initializer, converts it
+   * into statements that create the array and assign its elements.
+   *
+   * <p>For example, converts "{@code return new Object[] {a, b};}" to
+   * "{@code final Object[] array = new Object[2]; array[0] = a;
+   * array[1] = b; return array;}". */
+  private List<Statement> expandArray(List<Statement> statements,
+      String name) {
+    if (statements.isEmpty()) {
+      return statements;
+    }
+    final Statement last = statements.get(statements.size() - 1);
+    if (!(last instanceof GotoStatement)
+        || ((GotoStatement) last).kind != GotoExpressionKind.Return
+        || !(((GotoStatement) last).expression instanceof NewArrayExpression)) {
+      return statements;
+    }
+    final NewArrayExpression newArray =
+        (NewArrayExpression) ((GotoStatement) last).expression;
+    if (newArray.dimension != 1
+        || newArray.expressions == null) {
+      return statements;
+    }
+    final Scan scan = new Scan();
+    scan.scan(newArray, 0, 0);
+    if (scan.size <= chunkSize || scan.unsupported) {
+      return statements;
+    }
+    final List<Statement> list =
+        new ArrayList<>(statements.subList(0, statements.size() - 1));
+    final ParameterExpression array =
+        Expressions.parameter(Modifier.FINAL, newArray.type, name);
+    list.add(
+        Expressions.declare(Modifier.FINAL, array,
+            Expressions.newArrayBounds(
+                Types.getComponentType(newArray.type), 1,
+                Expressions.constant(newArray.expressions.size()))));
+    for (int i = 0; i < newArray.expressions.size(); i++) {
+      list.add(
+          Expressions.statement(
+              Expressions.assign(
+                  Expressions.arrayIndex(array, Expressions.constant(i)),
+                  newArray.expressions.get(i))));
+    }
+    list.add(Expressions.return_(null, array));
+    return list;
+  }
+
+  /** Returns a name that is not in a set of names, and adds it to the set. */
+  private static String newName(String prefix, Set<String> names) {
+    String name = prefix;
+    for (int i = 0; !names.add(name); i++) {
+      name = prefix + i;
+    }
+    return name;
+  }
+
+  /** Shuttle that replaces references to variables with references to
+   * fields of the frame. */
+  private static class FrameShuttle extends Shuttle {
+    /** Field that holds each variable; the target of assignments. */
+    private final Map<String, Expression> fields;
+    /** Expression that reads each variable. */
+    private final Map<String, Expression> reads;
+
+    FrameShuttle(Map<String, Expression> fields,
+        Map<String, Expression> reads) {
+      this.fields = fields;
+      this.reads = reads;
+    }
+
+    @Override public Expression visit(ParameterExpression parameterExpression) {
+      final Expression read = reads.get(parameterExpression.name);
+      return read != null ? read : parameterExpression;
+    }
+
+    @Override public Expression visit(BinaryExpression binaryExpression,
+        Expression expression0, Expression expression1) {
+      if (binaryExpression.nodeType == ExpressionType.Assign
+          && binaryExpression.expression0 instanceof ParameterExpression) {
+        final Expression field =
+            fields.get(
+                ((ParameterExpression) binaryExpression.expression0).name);
+        if (field != null) {
+          return Expressions.assign(field, expression1);
+        }
+      }
+      return super.visit(binaryExpression, expression0, expression1);
+    }
+
+    @Override public Expression visit(FunctionExpression functionExpression,
+        BlockStatement body) {
+      return lambda(functionExpression, body);
+    }
+
+    @Override public Statement visit(TryStatement tryStatement) {
+      return accept(tryStatement, this);
+    }
+  }
+
+  /** Estimates the size of the bytecode of a statement or expression, and
+   * collects the names that it uses and declares.
+   *
+   * <p>Code inside a nested class or lambda contributes to the names but not
+   * to the size, because it is compiled into a separate method. */
+  private static class Scan {
+    int size;
+    /** Names of the variables used. */
+    final Set<String> used = new HashSet<>();
+    /** Names of the variables declared in nested scopes. */
+    final Set<String> declared = new HashSet<>();
+    /** Whether the code may return, throw, or break out of the method. */
+    boolean escapes;
+    /** Whether the code refers to "this", explicitly or by calling an
+     * instance method without a target. */
+    boolean usesThis;
+    /** Whether the code contains a construct that this class does not
+     * understand. */
+    boolean unsupported;
+
+    /** Scans a node.
+     *
+     * @param node Node
+     * @param depth Number of nested classes and lambdas around the node
+     * @param loops Number of loops around the node in the method
+     */
+    void scan(Node node, int depth, int loops) {
+      if (node == null) {
+        return;
+      }
+      final int size0 = size;
+      if (node instanceof ConstantExpression) {
+        size += 3;
+      } else if (node instanceof ParameterExpression) {
+        final String name = ((ParameterExpression) node).name;
+        used.add(name);
+        usesThis |= depth == 0 && name.equals("this");
+        size += 2;
+      } else if (node instanceof MemberExpression) {
+        scan(((MemberExpression) node).expression, depth, loops);
+        size += 3;
+      } else if (node instanceof MethodCallExpression) {
+        final MethodCallExpression call = (MethodCallExpression) node;
+        usesThis |= depth == 0 && call.targetExpression == null
+            && !Modifier.isStatic(call.method.getModifiers());
+        scan(call.targetExpression, depth, loops);
+        scanAll(call.expressions, depth, loops);
+        size += 3;
+      } else if (node instanceof NewExpression) {
+        final NewExpression newExpression = (NewExpression) node;
+        scanAll(newExpression.arguments, depth, loops);
+        if (newExpression.memberDeclarations != null) {
+          scanAll(newExpression.memberDeclarations, depth + 1, 0);
+        }
+        size += 7;
+      } else if (node instanceof NewArrayExpression) {
+        final NewArrayExpression newArray = (NewArrayExpression) node;
+        scan(newArray.bound, depth, loops);
+        if (newArray.expressions != null) {
+          scanAll(newArray.expressions, depth, loops);
+          size += 4 * newArray.expressions.size();
+        }
+        size += 4;
+      } else if (node instanceof IndexExpression) {
+        scan(((IndexExpression) node).array, depth, loops);
+        scanAll(((IndexExpression) node).indexExpressions, depth, loops);
+        size += 1;
+      } else if (node instanceof UnaryExpression) {
+        scan(((UnaryExpression) node).expression, depth, loops);
+        size += 3;
+      } else if (node instanceof BinaryExpression) {
+        scan(((BinaryExpression) node).expression0, depth, loops);
+        scan(((BinaryExpression) node).expression1, depth, loops);
+        size += 3;
+      } else if (node instanceof TernaryExpression) {
+        scan(((TernaryExpression) node).expression0, depth, loops);
+        scan(((TernaryExpression) node).expression1, depth, loops);
+        scan(((TernaryExpression) node).expression2, depth, loops);
+        size += 6;
+      } else if (node instanceof TypeBinaryExpression) {
+        scan(((TypeBinaryExpression) node).expression, depth, loops);
+        size += 3;
+      } else if (node instanceof FunctionExpression) {
+        final FunctionExpression<?> function = (FunctionExpression) node;
+        declareAll(function.parameterList);
+        scan(function.body, depth + 1, 0);
+        size += 7;
+      } else if (node instanceof BlockStatement) {
+        scanAll(((BlockStatement) node).statements, depth, loops);
+      } else if (node instanceof DeclarationStatement) {
+        declared.add(((DeclarationStatement) node).parameter.name);
+        scan(((DeclarationStatement) node).initializer, depth, loops);
+        size += 2;
+      } else if (node instanceof GotoStatement) {
+        final GotoStatement gotoStatement = (GotoStatement) node;
+        switch (gotoStatement.kind) {
+        case Sequence:
+          break;
+        case Break:
+        case Continue:
+          escapes |= depth == 0 && loops == 0;
+          break;
+        default:
+          escapes |= depth == 0;
+        }
+        scan(gotoStatement.expression, depth, loops);
+        size += 3;
+      } else if (node instanceof ConditionalStatement) {
+        final List<Node> list = ((ConditionalStatement) node).expressionList;
+        scanAll(list, depth, loops);
+        size += 3 * list.size();
+      } else if (node instanceof WhileStatement) {
+        scan(((WhileStatement) node).condition, depth, loops + 1);
+        scan(((WhileStatement) node).body, depth, loops + 1);
+        size += 6;
+      } else if (node instanceof ForStatement) {
+        final ForStatement forStatement = (ForStatement) node;
+        scanAll(forStatement.declarations, depth, loops + 1);
+        scan(forStatement.condition, depth, loops + 1);
+        scan(forStatement.post, depth, loops + 1);
+        scan(forStatement.body, depth, loops + 1);
+        size += 6;
+      } else if (node instanceof ThrowStatement) {
+        escapes |= depth == 0;
+        scan(((ThrowStatement) node).expression, depth, loops);
+        size += 1;
+      } else if (node instanceof TryStatement) {
+        final TryStatement tryStatement = (TryStatement) node;
+        scan(tryStatement.body, depth, loops);
+        for (CatchBlock catchBlock : tryStatement.catchBlocks) {
+          declared.add(catchBlock.parameter.name);
+          scan(catchBlock.body, depth, loops);
+        }
+        scan(tryStatement.fynally, depth, loops);
+        size += 8;
+      } else if (node instanceof MethodDeclaration) {
+        declareAll(((MethodDeclaration) node).parameters);
+        scan(((MethodDeclaration) node).body, depth, 0);
+      } else if (node instanceof ConstructorDeclaration) {
+        declareAll(((ConstructorDeclaration) node).parameters);
+        scan(((ConstructorDeclaration) node).body, depth, 0);
+      } else if (node instanceof FieldDeclaration) {
+        declared.add(((FieldDeclaration) node).parameter.name);
+        scan(((FieldDeclaration) node).initializer, depth, 0);
+      } else {
+        unsupported = true;
+      }
+      if (depth > 0) {
+        size = size0;
+      }
+    }
+
+    private void scanAll(List<? extends Node> nodes, int depth, int loops) {
+      for (Node node : nodes) {
+        scan(node, depth, loops);
+      }
+    }
+
+    private void declareAll(List<ParameterExpression> parameters) {
+      for (ParameterExpression parameter : parameters) {
+        declared.add(parameter.name);
+      }
+    }
+  }
+}
+
+// End MethodSplitter.java
@@ -111,6 +111,22 @@ Expression fieldReference(Expression expression, int field,
    */
   Expression generateAccessor(List<Integer> fields);
 
+  /** Generates an accessor function for a given list of fields that returns
+   * a record of a given physical type, whose fields are of the same SQL types
+   * as the given fields (or nullable variants of them).
+   *
+   * <p>For example, if the target has row format
+   * {@link JavaRowFormat#KEY}:
+   *
+   * <blockquote><pre>
+   * new Function1&lt;Employee, Key2_0&gt; {
+   *    public Key2_0 apply(Employee v1) {
+   *        return new Key2_0(v1.&lt;fieldN&gt;, v1.&lt;fieldM&gt;);
+   *    }
+   * }</pre></blockquote>
+   */
+  Expression generateAccessor(List<Integer> fields, PhysType targetPhysType);
+
   /** Generates a selector for the given fields from an expression, with the
    * default row format. */
   Expression generateSelector(
@@ -169,6 +185,37 @@ PhysType project(
   Pair<Expression, Expression> generateCollationKey(
       List<RelFieldCollation> collations);
 
+  /** Returns a lambda that creates a normalized collation key, or null if
+   * the collation cannot be normalized.
+   *
+   * <p>A normalized key is a {@code long} whose unsigned order is the order
+   * of the collation, including direction and null direction; the lambda is
+   * a {@link org.apache.calcite.linq4j.function.LongFunction1}. Only fields
+   * of primitive types, whose encoded widths sum to no more than 64 bits, can
+   * be normalized.
+   *
+   * @see org.apache.calcite.linq4j.EnumerableDefaults#orderByNormalizedKey */
+  Expression generateNormalizedCollationKey(
+      List<RelFieldCollation> collations);
+
+  /** Returns a lambda that converts a field to a {@code long} key, or null
+   * if the field is not of a primitive type.
+   *
+   * <p>The lambda is a {@link org.apache.calcite.linq4j.function.LongFunction1}.
+   * Two values of the field are equal if and only if their keys are equal;
+   * {@code double} and {@code float} values are converted using their bits.
+   * If the field is nullable, the lambda must not be applied to a row whose
+   * field is null; see {@link #generateNullTest(int)}.
+   *
+   * @see org.apache.calcite.linq4j.LongHashSet
+   * @see org.apache.calcite.linq4j.LongMultiMap */
+  Expression generateLongKey(int field);
+
+  /** Returns a lambda that returns whether a field is null, or null if the
+   * field can never be null. The lambda is a
+   * {@link org.apache.calcite.linq4j.function.Predicate1}. */
+  Expression generateNullTest(int field);
+
   /** Returns a comparator. Unlike the comparator returned by
    * {@link #generateCollationKey(java.util.List)}, this comparator acts on the
    * whole element. */
@@ -19,6 +19,8 @@
 import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.LongFunction1;
+import org.apache.calcite.linq4j.function.Predicate1;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
@@ -374,6 +376,158 @@ public Pair<Expression, Expression> generateCollationKey(
             memberDeclarations));
   }
 
+  public Expression generateNormalizedCollationKey(
+      List<RelFieldCollation> collations) {
+    // For example, for "ORDER BY empid DESC, deptno NULLS FIRST", where empid
+    // is NOT NULL INTEGER and deptno is INTEGER,
+    //
+    // new LongFunction1() {
+    //   public long apply(Object[] v) {
+    //     return (0xFFFFFFFFL - ((long) empid - Integer.MIN_VALUE)) << 33
+    //       | (deptno == null ? 0L : (long) deptno - Integer.MIN_VALUE + 1L);
+    //   }
+    // }
+    final ParameterExpression parameter =
+        Expressions.parameter(javaRowClass, "v");
+    Expression key = null;
+    int width = 0;
+    for (RelFieldCollation collation : collations) {
+      final int index = collation.getFieldIndex();
+      final Class clazz = fieldClass(index);
+      final Primitive primitive = Util.first(Primitive.of(clazz),
+          Primitive.ofBox(clazz));
+      if (primitive == null) {
+        return null;
+      }
+      final boolean nullable = !clazz.isPrimitive();
+      final boolean descending =
+          collation.getDirection() == RelFieldCollation.Direction.DESCENDING;
+      final Expression field = fieldReference(parameter, index);
+      final int bits;
+      Expression part;
+      switch (primitive) {
+      case BYTE:
+      case SHORT:
+      case INT:
+        // Non-null values map to [0, 2^32); nullable fields need one more
+        // bit, to hold null and the non-null values shifted up by one.
+        bits = nullable ? 33 : 32;
+        part =
+            Expressions.subtract(
+                RexToLixTranslator.convert(field, long.class),
+                Expressions.constant((long) Integer.MIN_VALUE));
+        if (descending) {
+          part = Expressions.subtract(Expressions.constant(0xFFFFFFFFL), part);
+        }
+        break;
+      case LONG:
+        if (nullable) {
+          return null;
+        }
+        bits = 64;
+        part =
+            Expressions.exclusiveOr(
+                RexToLixTranslator.convert(field, long.class),
+                Expressions.constant(
+                    descending ? Long.MAX_VALUE : Long.MIN_VALUE));
+        break;
+      case FLOAT:
+      case DOUBLE:
+        if (nullable) {
+          return null;
+        }
+        bits = 64;
+        part =
+            Expressions.call(BuiltInMethod.NORMALIZED_KEY.method,
+                RexToLixTranslator.convert(field, double.class));
+        if (descending) {
+          part = Expressions.exclusiveOr(part, Expressions.constant(-1L));
+        }
+        break;
+      default:
+        return null;
+      }
+      if (nullable) {
+        final boolean nullsFirst =
+            collation.nullDirection == RelFieldCollation.NullDirection.FIRST;
+        part =
+            Expressions.condition(
+                Expressions.equal(field, RexImpTable.NULL_EXPR),
+                Expressions.constant(nullsFirst ? 0L : 0x100000001L),
+                Expressions.add(part, Expressions.constant(1L)));
+      }
+      width += bits;
+      if (width > 64) {
+        return null;
+      }
+      key = key == null
+          ? part
+          : Expressions.or(
+              Expressions.leftShift(key, Expressions.constant(bits)), part);
+    }
+    if (key == null) {
+      return null;
+    }
+    return Expressions.lambda(LongFunction1.class, key, parameter);
+  }
+
+  public Expression generateLongKey(int field) {
+    // For example, for "deptno", where deptno is INTEGER,
+    //
+    // new LongFunction1() {
+    //   public long apply(Object[] v) {
+    //     return (long) deptno;
+    //   }
+    // }
+    final Class clazz = fieldClass(field);
+    final Primitive primitive = Util.first(Primitive.of(clazz),
+        Primitive.ofBox(clazz));
+    if (primitive == null) {
+      return null;
+    }
+    final ParameterExpression parameter =
+        Expressions.parameter(Primitive.box(javaRowClass), "v");
+    final Expression fieldReference = fieldReference(parameter, field);
+    final Expression key;
+    switch (primitive) {
+    case BOOLEAN:
+      key =
+          Expressions.condition(
+              RexToLixTranslator.convert(fieldReference, boolean.class),
+              Expressions.constant(1L),
+              Expressions.constant(0L));
+      break;
+    case CHAR:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      key = RexToLixTranslator.convert(fieldReference, long.class);
+      break;
+    case FLOAT:
+    case DOUBLE:
+      key =
+          Expressions.call(Double.class, "doubleToLongBits",
+              RexToLixTranslator.convert(fieldReference, double.class));
+      break;
+    default:
+      return null;
+    }
+    return Expressions.lambda(LongFunction1.class, key, parameter);
+  }
+
+  public Expression generateNullTest(int field) {
+    if (fieldClass(field).isPrimitive()) {
+      return null;
+    }
+    final ParameterExpression parameter =
+        Expressions.parameter(Primitive.box(javaRowClass), "v");
+    return Expressions.lambda(Predicate1.class,
+        Expressions.equal(fieldReference(parameter, field),
+            RexImpTable.NULL_EXPR),
+        parameter);
+  }
+
   public Expression generateComparator(RelCollation collation) {
     // int c;
     // c = Utilities.compare(v0, v1);
@@ -635,6 +789,20 @@ public Expression generateAccessor(
     }
   }
 
+  public Expression generateAccessor(List<Integer> fields,
+      PhysType targetPhysType) {
+    final ParameterExpression v1 =
+        Expressions.parameter(javaRowClass, "v1");
+    final List<Expression> list = new ArrayList<>();
+    for (Ord<Integer> field : Ord.zip(fields)) {
+      list.add(
+          fieldReference(v1, field.e,
+              targetPhysType.getJavaFieldType(field.i)));
+    }
+    return Expressions.lambda(Function1.class, targetPhysType.record(list),
+        v1);
+  }
+
   public Expression fieldReference(
       Expression expression, int field) {
     return fieldReference(expression, field, null);
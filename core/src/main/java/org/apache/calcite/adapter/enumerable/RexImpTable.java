@@ -1075,9 +1075,14 @@ static class CountImplementor extends StrictAggImplementor {
   }
 
   /** Implementor for the {@code COUNT} windowed aggregate function. */
-  static class CountWinImplementor extends StrictWinAggImplementor {
+  static class CountWinImplementor extends StrictWinAggImplementor
+      implements InvertibleWinAggImplementor {
     boolean justFrameRowCount;
 
+    public boolean supportsRemove(WinAggContext info) {
+      return true;
+    }
+
     @Override public List<Type> getNotNullState(WinAggContext info) {
       boolean hasNullable = false;
       for (RelDataType type : info.parameterRelTypes()) {
@@ -1103,6 +1108,16 @@ static class CountWinImplementor extends StrictWinAggImplementor {
               Expressions.postIncrementAssign(add.accumulator().get(0))));
     }
 
+    @Override protected void implementNotNullRemove(WinAggContext info,
+        WinAggAddContext remove) {
+      if (justFrameRowCount) {
+        return;
+      }
+      remove.currentBlock().add(
+          Expressions.statement(
+              Expressions.postDecrementAssign(remove.accumulator().get(0))));
+    }
+
     @Override protected Expression implementNotNullResult(WinAggContext info,
         WinAggResultContext result) {
       if (justFrameRowCount) {
@@ -1113,7 +1128,20 @@ static class CountWinImplementor extends StrictWinAggImplementor {
   }
 
   /** Implementor for the {@code SUM} windowed aggregate function. */
-  static class SumImplementor extends StrictAggImplementor {
+  static class SumImplementor extends StrictAggImplementor
+      implements InvertibleWinAggImplementor {
+    public boolean needCacheWhenFrameIntact() {
+      return true;
+    }
+
+    public boolean supportsRemove(WinAggContext info) {
+      // Removing a floating-point value does not restore the previous sum
+      final Type type = info.returnType();
+      final Primitive primitive = Primitive.ofBoxOr(type);
+      return type == BigDecimal.class
+          || primitive != null && primitive.isFixedNumeric();
+    }
+
     @Override protected void implementNotNullReset(AggContext info,
         AggResetContext reset) {
       Expression start = info.returnType() == BigDecimal.class
@@ -1138,6 +1166,19 @@ static class SumImplementor extends StrictAggImplementor {
       accAdvance(add, acc, next);
     }
 
+    @Override protected void implementNotNullRemove(AggContext info,
+        AggAddContext remove) {
+      Expression acc = remove.accumulator().get(0);
+      Expression next;
+      if (info.returnType() == BigDecimal.class) {
+        next = Expressions.call(acc, "subtract", remove.arguments().get(0));
+      } else {
+        next = Expressions.subtract(acc,
+            Types.castIfNecessary(acc.type, remove.arguments().get(0)));
+      }
+      accAdvance(remove, acc, next);
+    }
+
     @Override public Expression implementNotNullResult(AggContext info,
         AggResultContext result) {
       return super.implementNotNullResult(info, result);
@@ -1145,7 +1186,23 @@ static class SumImplementor extends StrictAggImplementor {
   }
 
   /** Implementor for the {@code MIN} and {@code MAX} aggregate functions. */
-  static class MinMaxImplementor extends StrictAggImplementor {
+  static class MinMaxImplementor extends StrictAggImplementor
+      implements SegmentTreeWinAggImplementor {
+    public boolean needCacheWhenFrameIntact() {
+      return true;
+    }
+
+    public boolean supportsSegmentTree(WinAggContext info) {
+      return info.parameterTypes().size() == 1;
+    }
+
+    public Expression implementCombine(WinAggContext info) {
+      return Expressions.call(
+          (MIN == info.aggregation()
+              ? BuiltInMethod.SEGMENT_TREE_MIN
+              : BuiltInMethod.SEGMENT_TREE_MAX).method);
+    }
+
     @Override protected void implementNotNullReset(AggContext info,
         AggResetContext reset) {
       Expression acc = reset.accumulator().get(0);
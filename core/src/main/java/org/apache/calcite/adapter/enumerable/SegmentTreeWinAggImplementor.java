@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.linq4j.tree.Expression;
+
+/**
+ * Windowed aggregate function of one argument that can be evaluated using a
+ * {@link org.apache.calcite.runtime.SegmentTree}.
+ *
+ * <p>If the lower bound of the window frame can move, and the function
+ * cannot remove rows from its accumulator (see
+ * {@link InvertibleWinAggImplementor}), {@link EnumerableWindow} would
+ * otherwise have to aggregate the whole frame for every row. Instead, it
+ * builds a segment tree over the argument values of each partition, and
+ * computes the value for each frame in logarithmic time.
+ *
+ * @see org.apache.calcite.adapter.enumerable.RexImpTable.MinMaxImplementor
+ */
+public interface SegmentTreeWinAggImplementor extends WinAggImplementor {
+  /**
+   * Returns whether a particular call can be evaluated using a segment
+   * tree.
+   */
+  boolean supportsSegmentTree(WinAggContext info);
+
+  /**
+   * Returns an expression of type
+   * {@link org.apache.calcite.linq4j.function.Function2} that combines two
+   * non-null argument values. The function must be associative. The result
+   * of the aggregate function is the combination of the non-null argument
+   * values in the frame, or null if there are none.
+   */
+  Expression implementCombine(WinAggContext info);
+}
+
+// End SegmentTreeWinAggImplementor.java
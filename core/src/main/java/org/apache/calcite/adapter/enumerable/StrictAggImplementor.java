@@ -41,6 +41,7 @@
 public abstract class StrictAggImplementor implements AggImplementor {
   private boolean needTrackEmptySet;
   private boolean trackNullsPerRow;
+  private boolean countNullsPerRow;
   private int stateSize;
 
   protected boolean nonDefaultOnEmptySet(AggContext info) {
@@ -67,10 +68,16 @@ public final List<Type> getStateType(AggContext info) {
     }
     final boolean hasNullableArgs = anyNullable(info.parameterRelTypes());
     trackNullsPerRow = !(info instanceof WinAggContext) || hasNullableArgs;
+    // If rows can be removed, a flag is not enough; count the rows.
+    countNullsPerRow = trackNullsPerRow
+        && info instanceof WinAggContext
+        && this instanceof InvertibleWinAggImplementor
+        && ((InvertibleWinAggImplementor) this)
+            .supportsRemove((WinAggContext) info);
 
     List<Type> res = new ArrayList<>(subState.size() + 1);
     res.addAll(subState);
-    res.add(boolean.class); // has not nulls
+    res.add(countNullsPerRow ? int.class : boolean.class); // has not nulls
     return res;
   }
 
@@ -117,6 +124,19 @@ protected void implementNotNullReset(AggContext info,
   }
 
   public final void implementAdd(AggContext info, final AggAddContext add) {
+    implementAddOrRemove(info, add, false);
+  }
+
+  /** Implements
+   * {@link InvertibleWinAggImplementor#implementRemove(WinAggContext, WinAggAddContext)}
+   * for sub-classes that implement that interface. */
+  public final void implementRemove(WinAggContext info,
+      WinAggAddContext remove) {
+    implementAddOrRemove(info, remove, true);
+  }
+
+  private void implementAddOrRemove(AggContext info, AggAddContext add,
+      boolean remove) {
     final List<RexNode> args = add.rexArguments();
     final RexToLixTranslator translator = add.rowTranslator();
     final List<Expression> conditions = new ArrayList<>();
@@ -139,13 +159,17 @@ public final void implementAdd(AggContext info, final AggAddContext add) {
         : new BlockBuilder(true, add.currentBlock());
     if (trackNullsPerRow) {
       List<Expression> acc = add.accumulator();
+      Expression flag = acc.get(acc.size() - 1);
       thenBlock.add(
           Expressions.statement(
-              Expressions.assign(acc.get(acc.size() - 1),
-                  Expressions.constant(true))));
+              countNullsPerRow
+                  ? (remove
+                      ? Expressions.postDecrementAssign(flag)
+                      : Expressions.postIncrementAssign(flag))
+                  : Expressions.assign(flag, Expressions.constant(true))));
     }
     if (argsNotNull) {
-      implementNotNullAdd(info, add);
+      implementNotNullAddOrRemove(info, add, remove);
       return;
     }
 
@@ -156,14 +180,31 @@ public final void implementAdd(AggContext info, final AggAddContext add) {
       }
     }
     add.nestBlock(thenBlock, nullables);
-    implementNotNullAdd(info, add);
+    implementNotNullAddOrRemove(info, add, remove);
     add.exitBlock();
     add.currentBlock().add(Expressions.ifThen(condition, thenBlock.toBlock()));
   }
 
+  private void implementNotNullAddOrRemove(AggContext info, AggAddContext add,
+      boolean remove) {
+    if (remove) {
+      implementNotNullRemove(info, add);
+    } else {
+      implementNotNullAdd(info, add);
+    }
+  }
+
   protected abstract void implementNotNullAdd(AggContext info,
       AggAddContext add);
 
+  /** Removes a row whose arguments are not null from the accumulator.
+   * Sub-classes that implement {@link InvertibleWinAggImplementor} must
+   * override. */
+  protected void implementNotNullRemove(AggContext info,
+      AggAddContext remove) {
+    throw new UnsupportedOperationException();
+  }
+
   public final Expression implementResult(AggContext info,
       final AggResultContext result) {
     if (!needTrackEmptySet) {
@@ -184,9 +225,12 @@ public final Expression implementResult(AggContext info,
     thenBlock.add(Expressions.statement(Expressions.assign(res, nonNull)));
     BlockStatement thenBranch = thenBlock.toBlock();
     Expression seenNotNullRows =
-        trackNullsPerRow
-        ? acc.get(acc.size() - 1)
-        : ((WinAggResultContext) result).hasRows();
+        !trackNullsPerRow
+        ? ((WinAggResultContext) result).hasRows()
+        : countNullsPerRow
+        ? Expressions.greaterThan(acc.get(acc.size() - 1),
+            Expressions.constant(0))
+        : acc.get(acc.size() - 1);
 
     if (thenBranch.statements.size() == 1) {
       return Expressions.condition(seenNotNullRows,
@@ -40,6 +40,11 @@ public List<Type> getNotNullState(WinAggContext info) {
     return super.getNotNullState(info);
   }
 
+  protected void implementNotNullRemove(WinAggContext info,
+      WinAggAddContext remove) {
+    super.implementNotNullRemove(info, remove);
+  }
+
   protected void implementNotNullReset(WinAggContext info,
       WinAggResetContext reset) {
     super.implementNotNullReset(info, reset);
@@ -55,6 +60,11 @@ protected Expression implementNotNullResult(WinAggContext info,
     implementNotNullAdd((WinAggContext) info, (WinAggAddContext) add);
   }
 
+  @Override protected final void implementNotNullRemove(AggContext info,
+      AggAddContext remove) {
+    implementNotNullRemove((WinAggContext) info, (WinAggAddContext) remove);
+  }
+
   @Override protected boolean nonDefaultOnEmptySet(AggContext info) {
     return nonDefaultOnEmptySet((WinAggContext) info);
   }
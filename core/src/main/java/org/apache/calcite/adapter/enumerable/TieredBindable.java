@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.interpreter.Bindables;
+import org.apache.calcite.interpreter.Interpreter;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.tree.ClassDeclaration;
+import org.apache.calcite.linq4j.tree.ConstantExpression;
+import org.apache.calcite.linq4j.tree.GotoStatement;
+import org.apache.calcite.linq4j.tree.MemberDeclaration;
+import org.apache.calcite.linq4j.tree.MethodDeclaration;
+import org.apache.calcite.linq4j.tree.Statement;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.core.Calc;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.core.Union;
+import org.apache.calcite.rel.core.Values;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.runtime.Bindable;
+import org.apache.calcite.runtime.Typed;
+import org.apache.calcite.schema.FilterableTable;
+import org.apache.calcite.schema.ProjectableFilterableTable;
+import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Util;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Bindable} that interprets a relational expression until the code
+ * generated for it has been compiled.
+ *
+ * <p>Compilation runs in a background thread. Each call to {@link #bind}
+ * uses the compiled code if it is ready, and otherwise executes the
+ * expression using an {@link Interpreter}, so that a query returns its
+ * first rows without waiting for the compiler.
+ *
+ * <p>If an interpreted execution returns more than a given number of rows,
+ * the expression is considered long-running, and later calls to
+ * {@link #bind} wait for the compiled code. An execution does not switch
+ * from the interpreter to the compiled code while it is running: the two
+ * may return rows in a different order, so the compiled code cannot resume
+ * where the interpreter left off.
+ *
+ * @see EnumerableInterpretable#toTieredBindable
+ */
+class TieredBindable implements Bindable<Object>, Typed {
+  private static ExecutorService executor;
+
+  private final RelNode rel;
+  private final Type elementType;
+  private final int fieldCount;
+  private final int rowThreshold;
+  private final Future<Bindable> future;
+
+  /** Whether an interpreted execution has returned {@link #rowThreshold}
+   * rows. */
+  private volatile boolean longRunning;
+
+  /** Whether the interpreter can execute the expression. Becomes false if
+   * the interpreter fails to prepare it. */
+  private volatile boolean interpretable = true;
+
+  /** Creates a TieredBindable and starts compiling its code.
+   *
+   * @param rel          Relational expression that the interpreter can
+   *                     execute
+   * @param elementType  Element type of the compiled code
+   * @param fieldCount   Number of fields; if 1, rows are scalars rather than
+   *                     arrays
+   * @param rowThreshold Number of rows after which an interpreted execution
+   *                     is considered long-running
+   * @param compiler     Compiles the generated code
+   */
+  TieredBindable(RelNode rel, Type elementType, int fieldCount,
+      int rowThreshold, Callable<Bindable> compiler) {
+    this.rel = unwrap(rel);
+    this.elementType = elementType;
+    this.fieldCount = fieldCount;
+    this.rowThreshold = rowThreshold;
+    this.future = executor().submit(compiler);
+  }
+
+  /** Returns the executor that compiles code in the background. Its threads
+   * are daemon threads, and there is at most one per processor. */
+  private static synchronized ExecutorService executor() {
+    if (executor == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              final Thread thread = new Thread(r,
+                  "calcite-compiler-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+    return executor;
+  }
+
+  public Type getElementType() {
+    return elementType;
+  }
+
+  public Enumerable<Object> bind(DataContext dataContext) {
+    if (interpretable
+        && (!future.isDone() && !longRunning || compileFailed())) {
+      final Interpreter interpreter;
+      try {
+        interpreter = new Interpreter(dataContext, rel);
+      } catch (RuntimeException | AssertionError e) {
+        // The interpreter does not support some part of the expression.
+        // Use the compiled code from now on.
+        interpretable = false;
+        return compiled().bind(dataContext);
+      }
+      return interpret(interpreter);
+    }
+    return compiled().bind(dataContext);
+  }
+
+  /** Returns whether compilation has finished, unsuccessfully. */
+  private boolean compileFailed() {
+    if (!future.isDone()) {
+      return false;
+    }
+    try {
+      future.get();
+      return false;
+    } catch (InterruptedException | ExecutionException e) {
+      return true;
+    }
+  }
+
+  /** Returns the compiled code, waiting for compilation to finish if
+   * necessary. */
+  private Bindable compiled() {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Util.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /** Converts the rows returned by an interpreter into the format of the
+   * compiled code, and counts them. */
+  private Enumerable<Object> interpret(final Interpreter interpreter) {
+    return new AbstractEnumerable<Object>() {
+      public Enumerator<Object> enumerator() {
+        final Enumerator<Object[]> enumerator = interpreter.enumerator();
+        return new Enumerator<Object>() {
+          int rowCount;
+
+          public Object current() {
+            final Object[] row = enumerator.current();
+            return fieldCount == 1 ? row[0] : row;
+          }
+
+          public boolean moveNext() {
+            if (!enumerator.moveNext()) {
+              return false;
+            }
+            if (++rowCount == rowThreshold) {
+              longRunning = true;
+            }
+            return true;
+          }
+
+          public void reset() {
+            enumerator.reset();
+            rowCount = 0;
+          }
+
+          public void close() {
+            enumerator.close();
+          }
+        };
+      }
+    };
+  }
+
+  /** Returns the element type of the class generated from a relational
+   * expression, or null if it cannot be determined without compiling the
+   * class. */
+  static Type elementType(ClassDeclaration expr) {
+    for (MemberDeclaration member : expr.memberDeclarations) {
+      if (member instanceof MethodDeclaration
+          && ((MethodDeclaration) member).name.equals(
+              BuiltInMethod.TYPED_GET_ELEMENT_TYPE.method.getName())) {
+        final Statement statement =
+            ((MethodDeclaration) member).body.statements.get(0);
+        if (statement instanceof GotoStatement
+            && ((GotoStatement) statement).expression
+                instanceof ConstantExpression) {
+          final Object value =
+              ((ConstantExpression) ((GotoStatement) statement).expression)
+                  .value;
+          if (value instanceof Type) {
+            return (Type) value;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Returns a relational expression that the interpreter can execute,
+   * removing each {@link EnumerableInterpreter} (whose input the interpreter
+   * can execute directly). */
+  static RelNode unwrap(RelNode rel) {
+    if (rel instanceof EnumerableInterpreter) {
+      return unwrap(((EnumerableInterpreter) rel).getInput());
+    }
+    final List<RelNode> inputs = new ArrayList<>();
+    boolean changed = false;
+    for (RelNode input : rel.getInputs()) {
+      final RelNode input2 = unwrap(input);
+      inputs.add(input2);
+      changed |= input2 != input;
+    }
+    return changed ? rel.copy(rel.getTraitSet(), inputs) : rel;
+  }
+
+  /** Returns whether the interpreter can execute a relational expression
+   * and return the same rows as the code generated for it.
+   *
+   * <p>The generated code must return each row as an array, or, if there is
+   * one field, as the value of that field. */
+  static boolean canInterpret(RelNode rel, Type elementType) {
+    if (elementType != Object[].class) {
+      final RelDataType rowType = rel.getRowType();
+      final JavaTypeFactory typeFactory =
+          (JavaTypeFactory) rel.getCluster().getTypeFactory();
+      if (rowType.getFieldCount() != 1
+          || elementType == null
+          || elementType != typeFactory.getJavaClass(
+              rowType.getFieldList().get(0).getType())) {
+        return false;
+      }
+    }
+    return canInterpret(rel);
+  }
+
+  /** Returns whether the interpreter can execute a relational expression.
+   *
+   * <p>Only allows operators that the interpreter implements in full,
+   * and scans of tables that return rows as arrays. */
+  private static boolean canInterpret(RelNode rel) {
+    if (rel instanceof EnumerableInterpreter) {
+      return canInterpret(((EnumerableInterpreter) rel).getInput());
+    } else if (rel instanceof Bindables.BindableTableScan) {
+      return true;
+    } else if (rel instanceof EnumerableTableScan) {
+      final RelOptTable table = rel.getTable();
+      return table.unwrap(ScannableTable.class) != null
+          || table.unwrap(FilterableTable.class) != null
+          || table.unwrap(ProjectableFilterableTable.class) != null;
+    } else if (rel instanceof Aggregate) {
+      final Aggregate aggregate = (Aggregate) rel;
+      if (aggregate.getGroupType() != Aggregate.Group.SIMPLE
+          || aggregate.indicator) {
+        return false;
+      }
+      for (AggregateCall call : aggregate.getAggCallList()) {
+        if (call.isDistinct() || !canInterpret(call)) {
+          return false;
+        }
+      }
+    } else if (rel instanceof Sort) {
+      final Sort sort = (Sort) rel;
+      if (!isLiteralOrNull(sort.offset) || !isLiteralOrNull(sort.fetch)) {
+        return false;
+      }
+    } else if (!(rel instanceof Project
+        || rel instanceof Filter
+        || rel instanceof Calc
+        || rel instanceof Values
+        || rel instanceof Union
+        || rel instanceof Join)) {
+      return false;
+    }
+    for (RelNode input : rel.getInputs()) {
+      if (!canInterpret(input)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean canInterpret(AggregateCall call) {
+    switch (call.getAggregation().getKind()) {
+    case COUNT:
+      return true;
+    case SUM:
+    case SUM0:
+    case MIN:
+    case MAX:
+      return call.getArgList().size() == 1;
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isLiteralOrNull(RexNode node) {
+    return node == null || node instanceof RexLiteral;
+  }
+}
+
+// End TieredBindable.java
@@ -49,6 +49,14 @@ public interface JavaTypeFactory extends RelDataTypeFactory {
    * types. */
   Type createSyntheticType(List<Type> types);
 
+  /** Creates a synthetic Java class that holds a key whose fields have the
+   * given Java types.
+   *
+   * <p>Unlike a class created by {@link #createSyntheticType(List)}, the
+   * class has a constructor that initializes every field, and caches its
+   * hash code, so that it is efficient as the key of a hash table. */
+  Type createSyntheticKeyType(List<Type> types);
+
   /** Converts a type in Java format to a SQL-oriented type. */
   RelDataType toSql(RelDataType type);
 }
@@ -34,14 +34,22 @@ public interface CalciteConnectionConfig extends ConnectionConfig {
   boolean approximateDecimal();
   /** @see CalciteConnectionProperty#AUTO_TEMP */
   boolean autoTemp();
+  /** @see CalciteConnectionProperty#BATCH_EXECUTION */
+  boolean batchExecution();
+  /** @see CalciteConnectionProperty#PARALLELISM */
+  int parallelism();
   /** @see CalciteConnectionProperty#MATERIALIZATIONS_ENABLED */
   boolean materializationsEnabled();
   /** @see CalciteConnectionProperty#CREATE_MATERIALIZATIONS */
   boolean createMaterializations();
+  /** @see CalciteConnectionProperty#CORRELATE_CACHE_SIZE */
+  int correlateCacheSize();
   /** @see CalciteConnectionProperty#DEFAULT_NULL_COLLATION */
   NullCollation defaultNullCollation();
   /** @see CalciteConnectionProperty#FUN */
   <T> T fun(Class<T> operatorTableClass, T defaultOperatorTable);
+  /** @see CalciteConnectionProperty#MEMORY_BUDGET */
+  long memoryBudget();
   /** @see CalciteConnectionProperty#MODEL */
   String model();
   /** @see CalciteConnectionProperty#LEX */
@@ -56,12 +64,18 @@ public interface CalciteConnectionConfig extends ConnectionConfig {
   boolean caseSensitive();
   /** @see CalciteConnectionProperty#PARSER_FACTORY */
   <T> T parserFactory(Class<T> parserFactoryClass, T defaultParserFactory);
+  /** @see CalciteConnectionProperty#PLAN_CACHE */
+  boolean planCache();
   /** @see CalciteConnectionProperty#SCHEMA_FACTORY */
   <T> T schemaFactory(Class<T> schemaFactoryClass, T defaultSchemaFactory);
   /** @see CalciteConnectionProperty#SCHEMA_TYPE */
   JsonSchema.Type schemaType();
   /** @see CalciteConnectionProperty#SPARK */
   boolean spark();
+  /** @see CalciteConnectionProperty#TIERED_EXECUTION */
+  boolean tieredExecution();
+  /** @see CalciteConnectionProperty#TIERED_EXECUTION_ROW_THRESHOLD */
+  int tieredExecutionRowThreshold();
   /** @see CalciteConnectionProperty#FORCE_DECORRELATE */
   boolean forceDecorrelate();
   /** @see CalciteConnectionProperty#TYPE_SYSTEM */
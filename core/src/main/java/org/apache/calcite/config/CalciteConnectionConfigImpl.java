@@ -29,6 +29,8 @@
 import org.apache.calcite.sql.validate.SqlConformance;
 import org.apache.calcite.sql.validate.SqlConformanceEnum;
 
+import com.google.common.collect.ImmutableSortedMap;
+
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Properties;
@@ -40,6 +42,17 @@ public CalciteConnectionConfigImpl(Properties properties) {
     super(properties);
   }
 
+  /** Returns the properties of this configuration, including those
+   * inherited from default properties, as an immutable map. */
+  public ImmutableSortedMap<String, String> toMap() {
+    final ImmutableSortedMap.Builder<String, String> builder =
+        ImmutableSortedMap.naturalOrder();
+    for (String name : properties.stringPropertyNames()) {
+      builder.put(name, properties.getProperty(name));
+    }
+    return builder.build();
+  }
+
   /** Returns a copy of this configuration with one property changed. */
   public CalciteConnectionConfigImpl set(CalciteConnectionProperty property,
       String value) {
@@ -67,6 +80,15 @@ public boolean autoTemp() {
     return CalciteConnectionProperty.AUTO_TEMP.wrap(properties).getBoolean();
   }
 
+  public boolean batchExecution() {
+    return CalciteConnectionProperty.BATCH_EXECUTION.wrap(properties)
+        .getBoolean();
+  }
+
+  public int parallelism() {
+    return CalciteConnectionProperty.PARALLELISM.wrap(properties).getInt();
+  }
+
   public boolean materializationsEnabled() {
     return CalciteConnectionProperty.MATERIALIZATIONS_ENABLED.wrap(properties)
         .getBoolean();
@@ -77,6 +99,11 @@ public boolean createMaterializations() {
         .getBoolean();
   }
 
+  public int correlateCacheSize() {
+    return CalciteConnectionProperty.CORRELATE_CACHE_SIZE.wrap(properties)
+        .getInt();
+  }
+
   public NullCollation defaultNullCollation() {
     return CalciteConnectionProperty.DEFAULT_NULL_COLLATION.wrap(properties)
         .getEnum(NullCollation.class, NullCollation.HIGH);
@@ -116,6 +143,10 @@ private static void operatorTable(String s,
     }
   }
 
+  public long memoryBudget() {
+    return CalciteConnectionProperty.MEMORY_BUDGET.wrap(properties).getLong();
+  }
+
   public String model() {
     return CalciteConnectionProperty.MODEL.wrap(properties).getString();
   }
@@ -150,6 +181,10 @@ public <T> T parserFactory(Class<T> parserFactoryClass,
         .getPlugin(parserFactoryClass, defaultParserFactory);
   }
 
+  public boolean planCache() {
+    return CalciteConnectionProperty.PLAN_CACHE.wrap(properties).getBoolean();
+  }
+
   public <T> T schemaFactory(Class<T> schemaFactoryClass,
       T defaultSchemaFactory) {
     return CalciteConnectionProperty.SCHEMA_FACTORY.wrap(properties)
@@ -165,6 +200,16 @@ public boolean spark() {
     return CalciteConnectionProperty.SPARK.wrap(properties).getBoolean();
   }
 
+  public boolean tieredExecution() {
+    return CalciteConnectionProperty.TIERED_EXECUTION.wrap(properties)
+        .getBoolean();
+  }
+
+  public int tieredExecutionRowThreshold() {
+    return CalciteConnectionProperty.TIERED_EXECUTION_ROW_THRESHOLD
+        .wrap(properties).getInt();
+  }
+
   public boolean forceDecorrelate() {
     return CalciteConnectionProperty.FORCE_DECORRELATE.wrap(properties)
         .getBoolean();
@@ -51,6 +51,17 @@ public enum CalciteConnectionProperty implements ConnectionProperty {
   /** Whether to store query results in temporary tables. */
   AUTO_TEMP("autoTemp", Type.BOOLEAN, false, false),
 
+  /** Whether the planner may execute relational operators over batches of
+   * columns, rather than one row at a time; see
+   * {@link org.apache.calcite.adapter.batch.BatchConvention}. */
+  BATCH_EXECUTION("batchExecution", Type.BOOLEAN, false, false),
+
+  /** Number of partitions into which the planner may split the inputs of
+   * large aggregates and joins, so that they are evaluated in parallel, by
+   * adding {@link org.apache.calcite.adapter.enumerable.EnumerableExchange}
+   * operators. The default, 1, means that queries are not parallelized. */
+  PARALLELISM("parallelism", Type.NUMBER, 1, false),
+
   /** Whether Calcite should use materializations. */
   MATERIALIZATIONS_ENABLED("materializationsEnabled", Type.BOOLEAN, true,
       false),
@@ -58,6 +69,13 @@ public enum CalciteConnectionProperty implements ConnectionProperty {
   /** Whether Calcite should create materializations. */
   CREATE_MATERIALIZATIONS("createMaterializations", Type.BOOLEAN, true, false),
 
+  /** Maximum number of distinct values of the correlation variables for which
+   * {@link org.apache.calcite.adapter.enumerable.EnumerableCorrelate} keeps
+   * the rows of its right input, so that it does not evaluate the right input
+   * again for an outer row with the same values. When the cache is full, the
+   * least recently used entry is discarded. 0 means no cache. */
+  CORRELATE_CACHE_SIZE("correlateCacheSize", Type.NUMBER, 1000, false),
+
   /** How NULL values should be sorted if neither NULLS FIRST nor NULLS LAST are
    * specified. The default, HIGH, sorts NULL values the same as Oracle. */
   DEFAULT_NULL_COLLATION("defaultNullCollation", Type.ENUM, NullCollation.HIGH,
@@ -67,6 +85,12 @@ public enum CalciteConnectionProperty implements ConnectionProperty {
    * "select" queries. */
   DRUID_FETCH("druidFetch", Type.NUMBER, 16384, false),
 
+  /** Maximum number of bytes of rows that a memory-intensive operator, such as
+   * a hash join, may hold in memory before it spills them to temporary files
+   * on disk. The budget applies to each operator separately. The default, 0,
+   * means no limit; operators never spill. */
+  MEMORY_BUDGET("memoryBudget", Type.NUMBER, 0L, false),
+
   /** URI of the model. */
   MODEL("model", Type.STRING, null, false),
 
@@ -100,6 +124,14 @@ public enum CalciteConnectionProperty implements ConnectionProperty {
    * {@link org.apache.calcite.sql.parser.SqlParserImplFactory}. */
   PARSER_FACTORY("parserFactory", Type.PLUGIN, null, false),
 
+  /** Whether statements prepared from SQL are kept in a cache that is shared
+   * by all connections, and reused when a connection with the same
+   * properties and root schema prepares the same SQL text. An entry is not
+   * used after a table, function or schema has been added to or removed from
+   * the root schema. The default, false, means that each statement is parsed,
+   * validated and optimized. */
+  PLAN_CACHE("planCache", Type.BOOLEAN, false, false),
+
   /** Name of initial schema. */
   SCHEMA("schema", Type.STRING, null, false),
 
@@ -124,6 +156,20 @@ public enum CalciteConnectionProperty implements ConnectionProperty {
    * generates code that implements the Enumerable interface. */
   SPARK("spark", Type.BOOLEAN, false, false),
 
+  /** Whether a query is interpreted while the code generated for it compiles
+   * in a background thread. When compilation finishes, later executions of
+   * the same prepared statement use the compiled code. Applies only to plans
+   * that the interpreter supports. The default, false, means that a query
+   * does not execute until its code has compiled. */
+  TIERED_EXECUTION("tieredExecution", Type.BOOLEAN, false, false),
+
+  /** Number of rows after which, in
+   * {@link #TIERED_EXECUTION tiered execution}, a plan is considered
+   * long-running. Later executions of a long-running plan wait for its code
+   * to compile rather than being interpreted. */
+  TIERED_EXECUTION_ROW_THRESHOLD("tieredExecutionRowThreshold", Type.NUMBER,
+      10000, false),
+
   /** Time zone, for example 'gmt-3'. Default is the JVM's time zone. */
   TIME_ZONE("timeZone", Type.STRING, null, false),
 
@@ -35,8 +35,9 @@
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexNode;
-import org.apache.calcite.schema.impl.AggregateFunctionImpl;
+import org.apache.calcite.sql.SqlKind;
 import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.util.ImmutableBitSet;
 import org.apache.calcite.util.Pair;
 
@@ -45,8 +46,7 @@
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -57,6 +57,9 @@
  * {@link org.apache.calcite.rel.core.Aggregate}.
  */
 public class AggregateNode extends AbstractSingleNode<Aggregate> {
+  /** Key of the only group if there are no grouping columns. */
+  private static final Object EMPTY_KEY = Row.of();
+
   private final List<Grouping> groups = Lists.newArrayList();
   private final ImmutableBitSet unionGroups;
   private final int outputRowLength;
@@ -89,10 +92,13 @@ public AggregateNode(Compiler compiler, Aggregate rel) {
   }
 
   public void run() throws InterruptedException {
-    Row r;
-    while ((r = source.receive()) != null) {
+    final Row[] rows = new Row[Interpreter.BATCH_SIZE];
+    int count;
+    while ((count = source.receiveBatch(rows)) > 0) {
       for (Grouping group : groups) {
-        group.send(r);
+        for (int i = 0; i < count; i++) {
+          group.send(rows[i]);
+        }
       }
     }
 
@@ -101,6 +107,14 @@ public void run() throws InterruptedException {
     }
   }
 
+  private AccumulatorList newAccumulatorList() {
+    final AccumulatorList list = new AccumulatorList();
+    for (AccumulatorFactory factory : accumulatorFactories) {
+      list.add(factory.get());
+    }
+    return list;
+  }
+
   private AccumulatorFactory getAccumulator(final AggregateCall call,
       boolean ignoreFilter) {
     if (call.filterArg >= 0 && !ignoreFilter) {
@@ -120,28 +134,46 @@ public Accumulator get() {
       };
     } else if (call.getAggregation() == SqlStdOperatorTable.SUM
         || call.getAggregation() == SqlStdOperatorTable.SUM0) {
-      final Class<?> clazz;
-      switch (call.type.getSqlTypeName()) {
+      if (call.getArgList().size() != 1) {
+        throw new UnsupportedOperationException("in current implementation, "
+            + "aggregate must have precisely one argument");
+      }
+      final int ordinal = call.getArgList().get(0);
+      final boolean nullIfEmpty =
+          call.getAggregation() == SqlStdOperatorTable.SUM;
+      final SqlTypeName typeName = call.type.getSqlTypeName();
+      switch (typeName) {
       case DOUBLE:
       case REAL:
       case FLOAT:
-        clazz = DoubleSum.class;
-        break;
-      case INTEGER:
-        clazz = IntSum.class;
-        break;
-      case BIGINT:
+        return new AccumulatorFactory() {
+          public Accumulator get() {
+            return new DoubleSumAccumulator(ordinal, nullIfEmpty, typeName);
+          }
+        };
+      case DECIMAL:
+        return new AccumulatorFactory() {
+          public Accumulator get() {
+            return new BigDecimalSumAccumulator(ordinal, nullIfEmpty);
+          }
+        };
       default:
-        clazz = LongSum.class;
-        break;
-      }
-      if (call.getAggregation() == SqlStdOperatorTable.SUM) {
-        return new UdaAccumulatorFactory(
-            AggregateFunctionImpl.create(clazz), call, true);
-      } else {
-        return new UdaAccumulatorFactory(
-            AggregateFunctionImpl.create(clazz), call, false);
+        return new AccumulatorFactory() {
+          public Accumulator get() {
+            return new LongSumAccumulator(ordinal, nullIfEmpty, typeName);
+          }
+        };
       }
+    } else if ((call.getAggregation().getKind() == SqlKind.MIN
+        || call.getAggregation().getKind() == SqlKind.MAX)
+        && call.getArgList().size() == 1) {
+      final int ordinal = call.getArgList().get(0);
+      final boolean max = call.getAggregation().getKind() == SqlKind.MAX;
+      return new AccumulatorFactory() {
+        public Accumulator get() {
+          return new MinMaxAccumulator(ordinal, max);
+        }
+      };
     } else {
       final JavaTypeFactory typeFactory =
           (JavaTypeFactory) rel.getCluster().getTypeFactory();
@@ -239,6 +271,139 @@ public Object end() {
     }
   }
 
+  /** Accumulator for calls to the SUM and $SUM0 functions over integer
+   * values. The total is held in a {@code long}, so no object is allocated
+   * per input row. */
+  private static class LongSumAccumulator implements Accumulator {
+    private final int ordinal;
+    private final boolean nullIfEmpty;
+    private final SqlTypeName typeName;
+    long sum;
+    boolean empty = true;
+
+    LongSumAccumulator(int ordinal, boolean nullIfEmpty,
+        SqlTypeName typeName) {
+      this.ordinal = ordinal;
+      this.nullIfEmpty = nullIfEmpty;
+      this.typeName = typeName;
+    }
+
+    public void send(Row row) {
+      final Object value = row.getObject(ordinal);
+      if (value != null) {
+        sum += ((Number) value).longValue();
+        empty = false;
+      }
+    }
+
+    public Object end() {
+      if (nullIfEmpty && empty) {
+        return null;
+      }
+      switch (typeName) {
+      case TINYINT:
+        return (byte) sum;
+      case SMALLINT:
+        return (short) sum;
+      case INTEGER:
+        return (int) sum;
+      default:
+        return sum;
+      }
+    }
+  }
+
+  /** Accumulator for calls to the SUM and $SUM0 functions over floating-point
+   * values. */
+  private static class DoubleSumAccumulator implements Accumulator {
+    private final int ordinal;
+    private final boolean nullIfEmpty;
+    private final SqlTypeName typeName;
+    double sum;
+    boolean empty = true;
+
+    DoubleSumAccumulator(int ordinal, boolean nullIfEmpty,
+        SqlTypeName typeName) {
+      this.ordinal = ordinal;
+      this.nullIfEmpty = nullIfEmpty;
+      this.typeName = typeName;
+    }
+
+    public void send(Row row) {
+      final Object value = row.getObject(ordinal);
+      if (value != null) {
+        sum += ((Number) value).doubleValue();
+        empty = false;
+      }
+    }
+
+    public Object end() {
+      if (nullIfEmpty && empty) {
+        return null;
+      }
+      return typeName == SqlTypeName.REAL ? (Object) (float) sum : sum;
+    }
+  }
+
+  /** Accumulator for calls to the SUM and $SUM0 functions over DECIMAL
+   * values. */
+  private static class BigDecimalSumAccumulator implements Accumulator {
+    private final int ordinal;
+    private final boolean nullIfEmpty;
+    BigDecimal sum = BigDecimal.ZERO;
+    boolean empty = true;
+
+    BigDecimalSumAccumulator(int ordinal, boolean nullIfEmpty) {
+      this.ordinal = ordinal;
+      this.nullIfEmpty = nullIfEmpty;
+    }
+
+    public void send(Row row) {
+      final Object value = row.getObject(ordinal);
+      if (value != null) {
+        sum = sum.add(value instanceof BigDecimal
+            ? (BigDecimal) value
+            : new BigDecimal(value.toString()));
+        empty = false;
+      }
+    }
+
+    public Object end() {
+      return nullIfEmpty && empty ? null : sum;
+    }
+  }
+
+  /** Accumulator for calls to the MIN and MAX functions. */
+  private static class MinMaxAccumulator implements Accumulator {
+    private final int ordinal;
+    private final boolean max;
+    Comparable value;
+
+    MinMaxAccumulator(int ordinal, boolean max) {
+      this.ordinal = ordinal;
+      this.max = max;
+    }
+
+    public void send(Row row) {
+      final Comparable v = (Comparable) row.getObject(ordinal);
+      if (v != null) {
+        if (value == null) {
+          value = v;
+        } else {
+          //noinspection unchecked
+          final int c = v.compareTo(value);
+          if (max ? c > 0 : c < 0) {
+            value = v;
+          }
+        }
+      }
+    }
+
+    public Object end() {
+      return value;
+    }
+  }
+
   /** Creates an {@link Accumulator}. */
   private interface AccumulatorFactory extends Supplier<Accumulator> {
   }
@@ -301,42 +466,59 @@ public Object end() {
    */
   private class Grouping {
     private final ImmutableBitSet grouping;
-    private final Map<Row, AccumulatorList> accumulators = Maps.newHashMap();
+    private final int[] keyOrdinals;
+    /** Accumulators for each group. The key is the value of the grouping
+     * column if there is one grouping column, otherwise a {@link Row}. */
+    private final Map<Object, AccumulatorList> accumulators =
+        Maps.newHashMap();
 
     private Grouping(ImmutableBitSet grouping) {
       this.grouping = grouping;
+      this.keyOrdinals = grouping.toArray();
     }
 
     public void send(Row row) {
-      // TODO: fix the size of this row.
-      RowBuilder builder = Row.newBuilder(grouping.cardinality());
-      int j = 0;
-      for (Integer i : grouping) {
-        builder.set(j++, row.getObject(i));
+      final Object key = key(row);
+      AccumulatorList list = accumulators.get(key);
+      if (list == null) {
+        list = newAccumulatorList();
+        accumulators.put(key, list);
       }
-      Row key = builder.build();
+      list.send(row);
+    }
 
-      if (!accumulators.containsKey(key)) {
-        AccumulatorList list = new AccumulatorList();
-        for (AccumulatorFactory factory : accumulatorFactories) {
-          list.add(factory.get());
+    private Object key(Row row) {
+      switch (keyOrdinals.length) {
+      case 0:
+        return EMPTY_KEY;
+      case 1:
+        return row.getObject(keyOrdinals[0]);
+      default:
+        final RowBuilder builder = Row.newBuilder(keyOrdinals.length);
+        for (int j = 0; j < keyOrdinals.length; j++) {
+          builder.set(j, row.getObject(keyOrdinals[j]));
         }
-        accumulators.put(key, list);
+        return builder.build();
       }
-
-      accumulators.get(key).send(row);
     }
 
     public void end(Sink sink) throws InterruptedException {
-      for (Map.Entry<Row, AccumulatorList> e : accumulators.entrySet()) {
-        final Row key = e.getKey();
+      if (keyOrdinals.length == 0 && accumulators.isEmpty()) {
+        // The grand total has a row even if the input is empty.
+        accumulators.put(EMPTY_KEY, newAccumulatorList());
+      }
+      for (Map.Entry<Object, AccumulatorList> e : accumulators.entrySet()) {
+        final Object key = e.getKey();
         final AccumulatorList list = e.getValue();
 
         RowBuilder rb = Row.newBuilder(outputRowLength);
         int index = 0;
+        int j = 0;
         for (Integer groupPos : unionGroups) {
           if (grouping.get(groupPos)) {
-            rb.set(index, key.getObject(index));
+            rb.set(index,
+                keyOrdinals.length == 1 ? key : ((Row) key).getObject(j));
+            ++j;
             if (rel.indicator) {
               rb.set(unionGroups.cardinality() + index, true);
             }
@@ -437,85 +619,6 @@ public double result(double accumulator) {
     }
   }
 
-  /** Accumulator factory based on a user-defined aggregate function. */
-  private static class UdaAccumulatorFactory implements AccumulatorFactory {
-    final AggregateFunctionImpl aggFunction;
-    final int argOrdinal;
-    public final Object instance;
-    public final boolean nullIfEmpty;
-
-    UdaAccumulatorFactory(AggregateFunctionImpl aggFunction,
-        AggregateCall call, boolean nullIfEmpty) {
-      this.aggFunction = aggFunction;
-      if (call.getArgList().size() != 1) {
-        throw new UnsupportedOperationException("in current implementation, "
-            + "aggregate must have precisely one argument");
-      }
-      argOrdinal = call.getArgList().get(0);
-      if (aggFunction.isStatic) {
-        instance = null;
-      } else {
-        try {
-          final Constructor<?> constructor =
-              aggFunction.declaringClass.getConstructor();
-          instance = constructor.newInstance();
-        } catch (InstantiationException | IllegalAccessException
-            | NoSuchMethodException | InvocationTargetException e) {
-          throw new RuntimeException(e);
-        }
-      }
-      this.nullIfEmpty = nullIfEmpty;
-    }
-
-    public Accumulator get() {
-      return new UdaAccumulator(this);
-    }
-  }
-
-  /** Accumulator based upon a user-defined aggregate. */
-  private static class UdaAccumulator implements Accumulator {
-    private final UdaAccumulatorFactory factory;
-    private Object value;
-    private boolean empty;
-
-    UdaAccumulator(UdaAccumulatorFactory factory) {
-      this.factory = factory;
-      try {
-        this.value = factory.aggFunction.initMethod.invoke(factory.instance);
-      } catch (IllegalAccessException | InvocationTargetException e) {
-        throw new RuntimeException(e);
-      }
-      this.empty = true;
-    }
-
-    public void send(Row row) {
-      final Object[] args = {value, row.getValues()[factory.argOrdinal]};
-      for (int i = 1; i < args.length; i++) {
-        if (args[i] == null) {
-          return; // one of the arguments is null; don't add to the total
-        }
-      }
-      try {
-        value = factory.aggFunction.addMethod.invoke(factory.instance, args);
-      } catch (IllegalAccessException | InvocationTargetException e) {
-        throw new RuntimeException(e);
-      }
-      empty = false;
-    }
-
-    public Object end() {
-      if (factory.nullIfEmpty && empty) {
-        return null;
-      }
-      final Object[] args = {value};
-      try {
-        return factory.aggFunction.resultMethod.invoke(factory.instance, args);
-      } catch (IllegalAccessException | InvocationTargetException e) {
-        throw new RuntimeException(e);
-      }
-    }
-  }
-
   /** Accumulator that applies a filter to another accumulator.
    * The filter is a BOOLEAN field in the input row. */
   private static class FilterAccumulator implements Accumulator {
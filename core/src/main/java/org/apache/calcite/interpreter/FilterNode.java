@@ -37,12 +37,24 @@ public FilterNode(Compiler compiler, Filter rel) {
   }
 
   public void run() throws InterruptedException {
-    Row row;
-    while ((row = source.receive()) != null) {
-      context.values = row.getValues();
-      Boolean b = (Boolean) condition.execute(context);
-      if (b != null && b) {
-        sink.send(row);
+    final Row[] rows = new Row[Interpreter.BATCH_SIZE];
+    final Object[][] inputs = new Object[rows.length][];
+    final Object[][] results = new Object[rows.length][1];
+    int count;
+    while ((count = source.receiveBatch(rows)) > 0) {
+      for (int i = 0; i < count; i++) {
+        inputs[i] = rows[i].getValues();
+      }
+      condition.executeBatch(context, inputs, count, results);
+      // Move the rows that pass the condition to the front of the batch.
+      int passed = 0;
+      for (int i = 0; i < count; i++) {
+        if (Boolean.TRUE.equals(results[i][0])) {
+          rows[passed++] = rows[i];
+        }
+      }
+      if (passed > 0) {
+        sink.sendBatch(rows, passed);
       }
     }
   }
@@ -44,8 +44,10 @@
 import org.apache.calcite.util.ReflectUtil;
 import org.apache.calcite.util.ReflectiveVisitDispatcher;
 import org.apache.calcite.util.ReflectiveVisitor;
+import org.apache.calcite.util.SaffronProperties;
 import org.apache.calcite.util.Util;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -58,6 +60,7 @@
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -65,6 +68,15 @@
 import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Interpreter.
@@ -72,16 +84,51 @@
  * <p>Contains the context for interpreting relational expressions. In
  * particular it holds working state while the data flow graph is being
  * assembled.
+ *
+ * <p>By default, nodes run one after another in the thread that reads the
+ * results, and each node writes all of its output to an unbounded queue
+ * before its consumer starts. In pipelined mode, each node runs in its own
+ * thread, and nodes are connected by bounded queues that carry batches of
+ * rows; a node that gets ahead of its consumer waits until the consumer
+ * catches up.
  */
 public class Interpreter extends AbstractEnumerable<Object[]>
     implements AutoCloseable {
+  /** Number of rows in a batch that nodes send and receive, and that is sent
+   * between pipelined nodes. */
+  static final int BATCH_SIZE = 64;
+
+  /** Number of batches that a queue between pipelined nodes can hold. */
+  private static final int QUEUE_CAPACITY = 16;
+
+  /** Batch that marks the end of the rows in a queue. (Compared by
+   * identity, so must not be a shared empty list.) */
+  private static final List<Row> END =
+      Collections.unmodifiableList(new ArrayList<Row>());
+
+  private static ExecutorService executor;
+
   private final Map<RelNode, NodeInfo> nodes;
   private final DataContext dataContext;
   private final RelNode rootRel;
+  /** State shared by the threads of a pipelined interpreter; null if the
+   * interpreter is not pipelined. */
+  private final Pipeline pipeline;
 
-  /** Creates an Interpreter. */
+  /** Creates an Interpreter.
+   *
+   * <p>The interpreter is pipelined if the "saffron.interpreter.pipelined"
+   * property is true. */
   public Interpreter(DataContext dataContext, RelNode rootRel) {
+    this(dataContext, rootRel,
+        SaffronProperties.INSTANCE.interpreterPipelined().get());
+  }
+
+  /** Creates an Interpreter, specifying whether it is pipelined. */
+  public Interpreter(DataContext dataContext, RelNode rootRel,
+      boolean pipelined) {
     this.dataContext = Preconditions.checkNotNull(dataContext);
+    this.pipeline = pipelined ? new Pipeline() : null;
     final RelNode rel = optimize(rootRel);
     final CompilerImpl compiler =
         new Nodes.CoreCompiler(this, rootRel.getCluster());
@@ -109,9 +156,13 @@ public Enumerator<Object[]> enumerator() {
     final Enumerator<Row> rows;
     if (nodeInfo.rowEnumerable != null) {
       rows = nodeInfo.rowEnumerable.enumerator();
+    } else if (pipeline != null) {
+      final PipeSink sink =
+          (PipeSink) Iterables.getOnlyElement(nodeInfo.sinks.values());
+      rows = new PipeEnumerator(pipeline, new PipeSource(pipeline, sink.queue));
     } else {
       final ArrayDeque<Row> queue =
-          Iterables.getOnlyElement(nodeInfo.sinks.values()).list;
+          ((ListSink) Iterables.getOnlyElement(nodeInfo.sinks.values())).list;
       rows = Linq4j.iterableEnumerator(queue);
     }
 
@@ -123,6 +174,10 @@ protected Object[] transform(Row row) {
   }
 
   private void start() {
+    if (pipeline != null) {
+      startPipelined();
+      return;
+    }
     // We rely on the nodes being ordered leaves first.
     for (Map.Entry<RelNode, NodeInfo> entry : nodes.entrySet()) {
       final NodeInfo nodeInfo = entry.getValue();
@@ -134,7 +189,83 @@ private void start() {
     }
   }
 
+  /** Starts a thread for each node. When a node finishes, successfully or
+   * not, ends each of its sinks, so that its consumers finish too. */
+  private void startPipelined() {
+    if (pipeline.started) {
+      throw new IllegalStateException(
+          "pipelined interpreter can only be enumerated once");
+    }
+    pipeline.started = true;
+    pipeline.running = new CountDownLatch(nodes.size());
+    final ExecutorService executor = executor();
+    for (final NodeInfo nodeInfo : nodes.values()) {
+      executor.execute(
+          new Runnable() {
+            public void run() {
+              try {
+                if (!pipeline.closed) {
+                  nodeInfo.node.run();
+                }
+              } catch (Throwable e) {
+                if (!pipeline.closed) {
+                  pipeline.fail(e);
+                }
+              } finally {
+                try {
+                  for (Sink sink : nodeInfo.sinks.values()) {
+                    sink.end();
+                  }
+                } catch (InterruptedException e) {
+                  // The pipeline has been closed; nobody is listening.
+                } finally {
+                  pipeline.running.countDown();
+                }
+              }
+            }
+          });
+    }
+  }
+
+  /** Waits until the threads of a pipelined interpreter have finished.
+   * Returns immediately if the interpreter is not pipelined or has not
+   * started.
+   *
+   * <p>Threads do not stop as soon as the interpreter is closed; each
+   * notices within about 100 milliseconds.
+   *
+   * @return Whether all threads finished before the timeout elapsed */
+  @VisibleForTesting
+  public boolean awaitTermination(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    if (pipeline == null || pipeline.running == null) {
+      return true;
+    }
+    return pipeline.running.await(timeout, unit);
+  }
+
+  /** Returns the executor that runs the nodes of pipelined interpreters.
+   * Its threads are daemon threads, and are created on demand. */
+  private static synchronized ExecutorService executor() {
+    if (executor == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      executor = Executors.newCachedThreadPool(
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              final Thread thread = new Thread(r,
+                  "calcite-interpreter-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+    return executor;
+  }
+
   public void close() {
+    if (pipeline != null) {
+      pipeline.close();
+    }
   }
 
   /** Not used. */
@@ -151,6 +282,14 @@ public void execute(final Context context, Object[] results) {
             results[0] = execute(context);
           }
 
+          public void executeBatch(Context context, Object[][] inputs,
+              int count, Object[][] results) {
+            for (int i = 0; i < count; i++) {
+              context.values = inputs[i];
+              execute(context, results[i]);
+            }
+          }
+
           public Object execute(Context context) {
             Comparable o0;
             Comparable o1;
@@ -231,6 +370,14 @@ public void execute(Context context, Object[] results) {
           results[0] = execute(context);
         }
 
+        public void executeBatch(Context context, Object[][] inputs,
+            int count, Object[][] results) {
+          for (int i = 0; i < count; i++) {
+            context.values = inputs[i];
+            execute(context, results[i]);
+          }
+        }
+
         public Object execute(Context context) {
           switch (node.getKind()) {
           case LITERAL:
@@ -248,7 +395,7 @@ public Object execute(Context context) {
   /** Information about a node registered in the data flow graph. */
   private static class NodeInfo {
     final RelNode rel;
-    final Map<Edge, ListSink> sinks = new LinkedHashMap<>();
+    final Map<Edge, Sink> sinks = new LinkedHashMap<>();
     final Enumerable<Row> rowEnumerable;
     Node node;
 
@@ -278,6 +425,15 @@ private static class EnumeratorSource implements Source {
       return null;
     }
 
+    @Override public int receiveBatch(Row[] rows) {
+      int count = 0;
+      Row row;
+      while (count < rows.length && (row = receive()) != null) {
+        rows[count++] = row;
+      }
+      return count;
+    }
+
     @Override public void close() {
       enumerator.close();
     }
@@ -295,6 +451,12 @@ public void send(Row row) throws InterruptedException {
       list.add(row);
     }
 
+    public void sendBatch(Row[] rows, int count) throws InterruptedException {
+      for (int i = 0; i < count; i++) {
+        list.add(rows[i]);
+      }
+    }
+
     public void end() throws InterruptedException {
     }
 
@@ -331,26 +493,50 @@ public Row receive() {
       }
     }
 
+    public int receiveBatch(Row[] rows) {
+      if (iterator == null) {
+        iterator = list.iterator();
+      }
+      int count = 0;
+      while (count < rows.length && iterator.hasNext()) {
+        rows[count++] = iterator.next();
+      }
+      if (count == 0) {
+        iterator = null;
+      }
+      return count;
+    }
+
     @Override public void close() {
       // noop
     }
   }
 
-  /** Implementation of {@link Sink} using a {@link java.util.ArrayDeque}. */
+  /** Implementation of {@link Sink} that sends each row to several other
+   * sinks. */
   private static class DuplicatingSink implements Sink {
-    private List<ArrayDeque<Row>> queues;
+    private List<Sink> sinks;
 
-    private DuplicatingSink(List<ArrayDeque<Row>> queues) {
-      this.queues = ImmutableList.copyOf(queues);
+    private DuplicatingSink(List<Sink> sinks) {
+      this.sinks = ImmutableList.copyOf(sinks);
     }
 
     public void send(Row row) throws InterruptedException {
-      for (ArrayDeque<Row> queue : queues) {
-        queue.add(row);
+      for (Sink sink : sinks) {
+        sink.send(row);
+      }
+    }
+
+    public void sendBatch(Row[] rows, int count) throws InterruptedException {
+      for (Sink sink : sinks) {
+        sink.sendBatch(rows, count);
       }
     }
 
     public void end() throws InterruptedException {
+      for (Sink sink : sinks) {
+        sink.end();
+      }
     }
 
     @SuppressWarnings("deprecation")
@@ -365,6 +551,204 @@ public void end() throws InterruptedException {
     }
   }
 
+  /** State shared by the threads of a pipelined interpreter. */
+  private static class Pipeline {
+    boolean started;
+    /** Counts down as each node's thread finishes; null until the pipeline
+     * has started. */
+    volatile CountDownLatch running;
+    /** The first error thrown by a node, or null. */
+    volatile Throwable failure;
+    /** Whether the pipeline has been closed, because its results are no
+     * longer needed or because a node failed. Threads that are waiting on a
+     * queue check this flag periodically, so there is no need to interrupt
+     * them. */
+    volatile boolean closed;
+
+    synchronized void fail(Throwable e) {
+      if (failure == null) {
+        failure = e;
+      }
+      close();
+    }
+
+    void close() {
+      closed = true;
+    }
+
+    /** Throws the error of the node that failed, if any. */
+    void checkFailure() {
+      final Throwable e = failure;
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
+      if (e instanceof Error) {
+        throw (Error) e;
+      }
+      if (e != null) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /** Implementation of {@link Sink} that sends batches of rows to a
+   * {@link BlockingQueue}, waiting if the queue is full. */
+  private static class PipeSink implements Sink {
+    private final Pipeline pipeline;
+    final BlockingQueue<List<Row>> queue;
+    private List<Row> batch = new ArrayList<>(BATCH_SIZE);
+    private boolean ended;
+
+    PipeSink(Pipeline pipeline, BlockingQueue<List<Row>> queue) {
+      this.pipeline = pipeline;
+      this.queue = queue;
+    }
+
+    public void send(Row row) throws InterruptedException {
+      batch.add(row);
+      if (batch.size() >= BATCH_SIZE) {
+        put(batch);
+        batch = new ArrayList<>(BATCH_SIZE);
+      }
+    }
+
+    public void sendBatch(Row[] rows, int count) throws InterruptedException {
+      for (int i = 0; i < count; i++) {
+        send(rows[i]);
+      }
+    }
+
+    public void end() throws InterruptedException {
+      if (!ended) {
+        ended = true;
+        if (!batch.isEmpty()) {
+          put(batch);
+        }
+        put(END);
+      }
+    }
+
+    private void put(List<Row> rows) throws InterruptedException {
+      while (!queue.offer(rows, 100, TimeUnit.MILLISECONDS)) {
+        if (pipeline.closed) {
+          throw new InterruptedException("interpreter is closed");
+        }
+      }
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override public void setSourceEnumerable(Enumerable<Row> enumerable)
+        throws InterruptedException {
+      final Enumerator<Row> enumerator = enumerable.enumerator();
+      while (enumerator.moveNext()) {
+        this.send(enumerator.current());
+      }
+      enumerator.close();
+    }
+  }
+
+  /** Implementation of {@link Source} that reads batches of rows from a
+   * {@link BlockingQueue}, waiting if the queue is empty. */
+  private static class PipeSource implements Source {
+    private final Pipeline pipeline;
+    private final BlockingQueue<List<Row>> queue;
+    private List<Row> batch = ImmutableList.of();
+    private int i;
+
+    PipeSource(Pipeline pipeline, BlockingQueue<List<Row>> queue) {
+      this.pipeline = pipeline;
+      this.queue = queue;
+    }
+
+    public Row receive() {
+      while (i >= batch.size()) {
+        if (batch == END) {
+          return null;
+        }
+        batch = take();
+        i = 0;
+      }
+      return batch.get(i++);
+    }
+
+    public int receiveBatch(Row[] rows) {
+      int count = 0;
+      while (count < rows.length) {
+        if (i >= batch.size()) {
+          if (batch == END || count > 0) {
+            // Return what we have rather than wait for the next batch.
+            break;
+          }
+          batch = take();
+          i = 0;
+          continue;
+        }
+        final int n = Math.min(rows.length - count, batch.size() - i);
+        for (int j = 0; j < n; j++) {
+          rows[count++] = batch.get(i++);
+        }
+      }
+      return count;
+    }
+
+    /** Takes the next batch from the queue; returns {@link #END} if the
+     * pipeline is closed or the thread is interrupted. */
+    private List<Row> take() {
+      try {
+        for (;;) {
+          final List<Row> rows = queue.poll(100, TimeUnit.MILLISECONDS);
+          if (rows != null) {
+            return rows;
+          }
+          if (pipeline.closed) {
+            return END;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return END;
+      }
+    }
+
+    @Override public void close() {
+      // noop
+    }
+  }
+
+  /** Enumerator over the rows of the root node of a pipelined interpreter.
+   * Throws if a node failed; closing it closes the pipeline. */
+  private static class PipeEnumerator implements Enumerator<Row> {
+    private final Pipeline pipeline;
+    private final Source source;
+    private Row current;
+
+    PipeEnumerator(Pipeline pipeline, Source source) {
+      this.pipeline = pipeline;
+      this.source = source;
+    }
+
+    public Row current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      current = source.receive();
+      if (current == null) {
+        pipeline.checkFailure();
+        return false;
+      }
+      return true;
+    }
+
+    public void reset() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      pipeline.close();
+    }
+  }
+
   /**
    * Walks over a tree of {@link org.apache.calcite.rel.RelNode} and, for each,
    * creates a {@link org.apache.calcite.interpreter.Node} that can be
@@ -508,9 +892,12 @@ public Source source(RelNode rel, int ordinal) {
         return new EnumeratorSource(nodeInfo.rowEnumerable.enumerator());
       }
       assert nodeInfo.sinks.size() == edges.size();
-      final ListSink sink = nodeInfo.sinks.get(edge);
-      if (sink != null) {
-        return new ListSource(sink.list);
+      final Sink sink = nodeInfo.sinks.get(edge);
+      if (sink instanceof ListSink) {
+        return new ListSource(((ListSink) sink).list);
+      }
+      if (sink instanceof PipeSink) {
+        return new PipeSource(interpreter.pipeline, ((PipeSink) sink).queue);
       }
       throw new IllegalStateException(
           "Got a sink " + sink + " to which there is no match source type!");
@@ -534,18 +921,29 @@ public Sink sink(RelNode rel) {
         nodeInfo = new NodeInfo(rel, null);
         nodes.put(rel, nodeInfo);
         for (Edge edge : edges2) {
-          nodeInfo.sinks.put(edge, new ListSink(new ArrayDeque<Row>()));
+          nodeInfo.sinks.put(edge, createSink(edges2.size()));
         }
       }
       if (edges.size() == 1) {
         return Iterables.getOnlyElement(nodeInfo.sinks.values());
       } else {
-        final List<ArrayDeque<Row>> queues = new ArrayList<>();
-        for (ListSink sink : nodeInfo.sinks.values()) {
-          queues.add(sink.list);
-        }
-        return new DuplicatingSink(queues);
+        return new DuplicatingSink(
+            ImmutableList.copyOf(nodeInfo.sinks.values()));
+      }
+    }
+
+    private Sink createSink(int edgeCount) {
+      final Pipeline pipeline = interpreter.pipeline;
+      if (pipeline == null) {
+        return new ListSink(new ArrayDeque<Row>());
       }
+      // If a node has several consumers, a consumer may not read from one
+      // queue until another consumer has read all of another queue; if the
+      // queues were bounded, the node could wait forever.
+      final BlockingQueue<List<Row>> queue = edgeCount == 1
+          ? new ArrayBlockingQueue<List<Row>>(QUEUE_CAPACITY)
+          : new LinkedBlockingQueue<List<Row>>();
+      return new PipeSink(pipeline, queue);
     }
 
     public void enumerable(RelNode rel, Enumerable<Row> rowEnumerable) {
@@ -113,7 +113,9 @@ public RexToLixTranslator.InputGetter apply(String a0) {
   }
 
   /** Given a method that implements {@link Scalar#execute(Context, Object[])},
-   * adds a bridge method that implements {@link Scalar#execute(Context)}, and
+   * adds a bridge method that implements {@link Scalar#execute(Context)} and
+   * a method that implements
+   * {@link Scalar#executeBatch(Context, Object[][], int, Object[][])}, and
    * compiles. */
   static Scalar baz(ParameterExpression context_,
       ParameterExpression outputValues_, BlockStatement block) {
@@ -143,6 +145,39 @@ static Scalar baz(ParameterExpression context_,
             BuiltInMethod.SCALAR_EXECUTE1.method.getName(),
             ImmutableList.of(context_), builder.toBlock()));
 
+    // public void executeBatch(Context, Object[][] inputs, int count,
+    //     Object[][] results)
+    // The loop is generated in each class, rather than inherited, so that
+    // its call to execute is monomorphic and can be inlined.
+    final ParameterExpression inputs_ =
+        Expressions.parameter(Object[][].class, "inputs");
+    final ParameterExpression count_ =
+        Expressions.parameter(int.class, "count");
+    final ParameterExpression results_ =
+        Expressions.parameter(Object[][].class, "results");
+    final ParameterExpression i_ = Expressions.parameter(int.class, "i");
+    declarations.add(
+        Expressions.methodDecl(Modifier.PUBLIC, void.class,
+            BuiltInMethod.SCALAR_EXECUTE_BATCH.method.getName(),
+            ImmutableList.of(context_, inputs_, count_, results_),
+            Expressions.block(
+                Expressions.for_(
+                    Expressions.declare(0, i_, Expressions.constant(0)),
+                    Expressions.lessThan(i_, count_),
+                    Expressions.preIncrementAssign(i_),
+                    Expressions.block(
+                        Expressions.statement(
+                            Expressions.assign(
+                                Expressions.field(context_,
+                                    BuiltInMethod.CONTEXT_VALUES.field),
+                                Expressions.arrayIndex(inputs_, i_))),
+                        Expressions.statement(
+                            Expressions.call(
+                                Expressions.parameter(Scalar.class, "this"),
+                                BuiltInMethod.SCALAR_EXECUTE2.method,
+                                context_,
+                                Expressions.arrayIndex(results_, i_))))))));
+
     final ClassDeclaration classDeclaration =
         Expressions.classDecl(Modifier.PUBLIC, "Buzz", null,
             ImmutableList.<Type>of(Scalar.class), declarations);
@@ -16,22 +16,52 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.SemiJoin;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexNode;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
+import com.google.common.primitives.Booleans;
+import com.google.common.primitives.Ints;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interpreter node that implements a
  * {@link org.apache.calcite.rel.core.Join}.
+ *
+ * <p>Reads the right input into a hash table keyed on the equi-join keys,
+ * then probes it with each row of the left input. The remaining,
+ * non-equi part of the condition, if any, is evaluated on each pair of rows
+ * that has the same keys. If the condition has no equi-join keys, every
+ * right row is in the same bucket, and the join degenerates to a nested
+ * loop.
+ *
+ * <p>Supports all join types, and also
+ * {@link org.apache.calcite.rel.core.SemiJoin}.
  */
 public class JoinNode implements Node {
+  /** Key of a row that cannot match any row, because one of its keys is
+   * null and is compared using "=". */
+  private static final Object NO_MATCH = new Object();
+
+  /** Key of each row if the join has no equi-join keys. */
+  private static final Object EMPTY_KEY = Row.of();
+
   private final Source leftSource;
   private final Source rightSource;
   private final Sink sink;
   private final Join rel;
+  private final int[] leftKeys;
+  private final int[] rightKeys;
+  private final boolean[] filterNulls;
   private final Scalar condition;
   private final Context context;
 
@@ -39,35 +69,194 @@ public JoinNode(Compiler compiler, Join rel) {
     this.leftSource = compiler.source(rel, 0);
     this.rightSource = compiler.source(rel, 1);
     this.sink = compiler.sink(rel);
-    this.condition = compiler.compile(ImmutableList.of(rel.getCondition()),
-        compiler.combinedRowType(rel.getInputs()));
     this.rel = rel;
     this.context = compiler.createContext();
 
+    final List<Integer> leftKeyList = new ArrayList<>();
+    final List<Integer> rightKeyList = new ArrayList<>();
+    final List<Boolean> filterNullList = new ArrayList<>();
+    RexNode remaining =
+        RelOptUtil.splitJoinCondition(rel.getLeft(), rel.getRight(),
+            rel.getCondition(), leftKeyList, rightKeyList, filterNullList);
+    if (!sameTypes(leftKeyList, rightKeyList)) {
+      // Values of different types (say INTEGER and BIGINT) may be equal
+      // but have different Java representations; they would not collide
+      // in a hash table.
+      leftKeyList.clear();
+      rightKeyList.clear();
+      filterNullList.clear();
+      remaining = rel.getCondition();
+    }
+    this.leftKeys = Ints.toArray(leftKeyList);
+    this.rightKeys = Ints.toArray(rightKeyList);
+    this.filterNulls = Booleans.toArray(filterNullList);
+    this.condition = remaining.isAlwaysTrue()
+        ? null
+        : compiler.compile(ImmutableList.of(remaining),
+            compiler.combinedRowType(rel.getInputs()));
+  }
+
+  private boolean sameTypes(List<Integer> leftKeyList,
+      List<Integer> rightKeyList) {
+    final List<RelDataTypeField> leftFields =
+        rel.getLeft().getRowType().getFieldList();
+    final List<RelDataTypeField> rightFields =
+        rel.getRight().getRowType().getFieldList();
+    for (int i = 0; i < leftKeyList.size(); i++) {
+      if (leftFields.get(leftKeyList.get(i)).getType().getSqlTypeName()
+          != rightFields.get(rightKeyList.get(i)).getType().getSqlTypeName()) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public void run() throws InterruptedException {
-    List<Row> rightList = null;
     final int leftCount = rel.getLeft().getRowType().getFieldCount();
     final int rightCount = rel.getRight().getRowType().getFieldCount();
-    context.values = new Object[rel.getRowType().getFieldCount()];
-    Row left;
-    Row right;
-    while ((left = leftSource.receive()) != null) {
-      System.arraycopy(left.getValues(), 0, context.values, 0, leftCount);
-      if (rightList == null) {
-        rightList = Lists.newArrayList();
-        while ((right = rightSource.receive()) != null) {
-          rightList.add(right);
+    final boolean semi = rel instanceof SemiJoin;
+    final boolean generatesNullsOnLeft =
+        !semi && rel.getJoinType().generatesNullsOnLeft();
+    final boolean generatesNullsOnRight =
+        !semi && rel.getJoinType().generatesNullsOnRight();
+
+    // Build a hash table on the right input. Rows with the same key are
+    // chained, in arrival order, through the "next" array; each entry of
+    // the map holds the first and last row of a chain.
+    final List<Row> rightList = new ArrayList<>();
+    final Map<Object, int[]> chains = new HashMap<>();
+    int[] next = new int[16];
+    final Row[] rows = new Row[Interpreter.BATCH_SIZE];
+    int count;
+    while ((count = rightSource.receiveBatch(rows)) > 0) {
+      for (int r = 0; r < count; r++) {
+        final Row row = rows[r];
+        final int i = rightList.size();
+        rightList.add(row);
+        if (i == next.length) {
+          next = Arrays.copyOf(next, i * 2);
+        }
+        next[i] = -1;
+        final Object key = key(row, rightKeys);
+        if (key == NO_MATCH) {
+          continue;
+        }
+        final int[] chain = chains.get(key);
+        if (chain == null) {
+          chains.put(key, new int[] {i, i});
+        } else {
+          next[chain[1]] = i;
+          chain[1] = i;
         }
       }
-      for (Row right2 : rightList) {
-        System.arraycopy(right2.getValues(), 0, context.values, leftCount,
-            rightCount);
-        final Boolean execute = (Boolean) condition.execute(context);
-        if (execute != null && execute) {
-          sink.send(Row.asCopy(context.values));
+    }
+
+    // Probe the hash table with each left row. Output rows are collected in
+    // a batch, which is sent when it is full.
+    final BitSet matched = generatesNullsOnLeft ? new BitSet() : null;
+    final Output output = new Output();
+    context.values = new Object[leftCount + rightCount];
+    while ((count = leftSource.receiveBatch(rows)) > 0) {
+      for (int r = 0; r < count; r++) {
+        final Row row = rows[r];
+        final Object key = key(row, leftKeys);
+        final int[] chain = key == NO_MATCH ? null : chains.get(key);
+        boolean found = false;
+        if (chain != null) {
+          if (condition != null) {
+            System.arraycopy(row.getValues(), 0, context.values, 0,
+                leftCount);
+          }
+          for (int i = chain[0]; i >= 0; i = next[i]) {
+            final Row right = rightList.get(i);
+            if (condition != null) {
+              System.arraycopy(right.getValues(), 0, context.values,
+                  leftCount, rightCount);
+              if (!Boolean.TRUE.equals(condition.execute(context))) {
+                continue;
+              }
+            }
+            found = true;
+            if (semi) {
+              break;
+            }
+            if (matched != null) {
+              matched.set(i);
+            }
+            output.add(concat(row, right, leftCount, rightCount));
+          }
         }
+        if (semi) {
+          if (found) {
+            output.add(row);
+          }
+        } else if (!found && generatesNullsOnRight) {
+          output.add(concat(row, null, leftCount, rightCount));
+        }
+      }
+    }
+
+    // Emit right rows that matched no left row.
+    if (matched != null) {
+      for (int i = matched.nextClearBit(0); i < rightList.size();
+          i = matched.nextClearBit(i + 1)) {
+        output.add(concat(null, rightList.get(i), leftCount, rightCount));
+      }
+    }
+    output.flush();
+    sink.end();
+  }
+
+  /** Creates a row from a left and a right row, either of which may be null
+   * to generate nulls. */
+  private static Row concat(Row left, Row right, int leftCount,
+      int rightCount) {
+    final Object[] values = new Object[leftCount + rightCount];
+    if (left != null) {
+      System.arraycopy(left.getValues(), 0, values, 0, leftCount);
+    }
+    if (right != null) {
+      System.arraycopy(right.getValues(), 0, values, leftCount, rightCount);
+    }
+    return new Row(values);
+  }
+
+  /** Returns the key of a row, or {@link #NO_MATCH} if it cannot match. */
+  private Object key(Row row, int[] keys) {
+    switch (keys.length) {
+    case 0:
+      return EMPTY_KEY;
+    case 1:
+      final Object value = row.getObject(keys[0]);
+      return value == null && filterNulls[0] ? NO_MATCH : value;
+    default:
+      final Object[] values = new Object[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        values[i] = row.getObject(keys[i]);
+        if (values[i] == null && filterNulls[i]) {
+          return NO_MATCH;
+        }
+      }
+      return Row.asCopy(values);
+    }
+  }
+
+  /** Batch of output rows. */
+  private class Output {
+    private final Row[] rows = new Row[Interpreter.BATCH_SIZE];
+    private int count;
+
+    void add(Row row) throws InterruptedException {
+      rows[count++] = row;
+      if (count == rows.length) {
+        flush();
+      }
+    }
+
+    void flush() throws InterruptedException {
+      if (count > 0) {
+        sink.sendBatch(rows, count);
+        count = 0;
       }
     }
   }
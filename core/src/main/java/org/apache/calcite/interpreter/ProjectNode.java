@@ -36,12 +36,20 @@ public ProjectNode(Compiler compiler, Project rel) {
   }
 
   public void run() throws InterruptedException {
-    Row row;
-    while ((row = source.receive()) != null) {
-      context.values = row.getValues();
-      Object[] values = new Object[projectCount];
-      scalar.execute(context, values);
-      sink.send(new Row(values));
+    final Row[] rows = new Row[Interpreter.BATCH_SIZE];
+    final Object[][] inputs = new Object[rows.length][];
+    final Object[][] outputs = new Object[rows.length][];
+    int count;
+    while ((count = source.receiveBatch(rows)) > 0) {
+      for (int i = 0; i < count; i++) {
+        inputs[i] = rows[i].getValues();
+        outputs[i] = new Object[projectCount];
+      }
+      scalar.executeBatch(context, inputs, count, outputs);
+      for (int i = 0; i < count; i++) {
+        rows[i] = new Row(outputs[i]);
+      }
+      sink.sendBatch(rows, count);
     }
   }
 }
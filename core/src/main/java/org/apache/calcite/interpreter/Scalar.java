@@ -22,6 +22,12 @@
 public interface Scalar {
   Object execute(Context context);
   void execute(Context context, Object[] results);
+
+  /** Evaluates the expressions for each of the first {@code count} rows of
+   * a batch. For each row, sets {@code context.values} to {@code inputs[i]}
+   * and writes the values of the expressions into {@code results[i]}. */
+  void executeBatch(Context context, Object[][] inputs, int count,
+      Object[][] results);
 }
 
 // End Scalar.java
@@ -26,6 +26,12 @@
 public interface Sink {
   void send(Row row) throws InterruptedException;
 
+  /** Sends the first {@code count} rows of an array.
+   *
+   * <p>The sink may keep the rows, but not the array, which the caller may
+   * reuse for the next batch. */
+  void sendBatch(Row[] rows, int count) throws InterruptedException;
+
   void end() throws InterruptedException;
 
   /** This method is temporary. It will be removed without notice. */
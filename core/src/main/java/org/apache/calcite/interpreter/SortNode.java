@@ -25,6 +25,7 @@
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -67,17 +68,32 @@ public void run() throws InterruptedException {
         }
       }
     } else {
-      // Build a sorted collection.
+      // Build a sorted collection. If there is a fetch, we only need the
+      // first "offset + fetch" rows; whenever the list grows to twice that
+      // size, sort it and discard the rest. The sort is stable, so the
+      // result is the same as if we had sorted the whole input.
+      final Comparator<Row> comparator = comparator();
+      final int limit = fetch < 0 ? -1 : offset + fetch;
+      final int threshold = limit < 0 || limit > Integer.MAX_VALUE / 2
+          ? Integer.MAX_VALUE
+          : Math.max(limit * 2, 16);
       final List<Row> list = Lists.newArrayList();
-      while ((row = source.receive()) != null) {
-        list.add(row);
+      final Row[] rows = new Row[Interpreter.BATCH_SIZE];
+      int count;
+      while ((count = source.receiveBatch(rows)) > 0) {
+        list.addAll(Arrays.asList(rows).subList(0, count));
+        if (list.size() >= threshold) {
+          Collections.sort(list, comparator);
+          list.subList(limit, list.size()).clear();
+        }
       }
-      Collections.sort(list, comparator());
+      Collections.sort(list, comparator);
       final int end = fetch < 0 || offset + fetch > list.size()
           ? list.size()
           : offset + fetch;
-      for (int i = offset; i < end; i++) {
-        sink.send(list.get(i));
+      if (offset < end) {
+        final Row[] sorted = list.subList(offset, end).toArray(new Row[0]);
+        sink.sendBatch(sorted, sorted.length);
       }
     }
     sink.end();
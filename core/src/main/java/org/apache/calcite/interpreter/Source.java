@@ -25,6 +25,10 @@ public interface Source extends AutoCloseable {
   /** Reads a row. Null means end of data. */
   Row receive();
 
+  /** Reads up to {@code rows.length} rows into an array, and returns the
+   * number of rows read. Zero means end of data. */
+  int receiveBatch(Row[] rows);
+
   void close();
 }
 
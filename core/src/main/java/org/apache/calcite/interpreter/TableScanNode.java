@@ -30,9 +30,11 @@
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.rex.RexUtil;
 import org.apache.calcite.runtime.Enumerables;
+import org.apache.calcite.runtime.RuntimeFilter;
 import org.apache.calcite.schema.FilterableTable;
 import org.apache.calcite.schema.ProjectableFilterableTable;
 import org.apache.calcite.schema.QueryableTable;
+import org.apache.calcite.schema.RuntimeFilterableTable;
 import org.apache.calcite.schema.ScannableTable;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.Schemas;
@@ -172,8 +174,14 @@ private static TableScanNode createFilterable(Compiler compiler,
       FilterableTable filterableTable) {
     final DataContext root = compiler.getDataContext();
     final List<RexNode> mutableFilters = Lists.newArrayList(filters);
+    final List<RuntimeFilter.Slot> runtimeFilters =
+        DataContext.Variable.RUNTIME_FILTERS.get(root);
     final Enumerable<Object[]> enumerable =
-        filterableTable.scan(root, mutableFilters);
+        runtimeFilters != null
+            && filterableTable instanceof RuntimeFilterableTable
+            ? ((RuntimeFilterableTable) filterableTable).scan(root,
+                mutableFilters, null, runtimeFilters)
+            : filterableTable.scan(root, mutableFilters);
     for (RexNode filter : mutableFilters) {
       if (!filters.contains(filter)) {
         throw RESOURCE.filterableTableInventedFilter(filter.toString()).ex();
@@ -198,8 +206,13 @@ private static TableScanNode createProjectableFilterable(Compiler compiler,
       } else {
         projectInts = projects.toIntArray();
       }
+      final List<RuntimeFilter.Slot> runtimeFilters =
+          DataContext.Variable.RUNTIME_FILTERS.get(root);
       final Enumerable<Object[]> enumerable1 =
-          pfTable.scan(root, mutableFilters, projectInts);
+          runtimeFilters != null && pfTable instanceof RuntimeFilterableTable
+              ? ((RuntimeFilterableTable) pfTable).scan(root, mutableFilters,
+                  projectInts, runtimeFilters)
+              : pfTable.scan(root, mutableFilters, projectInts);
       for (RexNode filter : mutableFilters) {
         if (!filters.contains(filter)) {
           throw RESOURCE.filterableTableInventedFilter(filter.toString())
@@ -44,12 +44,21 @@ public UnionNode(Compiler compiler, Union rel) {
 
   public void run() throws InterruptedException {
     final Set<Row> rows = rel.all ? null : Sets.<Row>newHashSet();
+    final Row[] batch = new Row[Interpreter.BATCH_SIZE];
     for (Source source : sources) {
-      Row row;
-      while ((row = source.receive()) != null) {
-        if (rows == null || rows.add(row)) {
-          sink.send(row);
+      int count;
+      while ((count = source.receiveBatch(batch)) > 0) {
+        if (rows != null) {
+          // Keep only rows not seen before.
+          int added = 0;
+          for (int i = 0; i < count; i++) {
+            if (rows.add(batch[i])) {
+              batch[added++] = batch[i];
+            }
+          }
+          count = added;
         }
+        sink.sendBatch(batch, count);
       }
     }
   }
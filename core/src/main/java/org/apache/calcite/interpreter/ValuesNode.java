@@ -60,9 +60,8 @@ private ImmutableList<Row> createRows(Compiler compiler,
   }
 
   public void run() throws InterruptedException {
-    for (Row row : rows) {
-      sink.send(row);
-    }
+    final Row[] array = rows.toArray(new Row[0]);
+    sink.sendBatch(array, array.length);
     sink.end();
   }
 }
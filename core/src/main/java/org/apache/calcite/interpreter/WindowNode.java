@@ -28,9 +28,10 @@ public class WindowNode extends AbstractSingleNode<Window> {
   }
 
   public void run() throws InterruptedException {
-    Row row;
-    while ((row = source.receive()) != null) {
-      sink.send(row);
+    final Row[] rows = new Row[Interpreter.BATCH_SIZE];
+    int count;
+    while ((count = source.receiveBatch(rows)) > 0) {
+      sink.sendBatch(rows, count);
     }
     sink.end();
   }
@@ -374,6 +374,17 @@ public Enumerable<T> enumerable(DataContext dataContext) {
     public List<RelCollation> getCollationList() {
       return collationList;
     }
+
+    /** Returns a copy of this signature that executes against a given root
+     * schema. */
+    public CalciteSignature<T> withRootSchema(CalciteSchema rootSchema) {
+      if (rootSchema == this.rootSchema) {
+        return this;
+      }
+      return new CalciteSignature<>(sql, parameters, internalParameters,
+          rowType, columns, cursorFactory, rootSchema, collationList,
+          maxRowCount, bindable, statementType);
+    }
   }
 
   /** A union type of the three possible ways of expressing a query: as a SQL
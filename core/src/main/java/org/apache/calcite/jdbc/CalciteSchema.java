@@ -25,6 +25,7 @@
 import org.apache.calcite.schema.SchemaVersion;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.schema.TableMacro;
+import org.apache.calcite.schema.impl.LongSchemaVersion;
 import org.apache.calcite.schema.impl.MaterializedViewTable;
 import org.apache.calcite.schema.impl.StarTable;
 import org.apache.calcite.util.Compatible;
@@ -34,6 +35,9 @@
 import org.apache.calcite.util.Pair;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
@@ -47,6 +51,7 @@
 import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Schema.
@@ -54,6 +59,21 @@
  * <p>Wrapper around user-defined schema used internally.</p>
  */
 public abstract class CalciteSchema {
+  /** Unique identifiers of the objects in schemas; see
+   * {@link #contentKey()}. Keys are weak and compared by identity, so an
+   * object can still be garbage-collected; its identifier is never
+   * re-used. */
+  private static final LoadingCache<Object, Long> OBJECT_IDS =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build(
+              new CacheLoader<Object, Long>() {
+                private final AtomicLong nextId = new AtomicLong();
+
+                public Long load(Object key) {
+                  return nextId.incrementAndGet();
+                }
+              });
 
   private final CalciteSchema parent;
   public final Schema schema;
@@ -67,6 +87,14 @@ public abstract class CalciteSchema {
   protected final NameMap<FunctionEntry> nullaryFunctionMap;
   protected final NameMap<CalciteSchema> subSchemaMap;
   private List<? extends List<String>> path;
+  /** Number of times that this schema, or any schema in its tree, has been
+   * modified. Only the root schema's count is incremented; see
+   * {@link #modified()}. */
+  private final AtomicLong modCount = new AtomicLong();
+  /** Value of {@link #contentKey()}, computed when the root schema's
+   * modification count was {@link #contentKeyModCount}. */
+  private List<Object> contentKey;
+  private long contentKeyModCount;
 
   protected CalciteSchema(CalciteSchema parent, Schema schema,
       String name, NameMap<CalciteSchema> subSchemaMap,
@@ -169,6 +197,7 @@ public TableEntry add(String tableName, Table table,
     final TableEntryImpl entry =
         new TableEntryImpl(this, tableName, table, sqls);
     tableMap.put(tableName, entry);
+    modified();
     return entry;
   }
 
@@ -180,6 +209,7 @@ private FunctionEntry add(String name, Function function) {
     if (function.getParameters().isEmpty()) {
       nullaryFunctionMap.put(name, entry);
     }
+    modified();
     return entry;
   }
 
@@ -189,6 +219,7 @@ private LatticeEntry add(String name, Lattice lattice) {
     }
     final LatticeEntryImpl entry = new LatticeEntryImpl(this, name, lattice);
     latticeMap.put(name, entry);
+    modified();
     return entry;
   }
 
@@ -201,6 +232,73 @@ public CalciteSchema root() {
     }
   }
 
+  /** Records that this schema, or the set of objects in it, has changed,
+   * by incrementing the modification count of the root schema.
+   *
+   * <p>Sub-classes must call this method after adding a sub-schema.
+   *
+   * @see #version() */
+  protected void modified() {
+    root().modCount.incrementAndGet();
+  }
+
+  /** Returns the version of this schema and all schemas in the same tree.
+   *
+   * <p>The version changes each time a table, function, lattice or
+   * sub-schema is added to or removed from any schema in the tree, or a
+   * schema's path is changed. It does not change if the objects returned by
+   * an underlying {@link Schema} change. A snapshot has its own version,
+   * which does not change. */
+  public SchemaVersion version() {
+    return new LongSchemaVersion(root().modCount.get());
+  }
+
+  /** Returns a key that is equal for two schema trees if they contain the
+   * same schema, table, function and lattice objects, with the same names
+   * and paths.
+   *
+   * <p>Unlike {@link #version()}, it can be compared between the schemas of
+   * different connections. The key identifies each object by a number, and
+   * does not prevent the object from being garbage-collected. The root
+   * schema that each connection creates is identified by its class. */
+  public List<Object> contentKey() {
+    final CalciteSchema root = root();
+    synchronized (root) {
+      final long modCount = root.modCount.get();
+      if (root.contentKey == null || root.contentKeyModCount != modCount) {
+        root.contentKey = root.computeContentKey();
+        root.contentKeyModCount = modCount;
+      }
+      return root.contentKey;
+    }
+  }
+
+  private List<Object> computeContentKey() {
+    final ImmutableList.Builder<Object> b = ImmutableList.builder();
+    b.add(name,
+        schema instanceof CalciteConnectionImpl.RootSchema
+            ? schema.getClass()
+            : OBJECT_IDS.getUnchecked(schema),
+        String.valueOf(path));
+    for (Map.Entry<String, TableEntry> e : tableMap.map().entrySet()) {
+      b.add(e.getKey(), OBJECT_IDS.getUnchecked(e.getValue().getTable()));
+    }
+    for (Map.Entry<String, List<FunctionEntry>> e
+        : functionMap.map().entrySet()) {
+      for (FunctionEntry functionEntry : e.getValue()) {
+        b.add(e.getKey(),
+            OBJECT_IDS.getUnchecked(functionEntry.getFunction()));
+      }
+    }
+    for (Map.Entry<String, LatticeEntry> e : latticeMap.map().entrySet()) {
+      b.add(e.getKey(), OBJECT_IDS.getUnchecked(e.getValue().getLattice()));
+    }
+    for (CalciteSchema subSchema : subSchemaMap.map().values()) {
+      b.add(subSchema.computeContentKey());
+    }
+    return b.build();
+  }
+
   /** Returns whether this is a root schema. */
   public boolean isRoot() {
     return parent == null;
@@ -463,12 +561,20 @@ public static CalciteSchema createRootSchema(boolean addMetadataSchema,
 
   @Experimental
   public boolean removeSubSchema(String name) {
-    return subSchemaMap.remove(name) != null;
+    if (subSchemaMap.remove(name) == null) {
+      return false;
+    }
+    modified();
+    return true;
   }
 
   @Experimental
   public boolean removeTable(String name) {
-    return tableMap.remove(name) != null;
+    if (tableMap.remove(name) == null) {
+      return false;
+    }
+    modified();
+    return true;
   }
 
   @Experimental
@@ -478,6 +584,7 @@ public boolean removeFunction(String name) {
       return false;
     }
     functionMap.remove(name, remove);
+    modified();
     return true;
   }
 
@@ -625,6 +732,7 @@ public <T> T unwrap(Class<T> clazz) {
 
     public void setPath(ImmutableList<ImmutableList<String>> path) {
       CalciteSchema.this.path = path;
+      modified();
     }
 
     public void add(String name, Table table) {
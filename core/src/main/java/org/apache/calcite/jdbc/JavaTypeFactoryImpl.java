@@ -62,6 +62,8 @@
     implements JavaTypeFactory {
   private final Map<List<Pair<Type, Boolean>>, SyntheticRecordType>
       syntheticTypes = new HashMap<>();
+  private final Map<List<Pair<Type, Boolean>>, SyntheticRecordType>
+      syntheticKeyTypes = new HashMap<>();
 
   public JavaTypeFactoryImpl() {
     this(RelDataTypeSystem.DEFAULT);
@@ -269,7 +271,24 @@ public Type createSyntheticType(List<Type> types) {
     final String name =
         "Record" + types.size() + "_" + syntheticTypes.size();
     final SyntheticRecordType syntheticType =
-        new SyntheticRecordType(null, name);
+        new SyntheticRecordType(null, name, false);
+    for (final Ord<Type> ord : Ord.zip(types)) {
+      syntheticType.fields.add(
+          new RecordFieldImpl(
+              syntheticType,
+              "f" + ord.i,
+              ord.e,
+              !Primitive.is(ord.e),
+              Modifier.PUBLIC));
+    }
+    return register(syntheticType);
+  }
+
+  public Type createSyntheticKeyType(List<Type> types) {
+    final String name =
+        "Key" + types.size() + "_" + syntheticKeyTypes.size();
+    final SyntheticRecordType syntheticType =
+        new SyntheticRecordType(null, name, true);
     for (final Ord<Type> ord : Ord.zip(types)) {
       syntheticType.fields.add(
           new RecordFieldImpl(
@@ -296,9 +315,11 @@ public int size() {
             return syntheticType.getRecordFields().size();
           }
         };
-    SyntheticRecordType syntheticType2 = syntheticTypes.get(key);
+    final Map<List<Pair<Type, Boolean>>, SyntheticRecordType> map =
+        syntheticType.key ? syntheticKeyTypes : syntheticTypes;
+    SyntheticRecordType syntheticType2 = map.get(key);
     if (syntheticType2 == null) {
-      syntheticTypes.put(key, syntheticType);
+      map.put(key, syntheticType);
       return syntheticType;
     } else {
       return syntheticType2;
@@ -311,7 +332,7 @@ private Type createSyntheticType(RelRecordType type) {
     final String name =
         "Record" + type.getFieldCount() + "_" + syntheticTypes.size();
     final SyntheticRecordType syntheticType =
-        new SyntheticRecordType(type, name);
+        new SyntheticRecordType(type, name, false);
     for (final RelDataTypeField recordField : type.getFieldList()) {
       final Type javaClass = getJavaClass(recordField.getType());
       syntheticType.fields.add(
@@ -331,10 +352,13 @@ public static class SyntheticRecordType implements Types.RecordType {
     final List<Types.RecordField> fields = new ArrayList<>();
     final RelDataType relType;
     private final String name;
+    private final boolean key;
 
-    private SyntheticRecordType(RelDataType relType, String name) {
+    private SyntheticRecordType(RelDataType relType, String name,
+        boolean key) {
       this.relType = relType;
       this.name = name;
+      this.key = key;
       assert relType == null
              || Util.isDistinct(relType.getFieldNames())
           : "field names not distinct: " + relType;
@@ -348,6 +372,12 @@ public List<Types.RecordField> getRecordFields() {
       return fields;
     }
 
+    /** Returns whether this type holds a key; see
+     * {@link JavaTypeFactory#createSyntheticKeyType(List)}. */
+    public boolean isKey() {
+      return key;
+    }
+
     public String toString() {
       return name;
     }
@@ -63,6 +63,7 @@ public CalciteSchema add(String name, Schema schema) {
     final CalciteSchema calciteSchema =
         new SimpleCalciteSchema(this, schema, name);
     subSchemaMap.put(name, calciteSchema);
+    modified();
     return calciteSchema;
   }
 
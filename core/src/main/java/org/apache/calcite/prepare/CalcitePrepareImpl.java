@@ -17,6 +17,7 @@
 package org.apache.calcite.prepare;
 
 import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.batch.BatchRules;
 import org.apache.calcite.adapter.enumerable.EnumerableBindable;
 import org.apache.calcite.adapter.enumerable.EnumerableCalc;
 import org.apache.calcite.adapter.enumerable.EnumerableConvention;
@@ -30,6 +31,7 @@
 import org.apache.calcite.avatica.ColumnMetaData;
 import org.apache.calcite.avatica.Meta;
 import org.apache.calcite.config.CalciteConnectionConfig;
+import org.apache.calcite.config.CalciteConnectionConfigImpl;
 import org.apache.calcite.interpreter.BindableConvention;
 import org.apache.calcite.interpreter.Bindables;
 import org.apache.calcite.interpreter.Interpreters;
@@ -135,9 +137,13 @@
 import org.apache.calcite.tools.Frameworks;
 import org.apache.calcite.util.ImmutableIntList;
 import org.apache.calcite.util.Pair;
+import org.apache.calcite.util.SaffronProperties;
 import org.apache.calcite.util.Util;
 
 import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -152,6 +158,7 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import static org.apache.calcite.util.Static.RESOURCE;
@@ -195,10 +202,25 @@ public class CalcitePrepareImpl implements CalcitePrepare {
           "values 1",
           "VALUES 1");
 
+  /** Cache of statements prepared from SQL, shared by all connections whose
+   * {@link CalciteConnectionConfig#planCache()} is true.
+   *
+   * <p>The key identifies the objects in the root schema, rather than the
+   * root schema itself, so that connections whose schemas contain the same
+   * objects share entries. An entry is not used after the schema changes;
+   * such entries are evicted in due course. Values are held by soft
+   * references, so that the cache does not cause the JVM to run out of
+   * memory. */
+  private static final Cache<PlanCacheKey, CalciteSignature<?>> PLAN_CACHE =
+      maxSize(CacheBuilder.newBuilder().softValues().recordStats(),
+          SaffronProperties.INSTANCE.planCacheMaximumSize().get())
+          .build();
+
   public static final List<RelOptRule> ENUMERABLE_RULES =
       ImmutableList.of(
           EnumerableRules.ENUMERABLE_JOIN_RULE,
           EnumerableRules.ENUMERABLE_MERGE_JOIN_RULE,
+          EnumerableRules.ENUMERABLE_BAND_JOIN_RULE,
           EnumerableRules.ENUMERABLE_SEMI_JOIN_RULE,
           EnumerableRules.ENUMERABLE_CORRELATE_RULE,
           EnumerableRules.ENUMERABLE_PROJECT_RULE,
@@ -206,8 +228,10 @@ public class CalcitePrepareImpl implements CalcitePrepare {
           EnumerableRules.ENUMERABLE_AGGREGATE_RULE,
           EnumerableRules.ENUMERABLE_SORT_RULE,
           EnumerableRules.ENUMERABLE_LIMIT_RULE,
+          EnumerableRules.ENUMERABLE_LIMIT_SORT_RULE,
           EnumerableRules.ENUMERABLE_COLLECT_RULE,
           EnumerableRules.ENUMERABLE_UNCOLLECT_RULE,
+          EnumerableRules.ENUMERABLE_EXCHANGE_RULE,
           EnumerableRules.ENUMERABLE_UNION_RULE,
           EnumerableRules.ENUMERABLE_INTERSECT_RULE,
           EnumerableRules.ENUMERABLE_MINUS_RULE,
@@ -556,6 +580,11 @@ protected RelOptPlanner createPlanner(
         planner.addRule(rule);
       }
       planner.addRule(EnumerableInterpreterRule.INSTANCE);
+      if (prepareContext.config().batchExecution()) {
+        for (RelOptRule rule : BatchRules.RULES) {
+          planner.addRule(rule);
+        }
+      }
     }
 
     if (enableBindable && ENABLE_ENUMERABLE) {
@@ -607,7 +636,54 @@ public <T> CalciteSignature<T> prepareSql(
       Query<T> query,
       Type elementType,
       long maxRowCount) {
-    return prepare_(context, query, elementType, maxRowCount);
+    final PlanCacheKey key =
+        PlanCacheKey.of(this, context, query, elementType, maxRowCount);
+    if (key == null) {
+      return prepare_(context, query, elementType, maxRowCount);
+    }
+    @SuppressWarnings("unchecked")
+    CalciteSignature<T> signature =
+        (CalciteSignature<T>) PLAN_CACHE.getIfPresent(key);
+    if (signature == null) {
+      signature = prepare_(context, query, elementType, maxRowCount);
+      if (signature.statementType == Meta.StatementType.SELECT
+          || signature.statementType == Meta.StatementType.IS_DML) {
+        // DDL statements are executed while they are prepared, and so are
+        // never cached.
+        PLAN_CACHE.put(key, signature);
+      }
+      return signature;
+    }
+    // The statement may have been prepared by another connection; execute
+    // it against this connection's schema.
+    return signature.withRootSchema(context.getRootSchema());
+  }
+
+  /** Returns statistics of the cache of statements prepared from SQL, such
+   * as the number of hits, misses and evictions.
+   *
+   * @see CalciteConnectionConfig#planCache()
+   * @see SaffronProperties#planCacheMaximumSize() */
+  public static CacheStats planCacheStats() {
+    return PLAN_CACHE.stats();
+  }
+
+  /** Removes all statements from the cache of statements prepared from SQL.
+   *
+   * <p>Call this method if the contents of a schema change in a way that the
+   * cache cannot detect; for example, if a table is added to an underlying
+   * {@link org.apache.calcite.schema.Schema}, rather than via
+   * {@link CalciteSchema} or {@link org.apache.calcite.schema.SchemaPlus}. */
+  public static void invalidatePlanCache() {
+    PLAN_CACHE.invalidateAll();
+  }
+
+  private static <K, V> CacheBuilder<K, V> maxSize(CacheBuilder<K, V> builder,
+      int size) {
+    if (size >= 0) {
+      builder.maximumSize(size);
+    }
+    return builder;
   }
 
   <T> CalciteSignature<T> prepare_(
@@ -1251,8 +1327,15 @@ protected SqlValidator createSqlValidator(CatalogReader catalogReader) {
 
         try {
           CatalogReader.THREAD_LOCAL.set(catalogReader);
-          bindable = EnumerableInterpretable.toBindable(internalParameters,
-              context.spark(), enumerable, prefer);
+          final CalciteConnectionConfig config = context.config();
+          if (config.tieredExecution()) {
+            bindable = EnumerableInterpretable.toTieredBindable(
+                internalParameters, context.spark(), enumerable, prefer,
+                config.tieredExecutionRowThreshold());
+          } else {
+            bindable = EnumerableInterpretable.toBindable(internalParameters,
+                context.spark(), enumerable, prefer);
+          }
         } finally {
           CatalogReader.THREAD_LOCAL.remove();
         }
@@ -1486,6 +1569,82 @@ public RexNode parameter(ParameterExpression param) {
       throw new RuntimeException("unknown parameter " + param);
     }
   }
+
+  /** Key of an entry in the cache of statements prepared from SQL.
+   *
+   * <p>Contains everything that affects how a statement is prepared. The
+   * root schema is represented by its {@link CalciteSchema#contentKey()},
+   * which changes whenever a schema in its tree changes, and does not
+   * prevent a closed connection's schema from being garbage-collected. */
+  private static class PlanCacheKey {
+    private final Class<? extends CalcitePrepareImpl> prepareClass;
+    private final boolean enableBindable;
+    private final String sql;
+    private final List<Object> schemaKey;
+    private final List<String> defaultSchemaPath;
+    private final Map<String, String> properties;
+    private final Type elementType;
+    private final long maxRowCount;
+    private final int hashCode;
+
+    private PlanCacheKey(Class<? extends CalcitePrepareImpl> prepareClass,
+        boolean enableBindable, String sql, List<Object> schemaKey,
+        List<String> defaultSchemaPath,
+        Map<String, String> properties, Type elementType, long maxRowCount) {
+      this.prepareClass = prepareClass;
+      this.enableBindable = enableBindable;
+      this.sql = sql;
+      this.schemaKey = schemaKey;
+      this.defaultSchemaPath = defaultSchemaPath;
+      this.properties = properties;
+      this.elementType = elementType;
+      this.maxRowCount = maxRowCount;
+      this.hashCode = Objects.hash(prepareClass, enableBindable, sql,
+          schemaKey, defaultSchemaPath,
+          properties, elementType, maxRowCount);
+    }
+
+    /** Creates a key for a statement, or returns null if the statement
+     * cannot be cached. */
+    static PlanCacheKey of(CalcitePrepareImpl prepare, Context context,
+        Query<?> query, Type elementType, long maxRowCount) {
+      if (query.sql == null) {
+        return null;
+      }
+      final CalciteConnectionConfig config = context.config();
+      if (!config.planCache()
+          || !(config instanceof CalciteConnectionConfigImpl)) {
+        return null;
+      }
+      final CalciteSchema rootSchema = context.getMutableRootSchema();
+      if (rootSchema == null) {
+        return null;
+      }
+      return new PlanCacheKey(prepare.getClass(), prepare.enableBindable,
+          query.sql, rootSchema.contentKey(),
+          context.getDefaultSchemaPath(),
+          ((CalciteConnectionConfigImpl) config).toMap(), elementType,
+          maxRowCount);
+    }
+
+    @Override public int hashCode() {
+      return hashCode;
+    }
+
+    @Override public boolean equals(Object obj) {
+      return obj == this
+          || obj instanceof PlanCacheKey
+          && prepareClass == ((PlanCacheKey) obj).prepareClass
+          && enableBindable == ((PlanCacheKey) obj).enableBindable
+          && sql.equals(((PlanCacheKey) obj).sql)
+          && schemaKey.equals(((PlanCacheKey) obj).schemaKey)
+          && Objects.equals(defaultSchemaPath,
+              ((PlanCacheKey) obj).defaultSchemaPath)
+          && properties.equals(((PlanCacheKey) obj).properties)
+          && Objects.equals(elementType, ((PlanCacheKey) obj).elementType)
+          && maxRowCount == ((PlanCacheKey) obj).maxRowCount;
+    }
+  }
 }
 
 // End CalcitePrepareImpl.java
@@ -37,6 +37,7 @@
 import org.apache.calcite.rel.RelVisitor;
 import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.logical.LogicalTableModify;
+import org.apache.calcite.rel.metadata.DefaultRelMetadataProvider;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rex.RexExecutorImpl;
@@ -203,6 +204,10 @@ protected Program getProgram() {
       return holder.get();
     }
 
+    if (context.config().parallelism() > 1) {
+      return Programs.sequence(Programs.standard(),
+          Programs.parallel(DefaultRelMetadataProvider.INSTANCE));
+    }
     return Programs.standard();
   }
 
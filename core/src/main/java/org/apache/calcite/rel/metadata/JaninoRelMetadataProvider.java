@@ -56,6 +56,7 @@
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.SaffronProperties;
 import org.apache.calcite.util.Util;
+import org.apache.calcite.util.javac.ClassBodyCompiler;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -67,12 +68,8 @@
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import org.codehaus.commons.compiler.CompileException;
-import org.codehaus.commons.compiler.CompilerFactoryFactory;
-import org.codehaus.commons.compiler.IClassBodyEvaluator;
-import org.codehaus.commons.compiler.ICompilerFactory;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -438,24 +435,15 @@ private static StringBuilder paramList(StringBuilder buff, Method method) {
   static <M extends Metadata> MetadataHandler<M> compile(ClassDeclaration expr,
       String s, MetadataDef<M> def,
       List<Object> argList) throws CompileException, IOException {
-    final ICompilerFactory compilerFactory;
-    try {
-      compilerFactory = CompilerFactoryFactory.getDefaultCompilerFactory();
-    } catch (Exception e) {
-      throw new IllegalStateException(
-          "Unable to instantiate java compiler", e);
-    }
-    final IClassBodyEvaluator cbe = compilerFactory.newClassBodyEvaluator();
-    cbe.setClassName(expr.name);
-    cbe.setImplementedInterfaces(new Class[]{def.handlerClass});
-    cbe.setParentClassLoader(JaninoRexCompiler.class.getClassLoader());
     if (CalcitePrepareImpl.DEBUG) {
-      // Add line numbers to the generated janino class
-      cbe.setDebuggingInformation(true, true, true);
       System.out.println(s);
     }
-    cbe.cook(new StringReader(s));
-    final Constructor constructor = cbe.getClazz().getDeclaredConstructors()[0];
+    final Class<?> clazz =
+        ClassBodyCompiler.INSTANCE.compile(expr.name, null,
+            new Class[]{def.handlerClass},
+            JaninoRexCompiler.class.getClassLoader(),
+            CalcitePrepareImpl.DEBUG, s);
+    final Constructor constructor = clazz.getDeclaredConstructors()[0];
     final Object o;
     try {
       o = constructor.newInstance(argList.toArray());
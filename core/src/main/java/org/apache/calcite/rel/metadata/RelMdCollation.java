@@ -17,6 +17,7 @@
 package org.apache.calcite.rel.metadata;
 
 import org.apache.calcite.adapter.enumerable.EnumerableMergeJoin;
+import org.apache.calcite.adapter.enumerable.EnumerableSortedAggregate;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.plan.hep.HepRelVertex;
@@ -29,6 +30,7 @@
 import org.apache.calcite.rel.core.Calc;
 import org.apache.calcite.rel.core.Filter;
 import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinRelType;
 import org.apache.calcite.rel.core.Project;
 import org.apache.calcite.rel.core.Sort;
 import org.apache.calcite.rel.core.SortExchange;
@@ -44,6 +46,7 @@
 import org.apache.calcite.rex.RexProgram;
 import org.apache.calcite.sql.validate.SqlMonotonicity;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableBitSet;
 import org.apache.calcite.util.ImmutableIntList;
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
@@ -129,7 +132,16 @@ public ImmutableList<RelCollation> collations(EnumerableMergeJoin join,
     // order of the left and right sides.
     return ImmutableList.copyOf(
         RelMdCollation.mergeJoin(mq, join.getLeft(), join.getRight(),
-            join.getLeftKeys(), join.getRightKeys()));
+            join.getLeftKeys(), join.getRightKeys(), join.getJoinType()));
+  }
+
+  public ImmutableList<RelCollation> collations(
+      EnumerableSortedAggregate aggregate, RelMetadataQuery mq) {
+    // In general an aggregate is not sorted. But a sorted aggregate emits
+    // its groups in the order of its input.
+    return ImmutableList.copyOf(
+        RelMdCollation.sortedAggregate(mq, aggregate.getInput(),
+            aggregate.getGroupSet()));
   }
 
   public ImmutableList<RelCollation> collations(Sort sort,
@@ -365,19 +377,74 @@ public int compare(List<RexLiteral> o1, List<RexLiteral> o2) {
   public static List<RelCollation> mergeJoin(RelMetadataQuery mq,
       RelNode left, RelNode right,
       ImmutableIntList leftKeys, ImmutableIntList rightKeys) {
+    return mergeJoin(mq, left, right, leftKeys, rightKeys, JoinRelType.INNER);
+  }
+
+  /** Helper method to determine the collation of a {@link Join} of a given
+   * type, assuming that it uses a merge-join algorithm.
+   *
+   * <p>An outer join interleaves rows that have nulls on one side, so the
+   * result preserves the collations of only the inputs that do not generate
+   * nulls: both inputs for an inner join, the left for a left join, the
+   * right for a right join, and neither for a full join. */
+  public static List<RelCollation> mergeJoin(RelMetadataQuery mq,
+      RelNode left, RelNode right,
+      ImmutableIntList leftKeys, ImmutableIntList rightKeys,
+      JoinRelType joinType) {
     final ImmutableList.Builder<RelCollation> builder = ImmutableList.builder();
 
     final ImmutableList<RelCollation> leftCollations = mq.collations(left);
     assert RelCollations.contains(leftCollations, leftKeys)
         : "cannot merge join: left input is not sorted on left keys";
-    builder.addAll(leftCollations);
+    if (!joinType.generatesNullsOnLeft()) {
+      builder.addAll(leftCollations);
+    }
 
     final ImmutableList<RelCollation> rightCollations = mq.collations(right);
     assert RelCollations.contains(rightCollations, rightKeys)
         : "cannot merge join: right input is not sorted on right keys";
-    final int leftFieldCount = left.getRowType().getFieldCount();
-    for (RelCollation collation : rightCollations) {
-      builder.add(RelCollations.shift(collation, leftFieldCount));
+    if (!joinType.generatesNullsOnRight()) {
+      final int leftFieldCount = left.getRowType().getFieldCount();
+      for (RelCollation collation : rightCollations) {
+        builder.add(RelCollations.shift(collation, leftFieldCount));
+      }
+    }
+    return builder.build();
+  }
+
+  /** Helper method to determine the collations of an
+   * {@link org.apache.calcite.rel.core.Aggregate} that reads its input in
+   * order and emits each group as soon as the key changes.
+   *
+   * <p>Returns, for each collation of the input whose leading fields are
+   * exactly the group keys, that prefix mapped to the output fields. If the
+   * result is empty, the input is not sorted on the group keys, and a sorted
+   * aggregate cannot be used. */
+  public static List<RelCollation> sortedAggregate(RelMetadataQuery mq,
+      RelNode input, ImmutableBitSet groupSet) {
+    final ImmutableList.Builder<RelCollation> builder = ImmutableList.builder();
+    final int groupCount = groupSet.cardinality();
+    if (groupCount == 0) {
+      return builder.build();
+    }
+    for (RelCollation collation : mq.collations(input)) {
+      final List<RelFieldCollation> fieldCollations =
+          collation.getFieldCollations();
+      if (fieldCollations.size() < groupCount
+          || !groupSet.equals(
+              ImmutableBitSet.of(
+                  RelCollations.ordinals(
+                      fieldCollations.subList(0, groupCount))))) {
+        continue;
+      }
+      final List<RelFieldCollation> outputFieldCollations = new ArrayList<>();
+      for (RelFieldCollation fieldCollation
+          : fieldCollations.subList(0, groupCount)) {
+        outputFieldCollations.add(
+            fieldCollation.copy(
+                groupSet.indexOf(fieldCollation.getFieldIndex())));
+      }
+      builder.add(RelCollations.of(outputFieldCollations));
     }
     return builder.build();
   }
@@ -18,9 +18,15 @@
 
 import org.apache.calcite.DataContext;
 import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.MemberDeclaration;
+import org.apache.calcite.linq4j.tree.MethodDeclaration;
 import org.apache.calcite.runtime.Hook;
 import org.apache.calcite.runtime.Utilities;
 import org.apache.calcite.util.Pair;
+import org.apache.calcite.util.javac.BytecodeCompiler;
+
+import com.google.common.collect.ImmutableList;
 
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.janino.ClassBodyEvaluator;
@@ -41,14 +47,47 @@ public class RexExecutable {
   private static final String GENERATED_CLASS_NAME = "Reducer";
 
   private final Function1<DataContext, Object[]> compiledFunction;
-  private final String code;
+  /** Declaration of the generated method; null if created from source
+   * code. */
+  private final MethodDeclaration methodDecl;
+  /** Source code of the generated method; computed on demand from
+   * {@link #methodDecl} if the bytecode compiler compiled it. */
+  private String code;
   private DataContext dataContext;
 
   public RexExecutable(String code, Object reason) {
+    this.methodDecl = null;
     this.code = code;
     this.compiledFunction = compile(code, reason);
   }
 
+  /** Creates a RexExecutable from the declaration of a method
+   * {@code Object[] apply(Object root)}.
+   *
+   * <p>If {@link BytecodeCompiler#enabled()}, compiles the method directly
+   * to bytecode, and does not generate Java source code unless it is
+   * required by {@link #getSource()}. Falls back to Java source code if the
+   * method uses a construct that the bytecode compiler does not support. */
+  public RexExecutable(MethodDeclaration methodDecl, Object reason) {
+    this.methodDecl = methodDecl;
+    Function1<DataContext, Object[]> function = null;
+    if (BytecodeCompiler.enabled()) {
+      try {
+        function = instantiate(
+            BytecodeCompiler.compile(GENERATED_CLASS_NAME, Utilities.class,
+                new Class[] {Function1.class, Serializable.class},
+                RexExecutable.class.getClassLoader(),
+                ImmutableList.<MemberDeclaration>of(methodDecl)),
+            reason);
+      } catch (BytecodeCompiler.UnsupportedException e) {
+        // fall back to Janino
+        Hook.COMPILER_FALLBACK.run(e.getMessage());
+      }
+    }
+    this.compiledFunction =
+        function != null ? function : compile(getSource(), reason);
+  }
+
   private static Function1<DataContext, Object[]> compile(String code,
       Object reason) {
     try {
@@ -58,14 +97,21 @@ private static Function1<DataContext, Object[]> compile(String code,
       cbe.setImplementedInterfaces(new Class[] {Function1.class, Serializable.class});
       cbe.setParentClassLoader(RexExecutable.class.getClassLoader());
       cbe.cook(new Scanner(null, new StringReader(code)));
-      Class c = cbe.getClazz();
+      return instantiate(cbe.getClazz(), reason);
+    } catch (CompileException | IOException e) {
+      throw new RuntimeException("While compiling " + reason, e);
+    }
+  }
+
+  private static Function1<DataContext, Object[]> instantiate(Class c,
+      Object reason) {
+    try {
       //noinspection unchecked
       final Constructor<Function1<DataContext, Object[]>> constructor =
           c.getConstructor();
       return constructor.newInstance();
-    } catch (CompileException | IOException | InstantiationException
-        | IllegalAccessException | InvocationTargetException
-        | NoSuchMethodException e) {
+    } catch (InstantiationException | IllegalAccessException
+        | InvocationTargetException | NoSuchMethodException e) {
       throw new RuntimeException("While compiling " + reason, e);
     }
   }
@@ -91,7 +137,9 @@ public void reduce(RexBuilder rexBuilder, List<RexNode> constExps,
       reducedValues.addAll(constExps);
       values = new Object[constExps.size()];
     }
-    Hook.EXPRESSION_REDUCER.run(Pair.of(code, values));
+    if (Hook.EXPRESSION_REDUCER.hasHandlers()) {
+      Hook.EXPRESSION_REDUCER.run(Pair.of(getSource(), values));
+    }
   }
 
   public Function1<DataContext, Object[]> getFunction() {
@@ -103,6 +151,9 @@ public Object[] execute() {
   }
 
   public String getSource() {
+    if (code == null) {
+      code = Expressions.toString(methodDecl);
+    }
     return code;
   }
 }
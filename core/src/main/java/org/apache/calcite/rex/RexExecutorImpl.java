@@ -51,15 +51,16 @@ public RexExecutorImpl(DataContext dataContext) {
     this.dataContext = dataContext;
   }
 
-  private String compile(RexBuilder rexBuilder, List<RexNode> constExps,
-      RexToLixTranslator.InputGetter getter) {
+  private MethodDeclaration compile(RexBuilder rexBuilder,
+      List<RexNode> constExps, RexToLixTranslator.InputGetter getter) {
     final RelDataTypeFactory typeFactory = rexBuilder.getTypeFactory();
     final RelDataType emptyRowType = typeFactory.builder().build();
     return compile(rexBuilder, constExps, getter, emptyRowType);
   }
 
-  private String compile(RexBuilder rexBuilder, List<RexNode> constExps,
-      RexToLixTranslator.InputGetter getter, RelDataType rowType) {
+  private MethodDeclaration compile(RexBuilder rexBuilder,
+      List<RexNode> constExps, RexToLixTranslator.InputGetter getter,
+      RelDataType rowType) {
     final RexProgramBuilder programBuilder =
         new RexProgramBuilder(rowType, rexBuilder);
     for (RexNode node : constExps) {
@@ -86,11 +87,10 @@ private String compile(RexBuilder rexBuilder, List<RexNode> constExps,
         Expressions.methodDecl(Modifier.PUBLIC, Object[].class,
             BuiltInMethod.FUNCTION1_APPLY.method.getName(),
             ImmutableList.of(root0_), blockBuilder.toBlock());
-    String code = Expressions.toString(methodDecl);
     if (CalcitePrepareImpl.DEBUG) {
-      Util.debugCode(System.out, code);
+      Util.debugCode(System.out, Expressions.toString(methodDecl));
     }
-    return code;
+    return methodDecl;
   }
 
   /**
@@ -106,8 +106,9 @@ public RexExecutable getExecutable(RexBuilder rexBuilder, List<RexNode> exps,
     final JavaTypeFactoryImpl typeFactory =
         new JavaTypeFactoryImpl(rexBuilder.getTypeFactory().getTypeSystem());
     final InputGetter getter = new DataContextInputGetter(rowType, typeFactory);
-    final String code = compile(rexBuilder, exps, getter, rowType);
-    return new RexExecutable(code, "generated Rex code");
+    final MethodDeclaration methodDecl =
+        compile(rexBuilder, exps, getter, rowType);
+    return new RexExecutable(methodDecl, "generated Rex code");
   }
 
   /**
@@ -115,7 +116,7 @@ public RexExecutable getExecutable(RexBuilder rexBuilder, List<RexNode> exps,
    */
   public void reduce(RexBuilder rexBuilder, List<RexNode> constExps,
       List<RexNode> reducedValues) {
-    final String code = compile(rexBuilder, constExps,
+    final MethodDeclaration methodDecl = compile(rexBuilder, constExps,
         new RexToLixTranslator.InputGetter() {
           public Expression field(BlockBuilder list, int index,
               Type storageType) {
@@ -123,7 +124,7 @@ public Expression field(BlockBuilder list, int index,
           }
         });
 
-    final RexExecutable executable = new RexExecutable(code, constExps);
+    final RexExecutable executable = new RexExecutable(methodDecl, constExps);
     executable.setDataContext(dataContext);
     executable.reduce(rexBuilder, constExps, reducedValues);
   }
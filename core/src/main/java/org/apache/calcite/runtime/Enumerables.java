@@ -17,11 +17,22 @@
 package org.apache.calcite.runtime;
 
 import org.apache.calcite.interpreter.Row;
+import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Predicate1;
 
 import com.google.common.base.Supplier;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 /**
  * Utilities for processing {@link org.apache.calcite.linq4j.Enumerable}
  * collections.
@@ -30,6 +41,10 @@
  * Methods are subject to removal without notice.
  */
 public class Enumerables {
+  /** Number of consecutive rows that {@link #gather} assigns to the same
+   * partition of an input that has no partitioning key. */
+  public static final int MORSEL_SIZE = 1024;
+
   private static final Function1<?, ?> SLICE =
       new Function1<Object[], Object>() {
         public Object apply(Object[] a0) {
@@ -70,6 +85,193 @@ public Enumerable<Row> get() {
     };
   }
 
+  /** Splits each of a list of inputs into partitions, applies a function to
+   * each partition in parallel, and concatenates the results. Called from
+   * code generated by
+   * {@link org.apache.calcite.adapter.enumerable.EnumerableExchange}.
+   *
+   * <p>Partitions are evaluated on the common {@link ForkJoinPool}. If an
+   * input has a key selector, each row goes to
+   * the partition given by the hash of its key, so rows with equal keys in
+   * different inputs meet in the same partition; otherwise the input is cut
+   * into morsels of {@link #MORSEL_SIZE} rows, which are dealt to the
+   * partitions in turn.
+   *
+   * @param partitionCount Number of partitions
+   * @param inputs Inputs
+   * @param keySelectors Key selector for each input, or null if the input
+   *                     may be partitioned arbitrarily
+   * @param region Function that is applied to one partition of each input
+   * @param <E> Element type of result
+   */
+  public static <E> Enumerable<E> gather(final int partitionCount,
+      final Enumerable[] inputs,
+      final Function1[] keySelectors,
+      final Function1<List<Enumerable>, Enumerable<E>> region) {
+    return new AbstractEnumerable<E>() {
+      public Enumerator<E> enumerator() {
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        final List<List<List<Object>>> partitions = new ArrayList<>();
+        for (int i = 0; i < inputs.length; i++) {
+          //noinspection unchecked
+          partitions.add(
+              partition(inputs[i], keySelectors[i], partitionCount));
+        }
+        final List<ForkJoinTask<List<E>>> tasks = new ArrayList<>();
+        for (int p = 0; p < partitionCount; p++) {
+          final List<Enumerable> args = new ArrayList<>();
+          for (List<List<Object>> input : partitions) {
+            args.add(Linq4j.asEnumerable(input.get(p)));
+          }
+          tasks.add(
+              pool.submit(
+                  new Callable<List<E>>() {
+                    public List<E> call() {
+                      return region.apply(args).toList();
+                    }
+                  }));
+        }
+        final List<E> list = new ArrayList<>();
+        for (ForkJoinTask<List<E>> task : tasks) {
+          list.addAll(task.join());
+        }
+        return Linq4j.enumerator(list);
+      }
+    };
+  }
+
+  /** Returns an enumerable that returns the rows of the build input of a
+   * hash join unchanged, and when it reaches the end, publishes a
+   * {@link RuntimeFilter} of their keys to a slot. Called from code
+   * generated by {@link org.apache.calcite.adapter.enumerable.EnumerableJoin}.
+   *
+   * @param input Build input
+   * @param keySelector Key selector
+   * @param slot Slot to which to publish the filter
+   * @param <E> Element type
+   */
+  public static <E> Enumerable<E> publishRuntimeFilter(
+      final Enumerable<E> input, final Function1<E, Object> keySelector,
+      final RuntimeFilter.Slot slot) {
+    return new AbstractEnumerable<E>() {
+      public Enumerator<E> enumerator() {
+        final Enumerator<E> enumerator = input.enumerator();
+        return new Enumerator<E>() {
+          List<Object> keys = new ArrayList<>();
+
+          public E current() {
+            return enumerator.current();
+          }
+
+          public boolean moveNext() {
+            if (enumerator.moveNext()) {
+              if (keys != null) {
+                keys.add(keySelector.apply(enumerator.current()));
+              }
+              return true;
+            }
+            if (keys != null) {
+              slot.set(RuntimeFilter.create(keys));
+              keys = null;
+            }
+            return false;
+          }
+
+          public void reset() {
+            enumerator.reset();
+            keys = null;
+          }
+
+          public void close() {
+            enumerator.close();
+          }
+        };
+      }
+    };
+  }
+
+  /** Returns an enumerable that reads the smaller input of a hash join into
+   * memory, publishes a {@link RuntimeFilter} of its keys to a slot, and then
+   * evaluates the join. Called from code generated by
+   * {@link org.apache.calcite.adapter.enumerable.EnumerableJoin} when the
+   * smaller input is the one that the join would otherwise read last.
+   *
+   * @param input Smaller input
+   * @param keySelector Key selector
+   * @param slot Slot to which to publish the filter
+   * @param join Function that joins the materialized input to the other
+   *             input
+   * @param <E> Element type of input
+   * @param <R> Element type of result
+   */
+  public static <E, R> Enumerable<R> publishRuntimeFilterFirst(
+      final Enumerable<E> input, final Function1<E, Object> keySelector,
+      final RuntimeFilter.Slot slot,
+      final Function1<Enumerable<E>, Enumerable<R>> join) {
+    return new AbstractEnumerable<R>() {
+      public Enumerator<R> enumerator() {
+        final List<E> list = input.toList();
+        final List<Object> keys = new ArrayList<>(list.size());
+        for (E e : list) {
+          keys.add(keySelector.apply(e));
+        }
+        slot.set(RuntimeFilter.create(keys));
+        return join.apply(Linq4j.asEnumerable(list)).enumerator();
+      }
+    };
+  }
+
+  /** Returns an enumerable that skips the rows whose key is rejected by the
+   * runtime filter in a slot, if the filter has been published when
+   * enumeration starts.
+   *
+   * @param input Input, typically a table scan beneath the probe input of a
+   *              hash join
+   * @param keySelector Key selector
+   * @param slot Slot to which a hash join publishes a filter
+   * @param <E> Element type
+   */
+  public static <E> Enumerable<E> applyRuntimeFilter(
+      final Enumerable<E> input, final Function1<E, Object> keySelector,
+      final RuntimeFilter.Slot slot) {
+    return new AbstractEnumerable<E>() {
+      public Enumerator<E> enumerator() {
+        final RuntimeFilter filter = slot.get();
+        if (filter == null) {
+          return input.enumerator();
+        }
+        return input.where(
+            new Predicate1<E>() {
+              public boolean apply(E e) {
+                return filter.mightContain(keySelector.apply(e));
+              }
+            }).enumerator();
+      }
+    };
+  }
+
+  private static List<List<Object>> partition(Enumerable<Object> input,
+      Function1<Object, Object> keySelector, int partitionCount) {
+    final List<List<Object>> partitions = new ArrayList<>();
+    for (int p = 0; p < partitionCount; p++) {
+      partitions.add(new ArrayList<>());
+    }
+    try (Enumerator<Object> enumerator = input.enumerator()) {
+      int i = 0;
+      while (enumerator.moveNext()) {
+        final Object row = enumerator.current();
+        final int p;
+        if (keySelector != null) {
+          final int h = Objects.hashCode(keySelector.apply(row));
+          p = ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % partitionCount;
+        } else {
+          p = i++ / MORSEL_SIZE % partitionCount;
+        }
+        partitions.get(p).add(row);
+      }
+    }
+    return partitions;
+  }
 }
 
 // End Enumerables.java
@@ -61,6 +61,23 @@ public enum Hook {
    * Janino. */
   JAVA_PLAN,
 
+  /** Called in a background thread with the generated Java plan, just before
+   * it is compiled for tiered execution. */
+  TIERED_COMPILE,
+
+  /** Called with the generated class declaration when generated code is
+   * compiled, rather than found in the cache of compiled classes. */
+  BINDABLE_COMPILE,
+
+  /** Returns a string value, the back-end that compiles generated code,
+   * "janino" or "bytecode". Default is the value of the
+   * "saffron.compiler.backend" property. */
+  COMPILER_BACKEND,
+
+  /** Called with the reason when the bytecode compiler cannot compile
+   * generated code, and the Java source code is compiled instead. */
+  COMPILER_FALLBACK,
+
   /** Called with the output of sql-to-rel-converter. */
   CONVERTED,
 
@@ -165,6 +182,15 @@ public void run(Object arg) {
     }
   }
 
+  /** Returns whether any handler is registered for this Hook, for all
+   * threads or for this thread.
+   *
+   * <p>Use it to avoid computing an expensive argument that no handler will
+   * see. */
+  public boolean hasHandlers() {
+    return !handlers.isEmpty() || !threadHandlers.get().isEmpty();
+  }
+
   /** Returns the value of a property hook.
    * (Property hooks take a {@link Holder} as an argument.) */
   public <V> V get(V defaultValue) {
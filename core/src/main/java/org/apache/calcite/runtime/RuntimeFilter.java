@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.QueryProvider;
+import org.apache.calcite.schema.SchemaPlus;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Filter on the values of a join key, built at run time from the keys of
+ * the build (right) input of a hash join, and applied to the probe (left)
+ * input so that rows that cannot match are discarded early.
+ *
+ * <p>A runtime filter consists of the range of the keys and a Bloom filter.
+ * It may accept keys that are not in the build input, but never rejects a
+ * key that is.
+ *
+ * @see Slot
+ * @see org.apache.calcite.schema.RuntimeFilterableTable
+ */
+public class RuntimeFilter {
+  /** Maximum number of build keys for which a Bloom filter is created.
+   * Larger build inputs get a filter that only checks the range. */
+  public static final int MAX_BLOOM_KEY_COUNT = 1 << 24;
+
+  /** Number of bits in the Bloom filter per key. */
+  private static final int BITS_PER_KEY = 8;
+
+  /** Number of hash functions in the Bloom filter. With 8 bits per key,
+   * 3 hash functions give a false-positive rate of about 3%. */
+  private static final int HASH_COUNT = 3;
+
+  private final Comparable min;
+  private final Comparable max;
+  private final long[] bits;
+  private final int mask;
+  private final boolean empty;
+
+  private RuntimeFilter(Comparable min, Comparable max, long[] bits,
+      boolean empty) {
+    this.min = min;
+    this.max = max;
+    this.bits = bits;
+    this.mask = bits == null ? 0 : bits.length * 64 - 1;
+    this.empty = empty;
+  }
+
+  /** Creates a runtime filter that accepts the given keys. Null keys are
+   * ignored, because they never match in a join. */
+  public static RuntimeFilter create(Collection<Object> keys) {
+    Comparable min = null;
+    Comparable max = null;
+    boolean comparable = true;
+    int count = 0;
+    for (Object key : keys) {
+      if (key == null) {
+        continue;
+      }
+      ++count;
+      if (!comparable) {
+        continue;
+      }
+      if (!(key instanceof Comparable)
+          || min != null && min.getClass() != key.getClass()) {
+        comparable = false;
+        min = max = null;
+        continue;
+      }
+      final Comparable c = (Comparable) key;
+      //noinspection unchecked
+      if (min == null || c.compareTo(min) < 0) {
+        min = c;
+      }
+      //noinspection unchecked
+      if (max == null || c.compareTo(max) > 0) {
+        max = c;
+      }
+    }
+    long[] bits = null;
+    if (count <= MAX_BLOOM_KEY_COUNT) {
+      final int bitCount =
+          Math.max(Integer.highestOneBit(count * BITS_PER_KEY - 1) << 1, 64);
+      bits = new long[bitCount / 64];
+      final int mask = bitCount - 1;
+      for (Object key : keys) {
+        if (key != null) {
+          final long h = hash(key);
+          int h1 = (int) h;
+          final int h2 = (int) (h >>> 32) | 1;
+          for (int i = 0; i < HASH_COUNT; i++) {
+            final int bit = h1 & mask;
+            bits[bit >>> 6] |= 1L << bit;
+            h1 += h2;
+          }
+        }
+      }
+    }
+    return new RuntimeFilter(min, max, bits, count == 0);
+  }
+
+  /** Returns a data context that is the same as a given context, except
+   * that its {@link DataContext.Variable#RUNTIME_FILTERS} variable holds the
+   * given slots. Called from code generated by
+   * {@link org.apache.calcite.adapter.enumerable.EnumerableInterpreter}. */
+  public static DataContext withSlots(final DataContext root,
+      Slot... slots) {
+    final List<Slot> slotList = ImmutableList.copyOf(slots);
+    return new DataContext() {
+      public SchemaPlus getRootSchema() {
+        return root.getRootSchema();
+      }
+
+      public JavaTypeFactory getTypeFactory() {
+        return root.getTypeFactory();
+      }
+
+      public QueryProvider getQueryProvider() {
+        return root.getQueryProvider();
+      }
+
+      public Object get(String name) {
+        if (name.equals(Variable.RUNTIME_FILTERS.camelName)) {
+          return slotList;
+        }
+        return root.get(name);
+      }
+    };
+  }
+
+  private static long hash(Object key) {
+    return key.hashCode() * 0x9E3779B97F4A7C15L;
+  }
+
+  /** Returns the smallest key, or null if the keys are not all comparable
+   * values of the same class. */
+  public Comparable getMin() {
+    return min;
+  }
+
+  /** Returns the largest key, or null if the keys are not all comparable
+   * values of the same class. */
+  public Comparable getMax() {
+    return max;
+  }
+
+  /** Returns false if a key is definitely not one of the keys of the build
+   * input; true if it might be. */
+  public boolean mightContain(Object key) {
+    if (key == null || empty) {
+      return false;
+    }
+    if (min != null) {
+      if (key.getClass() != min.getClass()) {
+        return true;
+      }
+      //noinspection unchecked
+      if (min.compareTo(key) > 0 || max.compareTo(key) < 0) {
+        return false;
+      }
+    }
+    if (bits != null) {
+      final long h = hash(key);
+      int h1 = (int) h;
+      final int h2 = (int) (h >>> 32) | 1;
+      for (int i = 0; i < HASH_COUNT; i++) {
+        final int bit = h1 & mask;
+        if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+          return false;
+        }
+        h1 += h2;
+      }
+    }
+    return true;
+  }
+
+  @Override public String toString() {
+    return "RuntimeFilter(min=" + min + ", max=" + max
+        + ", bits=" + (bits == null ? 0 : bits.length * 64) + ")";
+  }
+
+  /** Place where a hash join publishes a runtime filter, once it has read
+   * its build input, for scans beneath its probe input to read.
+   *
+   * <p>A scan calls {@link #get()} when it starts reading rows. If the
+   * filter has not been published yet, {@code get} returns null, and the
+   * scan must return all rows. */
+  public static class Slot {
+    /** Ordinal of the column of the scanned table to which the filter
+     * applies. */
+    public final int column;
+
+    private volatile RuntimeFilter filter;
+
+    public Slot(int column) {
+      this.column = column;
+    }
+
+    /** Returns the published filter, or null. */
+    public RuntimeFilter get() {
+      return filter;
+    }
+
+    /** Publishes a filter. */
+    public void set(RuntimeFilter filter) {
+      this.filter = filter;
+    }
+  }
+}
+
+// End RuntimeFilter.java
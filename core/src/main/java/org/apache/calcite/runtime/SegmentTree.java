@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.function.Function2;
+
+/**
+ * Segment tree over an array of values, that computes the combination of
+ * any contiguous range of values in logarithmic time.
+ *
+ * <p>Used to evaluate windowed aggregate functions such as {@code MIN} and
+ * {@code MAX}, whose value cannot be updated when a row leaves the window
+ * frame. The combiner must be associative. Null values are ignored, and the
+ * combination of a range that contains only null values is null.
+ */
+public class SegmentTree {
+  private static final Function2<Object, Object, Object> MIN =
+      new Function2<Object, Object, Object>() {
+        public Object apply(Object v0, Object v1) {
+          //noinspection unchecked
+          return ((Comparable) v0).compareTo(v1) <= 0 ? v0 : v1;
+        }
+      };
+
+  private static final Function2<Object, Object, Object> MAX =
+      new Function2<Object, Object, Object>() {
+        public Object apply(Object v0, Object v1) {
+          //noinspection unchecked
+          return ((Comparable) v0).compareTo(v1) >= 0 ? v0 : v1;
+        }
+      };
+
+  private final int size;
+  private final Object[] nodes;
+  private final Function2<Object, Object, Object> combiner;
+
+  /** Creates a SegmentTree.
+   *
+   * @param values Values; the tree does not retain the array
+   * @param combiner Associative function that combines two non-null values
+   */
+  public SegmentTree(Object[] values,
+      Function2<Object, Object, Object> combiner) {
+    this.size = values.length;
+    this.combiner = combiner;
+    // Leaves are at [size, 2 * size); the parent of node n is node n / 2.
+    this.nodes = new Object[2 * size];
+    System.arraycopy(values, 0, nodes, size, size);
+    for (int n = size - 1; n > 0; n--) {
+      nodes[n] = combine(nodes[2 * n], nodes[2 * n + 1]);
+    }
+  }
+
+  /** Returns a combiner that returns the lesser of two
+   * {@link Comparable} values. */
+  public static Function2<Object, Object, Object> min() {
+    return MIN;
+  }
+
+  /** Returns a combiner that returns the greater of two
+   * {@link Comparable} values. */
+  public static Function2<Object, Object, Object> max() {
+    return MAX;
+  }
+
+  /** Returns the combination of the values between {@code start} and
+   * {@code end}, inclusive, or null if the range is empty or contains only
+   * null values. */
+  public Object query(int start, int end) {
+    if (start < 0 || end < start) {
+      return null;
+    }
+    // Combine in order, so that the combiner need not be commutative.
+    Object left = null;
+    Object right = null;
+    for (int lo = start + size, hi = end + size + 1; lo < hi;
+         lo >>= 1, hi >>= 1) {
+      if ((lo & 1) == 1) {
+        left = combine(left, nodes[lo++]);
+      }
+      if ((hi & 1) == 1) {
+        right = combine(nodes[--hi], right);
+      }
+    }
+    return combine(left, right);
+  }
+
+  private Object combine(Object v0, Object v1) {
+    if (v0 == null) {
+      return v1;
+    }
+    if (v1 == null) {
+      return v0;
+    }
+    return combiner.apply(v0, v1);
+  }
+}
+
+// End SegmentTree.java
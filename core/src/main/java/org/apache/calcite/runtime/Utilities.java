@@ -217,6 +217,16 @@ public static int compareNullsLast(List v0, List v1) {
             : v1 == null ? -1
                 : FlatLists.ComparableListImpl.compare(v0, v1);
   }
+
+  /** Returns a normalized sort key for a {@code double} value; that is, a
+   * {@code long} whose unsigned order is the order of
+   * {@link Double#compare(double, double)}. */
+  public static long normalizedKey(double v) {
+    final long bits = Double.doubleToLongBits(v);
+    // Flip the magnitude bits of negative values, so that their signed order
+    // is correct, then flip the sign bit to get an unsigned order.
+    return bits ^ ((bits >> 63) & Long.MAX_VALUE) ^ Long.MIN_VALUE;
+  }
 }
 
 // End Utilities.java
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.schema;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.runtime.RuntimeFilter;
+
+import java.util.List;
+
+/**
+ * Extension to {@link FilterableTable} and
+ * {@link ProjectableFilterableTable} for tables that can skip rows using
+ * runtime filters.
+ *
+ * <p>A runtime filter is built by a hash join from the keys of its build
+ * input, after planning, while the query is running. If the probe input of
+ * the join scans a table that implements this interface, Calcite calls
+ * {@link #scan(DataContext, List, int[], List)} instead of the {@code scan}
+ * method of the other interface, passing a
+ * {@link org.apache.calcite.runtime.RuntimeFilter.Slot} for each join.
+ *
+ * <p>The filters are not known when {@code scan} is called. The table should
+ * call {@link org.apache.calcite.runtime.RuntimeFilter.Slot#get()} when it
+ * starts to read rows; by then, the join has usually published the filter.
+ * If a filter is present, the table may skip rows whose value of
+ * {@link org.apache.calcite.runtime.RuntimeFilter.Slot#column} it rejects,
+ * for example by comparing the range of the filter with the range of values
+ * in a block of storage. Skipping rows is optional; the join does not rely on
+ * it.
+ *
+ * <p>If the table does not implement this interface, Calcite applies the
+ * filters to the rows that the scan returns.
+ */
+public interface RuntimeFilterableTable extends Table {
+  /** Returns an enumerable over the rows in this Table, and registers
+   * runtime filters that the enumerable may use to skip rows.
+   *
+   * @param root Execution context
+   * @param filters Mutable list of filters, as for
+   *                {@link FilterableTable#scan(DataContext, List)}
+   * @param projects List of projects, as for
+   *     {@link ProjectableFilterableTable#scan(DataContext, List, int[])};
+   *     null if the table does not implement ProjectableFilterableTable
+   * @param runtimeFilters Slots that will hold runtime filters
+   * @return Enumerable over all rows that match the accepted filters
+   */
+  Enumerable<Object[]> scan(DataContext root, List<RexNode> filters,
+      int[] projects, List<RuntimeFilter.Slot> runtimeFilters);
+}
+
+// End RuntimeFilterableTable.java
@@ -106,6 +106,13 @@ public Program apply(RuleSet ruleSet) {
   public static final Program CALC_PROGRAM =
       calc(DefaultRelMetadataProvider.INSTANCE);
 
+  /** Rules that add exchanges so that large aggregates and joins are
+   * evaluated in parallel. */
+  public static final ImmutableList<RelOptRule> PARALLEL_RULES =
+      ImmutableList.of(
+          EnumerableRules.ENUMERABLE_PARALLEL_AGGREGATE_RULE,
+          EnumerableRules.ENUMERABLE_PARALLEL_JOIN_RULE);
+
   /** Program that expands sub-queries. */
   public static final Program SUB_QUERY_PROGRAM =
       subQuery(DefaultRelMetadataProvider.INSTANCE);
@@ -114,6 +121,7 @@ public Program apply(RuleSet ruleSet) {
       ImmutableSet.of(
           EnumerableRules.ENUMERABLE_JOIN_RULE,
           EnumerableRules.ENUMERABLE_MERGE_JOIN_RULE,
+          EnumerableRules.ENUMERABLE_BAND_JOIN_RULE,
           EnumerableRules.ENUMERABLE_SEMI_JOIN_RULE,
           EnumerableRules.ENUMERABLE_CORRELATE_RULE,
           EnumerableRules.ENUMERABLE_PROJECT_RULE,
@@ -121,6 +129,7 @@ public Program apply(RuleSet ruleSet) {
           EnumerableRules.ENUMERABLE_AGGREGATE_RULE,
           EnumerableRules.ENUMERABLE_SORT_RULE,
           EnumerableRules.ENUMERABLE_LIMIT_RULE,
+          EnumerableRules.ENUMERABLE_LIMIT_SORT_RULE,
           EnumerableRules.ENUMERABLE_UNION_RULE,
           EnumerableRules.ENUMERABLE_INTERSECT_RULE,
           EnumerableRules.ENUMERABLE_MINUS_RULE,
@@ -339,6 +348,16 @@ public RelNode run(RelOptPlanner planner, RelNode rel,
         calc(metadataProvider));
   }
 
+  /** Returns a program that adds exchanges to a physical plan so that large
+   * aggregates and joins are evaluated in parallel.
+   *
+   * <p>Prepare runs it after the {@link #standard() standard program} if
+   * the {@link org.apache.calcite.config.CalciteConnectionProperty#PARALLELISM}
+   * connection property is greater than 1. */
+  public static Program parallel(RelMetadataProvider metadataProvider) {
+    return hep(PARALLEL_RULES, true, metadataProvider);
+  }
+
   /** Program backed by a {@link RuleSet}. */
   static class RuleSetProgram implements Program {
     final RuleSet ruleSet;
@@ -17,6 +17,8 @@
 package org.apache.calcite.util;
 
 import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.batch.BatchOperator;
+import org.apache.calcite.adapter.batch.Batches;
 import org.apache.calcite.adapter.java.ReflectiveSchema;
 import org.apache.calcite.adapter.jdbc.JdbcSchema;
 import org.apache.calcite.avatica.util.DateTimeUtils;
@@ -38,6 +40,7 @@
 import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.function.Function2;
 import org.apache.calcite.linq4j.function.Functions;
+import org.apache.calcite.linq4j.function.LongFunction1;
 import org.apache.calcite.linq4j.function.Predicate1;
 import org.apache.calcite.linq4j.function.Predicate2;
 import org.apache.calcite.linq4j.tree.FunctionExpression;
@@ -75,6 +78,8 @@
 import org.apache.calcite.runtime.FlatLists;
 import org.apache.calcite.runtime.RandomFunction;
 import org.apache.calcite.runtime.ResultSetEnumerable;
+import org.apache.calcite.runtime.RuntimeFilter;
+import org.apache.calcite.runtime.SegmentTree;
 import org.apache.calcite.runtime.SortedMultiMap;
 import org.apache.calcite.runtime.SqlFunctions;
 import org.apache.calcite.runtime.SqlFunctions.FlatProductInputType;
@@ -143,17 +148,56 @@ public enum BuiltInMethod {
       String.class, Function1.class),
   JOIN(ExtendedEnumerable.class, "join", Enumerable.class, Function1.class,
       Function1.class, Function2.class),
+  HASH_JOIN(EnumerableDefaults.class, "hashJoin", Enumerable.class,
+      Enumerable.class, Function1.class, Function1.class, Function2.class,
+      EqualityComparer.class, boolean.class, boolean.class, long.class),
+  HASH_JOIN_WITH_PREDICATE(EnumerableDefaults.class, "hashJoin",
+      Enumerable.class, Enumerable.class, Function1.class, Function1.class,
+      Function2.class, EqualityComparer.class, boolean.class, boolean.class,
+      long.class, Predicate2.class),
+  HASH_JOIN_LONG(EnumerableDefaults.class, "hashJoinLong", Enumerable.class,
+      Enumerable.class, LongFunction1.class, Predicate1.class,
+      LongFunction1.class, Predicate1.class, Function2.class, boolean.class,
+      boolean.class, Predicate2.class),
   MERGE_JOIN(EnumerableDefaults.class, "mergeJoin", Enumerable.class,
       Enumerable.class, Function1.class, Function1.class, Function2.class,
       boolean.class, boolean.class),
   SLICE0(Enumerables.class, "slice0", Enumerable.class),
+  GATHER(Enumerables.class, "gather", int.class, Enumerable[].class,
+      Function1[].class, Function1.class),
+  PUBLISH_RUNTIME_FILTER(Enumerables.class, "publishRuntimeFilter",
+      Enumerable.class, Function1.class, RuntimeFilter.Slot.class),
+  PUBLISH_RUNTIME_FILTER_FIRST(Enumerables.class, "publishRuntimeFilterFirst",
+      Enumerable.class, Function1.class, RuntimeFilter.Slot.class,
+      Function1.class),
+  APPLY_RUNTIME_FILTER(Enumerables.class, "applyRuntimeFilter",
+      Enumerable.class, Function1.class, RuntimeFilter.Slot.class),
+  RUNTIME_FILTER_CONTEXT(RuntimeFilter.class, "withSlots", DataContext.class,
+      RuntimeFilter.Slot[].class),
+  BATCHES_TO_ENUMERABLE(Batches.class, "toEnumerable", BatchOperator.class,
+      DataContext.class, Enumerable[].class),
   SEMI_JOIN(EnumerableDefaults.class, "semiJoin", Enumerable.class,
       Enumerable.class, Function1.class, Function1.class),
+  SEMI_JOIN_LONG(EnumerableDefaults.class, "semiJoinLong", Enumerable.class,
+      Enumerable.class, LongFunction1.class, Predicate1.class,
+      LongFunction1.class, Predicate1.class),
+  MERGE_SEMI_JOIN(EnumerableDefaults.class, "mergeSemiJoin",
+      Enumerable.class, Enumerable.class, Function1.class, Function1.class),
   THETA_JOIN(EnumerableDefaults.class, "thetaJoin", Enumerable.class,
       Enumerable.class, Predicate2.class, Function2.class, boolean.class,
       boolean.class),
+  BAND_JOIN(EnumerableDefaults.class, "bandJoin", Enumerable.class,
+      Enumerable.class, Function1.class, Function1.class, Function1.class,
+      Function1.class, Predicate2.class, Function2.class, boolean.class,
+      boolean.class),
   CORRELATE_JOIN(ExtendedEnumerable.class, "correlateJoin",
       CorrelateJoinType.class, Function1.class, Function2.class),
+  CORRELATE_JOIN_CACHED(EnumerableDefaults.class, "correlateJoin",
+      CorrelateJoinType.class, Enumerable.class, Function1.class,
+      Function2.class, Function1.class, int.class),
+  CORRELATE_BATCH_JOIN(EnumerableDefaults.class, "correlateBatchJoin",
+      CorrelateJoinType.class, Enumerable.class, Function1.class,
+      Function2.class, Function1.class, int.class, int.class),
   SELECT(ExtendedEnumerable.class, "select", Function1.class),
   SELECT2(ExtendedEnumerable.class, "select", Function2.class),
   SELECT_MANY(ExtendedEnumerable.class, "selectMany", Function1.class),
@@ -161,20 +205,38 @@ public enum BuiltInMethod {
   WHERE2(ExtendedEnumerable.class, "where", Predicate2.class),
   DISTINCT(ExtendedEnumerable.class, "distinct"),
   DISTINCT2(ExtendedEnumerable.class, "distinct", EqualityComparer.class),
+  DISTINCT_LONG(EnumerableDefaults.class, "distinctLong", Enumerable.class,
+      LongFunction1.class, Predicate1.class),
   GROUP_BY(ExtendedEnumerable.class, "groupBy", Function1.class),
   GROUP_BY2(ExtendedEnumerable.class, "groupBy", Function1.class,
       Function0.class, Function2.class, Function2.class),
   GROUP_BY_MULTIPLE(EnumerableDefaults.class, "groupByMultiple",
       Enumerable.class, List.class, Function0.class, Function2.class,
       Function2.class),
+  HASH_AGGREGATE(EnumerableDefaults.class, "hashAggregate", Enumerable.class,
+      Function0.class),
+  SORTED_GROUP_BY(EnumerableDefaults.class, "sortedGroupBy",
+      Enumerable.class, Function1.class, Function0.class, Function2.class,
+      Function2.class),
   AGGREGATE(ExtendedEnumerable.class, "aggregate", Object.class,
       Function2.class, Function1.class),
   ORDER_BY(ExtendedEnumerable.class, "orderBy", Function1.class,
       Comparator.class),
+  ORDER_BY_SPILL(EnumerableDefaults.class, "orderBy", Enumerable.class,
+      Function1.class, Comparator.class, long.class),
+  ORDER_BY_WITH_FETCH_AND_OFFSET(EnumerableDefaults.class, "orderBy",
+      Enumerable.class, Function1.class, Comparator.class, int.class,
+      int.class),
+  ORDER_BY_NORMALIZED_KEY(EnumerableDefaults.class, "orderByNormalizedKey",
+      Enumerable.class, LongFunction1.class),
   UNION(ExtendedEnumerable.class, "union", Enumerable.class),
   CONCAT(ExtendedEnumerable.class, "concat", Enumerable.class),
   INTERSECT(ExtendedEnumerable.class, "intersect", Enumerable.class),
   EXCEPT(ExtendedEnumerable.class, "except", Enumerable.class),
+  INTERSECT_LONG(EnumerableDefaults.class, "intersectLong", Enumerable.class,
+      Enumerable.class, LongFunction1.class, Predicate1.class),
+  EXCEPT_LONG(EnumerableDefaults.class, "exceptLong", Enumerable.class,
+      Enumerable.class, LongFunction1.class, Predicate1.class),
   SKIP(ExtendedEnumerable.class, "skip", int.class),
   TAKE(ExtendedEnumerable.class, "take", int.class),
   SINGLETON_ENUMERABLE(Linq4j.class, "singletonEnumerable", Object.class),
@@ -237,6 +299,9 @@ public enum BuiltInMethod {
   SORTED_MULTI_MAP_ARRAYS(SortedMultiMap.class, "arrays", Comparator.class),
   SORTED_MULTI_MAP_SINGLETON(SortedMultiMap.class, "singletonArrayIterator",
       Comparator.class, List.class),
+  SEGMENT_TREE_QUERY(SegmentTree.class, "query", int.class, int.class),
+  SEGMENT_TREE_MIN(SegmentTree.class, "min"),
+  SEGMENT_TREE_MAX(SegmentTree.class, "max"),
   BINARY_SEARCH5_LOWER(BinarySearch.class, "lowerBound", Object[].class,
       Object.class, int.class, int.class, Comparator.class),
   BINARY_SEARCH5_UPPER(BinarySearch.class, "upperBound", Object[].class,
@@ -358,6 +423,7 @@ public enum BuiltInMethod {
       Comparable.class),
   COMPARE_NULLS_LAST(Utilities.class, "compareNullsLast", Comparable.class,
       Comparable.class),
+  NORMALIZED_KEY(Utilities.class, "normalizedKey", double.class),
   ROUND_LONG(SqlFunctions.class, "round", long.class, long.class),
   ROUND_INT(SqlFunctions.class, "round", int.class, int.class),
   DATE_TO_INT(SqlFunctions.class, "toInt", java.util.Date.class),
@@ -412,6 +478,8 @@ public enum BuiltInMethod {
       SqlExplainLevel.class),
   SCALAR_EXECUTE1(Scalar.class, "execute", Context.class),
   SCALAR_EXECUTE2(Scalar.class, "execute", Context.class, Object[].class),
+  SCALAR_EXECUTE_BATCH(Scalar.class, "executeBatch", Context.class,
+      Object[][].class, int.class, Object[][].class),
   CONTEXT_VALUES(Context.class, "values", true),
   CONTEXT_ROOT(Context.class, "root", true),
   DATA_CONTEXT_GET_QUERY_PROVIDER(DataContext.class, "getQueryProvider"),
@@ -109,6 +109,88 @@ public interface SaffronProperties {
   @Default("1000")
   IntProp metadataHandlerCacheMaximumSize();
 
+  /**
+   * The int property "saffron.bindable.cache.maximum.size" is the maximum
+   * number of classes, compiled from the Java code generated for queries,
+   * that are kept so that they can be reused when a query generates the same
+   * code again. A typical value is the number of distinct query shapes that a
+   * server executes.
+   *
+   * <p>If the value is less than 0, there is no limit. If it is 0, classes
+   * are not cached. The default is 1,000.
+   */
+  @Resource("saffron.bindable.cache.maximum.size")
+  @Default("1000")
+  IntProp bindableCacheMaximumSize();
+
+  /**
+   * The string property "saffron.code.cache.directory" is the directory in
+   * which the bytecode of classes compiled from generated Java code is
+   * stored, so that a JVM that later generates the same code, for example
+   * after a restart, can load the bytecode rather than compile it again.
+   *
+   * <p>If the property is not set, bytecode is not stored. Used in
+   * {@link org.apache.calcite.util.javac.ClassBodyCompiler}.
+   */
+  @Resource("saffron.code.cache.directory")
+  StringProp codeCacheDirectory();
+
+  /**
+   * The string property "saffron.compiler.backend" determines how generated
+   * code is compiled. Values are "janino", which generates Java source code
+   * and compiles it using Janino, and "bytecode", which generates bytecode
+   * directly from expression trees and falls back to Janino for constructs
+   * that it does not support. The default is "janino".
+   *
+   * <p>Used in {@link org.apache.calcite.util.javac.BytecodeCompiler}; tests
+   * can override it using
+   * {@link org.apache.calcite.runtime.Hook#COMPILER_BACKEND}.
+   */
+  @Resource("saffron.compiler.backend")
+  @Default("janino")
+  StringProp compilerBackend();
+
+  /**
+   * The int property "saffron.generated.method.maximum.size" is the estimated
+   * size, in bytes of bytecode, above which the body of a method in generated
+   * code is split into several smaller methods. The JVM does not compile
+   * methods larger than 8,000 bytes to native code.
+   *
+   * <p>If the value is 0 or less, methods are not split. The default is 4,000.
+   * Used in
+   * {@link org.apache.calcite.adapter.enumerable.EnumerableRelImplementor}.
+   */
+  @Resource("saffron.generated.method.maximum.size")
+  @Default("4000")
+  IntProp generatedMethodMaximumSize();
+
+  /**
+   * The boolean property "saffron.interpreter.pipelined" determines whether
+   * the interpreter runs each node of a plan in its own thread, connected to
+   * other nodes by bounded queues. If false, nodes run one after another,
+   * and each node buffers all of its output. The default is false.
+   *
+   * <p>Used in {@link org.apache.calcite.interpreter.Interpreter}.
+   */
+  @Resource("saffron.interpreter.pipelined")
+  @Default("false")
+  BooleanProp interpreterPipelined();
+
+  /**
+   * The int property "saffron.plan.cache.maximum.size" is the maximum number
+   * of statements, prepared from SQL by connections whose "planCache"
+   * property is true, that are kept so that they can be reused when the same
+   * SQL is prepared again. Entries are held by soft references, so the
+   * garbage collector may also remove them if memory is short.
+   *
+   * <p>If the value is less than 0, there is no limit. If it is 0, statements
+   * are not cached. The default is 1,000.
+   * Used in {@link org.apache.calcite.prepare.CalcitePrepareImpl}.
+   */
+  @Resource("saffron.plan.cache.maximum.size")
+  @Default("1000")
+  IntProp planCacheMaximumSize();
+
   SaffronProperties INSTANCE = Helper.instance();
 
   /** Helper class. */
@@ -0,0 +1,3533 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.util.javac;
+
+import org.apache.calcite.linq4j.function.Functions;
+import org.apache.calcite.linq4j.tree.ArrayLengthRecordField;
+import org.apache.calcite.linq4j.tree.BinaryExpression;
+import org.apache.calcite.linq4j.tree.BlockStatement;
+import org.apache.calcite.linq4j.tree.Blocks;
+import org.apache.calcite.linq4j.tree.CatchBlock;
+import org.apache.calcite.linq4j.tree.ClassDeclaration;
+import org.apache.calcite.linq4j.tree.ConditionalStatement;
+import org.apache.calcite.linq4j.tree.ConstantExpression;
+import org.apache.calcite.linq4j.tree.ConstantUntypedNull;
+import org.apache.calcite.linq4j.tree.ConstructorDeclaration;
+import org.apache.calcite.linq4j.tree.DeclarationStatement;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.ExpressionType;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.FieldDeclaration;
+import org.apache.calcite.linq4j.tree.ForStatement;
+import org.apache.calcite.linq4j.tree.FunctionExpression;
+import org.apache.calcite.linq4j.tree.GotoExpressionKind;
+import org.apache.calcite.linq4j.tree.GotoStatement;
+import org.apache.calcite.linq4j.tree.IndexExpression;
+import org.apache.calcite.linq4j.tree.MemberDeclaration;
+import org.apache.calcite.linq4j.tree.MemberExpression;
+import org.apache.calcite.linq4j.tree.MethodCallExpression;
+import org.apache.calcite.linq4j.tree.MethodDeclaration;
+import org.apache.calcite.linq4j.tree.NewArrayExpression;
+import org.apache.calcite.linq4j.tree.NewExpression;
+import org.apache.calcite.linq4j.tree.Node;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.linq4j.tree.Statement;
+import org.apache.calcite.linq4j.tree.TernaryExpression;
+import org.apache.calcite.linq4j.tree.ThrowStatement;
+import org.apache.calcite.linq4j.tree.TryStatement;
+import org.apache.calcite.linq4j.tree.TypeBinaryExpression;
+import org.apache.calcite.linq4j.tree.Types;
+import org.apache.calcite.linq4j.tree.UnaryExpression;
+import org.apache.calcite.linq4j.tree.WhileStatement;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.util.ControlFlowException;
+import org.apache.calcite.util.SaffronProperties;
+
+import org.codehaus.janino.ByteArrayClassLoader;
+import org.codehaus.janino.Java;
+import org.codehaus.janino.util.ClassFile;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles a class whose members are linq4j expression trees directly to
+ * JVM bytecode, without generating Java source code and parsing it with
+ * <a href="http://www.janino.net">Janino</a>.
+ *
+ * <p>It supports the subset of the language that Calcite's code generators
+ * use: statements, expressions, anonymous classes (including
+ * {@link FunctionExpression}s) and static nested classes such as synthetic
+ * record types. Names and overloaded methods are resolved according to the
+ * rules of the Java language, so that a class behaves the same whichever way
+ * it is compiled.
+ *
+ * <p>If a tree uses a construct that this compiler does not support, or the
+ * JVM rejects the generated bytecode, {@link #compile} throws
+ * {@link UnsupportedException}, and the caller should compile the Java source
+ * code instead; see {@link ClassBodyCompiler}.
+ *
+ * <p>Whether Calcite uses this compiler is determined by the property
+ * "saffron.compiler.backend"; see {@link SaffronProperties#compilerBackend()}.
+ * Tests can override it using {@link Hook#COMPILER_BACKEND}.
+ */
+public class BytecodeCompiler {
+  /** Returns whether this compiler is enabled for the current thread.
+   *
+   * <p>The back-end is set by {@link SaffronProperties#compilerBackend()},
+   * unless overridden using {@link Hook#COMPILER_BACKEND}. */
+  public static boolean enabled() {
+    return "bytecode".equals(
+        Hook.COMPILER_BACKEND.get(
+            SaffronProperties.INSTANCE.compilerBackend().get()));
+  }
+
+  private static final int ACC_PUBLIC = 0x0001;
+  private static final int ACC_PRIVATE = 0x0002;
+  private static final int ACC_PROTECTED = 0x0004;
+  private static final int ACC_STATIC = 0x0008;
+  private static final int ACC_FINAL = 0x0010;
+  private static final int ACC_SUPER = 0x0020;
+  private static final int ACC_BRIDGE = 0x0040;
+  private static final int ACC_SYNTHETIC = 0x1000;
+
+  private static final int FIELD_MODIFIERS = Modifier.PUBLIC
+      | Modifier.PRIVATE | Modifier.PROTECTED | Modifier.STATIC
+      | Modifier.FINAL | Modifier.VOLATILE | Modifier.TRANSIENT;
+  private static final int METHOD_MODIFIERS = Modifier.PUBLIC
+      | Modifier.PRIVATE | Modifier.PROTECTED | Modifier.STATIC
+      | Modifier.FINAL | Modifier.SYNCHRONIZED;
+
+  private static final int ACONST_NULL = 0x01;
+  private static final int ICONST_0 = 0x03;
+  private static final int LCONST_0 = 0x09;
+  private static final int FCONST_0 = 0x0b;
+  private static final int DCONST_0 = 0x0e;
+  private static final int BIPUSH = 0x10;
+  private static final int SIPUSH = 0x11;
+  private static final int LDC = 0x12;
+  private static final int LDC_W = 0x13;
+  private static final int LDC2_W = 0x14;
+  private static final int ILOAD = 0x15;
+  private static final int ILOAD_0 = 0x1a;
+  private static final int ISTORE = 0x36;
+  private static final int ISTORE_0 = 0x3b;
+  private static final int POP = 0x57;
+  private static final int POP2 = 0x58;
+  private static final int DUP = 0x59;
+  private static final int DUP_X1 = 0x5a;
+  private static final int DUP_X2 = 0x5b;
+  private static final int DUP2 = 0x5c;
+  private static final int DUP2_X1 = 0x5d;
+  private static final int DUP2_X2 = 0x5e;
+  private static final int SWAP = 0x5f;
+  private static final int IADD = 0x60;
+  private static final int ISUB = 0x64;
+  private static final int IMUL = 0x68;
+  private static final int IDIV = 0x6c;
+  private static final int IREM = 0x70;
+  private static final int INEG = 0x74;
+  private static final int ISHL = 0x78;
+  private static final int ISHR = 0x7a;
+  private static final int IAND = 0x7e;
+  private static final int IOR = 0x80;
+  private static final int IXOR = 0x82;
+  private static final int IINC = 0x84;
+  private static final int I2L = 0x85;
+  private static final int I2F = 0x86;
+  private static final int I2D = 0x87;
+  private static final int L2I = 0x88;
+  private static final int L2F = 0x89;
+  private static final int L2D = 0x8a;
+  private static final int F2I = 0x8b;
+  private static final int F2L = 0x8c;
+  private static final int F2D = 0x8d;
+  private static final int D2I = 0x8e;
+  private static final int D2L = 0x8f;
+  private static final int D2F = 0x90;
+  private static final int I2B = 0x91;
+  private static final int I2C = 0x92;
+  private static final int I2S = 0x93;
+  private static final int LCMP = 0x94;
+  private static final int FCMPL = 0x95;
+  private static final int FCMPG = 0x96;
+  private static final int DCMPL = 0x97;
+  private static final int DCMPG = 0x98;
+  private static final int IFEQ = 0x99;
+  private static final int IFNE = 0x9a;
+  private static final int IFLT = 0x9b;
+  private static final int IFGE = 0x9c;
+  private static final int IFGT = 0x9d;
+  private static final int IFLE = 0x9e;
+  private static final int IF_ICMPEQ = 0x9f;
+  private static final int IF_ACMPEQ = 0xa5;
+  private static final int IF_ACMPNE = 0xa6;
+  private static final int GOTO = 0xa7;
+  private static final int IRETURN = 0xac;
+  private static final int RETURN = 0xb1;
+  private static final int GETSTATIC = 0xb2;
+  private static final int PUTSTATIC = 0xb3;
+  private static final int GETFIELD = 0xb4;
+  private static final int PUTFIELD = 0xb5;
+  private static final int INVOKEVIRTUAL = 0xb6;
+  private static final int INVOKESPECIAL = 0xb7;
+  private static final int INVOKESTATIC = 0xb8;
+  private static final int INVOKEINTERFACE = 0xb9;
+  private static final int NEW = 0xbb;
+  private static final int NEWARRAY = 0xbc;
+  private static final int ANEWARRAY = 0xbd;
+  private static final int ARRAYLENGTH = 0xbe;
+  private static final int ATHROW = 0xbf;
+  private static final int CHECKCAST = 0xc0;
+  private static final int INSTANCEOF = 0xc1;
+  private static final int WIDE = 0xc4;
+  private static final int IFNULL = 0xc6;
+  private static final int IFNONNULL = 0xc7;
+
+  /** Static type of the {@code null} literal. */
+  private static final Type NULL_TYPE =
+      new Type() {
+        @Override public String toString() {
+          return "null";
+        }
+      };
+
+  private final Map<String, GenClass> nestedClasses = new HashMap<>();
+  private final List<GenClass> classes = new ArrayList<>();
+  private final Map<List<Object>, List<MethodRef>> methodCache =
+      new HashMap<>();
+  private String className;
+  private int anonymousClassCount;
+
+  private BytecodeCompiler() {
+  }
+
+  /** Compiles a class and returns it.
+   *
+   * @param className Name of the class
+   * @param extendedClass Superclass, or null
+   * @param implementedInterfaces Interfaces that the class implements
+   * @param parentClassLoader Class loader of classes that the class uses
+   * @param memberDeclarations Fields, methods, constructors and static nested
+   *                           classes of the class
+   * @return Class
+   * @throws UnsupportedException if the declarations use a construct that
+   *   this compiler does not support
+   */
+  public static Class<?> compile(String className, Class<?> extendedClass,
+      Class<?>[] implementedInterfaces, ClassLoader parentClassLoader,
+      List<MemberDeclaration> memberDeclarations) {
+    return load(className,
+        generate(className, extendedClass, implementedInterfaces,
+            memberDeclarations),
+        parentClassLoader);
+  }
+
+  /** Compiles a class to bytecode, without loading it.
+   *
+   * <p>Compiling the same declarations always returns the same bytecode, so
+   * the result can be used as the key of a cache of classes.
+   *
+   * @param className Name of the class
+   * @param extendedClass Superclass, or null
+   * @param implementedInterfaces Interfaces that the class implements
+   * @param memberDeclarations Fields, methods, constructors and static nested
+   *                           classes of the class
+   * @return Bytecode of the class and its nested classes, keyed by class name
+   * @throws UnsupportedException if the declarations use a construct that
+   *   this compiler does not support
+   */
+  public static Map<String, byte[]> generate(String className,
+      Class<?> extendedClass, Class<?>[] implementedInterfaces,
+      List<MemberDeclaration> memberDeclarations) {
+    return new BytecodeCompiler().generate(className,
+        extendedClass == null ? Object.class : extendedClass,
+        Arrays.asList(implementedInterfaces), memberDeclarations);
+  }
+
+  /** Loads a class compiled by
+   * {@link #generate(String, Class, Class[], List)}, in a new class loader.
+   *
+   * @throws UnsupportedException if the JVM rejects the bytecode
+   */
+  public static Class<?> load(String className, Map<String, byte[]> bytecodes,
+      ClassLoader parentClassLoader) {
+    final Set<String> names = new HashSet<>(bytecodes.keySet());
+    final ClassLoader classLoader =
+        new ByteArrayClassLoader(bytecodes, parentClassLoader);
+    try {
+      // Load and verify every class now, so that if the JVM rejects one, the
+      // caller can compile the Java source code instead.
+      for (String name : names) {
+        Class.forName(name, true, classLoader);
+      }
+      return Class.forName(className, true, classLoader);
+    } catch (ClassNotFoundException e) {
+      throw new AssertionError(e);
+    } catch (LinkageError e) {
+      throw new UnsupportedException(e.toString());
+    }
+  }
+
+  private Map<String, byte[]> generate(String className,
+      Class<?> extendedClass, List<Class<?>> implementedInterfaces,
+      List<MemberDeclaration> memberDeclarations) {
+    this.className = className;
+    final GenClass topClass =
+        new GenClass(className, ACC_PUBLIC | ACC_SUPER, extendedClass,
+            implementedInterfaces, null);
+    final List<MemberDeclaration> members = new ArrayList<>();
+    final Map<GenClass, ClassDeclaration> nested = new LinkedHashMap<>();
+    for (MemberDeclaration member : memberDeclarations) {
+      if (member instanceof ClassDeclaration) {
+        final ClassDeclaration c = (ClassDeclaration) member;
+        if ((c.modifier & Modifier.STATIC) == 0) {
+          throw new UnsupportedException("inner class " + c.name);
+        }
+        final List<Class<?>> interfaces = new ArrayList<>();
+        for (Type type : c.implemented) {
+          interfaces.add(toClass(resolve(type)));
+        }
+        final GenClass g =
+            new GenClass(className + "$" + c.name, ACC_PUBLIC | ACC_SUPER,
+                c.extended == null ? Object.class : toClass(resolve(c.extended)),
+                interfaces, null);
+        nestedClasses.put(c.name, g);
+        nested.put(g, c);
+      } else {
+        members.add(member);
+      }
+    }
+    declareMembers(topClass, members);
+    for (Map.Entry<GenClass, ClassDeclaration> entry : nested.entrySet()) {
+      declareMembers(entry.getKey(), entry.getValue().memberDeclarations);
+    }
+    compileClass(topClass, members, null, null);
+    for (Map.Entry<GenClass, ClassDeclaration> entry : nested.entrySet()) {
+      compileClass(entry.getKey(), entry.getValue().memberDeclarations, null,
+          null);
+    }
+    final Map<String, byte[]> bytecodes = new HashMap<>();
+    for (GenClass c : classes) {
+      bytecodes.put(c.name, c.classFile.toByteArray());
+    }
+    return bytecodes;
+  }
+
+  /** Records the fields, methods and constructors of a class, so that code
+   * can refer to them before they are compiled. */
+  private void declareMembers(GenClass c, List<MemberDeclaration> members) {
+    for (MemberDeclaration member : members) {
+      if (member instanceof FieldDeclaration) {
+        final FieldDeclaration f = (FieldDeclaration) member;
+        c.fields.put(f.parameter.name,
+            new FieldRef(c, f.parameter.name, resolve(f.parameter.type),
+                f.modifier));
+      } else if (member instanceof MethodDeclaration) {
+        final MethodDeclaration m = (MethodDeclaration) member;
+        if ((m.modifier & (Modifier.ABSTRACT | Modifier.NATIVE)) != 0) {
+          throw new UnsupportedException("abstract method " + m.name);
+        }
+        c.methods.add(
+            new MethodRef(c, m.name, resolveParameters(m.parameters),
+                resolve(m.resultType), m.modifier, false));
+      } else if (member instanceof ConstructorDeclaration) {
+        final ConstructorDeclaration m = (ConstructorDeclaration) member;
+        c.constructors.add(
+            new MethodRef(c, "<init>", resolveParameters(m.parameters),
+                void.class, m.modifier, false));
+      } else {
+        throw new UnsupportedException(member);
+      }
+    }
+  }
+
+  private List<Type> resolveParameters(List<ParameterExpression> parameters) {
+    final List<Type> types = new ArrayList<>();
+    for (ParameterExpression parameter : parameters) {
+      types.add(resolve(parameter.type));
+    }
+    return types;
+  }
+
+  /** Generates the class file of a class.
+   *
+   * @param c Class
+   * @param members Member declarations
+   * @param superConstructor Constructor of the superclass that the
+   *                         constructor of an anonymous class calls, or null
+   *                         if the class is not anonymous
+   * @param function Function that an anonymous class implements, or null
+   */
+  private void compileClass(GenClass c, List<MemberDeclaration> members,
+      MethodRef superConstructor, FunctionExpression function) {
+    final String[] interfaces = new String[c.interfaces.size()];
+    for (int i = 0; i < interfaces.length; i++) {
+      interfaces[i] = descriptor(checkAccessible(c.interfaces.get(i)));
+    }
+    c.classFile =
+        new ClassFile((short) c.access, c.descriptor(),
+            descriptor(checkAccessible(c.superclass)), interfaces);
+    c.classFile.setVersion(ClassFile.MAJOR_VERSION_JDK_1_5,
+        ClassFile.MINOR_VERSION_JDK_1_5);
+    classes.add(c);
+
+    if (c.outerThis != null) {
+      addField(c, c.outerThis, ACC_FINAL | ACC_SYNTHETIC);
+    }
+    for (FieldRef capture : c.captures.values()) {
+      addField(c, capture, ACC_FINAL | ACC_SYNTHETIC);
+    }
+    final List<FieldDeclaration> staticInitializers = new ArrayList<>();
+    final List<FieldDeclaration> initializers = new ArrayList<>();
+    for (MemberDeclaration member : members) {
+      if (member instanceof FieldDeclaration) {
+        final FieldDeclaration f = (FieldDeclaration) member;
+        final FieldRef field = c.fields.get(f.parameter.name);
+        addField(c, field, f.modifier & FIELD_MODIFIERS);
+        if (f.initializer != null) {
+          if (field.isStatic()) {
+            staticInitializers.add(f);
+          } else {
+            initializers.add(f);
+          }
+        }
+      }
+    }
+
+    int methodCount = 0;
+    int constructorCount = 0;
+    for (MemberDeclaration member : members) {
+      if (member instanceof MethodDeclaration) {
+        final MethodDeclaration m = (MethodDeclaration) member;
+        final MethodRef method = c.methods.get(methodCount++);
+        final MethodGen gen =
+            new MethodGen(c, method.isStatic(), method.returnType);
+        gen.declareParameters(m.parameters, method.parameterTypes);
+        gen.statement(m.body);
+        gen.finish(method, m.modifier & METHOD_MODIFIERS);
+      } else if (member instanceof ConstructorDeclaration) {
+        final ConstructorDeclaration m = (ConstructorDeclaration) member;
+        final MethodRef constructor = c.constructors.get(constructorCount++);
+        final MethodGen gen = new MethodGen(c, false, void.class);
+        gen.declareParameters(m.parameters, constructor.parameterTypes);
+        gen.callSuperConstructor();
+        gen.initializeFields(initializers);
+        gen.statement(m.body);
+        gen.finish(constructor, m.modifier & METHOD_MODIFIERS);
+      }
+    }
+    if (superConstructor != null) {
+      compileAnonymousConstructor(c, superConstructor, initializers);
+    } else if (c.constructors.isEmpty()) {
+      final MethodGen gen = new MethodGen(c, false, void.class);
+      gen.callSuperConstructor();
+      gen.initializeFields(initializers);
+      gen.finish(
+          new MethodRef(c, "<init>", Collections.<Type>emptyList(),
+              void.class, Modifier.PUBLIC, false),
+          c.access & ACC_PUBLIC);
+    }
+    if (!staticInitializers.isEmpty()) {
+      final MethodGen gen = new MethodGen(c, true, void.class);
+      for (FieldDeclaration f : staticInitializers) {
+        final FieldRef field = c.fields.get(f.parameter.name);
+        gen.coerce(gen.emit(f.initializer), field.type);
+        gen.code.field(PUTSTATIC, c, field.name, field.type);
+      }
+      gen.finish(
+          new MethodRef(c, "<clinit>", Collections.<Type>emptyList(),
+              void.class, Modifier.STATIC, false),
+          ACC_STATIC);
+    }
+    if (function != null) {
+      compileFunctionBridges(c, function);
+    }
+    compileCovariantBridges(c);
+    checkImplemented(c);
+  }
+
+  private static void addField(GenClass c, FieldRef field, int access) {
+    c.classFile.addFieldInfo(new Java.Modifiers((short) access), field.name,
+        descriptor(field.type), null);
+  }
+
+  /** Generates the constructor of an anonymous class. Its parameters are the
+   * enclosing instance (if any), captured variables, and the arguments of the
+   * superclass constructor. */
+  private void compileAnonymousConstructor(GenClass c,
+      MethodRef superConstructor, List<FieldDeclaration> initializers) {
+    final MethodGen gen = new MethodGen(c, false, void.class);
+    final List<Type> parameterTypes = c.constructorParameterTypes(superConstructor);
+    final List<Local> locals = new ArrayList<>();
+    for (Type type : parameterTypes) {
+      locals.add(gen.allocate(type));
+    }
+    int i = 0;
+    if (c.outerThis != null) {
+      gen.code.load(c, 0);
+      gen.code.load(c.outerThis.type, locals.get(i++).slot);
+      gen.code.field(PUTFIELD, c, c.outerThis.name, c.outerThis.type);
+    }
+    for (FieldRef capture : c.captures.values()) {
+      gen.code.load(c, 0);
+      gen.code.load(capture.type, locals.get(i++).slot);
+      gen.code.field(PUTFIELD, c, capture.name, capture.type);
+    }
+    gen.code.load(c, 0);
+    for (; i < locals.size(); i++) {
+      gen.code.load(locals.get(i).type, locals.get(i).slot);
+    }
+    gen.code.invoke(INVOKESPECIAL, c.superclass, "<init>",
+        superConstructor.parameterTypes, void.class, false);
+    gen.initializeFields(initializers);
+    gen.finish(
+        new MethodRef(c, "<init>", parameterTypes, void.class, 0, false), 0);
+  }
+
+  /** Generates the bridge methods of an anonymous class that implements a
+   * function, the same as {@link FunctionExpression} does when it generates
+   * Java source code. */
+  private void compileFunctionBridges(GenClass c,
+      FunctionExpression<?> function) {
+    final Method abstractMethod = abstractMethod(function.type);
+    final MethodRef main = c.methods.get(0);
+    Type bridgeResultType = Functions.FUNCTION_RESULT_TYPES.get(function.type);
+    if (bridgeResultType == null) {
+      bridgeResultType = function.body.getType();
+    }
+    final Type resultType =
+        Primitive.is(abstractMethod.getReturnType())
+            ? resolve(bridgeResultType)
+            : resolve(Types.box(bridgeResultType));
+    boolean primitive = false;
+    boolean object = true;
+    final List<Type> boxTypes = new ArrayList<>();
+    final List<Type> objectTypes = new ArrayList<>();
+    for (Type type : main.parameterTypes) {
+      primitive |= isPrimitive(type);
+      object &= type == Object.class;
+      boxTypes.add(isPrimitive(type) ? box((Class) type) : type);
+      objectTypes.add(Object.class);
+    }
+    MethodRef target = main;
+    if (primitive) {
+      // "public Double apply(Double p1, Integer p2) {
+      //    return apply(p1.doubleValue(), p2.intValue());
+      //  }"
+      final MethodRef boxBridge =
+          new MethodRef(c, main.name, boxTypes, resultType, Modifier.PUBLIC,
+              false);
+      final MethodGen gen = new MethodGen(c, false, resultType);
+      gen.code.load(c, 0);
+      for (Type type : main.parameterTypes) {
+        final Local local = gen.allocate(isPrimitive(type) ? box((Class) type) : type);
+        gen.code.load(local.type, local.slot);
+        gen.coerce(local.type, type);
+      }
+      gen.code.invoke(INVOKEVIRTUAL, c, main.name, main.parameterTypes,
+          main.returnType, false);
+      gen.coerce(main.returnType, resultType);
+      gen.code.returnValue(resultType);
+      gen.finish(boxBridge, ACC_PUBLIC);
+      c.methods.add(boxBridge);
+      target = boxBridge;
+    }
+    if (!object) {
+      // "public Object apply(Object p1, Object p2) {
+      //    return apply((Double) p1, (Integer) p2);
+      //  }"
+      final MethodRef bridge =
+          new MethodRef(c, main.name, objectTypes, resultType, Modifier.PUBLIC,
+              false);
+      final MethodGen gen = new MethodGen(c, false, resultType);
+      gen.code.load(c, 0);
+      for (Type type : target.parameterTypes) {
+        final Local local = gen.allocate(Object.class);
+        gen.code.load(Object.class, local.slot);
+        gen.coerce(Object.class, type);
+      }
+      gen.code.invoke(INVOKEVIRTUAL, c, target.name, target.parameterTypes,
+          target.returnType, false);
+      gen.coerce(target.returnType, resultType);
+      gen.code.returnValue(resultType);
+      gen.finish(bridge, ACC_PUBLIC);
+      c.methods.add(bridge);
+    }
+  }
+
+  /** Returns the single method of a functional interface that
+   * {@link FunctionExpression} implements. */
+  private static Method abstractMethod(Type type) {
+    if (type instanceof Class
+        && ((Class) type).isInterface()
+        && ((Class) type).getDeclaredMethods().length == 1) {
+      return ((Class) type).getDeclaredMethods()[0];
+    }
+    throw new UnsupportedException("function type " + type);
+  }
+
+  /** Generates a bridge method for each method that overrides a method of a
+   * superclass or interface and has a more specific return type. */
+  private void compileCovariantBridges(GenClass c) {
+    for (MethodRef method : new ArrayList<>(c.methods)) {
+      if (method.isStatic()
+          || (method.modifiers & Modifier.PRIVATE) != 0) {
+        continue;
+      }
+      for (Method overridden : inheritedMethods(c)) {
+        if (!overridden.getName().equals(method.name)
+            || Modifier.isStatic(overridden.getModifiers())
+            || !Arrays.<Type>asList(overridden.getParameterTypes())
+                .equals(method.parameterTypes)
+            || overridden.getReturnType() == method.returnType) {
+          continue;
+        }
+        final MethodRef bridge =
+            new MethodRef(c, method.name, method.parameterTypes,
+                overridden.getReturnType(), Modifier.PUBLIC, false);
+        if (c.methodDescriptors.contains(bridge.nameAndDescriptor())) {
+          continue;
+        }
+        final MethodGen gen = new MethodGen(c, false, bridge.returnType);
+        gen.code.load(c, 0);
+        for (Type type : method.parameterTypes) {
+          final Local local = gen.allocate(type);
+          gen.code.load(type, local.slot);
+        }
+        gen.code.invoke(INVOKEVIRTUAL, c, method.name, method.parameterTypes,
+            method.returnType, false);
+        gen.coerce(method.returnType, bridge.returnType);
+        gen.code.returnValue(bridge.returnType);
+        gen.finish(bridge, ACC_PUBLIC | ACC_SYNTHETIC | ACC_BRIDGE);
+      }
+    }
+  }
+
+  /** Checks that a class implements every abstract method that it
+   * inherits. */
+  private void checkImplemented(GenClass c) {
+    for (Method method : inheritedMethods(c)) {
+      if (!Modifier.isAbstract(method.getModifiers())) {
+        continue;
+      }
+      final String nameAndDescriptor =
+          method.getName()
+              + methodDescriptor(
+                  Arrays.<Type>asList(method.getParameterTypes()),
+                  method.getReturnType());
+      if (c.methodDescriptors.contains(nameAndDescriptor)) {
+        continue;
+      }
+      if (isImplemented(c.superclass, method)) {
+        continue;
+      }
+      throw new UnsupportedException("class does not implement " + method);
+    }
+  }
+
+  private static boolean isImplemented(Class<?> clazz, Method method) {
+    for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+      try {
+        final Method m =
+            c.getDeclaredMethod(method.getName(), method.getParameterTypes());
+        if (!Modifier.isAbstract(m.getModifiers())) {
+          return true;
+        }
+      } catch (NoSuchMethodException e) {
+        // try the superclass
+      }
+    }
+    return false;
+  }
+
+  /** Returns the methods that a class inherits from its superclass and
+   * interfaces, and that it may override. */
+  private static List<Method> inheritedMethods(GenClass c) {
+    final List<Method> methods = new ArrayList<>();
+    methods.addAll(Arrays.asList(c.superclass.getMethods()));
+    for (Class<?> s = c.superclass; s != null; s = s.getSuperclass()) {
+      for (Method method : s.getDeclaredMethods()) {
+        if (Modifier.isProtected(method.getModifiers())) {
+          methods.add(method);
+        }
+      }
+    }
+    for (Class<?> i : c.interfaces) {
+      methods.addAll(Arrays.asList(i.getMethods()));
+    }
+    return methods;
+  }
+
+  /** Converts a type in an expression tree to the type of a value in the
+   * generated code: a {@link Class} or a {@link GenClass}. */
+  private Type resolve(Type type) {
+    if (type instanceof Class || type instanceof GenClass) {
+      return type;
+    }
+    if (type instanceof ParameterizedType) {
+      return resolve(((ParameterizedType) type).getRawType());
+    }
+    if (type instanceof TypeVariable) {
+      return resolve(((TypeVariable) type).getBounds()[0]);
+    }
+    if (type instanceof WildcardType) {
+      return resolve(((WildcardType) type).getUpperBounds()[0]);
+    }
+    if (type instanceof GenericArrayType) {
+      return arrayClass(
+          resolve(((GenericArrayType) type).getGenericComponentType()), 1);
+    }
+    if (type instanceof Types.ArrayType) {
+      return arrayClass(
+          resolve(((Types.ArrayType) type).getComponentType()), 1);
+    }
+    if (type instanceof Types.RecordType) {
+      final GenClass c =
+          nestedClasses.get(((Types.RecordType) type).getName());
+      if (c != null) {
+        return c;
+      }
+    }
+    throw new UnsupportedException("type " + type);
+  }
+
+  private static Class<?> toClass(Type type) {
+    if (type instanceof Class) {
+      return (Class) type;
+    }
+    throw new UnsupportedException("type " + type);
+  }
+
+  private static Class<?> arrayClass(Type component, int dimension) {
+    Class<?> c = toClass(component);
+    for (int i = 0; i < dimension; i++) {
+      c = Array.newInstance(c, 0).getClass();
+    }
+    return c;
+  }
+
+  private static <T extends Type> T checkAccessible(T type) {
+    if (type instanceof Class) {
+      Class<?> c = (Class) type;
+      while (c.isArray()) {
+        c = c.getComponentType();
+      }
+      if (!c.isPrimitive()
+          && (c.getModifiers() & (Modifier.PUBLIC | Modifier.PROTECTED)) == 0) {
+        throw new UnsupportedException("class " + c + " is not accessible");
+      }
+    }
+    return type;
+  }
+
+  private static boolean isPrimitive(Type type) {
+    return type instanceof Class && ((Class) type).isPrimitive();
+  }
+
+  /** Returns the primitive type of a primitive or box type, or null. */
+  private static Class<?> primitive(Type type) {
+    if (isPrimitive(type)) {
+      return (Class) type;
+    }
+    final Primitive primitive =
+        type instanceof Class ? Primitive.ofBox(type) : null;
+    return primitive == null ? null : primitive.primitiveClass;
+  }
+
+  /** Returns the primitive type of a primitive or box numeric type; throws
+   * if the type is not numeric. */
+  private static Class<?> numeric(Type type) {
+    final Class<?> primitive = primitive(type);
+    if (primitive == null
+        || primitive == boolean.class
+        || primitive == void.class) {
+      throw new UnsupportedException("not numeric: " + type);
+    }
+    return primitive;
+  }
+
+  private static Class<?> box(Class<?> c) {
+    return c.isPrimitive() ? Primitive.of(c).boxClass : c;
+  }
+
+  private static Class<?> unaryPromote(Class<?> c) {
+    return c == byte.class || c == short.class || c == char.class
+        ? int.class
+        : c;
+  }
+
+  private static Class<?> binaryPromote(Class<?> c0, Class<?> c1) {
+    if (c0 == double.class || c1 == double.class) {
+      return double.class;
+    }
+    if (c0 == float.class || c1 == float.class) {
+      return float.class;
+    }
+    if (c0 == long.class || c1 == long.class) {
+      return long.class;
+    }
+    return int.class;
+  }
+
+  private static boolean isIntegral(Class<?> c) {
+    return c == int.class || c == long.class;
+  }
+
+  /** Returns whether a value of one type can be converted to another type
+   * without boxing, unboxing or a cast. */
+  private static boolean isSubtype(Type from, Type to) {
+    if (from.equals(to)) {
+      return true;
+    }
+    if (from == NULL_TYPE) {
+      return !isPrimitive(to);
+    }
+    if (isPrimitive(from) || isPrimitive(to)) {
+      return isPrimitive(from) && isPrimitive(to)
+          && isWidening((Class) from, (Class) to);
+    }
+    if (to instanceof GenClass || to == NULL_TYPE) {
+      return false;
+    }
+    if (from instanceof GenClass) {
+      final GenClass c = (GenClass) from;
+      if (isSubtype(c.superclass, to)) {
+        return true;
+      }
+      for (Class<?> i : c.interfaces) {
+        if (isSubtype(i, to)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return ((Class) to).isAssignableFrom((Class) from);
+  }
+
+  private static boolean isWidening(Class<?> from, Class<?> to) {
+    if (from == boolean.class || to == boolean.class
+        || to == byte.class || to == char.class) {
+      return false;
+    }
+    final List<Class<?>> order =
+        Arrays.<Class<?>>asList(byte.class, short.class, int.class, long.class,
+            float.class, double.class);
+    if (from == char.class) {
+      return order.indexOf(to) >= order.indexOf(int.class);
+    }
+    if (to == short.class) {
+      return from == byte.class;
+    }
+    return order.indexOf(from) < order.indexOf(to);
+  }
+
+  /** Returns whether a value of one type can be converted to another type
+   * in a method invocation context, allowing boxing and unboxing. */
+  private static boolean isConvertible(Type from, Type to) {
+    if (isSubtype(from, to)) {
+      return true;
+    }
+    if (isPrimitive(from) && !isPrimitive(to)) {
+      return isSubtype(box((Class) from), to);
+    }
+    if (isPrimitive(to) && !isPrimitive(from)) {
+      final Class<?> primitive = primitive(from);
+      return primitive != null && isSubtype(primitive, to);
+    }
+    return false;
+  }
+
+  private static String descriptor(Type type) {
+    if (type instanceof GenClass) {
+      return ((GenClass) type).descriptor();
+    }
+    if (type == NULL_TYPE) {
+      return "Ljava/lang/Object;";
+    }
+    final Class<?> c = toClass(type);
+    if (c.isArray()) {
+      return "[" + descriptor(c.getComponentType());
+    }
+    if (c.isPrimitive()) {
+      switch (Primitive.of(c)) {
+      case BOOLEAN:
+        return "Z";
+      case BYTE:
+        return "B";
+      case CHAR:
+        return "C";
+      case SHORT:
+        return "S";
+      case INT:
+        return "I";
+      case LONG:
+        return "J";
+      case FLOAT:
+        return "F";
+      case DOUBLE:
+        return "D";
+      default:
+        return "V";
+      }
+    }
+    return "L" + c.getName().replace('.', '/') + ";";
+  }
+
+  private static String methodDescriptor(List<Type> parameterTypes,
+      Type returnType) {
+    final StringBuilder buf = new StringBuilder("(");
+    for (Type type : parameterTypes) {
+      buf.append(descriptor(type));
+    }
+    return buf.append(")").append(descriptor(returnType)).toString();
+  }
+
+  /** Returns the number of words that a value of a given type occupies on
+   * the operand stack. */
+  private static int size(Type type) {
+    return type == long.class || type == double.class ? 2
+        : type == void.class ? 0
+        : 1;
+  }
+
+  /** Returns the offset of the variant of an instruction for a given type:
+   * 0 for int (and boolean, byte, char, short), 1 for long, 2 for float, 3
+   * for double, 4 for references. */
+  private static int kind(Type type) {
+    if (type == long.class) {
+      return 1;
+    } else if (type == float.class) {
+      return 2;
+    } else if (type == double.class) {
+      return 3;
+    } else if (isPrimitive(type)) {
+      return 0;
+    } else {
+      return 4;
+    }
+  }
+
+  /** Returns the methods of a given name that are members of a type. */
+  private List<MethodRef> methods(Type type, String name) {
+    final List<Object> key = Arrays.<Object>asList(type, name);
+    List<MethodRef> methods = methodCache.get(key);
+    if (methods == null) {
+      methods = new ArrayList<>();
+      if (type instanceof GenClass) {
+        final GenClass c = (GenClass) type;
+        for (MethodRef method : c.methods) {
+          if (method.name.equals(name)) {
+            methods.add(method);
+          }
+        }
+        addMethods(methods, methods(c.superclass, name));
+        for (Class<?> i : c.interfaces) {
+          addMethods(methods, methods(i, name));
+        }
+      } else {
+        final Class<?> c = toClass(type);
+        final List<MethodRef> list = new ArrayList<>();
+        for (Method method : c.getMethods()) {
+          if (method.getName().equals(name)) {
+            list.add(new MethodRef(method));
+          }
+        }
+        if (c.isInterface()) {
+          for (Method method : Object.class.getMethods()) {
+            if (method.getName().equals(name)) {
+              list.add(new MethodRef(method));
+            }
+          }
+        }
+        for (Class<?> s = c; s != null; s = s.getSuperclass()) {
+          for (Method method : s.getDeclaredMethods()) {
+            if (method.getName().equals(name)
+                && Modifier.isProtected(method.getModifiers())) {
+              list.add(new MethodRef(method));
+            }
+          }
+        }
+        addMethods(methods, list);
+      }
+      methodCache.put(key, methods);
+    }
+    return methods;
+  }
+
+  /** Adds methods to a list, skipping bridge methods and methods that are
+   * overridden by a method already in the list. */
+  private static void addMethods(List<MethodRef> methods,
+      List<MethodRef> newMethods) {
+  outer:
+    for (MethodRef method : newMethods) {
+      if ((method.modifiers & ACC_BRIDGE) != 0) {
+        continue;
+      }
+      for (MethodRef existing : methods) {
+        if (existing.parameterTypes.equals(method.parameterTypes)) {
+          continue outer;
+        }
+      }
+      methods.add(method);
+    }
+  }
+
+  /** Chooses the most specific of a list of methods or constructors that is
+   * applicable to a list of arguments, using the three phases of overload
+   * resolution in the Java language. */
+  private static MethodRef choose(List<MethodRef> methods,
+      List<Type> argumentTypes, Object description) {
+    for (int phase = 0; phase < 3; phase++) {
+      final List<MethodRef> applicable = new ArrayList<>();
+      for (MethodRef method : methods) {
+        if (isApplicable(method, argumentTypes, phase)) {
+          applicable.add(method);
+        }
+      }
+      if (applicable.isEmpty()) {
+        continue;
+      }
+      outer:
+      for (MethodRef method : applicable) {
+        for (MethodRef other : applicable) {
+          if (other != method && !isMoreSpecific(method, other)) {
+            continue outer;
+          }
+        }
+        return phase == 2 ? method.varArgs() : method;
+      }
+      throw new UnsupportedException("ambiguous: " + description);
+    }
+    throw new UnsupportedException("no applicable method: " + description
+        + argumentTypes);
+  }
+
+  private static boolean isApplicable(MethodRef method,
+      List<Type> argumentTypes, int phase) {
+    final List<Type> parameterTypes = method.parameterTypes;
+    final int n = parameterTypes.size();
+    if (phase < 2) {
+      if (argumentTypes.size() != n) {
+        return false;
+      }
+      for (int i = 0; i < n; i++) {
+        final Type from = argumentTypes.get(i);
+        final Type to = parameterTypes.get(i);
+        if (phase == 0 ? !isSubtype(from, to) : !isConvertible(from, to)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (!method.isVarArgs() || argumentTypes.size() < n - 1) {
+      return false;
+    }
+    final Type component = ((Class) parameterTypes.get(n - 1)).getComponentType();
+    for (int i = 0; i < argumentTypes.size(); i++) {
+      final Type to = i < n - 1 ? parameterTypes.get(i) : component;
+      if (!isConvertible(argumentTypes.get(i), to)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isMoreSpecific(MethodRef m0, MethodRef m1) {
+    final int n = m0.parameterTypes.size();
+    if (m1.parameterTypes.size() != n) {
+      return n > m1.parameterTypes.size();
+    }
+    for (int i = 0; i < n; i++) {
+      if (!isSubtype(m0.parameterTypes.get(i), m1.parameterTypes.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Collects the names that a tree uses but does not declare.
+   *
+   * <p>{@code bound} holds the names declared in the current scope, and
+   * receives the names that the tree declares in that scope; a nested scope,
+   * such as a block or a method, works on a copy. */
+  private static void collect(Node node, Set<String> bound, Set<String> free) {
+    if (node == null || node instanceof ConstantExpression) {
+      return;
+    }
+    if (node instanceof ParameterExpression) {
+      final String name = ((ParameterExpression) node).name;
+      if (!bound.contains(name)) {
+        free.add(name);
+      }
+    } else if (node instanceof MemberExpression) {
+      collect(((MemberExpression) node).expression, bound, free);
+    } else if (node instanceof MethodCallExpression) {
+      final MethodCallExpression call = (MethodCallExpression) node;
+      collect(call.targetExpression, bound, free);
+      collectAll(call.expressions, bound, free);
+    } else if (node instanceof NewExpression) {
+      final NewExpression newExpression = (NewExpression) node;
+      collectAll(newExpression.arguments, bound, free);
+      if (newExpression.memberDeclarations != null) {
+        collectMembers(newExpression.memberDeclarations, bound, free);
+      }
+    } else if (node instanceof NewArrayExpression) {
+      final NewArrayExpression newArray = (NewArrayExpression) node;
+      collect(newArray.bound, bound, free);
+      if (newArray.expressions != null) {
+        collectAll(newArray.expressions, bound, free);
+      }
+    } else if (node instanceof IndexExpression) {
+      collect(((IndexExpression) node).array, bound, free);
+      collectAll(((IndexExpression) node).indexExpressions, bound, free);
+    } else if (node instanceof UnaryExpression) {
+      collect(((UnaryExpression) node).expression, bound, free);
+    } else if (node instanceof BinaryExpression) {
+      collect(((BinaryExpression) node).expression0, bound, free);
+      collect(((BinaryExpression) node).expression1, bound, free);
+    } else if (node instanceof TernaryExpression) {
+      collect(((TernaryExpression) node).expression0, bound, free);
+      collect(((TernaryExpression) node).expression1, bound, free);
+      collect(((TernaryExpression) node).expression2, bound, free);
+    } else if (node instanceof TypeBinaryExpression) {
+      collect(((TypeBinaryExpression) node).expression, bound, free);
+    } else if (node instanceof FunctionExpression) {
+      final FunctionExpression<?> function = (FunctionExpression) node;
+      collect(function.body, declareAll(function.parameterList, bound), free);
+    } else if (node instanceof BlockStatement) {
+      collectAll(((BlockStatement) node).statements, new HashSet<>(bound),
+          free);
+    } else if (node instanceof DeclarationStatement) {
+      collect(((DeclarationStatement) node).initializer, bound, free);
+      bound.add(((DeclarationStatement) node).parameter.name);
+    } else if (node instanceof GotoStatement) {
+      collect(((GotoStatement) node).expression, bound, free);
+    } else if (node instanceof ConditionalStatement) {
+      collectAll(((ConditionalStatement) node).expressionList, bound, free);
+    } else if (node instanceof WhileStatement) {
+      collect(((WhileStatement) node).condition, bound, free);
+      collect(((WhileStatement) node).body, bound, free);
+    } else if (node instanceof ForStatement) {
+      final ForStatement forStatement = (ForStatement) node;
+      final Set<String> forBound = new HashSet<>(bound);
+      collectAll(forStatement.declarations, forBound, free);
+      collect(forStatement.condition, forBound, free);
+      collect(forStatement.post, forBound, free);
+      collect(forStatement.body, forBound, free);
+    } else if (node instanceof ThrowStatement) {
+      collect(((ThrowStatement) node).expression, bound, free);
+    } else if (node instanceof TryStatement) {
+      final TryStatement tryStatement = (TryStatement) node;
+      collect(tryStatement.body, bound, free);
+      for (CatchBlock catchBlock : tryStatement.catchBlocks) {
+        collect(catchBlock.body,
+            declareAll(Collections.singletonList(catchBlock.parameter), bound), free);
+      }
+      collect(tryStatement.fynally, bound, free);
+    } else if (node instanceof MethodDeclaration) {
+      final MethodDeclaration method = (MethodDeclaration) node;
+      collect(method.body, declareAll(method.parameters, bound), free);
+    } else if (node instanceof ConstructorDeclaration) {
+      final ConstructorDeclaration constructor =
+          (ConstructorDeclaration) node;
+      collect(constructor.body, declareAll(constructor.parameters, bound),
+          free);
+    } else if (node instanceof FieldDeclaration) {
+      collect(((FieldDeclaration) node).initializer, bound, free);
+    } else {
+      throw new UnsupportedException(node);
+    }
+  }
+
+  private static void collectAll(List<? extends Node> nodes,
+      Set<String> bound, Set<String> free) {
+    for (Node node : nodes) {
+      collect(node, bound, free);
+    }
+  }
+
+  /** Collects the names that the members of a class use but that are
+   * neither declared in the members nor fields of the class. */
+  private static void collectMembers(List<MemberDeclaration> members,
+      Set<String> bound, Set<String> free) {
+    final Set<String> classBound = new HashSet<>(bound);
+    for (MemberDeclaration member : members) {
+      if (member instanceof FieldDeclaration) {
+        classBound.add(((FieldDeclaration) member).parameter.name);
+      }
+    }
+    collectAll(members, classBound, free);
+  }
+
+  /** Returns a copy of a scope with some parameters added. */
+  private static Set<String> declareAll(
+      List<ParameterExpression> parameters, Set<String> bound) {
+    final Set<String> set = new HashSet<>(bound);
+    for (ParameterExpression parameter : parameters) {
+      set.add(parameter.name);
+    }
+    return set;
+  }
+
+  /** Returns a field of a class that is not being generated, or null. */
+  private static Field reflectiveField(Class<?> c, String name) {
+    for (Class<?> s = c; s != null; s = s.getSuperclass()) {
+      try {
+        final Field field = s.getDeclaredField(name);
+        if ((field.getModifiers() & (Modifier.PUBLIC | Modifier.PROTECTED))
+            != 0) {
+          return field;
+        }
+        return null;
+      } catch (NoSuchFieldException e) {
+        // try the superclass
+      }
+    }
+    try {
+      return c.getField(name);
+    } catch (NoSuchFieldException e) {
+      return null;
+    }
+  }
+
+  /** Returns the field of a given name that is a member of a type, or
+   * null. */
+  private static FieldRef field(Type type, String name) {
+    if (type instanceof GenClass) {
+      final GenClass c = (GenClass) type;
+      FieldRef field = c.fields.get(name);
+      if (field == null) {
+        field = c.captures.get(name);
+      }
+      if (field == null) {
+        field = inheritedField(c, name);
+      }
+      return field;
+    }
+    final Field field = reflectiveField(toClass(type), name);
+    return field == null ? null : new FieldRef(field);
+  }
+
+  private static FieldRef inheritedField(GenClass c, String name) {
+    Field field = reflectiveField(c.superclass, name);
+    for (Class<?> i : c.interfaces) {
+      if (field == null) {
+        field = reflectiveField(i, name);
+      }
+    }
+    return field == null ? null : new FieldRef(field);
+  }
+
+  /** Returns whether one class is a subclass of another. */
+  private static boolean isSubclass(Type c, Class<?> superclass) {
+    return isSubtype(c, superclass);
+  }
+
+  /** Checks that code in a given class can access a member of another
+   * class. */
+  private static void checkAccess(GenClass current, Type declaringClass,
+      int modifiers, Type receiverType, Object member) {
+    if (declaringClass instanceof GenClass) {
+      if ((modifiers & Modifier.PRIVATE) != 0 && declaringClass != current) {
+        throw new UnsupportedException("private member " + member);
+      }
+      return;
+    }
+    checkAccessible(declaringClass);
+    if ((modifiers & Modifier.PUBLIC) != 0) {
+      return;
+    }
+    if ((modifiers & Modifier.PROTECTED) != 0
+        && isSubclass(current, (Class) declaringClass)
+        && (receiverType == null || isSubtype(receiverType, current))) {
+      return;
+    }
+    throw new UnsupportedException("member " + member + " is not accessible");
+  }
+
+  /** Thrown when a class cannot be compiled to bytecode, because it uses a
+   * construct that the compiler does not support. */
+  public static class UnsupportedException extends ControlFlowException {
+    private final String reason;
+
+    UnsupportedException(Object reason) {
+      this.reason = String.valueOf(reason);
+    }
+
+    @Override public String getMessage() {
+      return reason;
+    }
+  }
+
+  /** Class that is being generated. */
+  private static class GenClass implements Type {
+    final String name;
+    final int access;
+    final Class<?> superclass;
+    final List<Class<?>> interfaces;
+    /** Class that encloses an anonymous class, or null. */
+    final GenClass outer;
+    final Map<String, FieldRef> fields = new LinkedHashMap<>();
+    final List<MethodRef> methods = new ArrayList<>();
+    final List<MethodRef> constructors = new ArrayList<>();
+    /** Fields of an anonymous class that hold the values of local variables
+     * of the enclosing method, keyed by the name of the variable. */
+    final Map<String, FieldRef> captures = new LinkedHashMap<>();
+    final Set<String> methodDescriptors = new HashSet<>();
+    /** Field of an anonymous class that holds the enclosing instance, or
+     * null. */
+    FieldRef outerThis;
+    ClassFile classFile;
+
+    GenClass(String name, int access, Class<?> superclass,
+        List<Class<?>> interfaces, GenClass outer) {
+      this.name = name;
+      this.access = access;
+      this.superclass = superclass;
+      this.interfaces = interfaces;
+      this.outer = outer;
+    }
+
+    String descriptor() {
+      return "L" + name.replace('.', '/') + ";";
+    }
+
+    List<Type> constructorParameterTypes(MethodRef superConstructor) {
+      final List<Type> types = new ArrayList<>();
+      if (outerThis != null) {
+        types.add(outerThis.type);
+      }
+      for (FieldRef capture : captures.values()) {
+        types.add(capture.type);
+      }
+      types.addAll(superConstructor.parameterTypes);
+      return types;
+    }
+
+    @Override public String toString() {
+      return name;
+    }
+  }
+
+  /** Field that generated code accesses. */
+  private static class FieldRef {
+    /** Declaring class; a {@link Class} or {@link GenClass}. */
+    final Type owner;
+    final String name;
+    final Type type;
+    final int modifiers;
+
+    FieldRef(Type owner, String name, Type type, int modifiers) {
+      this.owner = owner;
+      this.name = name;
+      this.type = type;
+      this.modifiers = modifiers;
+    }
+
+    FieldRef(Field field) {
+      this(field.getDeclaringClass(), field.getName(), field.getType(),
+          field.getModifiers());
+    }
+
+    boolean isStatic() {
+      return (modifiers & Modifier.STATIC) != 0;
+    }
+  }
+
+  /** Method or constructor that generated code calls. */
+  private static class MethodRef {
+    /** Declaring class; a {@link Class} or {@link GenClass}. */
+    final Type owner;
+    final String name;
+    final List<Type> parameterTypes;
+    final Type returnType;
+    final int modifiers;
+    /** Whether this is a variable-arity method that is invoked with a
+     * variable number of arguments. */
+    final boolean invokedAsVarArgs;
+
+    MethodRef(Type owner, String name, List<Type> parameterTypes,
+        Type returnType, int modifiers, boolean invokedAsVarArgs) {
+      this.owner = owner;
+      this.name = name;
+      this.parameterTypes = parameterTypes;
+      this.returnType = returnType;
+      this.modifiers = modifiers;
+      this.invokedAsVarArgs = invokedAsVarArgs;
+    }
+
+    MethodRef(Method method) {
+      this(method.getDeclaringClass(), method.getName(),
+          Arrays.<Type>asList(method.getParameterTypes()),
+          method.getReturnType(),
+          method.getModifiers() | (method.isBridge() ? ACC_BRIDGE : 0)
+              | (method.isVarArgs() ? Modifier.TRANSIENT : 0),
+          false);
+    }
+
+    MethodRef(Constructor<?> constructor) {
+      this(constructor.getDeclaringClass(), "<init>",
+          Arrays.<Type>asList(constructor.getParameterTypes()), void.class,
+          constructor.getModifiers()
+              | (constructor.isVarArgs() ? Modifier.TRANSIENT : 0),
+          false);
+    }
+
+    boolean isStatic() {
+      return (modifiers & Modifier.STATIC) != 0;
+    }
+
+    /** Returns whether this method has variable arity. (The JVM uses the
+     * same bit for "transient" fields and "varargs" methods.) */
+    boolean isVarArgs() {
+      return (modifiers & Modifier.TRANSIENT) != 0;
+    }
+
+    MethodRef varArgs() {
+      return new MethodRef(owner, name, parameterTypes, returnType, modifiers,
+          true);
+    }
+
+    String nameAndDescriptor() {
+      return name + methodDescriptor(parameterTypes, returnType);
+    }
+
+    @Override public String toString() {
+      return owner + "." + name + parameterTypes;
+    }
+  }
+
+  /** Local variable. */
+  private static class Local {
+    final int slot;
+    final Type type;
+
+    Local(int slot, Type type) {
+      this.slot = slot;
+      this.type = type;
+    }
+  }
+
+  /** Position in the code that instructions jump to. */
+  private static class Label {
+    int position = -1;
+    /** Depth of the operand stack when the code jumps to this label, or -1
+     * if no reachable instruction jumps to it yet. */
+    int stack = -1;
+    /** Positions of the instructions that jump to this label, and of their
+     * branch offsets. */
+    final List<int[]> fixups = new ArrayList<>();
+  }
+
+  /** Instructions of a method, and the state needed to compute its maximum
+   * stack depth and to resolve jumps. */
+  private static class Code {
+    final ClassFile classFile;
+    private byte[] bytes = new byte[64];
+    private int length;
+    private int stack;
+    private int maxStack;
+    private boolean reachable = true;
+    private final List<Label> labels = new ArrayList<>();
+    private final List<int[]> exceptionTable = new ArrayList<>();
+
+    Code(ClassFile classFile) {
+      this.classFile = classFile;
+    }
+
+    private void u1(int b) {
+      if (length == bytes.length) {
+        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+      }
+      bytes[length++] = (byte) b;
+    }
+
+    private void u2(int s) {
+      u1(s >> 8);
+      u1(s);
+    }
+
+    /** Adjusts the depth of the operand stack. */
+    void adjust(int delta) {
+      stack += delta;
+      if (stack < 0) {
+        if (reachable) {
+          throw new UnsupportedException("stack underflow");
+        }
+        stack = 0;
+      }
+      maxStack = Math.max(maxStack, stack);
+    }
+
+    void op(int opcode, int delta) {
+      u1(opcode);
+      adjust(delta);
+    }
+
+    /** Emits an instruction after which control does not continue to the
+     * next instruction, such as "return" or "athrow". */
+    void terminal(int opcode) {
+      u1(opcode);
+      stack = 0;
+      reachable = false;
+    }
+
+    void returnValue(Type type) {
+      terminal(type == void.class ? RETURN : IRETURN + kind(type));
+    }
+
+    void pushNull() {
+      op(ACONST_NULL, 1);
+    }
+
+    void pushInt(int value) {
+      if (value >= -1 && value <= 5) {
+        op(ICONST_0 + value, 1);
+      } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        op(BIPUSH, 1);
+        u1(value);
+      } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+        op(SIPUSH, 1);
+        u2(value);
+      } else {
+        ldc(classFile.addConstantIntegerInfo(value), 1);
+      }
+    }
+
+    void pushLong(long value) {
+      if (value == 0L || value == 1L) {
+        op(LCONST_0 + (int) value, 2);
+      } else {
+        ldc(classFile.addConstantLongInfo(value), 2);
+      }
+    }
+
+    void pushFloat(float value) {
+      if (Float.floatToIntBits(value) == 0
+          || value == 1f || value == 2f) {
+        op(FCONST_0 + (int) value, 1);
+      } else {
+        ldc(classFile.addConstantFloatInfo(value), 1);
+      }
+    }
+
+    void pushDouble(double value) {
+      if (Double.doubleToLongBits(value) == 0L || value == 1d) {
+        op(DCONST_0 + (int) value, 2);
+      } else {
+        ldc(classFile.addConstantDoubleInfo(value), 2);
+      }
+    }
+
+    void pushString(String value) {
+      ldc(classFile.addConstantStringInfo(value), 1);
+    }
+
+    void pushClass(Type type) {
+      ldc(classFile.addConstantClassInfo(descriptor(type)), 1);
+    }
+
+    private void ldc(short index, int words) {
+      if (words == 2) {
+        op(LDC2_W, 2);
+        u2(index);
+      } else if ((index & 0xffff) <= 0xff) {
+        op(LDC, 1);
+        u1(index);
+      } else {
+        op(LDC_W, 1);
+        u2(index);
+      }
+    }
+
+    void load(Type type, int slot) {
+      localOp(ILOAD, ILOAD_0, type, slot);
+      adjust(size(type));
+    }
+
+    void store(Type type, int slot) {
+      localOp(ISTORE, ISTORE_0, type, slot);
+      adjust(-size(type));
+    }
+
+    private void localOp(int opcode, int opcode0, Type type, int slot) {
+      final int kind = kind(type);
+      if (slot <= 3) {
+        u1(opcode0 + kind * 4 + slot);
+      } else if (slot <= 0xff) {
+        u1(opcode + kind);
+        u1(slot);
+      } else {
+        u1(WIDE);
+        u1(opcode + kind);
+        u2(slot);
+      }
+    }
+
+    void iinc(int slot, int delta) {
+      if (slot <= 0xff) {
+        u1(IINC);
+        u1(slot);
+        u1(delta);
+      } else {
+        u1(WIDE);
+        u1(IINC);
+        u2(slot);
+        u2(delta);
+      }
+    }
+
+    /** Emits an "xaload" instruction, which loads an element of an
+     * array. */
+    void arrayLoad(Class<?> component) {
+      op(arrayOpcode(0x2e, component), size(component) - 2);
+    }
+
+    /** Emits an "xastore" instruction, which stores an element of an
+     * array. */
+    void arrayStore(Class<?> component) {
+      op(arrayOpcode(0x4f, component), -2 - size(component));
+    }
+
+    private static int arrayOpcode(int base, Class<?> component) {
+      if (component == byte.class || component == boolean.class) {
+        return base + 5;
+      } else if (component == char.class) {
+        return base + 6;
+      } else if (component == short.class) {
+        return base + 7;
+      } else {
+        return base + kind(component);
+      }
+    }
+
+    void newArray(Class<?> component) {
+      if (component.isPrimitive()) {
+        final int[] types = {4, 8, 5, 9, 10, 11, 6, 7};
+        final int i =
+            Arrays.<Class<?>>asList(boolean.class, byte.class, char.class,
+                short.class, int.class, long.class, float.class, double.class)
+                .indexOf(component);
+        op(NEWARRAY, 0);
+        u1(types[i]);
+      } else {
+        typeOp(ANEWARRAY, component);
+      }
+    }
+
+    void typeOp(int opcode, Type type) {
+      op(opcode, opcode == NEW ? 1 : 0);
+      u2(classFile.addConstantClassInfo(descriptor(type)));
+    }
+
+    void field(int opcode, Type owner, String name, Type type) {
+      final int size = size(type);
+      op(opcode,
+          opcode == GETSTATIC ? size
+              : opcode == PUTSTATIC ? -size
+              : opcode == GETFIELD ? size - 1
+              : -1 - size);
+      u2(
+          classFile.addConstantFieldrefInfo(descriptor(owner), name,
+              descriptor(type)));
+    }
+
+    void invoke(int opcode, Type owner, String name, List<Type> parameterTypes,
+        Type returnType, boolean isInterface) {
+      int words = opcode == INVOKESTATIC ? 0 : 1;
+      for (Type type : parameterTypes) {
+        words += size(type);
+      }
+      final String descriptor = methodDescriptor(parameterTypes, returnType);
+      op(opcode, size(returnType) - words);
+      if (isInterface) {
+        u2(
+            classFile.addConstantInterfaceMethodrefInfo(descriptor(owner),
+                name, descriptor));
+        u1(words);
+        u1(0);
+      } else {
+        u2(
+            classFile.addConstantMethodrefInfo(descriptor(owner), name,
+                descriptor));
+      }
+    }
+
+    /** Emits a jump to a label. {@code GOTO} is unconditional; other opcodes
+     * pop one or two values and jump if a condition holds. */
+    void jump(int opcode, Label label) {
+      final int pop = opcode == GOTO ? 0
+          : opcode == IFNULL || opcode == IFNONNULL
+              || opcode >= IFEQ && opcode <= IFLE ? -1 : -2;
+      if (!reachable) {
+        // Dead code does not jump, so that a label after the last reachable
+        // instruction, such as the end of an "if" whose branches both
+        // return, is never the target of a jump.
+        adjust(pop);
+        return;
+      }
+      final int position = length;
+      u1(opcode);
+      if (label.fixups.isEmpty()) {
+        labels.add(label);
+      }
+      label.fixups.add(new int[] {position, length});
+      u2(0);
+      if (opcode == GOTO) {
+        if (reachable && label.stack < 0) {
+          label.stack = stack;
+        }
+        stack = 0;
+        reachable = false;
+        return;
+      }
+      adjust(pop);
+      if (reachable && label.stack < 0) {
+        label.stack = stack;
+      }
+    }
+
+    void mark(Label label) {
+      label.position = length;
+      if (!reachable && label.stack >= 0) {
+        stack = label.stack;
+        reachable = true;
+      }
+    }
+
+    /** Marks the start of an exception handler, where the operand stack
+     * holds only the exception. */
+    void markHandler(int start, int end, Type type) {
+      exceptionTable.add(
+          new int[] {start, end, length,
+              classFile.addConstantClassInfo(descriptor(type)) & 0xffff});
+      stack = 0;
+      reachable = true;
+      adjust(1);
+    }
+
+    int position() {
+      return length;
+    }
+
+    /** Creates the "Code" attribute of a method. */
+    ClassFile.AttributeInfo toAttribute(final int maxLocals) {
+      if (length > 0xffff) {
+        throw new UnsupportedException("method is too large");
+      }
+      for (Label label : labels) {
+        for (int[] fixup : label.fixups) {
+          final int offset = label.position - fixup[0];
+          if (label.position < 0) {
+            throw new AssertionError("label is not marked");
+          }
+          if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            throw new UnsupportedException("branch is too long");
+          }
+          bytes[fixup[1]] = (byte) (offset >> 8);
+          bytes[fixup[1] + 1] = (byte) offset;
+        }
+      }
+      return new ClassFile.AttributeInfo(classFile.addConstantUtf8Info("Code")) {
+        protected void storeBody(DataOutputStream dos) throws IOException {
+          dos.writeShort(maxStack);
+          dos.writeShort(maxLocals);
+          dos.writeInt(length);
+          dos.write(bytes, 0, length);
+          dos.writeShort(exceptionTable.size());
+          for (int[] entry : exceptionTable) {
+            for (int value : entry) {
+              dos.writeShort(value);
+            }
+          }
+          dos.writeShort(0);
+        }
+      };
+    }
+  }
+
+  /** Generates the code of a method, constructor or static initializer. */
+  private class MethodGen {
+    final GenClass owner;
+    final boolean isStatic;
+    final Type returnType;
+    final Code code;
+    private final List<Map<String, Local>> scopes = new ArrayList<>();
+    /** Labels that "break" and "continue" statements jump to, for each
+     * enclosing loop. */
+    private final List<Label[]> loops = new ArrayList<>();
+    private final Map<Expression, Type> types = new IdentityHashMap<>();
+    private int nextSlot;
+    private int maxLocals;
+
+    MethodGen(GenClass owner, boolean isStatic, Type returnType) {
+      this.owner = owner;
+      this.isStatic = isStatic;
+      this.returnType = returnType;
+      this.code = new Code(owner.classFile);
+      this.scopes.add(new HashMap<String, Local>());
+      if (!isStatic) {
+        allocate(owner);
+      }
+    }
+
+    Local allocate(Type type) {
+      final Local local = new Local(nextSlot, type);
+      nextSlot += size(type);
+      maxLocals = Math.max(maxLocals, nextSlot);
+      return local;
+    }
+
+    Local declare(String name, Type type) {
+      final Local local = allocate(type);
+      scopes.get(scopes.size() - 1).put(name, local);
+      return local;
+    }
+
+    void declareParameters(List<ParameterExpression> parameters,
+        List<Type> types) {
+      for (int i = 0; i < parameters.size(); i++) {
+        declare(parameters.get(i).name, types.get(i));
+      }
+    }
+
+    void pushScope() {
+      scopes.add(new HashMap<String, Local>());
+    }
+
+    void popScope() {
+      final Map<String, Local> scope = scopes.remove(scopes.size() - 1);
+      for (Local local : scope.values()) {
+        nextSlot = Math.min(nextSlot, local.slot);
+      }
+    }
+
+    /** Adds the method to the class file. */
+    void finish(MethodRef method, int access) {
+      if (code.reachable) {
+        if (returnType == void.class) {
+          code.terminal(RETURN);
+        } else {
+          // The Java compiler would have rejected a method whose end is
+          // reachable, so this is dead code; but the verifier requires that
+          // control does not fall off the end of the method.
+          code.pushNull();
+          code.terminal(ATHROW);
+        }
+      }
+      final String descriptor =
+          methodDescriptor(method.parameterTypes, method.returnType);
+      if (!owner.methodDescriptors.add(method.name + descriptor)) {
+        throw new UnsupportedException("duplicate method " + method);
+      }
+      owner.classFile
+          .addMethodInfo(new Java.Modifiers((short) access), method.name,
+              descriptor)
+          .addAttribute(code.toAttribute(maxLocals));
+    }
+
+    void callSuperConstructor() {
+      final Constructor<?> constructor;
+      try {
+        constructor = owner.superclass.getDeclaredConstructor();
+      } catch (NoSuchMethodException e) {
+        throw new UnsupportedException("no default constructor");
+      }
+      checkAccess(owner, owner.superclass, constructor.getModifiers(), null,
+          constructor);
+      code.load(owner, 0);
+      code.invoke(INVOKESPECIAL, owner.superclass, "<init>",
+          Collections.<Type>emptyList(), void.class, false);
+    }
+
+    void initializeFields(List<FieldDeclaration> initializers) {
+      for (FieldDeclaration f : initializers) {
+        final FieldRef field = owner.fields.get(f.parameter.name);
+        code.load(owner, 0);
+        coerce(emit(f.initializer), field.type);
+        code.field(PUTFIELD, owner, field.name, field.type);
+      }
+    }
+
+    // Statements
+
+    void statement(Node node) {
+      if (node instanceof Expression) {
+        discard((Expression) node);
+      } else if (node instanceof BlockStatement) {
+        pushScope();
+        for (Statement statement : ((BlockStatement) node).statements) {
+          statement(statement);
+        }
+        popScope();
+      } else if (node instanceof DeclarationStatement) {
+        final DeclarationStatement declaration = (DeclarationStatement) node;
+        declare(declaration, resolve(declaration.parameter.type));
+      } else if (node instanceof GotoStatement) {
+        gotoStatement((GotoStatement) node);
+      } else if (node instanceof ConditionalStatement) {
+        final List<Node> list = ((ConditionalStatement) node).expressionList;
+        final Label end = new Label();
+        for (int i = 0; i < list.size() - 1; i += 2) {
+          final Label next = new Label();
+          jumpIfFalse((Expression) list.get(i), next);
+          statement(list.get(i + 1));
+          code.jump(GOTO, end);
+          code.mark(next);
+        }
+        if (list.size() % 2 == 1) {
+          statement(list.get(list.size() - 1));
+        }
+        code.mark(end);
+      } else if (node instanceof WhileStatement) {
+        final WhileStatement whileStatement = (WhileStatement) node;
+        final Label start = new Label();
+        final Label end = new Label();
+        code.mark(start);
+        jumpIfFalse(whileStatement.condition, end);
+        loops.add(new Label[] {end, start});
+        statement(whileStatement.body);
+        loops.remove(loops.size() - 1);
+        code.jump(GOTO, start);
+        code.mark(end);
+      } else if (node instanceof ForStatement) {
+        forStatement((ForStatement) node);
+      } else if (node instanceof ThrowStatement) {
+        coerce(emit(((ThrowStatement) node).expression), Throwable.class);
+        code.terminal(ATHROW);
+      } else if (node instanceof TryStatement) {
+        tryStatement((TryStatement) node);
+      } else {
+        throw new UnsupportedException(node);
+      }
+    }
+
+    private void declare(DeclarationStatement declaration, Type type) {
+      if (declaration.initializer != null) {
+        coerce(emit(declaration.initializer), type);
+        final Local local = declare(declaration.parameter.name, type);
+        code.store(type, local.slot);
+      } else {
+        declare(declaration.parameter.name, type);
+      }
+    }
+
+    private void gotoStatement(GotoStatement statement) {
+      switch (statement.kind) {
+      case Return:
+        if (statement.expression == null) {
+          if (returnType != void.class) {
+            throw new UnsupportedException("return without value");
+          }
+        } else {
+          coerce(emit(statement.expression), returnType);
+        }
+        code.returnValue(returnType);
+        return;
+      case Sequence:
+        discard(statement.expression);
+        return;
+      case Break:
+      case Continue:
+        if (statement.labelTarget != null || loops.isEmpty()) {
+          throw new UnsupportedException(statement);
+        }
+        final Label[] loop = loops.get(loops.size() - 1);
+        code.jump(GOTO,
+            statement.kind == GotoExpressionKind.Break ? loop[0] : loop[1]);
+        return;
+      default:
+        throw new UnsupportedException(statement);
+      }
+    }
+
+    private void forStatement(ForStatement forStatement) {
+      pushScope();
+      Type type = null;
+      for (DeclarationStatement declaration : forStatement.declarations) {
+        // As in Java source code, all variables have the type of the first.
+        if (type == null) {
+          type = resolve(declaration.parameter.type);
+        }
+        declare(declaration, type);
+      }
+      final Label start = new Label();
+      final Label next = new Label();
+      final Label end = new Label();
+      code.mark(start);
+      if (forStatement.condition != null) {
+        jumpIfFalse(forStatement.condition, end);
+      }
+      loops.add(new Label[] {end, next});
+      statement(forStatement.body);
+      loops.remove(loops.size() - 1);
+      code.mark(next);
+      if (forStatement.post != null) {
+        discard(forStatement.post);
+      }
+      code.jump(GOTO, start);
+      code.mark(end);
+      popScope();
+    }
+
+    private void tryStatement(TryStatement tryStatement) {
+      if (tryStatement.fynally != null) {
+        throw new UnsupportedException("finally");
+      }
+      final int start = code.position();
+      statement(tryStatement.body);
+      final int end = code.position();
+      if (start == end) {
+        return;
+      }
+      final Label after = new Label();
+      code.jump(GOTO, after);
+      for (CatchBlock catchBlock : tryStatement.catchBlocks) {
+        final Type type = checkAccessible(resolve(catchBlock.parameter.type));
+        code.markHandler(start, end, type);
+        pushScope();
+        final Local local = declare(catchBlock.parameter.name, type);
+        code.store(type, local.slot);
+        statement(catchBlock.body);
+        popScope();
+        code.jump(GOTO, after);
+      }
+      code.mark(after);
+    }
+
+    // Conditions
+
+    /** Emits code that jumps to a label if a condition is false. */
+    void jumpIfFalse(Expression e, Label label) {
+      jump(e, false, label);
+    }
+
+    /** Emits code that jumps to a label if a condition has a given value. */
+    private void jump(Expression e, boolean when, Label label) {
+      switch (e.getNodeType()) {
+      case Not:
+        jump(((UnaryExpression) e).expression, !when, label);
+        return;
+      case AndAlso:
+      case OrElse:
+        final BinaryExpression b = (BinaryExpression) e;
+        if ((e.getNodeType() == ExpressionType.AndAlso) == when) {
+          // "a && b" is true if both are true;
+          // "a || b" is false if both are false
+          final Label skip = new Label();
+          jump(b.expression0, !when, skip);
+          jump(b.expression1, when, label);
+          code.mark(skip);
+        } else {
+          jump(b.expression0, when, label);
+          jump(b.expression1, when, label);
+        }
+        return;
+      case Equal:
+      case NotEqual:
+      case LessThan:
+      case LessThanOrEqual:
+      case GreaterThan:
+      case GreaterThanOrEqual:
+        compare((BinaryExpression) e, when, label);
+        return;
+      case Constant:
+        final Object value = ((ConstantExpression) e).value;
+        if (value instanceof Boolean) {
+          if ((Boolean) value == when) {
+            code.jump(GOTO, label);
+          }
+          return;
+        }
+        break;
+      }
+      coerce(emit(e), boolean.class);
+      code.jump(when ? IFNE : IFEQ, label);
+    }
+
+    private void compare(BinaryExpression b, boolean when, Label label) {
+      final ExpressionType op = b.getNodeType();
+      final boolean equality =
+          op == ExpressionType.Equal || op == ExpressionType.NotEqual;
+      // Offset of the "if<cond>" opcode if the condition holds:
+      // 0 "eq", 1 "ne", 2 "lt", 3 "ge", 4 "gt", 5 "le"
+      int cond =
+          Arrays.asList(ExpressionType.Equal, ExpressionType.NotEqual,
+              ExpressionType.LessThan, ExpressionType.GreaterThanOrEqual,
+              ExpressionType.GreaterThan, ExpressionType.LessThanOrEqual)
+              .indexOf(op);
+      if (!when) {
+        cond ^= 1;
+      }
+      if (equality) {
+        if (isNull(b.expression0) || isNull(b.expression1)) {
+          final Expression other =
+              isNull(b.expression0) ? b.expression1 : b.expression0;
+          if (isPrimitive(emit(other))) {
+            throw new UnsupportedException(b);
+          }
+          code.jump(cond == 0 ? IFNULL : IFNONNULL, label);
+          return;
+        }
+        final Type t0 = typeOf(b.expression0);
+        final Type t1 = typeOf(b.expression1);
+        if (!isPrimitive(t0) && !isPrimitive(t1)) {
+          emit(b.expression0);
+          emit(b.expression1);
+          code.jump(cond == 0 ? IF_ACMPEQ : IF_ACMPNE, label);
+          return;
+        }
+        final Class<?> p0 = primitive(t0);
+        final Class<?> p1 = primitive(t1);
+        if (p0 == boolean.class && p1 == boolean.class) {
+          coerce(emit(b.expression0), boolean.class);
+          coerce(emit(b.expression1), boolean.class);
+          code.jump(IF_ICMPEQ + cond, label);
+          return;
+        }
+      }
+      final Class<?> type =
+          binaryPromote(numeric(typeOf(b.expression0)),
+              numeric(typeOf(b.expression1)));
+      coerce(emit(b.expression0), type);
+      coerce(emit(b.expression1), type);
+      if (type == int.class) {
+        code.jump(IF_ICMPEQ + cond, label);
+        return;
+      }
+      if (type == long.class) {
+        code.op(LCMP, -3);
+      } else {
+        // If either operand is NaN, "<" and "<=" are false, so use the
+        // variant of the instruction that returns 1, and ">" and ">=" are
+        // false, so use the variant that returns -1.
+        final boolean g =
+            op == ExpressionType.LessThan
+                || op == ExpressionType.LessThanOrEqual;
+        if (type == float.class) {
+          code.op(g ? FCMPG : FCMPL, -1);
+        } else {
+          code.op(g ? DCMPG : DCMPL, -3);
+        }
+      }
+      code.jump(IFEQ + cond, label);
+    }
+
+    private boolean isNull(Expression e) {
+      return e instanceof ConstantExpression
+          && ((ConstantExpression) e).value == null;
+    }
+
+    /** Emits a boolean expression whose value is computed by jumps. */
+    private Type emitCondition(Expression e) {
+      final Label isFalse = new Label();
+      final Label end = new Label();
+      jumpIfFalse(e, isFalse);
+      code.pushInt(1);
+      code.jump(GOTO, end);
+      code.mark(isFalse);
+      code.pushInt(0);
+      code.mark(end);
+      return boolean.class;
+    }
+
+    // Expressions
+
+    /** Emits an expression whose value is not used. */
+    void discard(Expression e) {
+      switch (e.getNodeType()) {
+      case Assign:
+      case AddAssign:
+      case AddAssignChecked:
+      case AndAssign:
+      case DivideAssign:
+      case ExclusiveOrAssign:
+      case LeftShiftAssign:
+      case ModuloAssign:
+      case MultiplyAssign:
+      case MultiplyAssignChecked:
+      case OrAssign:
+      case RightShiftAssign:
+      case SubtractAssign:
+      case SubtractAssignChecked:
+        assign((BinaryExpression) e, false);
+        return;
+      case PreIncrementAssign:
+      case PreDecrementAssign:
+      case PostIncrementAssign:
+      case PostDecrementAssign:
+        increment((UnaryExpression) e, false);
+        return;
+      default:
+        coerce(emit(e), void.class);
+      }
+    }
+
+    /** Emits an expression, leaving its value on the operand stack, and
+     * returns its static type. */
+    Type emit(Expression e) {
+      final Type type;
+      if (e instanceof ConstantExpression) {
+        type = constant((ConstantExpression) e);
+      } else if (e instanceof ParameterExpression) {
+        final Variable variable = variable(((ParameterExpression) e).name);
+        variable.prefix();
+        variable.load();
+        type = variable.type;
+      } else if (e instanceof MemberExpression) {
+        type = member((MemberExpression) e);
+      } else if (e instanceof MethodCallExpression) {
+        type = call((MethodCallExpression) e);
+      } else if (e instanceof NewExpression) {
+        type = newObject((NewExpression) e);
+      } else if (e instanceof NewArrayExpression) {
+        type = newArray((NewArrayExpression) e);
+      } else if (e instanceof IndexExpression) {
+        final Variable variable = element((IndexExpression) e);
+        variable.prefix();
+        variable.load();
+        type = variable.type;
+      } else if (e instanceof UnaryExpression) {
+        type = unary((UnaryExpression) e);
+      } else if (e instanceof BinaryExpression) {
+        type = binary((BinaryExpression) e);
+      } else if (e instanceof TernaryExpression) {
+        final TernaryExpression ternary = (TernaryExpression) e;
+        type = typeOf(e);
+        final Label isFalse = new Label();
+        final Label end = new Label();
+        jumpIfFalse(ternary.expression0, isFalse);
+        coerce(emit(ternary.expression1), type);
+        code.jump(GOTO, end);
+        code.mark(isFalse);
+        coerce(emit(ternary.expression2), type);
+        code.mark(end);
+      } else if (e instanceof TypeBinaryExpression) {
+        final TypeBinaryExpression typeBinary = (TypeBinaryExpression) e;
+        if (typeBinary.getNodeType() != ExpressionType.TypeIs
+            || isPrimitive(emit(typeBinary.expression))) {
+          throw new UnsupportedException(e);
+        }
+        code.typeOp(INSTANCEOF,
+            checkAccessible(resolve(typeBinary.type)));
+        type = boolean.class;
+      } else if (e instanceof FunctionExpression) {
+        type = function((FunctionExpression) e);
+      } else {
+        throw new UnsupportedException(e);
+      }
+      types.put(e, type);
+      return type;
+    }
+
+    /** Returns the static type of an expression, without generating
+     * code. */
+    Type typeOf(Expression e) {
+      Type type = types.get(e);
+      if (type == null) {
+        type = typeOf2(e);
+        types.put(e, type);
+      }
+      return type;
+    }
+
+    private Type typeOf2(Expression e) {
+      if (e instanceof ConstantExpression) {
+        return constantType((ConstantExpression) e);
+      } else if (e instanceof ParameterExpression) {
+        return variable(((ParameterExpression) e).name).type;
+      } else if (e instanceof MemberExpression) {
+        final MemberExpression member = (MemberExpression) e;
+        if (isArrayLength(member)) {
+          return int.class;
+        }
+        return memberField(member).type;
+      } else if (e instanceof MethodCallExpression) {
+        return method((MethodCallExpression) e).returnType;
+      } else if (e instanceof NewExpression) {
+        return resolve(((NewExpression) e).type);
+      } else if (e instanceof NewArrayExpression) {
+        final NewArrayExpression newArray = (NewArrayExpression) e;
+        return arrayClass(resolve(componentTypeN(newArray.type)),
+            newArray.dimension);
+      } else if (e instanceof IndexExpression) {
+        return elementType((IndexExpression) e);
+      } else if (e instanceof UnaryExpression) {
+        final UnaryExpression unary = (UnaryExpression) e;
+        switch (unary.getNodeType()) {
+        case Convert:
+          return resolve(unary.getType());
+        case Not:
+          return boolean.class;
+        case PreIncrementAssign:
+        case PreDecrementAssign:
+        case PostIncrementAssign:
+        case PostDecrementAssign:
+          return typeOf(unary.expression);
+        default:
+          return unaryPromote(numeric(typeOf(unary.expression)));
+        }
+      } else if (e instanceof BinaryExpression) {
+        return binaryType((BinaryExpression) e);
+      } else if (e instanceof TernaryExpression) {
+        final TernaryExpression ternary = (TernaryExpression) e;
+        return ternaryType(typeOf(ternary.expression1),
+            typeOf(ternary.expression2), ternary.getType());
+      } else if (e instanceof TypeBinaryExpression) {
+        return boolean.class;
+      } else if (e instanceof FunctionExpression) {
+        return resolve(e.getType());
+      }
+      throw new UnsupportedException(e);
+    }
+
+    private Type ternaryType(Type t1, Type t2, Type declaredType) {
+      if (t1.equals(t2)) {
+        return t1;
+      }
+      if (t1 == NULL_TYPE) {
+        return isPrimitive(t2) ? box((Class) t2) : t2;
+      }
+      if (t2 == NULL_TYPE) {
+        return isPrimitive(t1) ? box((Class) t1) : t1;
+      }
+      final Class<?> p1 = primitive(t1);
+      final Class<?> p2 = primitive(t2);
+      if (isPrimitive(t1) || isPrimitive(t2)) {
+        if (p1 != null && p2 != null) {
+          if (p1 == p2) {
+            return p1;
+          }
+          return binaryPromote(numeric(p1), numeric(p2));
+        }
+        if (isPrimitive(t1)) {
+          t1 = box((Class) t1);
+        } else {
+          t2 = box((Class) t2);
+        }
+      }
+      if (isSubtype(t1, t2)) {
+        return t2;
+      }
+      if (isSubtype(t2, t1)) {
+        return t1;
+      }
+      final Type type = resolve(declaredType);
+      if (isSubtype(t1, type) && isSubtype(t2, type)) {
+        return type;
+      }
+      return Object.class;
+    }
+
+    private Type constantType(ConstantExpression c) {
+      if (c instanceof ConstantUntypedNull) {
+        return NULL_TYPE;
+      }
+      final Object value = c.value;
+      if (value == null) {
+        return checkAccessible(resolve(c.getType()));
+      }
+      if (value instanceof String) {
+        return String.class;
+      }
+      final Type type = c.getType();
+      if (Primitive.is(type) || Primitive.isBox(type)) {
+        return type;
+      }
+      if (value instanceof Enum) {
+        return checkAccessible(((Enum) value).getDeclaringClass());
+      }
+      if (value instanceof BigDecimal
+          && ((BigDecimal) value).stripTrailingZeros().scale() <= 0
+          || value instanceof BigInteger) {
+        return value.getClass();
+      }
+      if (value instanceof Class || value instanceof Types.RecordType) {
+        return Class.class;
+      }
+      if (value.getClass().isArray()) {
+        return checkAccessible(value.getClass());
+      }
+      throw new UnsupportedException("constant " + value);
+    }
+
+    private Type constant(ConstantExpression c) {
+      final Type type = constantType(c);
+      final Object value = c.value;
+      if (value == null) {
+        code.pushNull();
+      } else if (value instanceof String) {
+        code.pushString((String) value);
+      } else if (Primitive.is(type)) {
+        pushPrimitive((Class) type, value);
+      } else if (Primitive.isBox(type)) {
+        final Class<?> primitive = Primitive.ofBox(type).primitiveClass;
+        pushPrimitive(primitive, value);
+        coerce(primitive, type);
+      } else if (value instanceof Enum) {
+        code.field(GETSTATIC, type, ((Enum) value).name(), type);
+      } else if (value.getClass().isArray()) {
+        // "new byte[] {1, 2}"
+        final Class<?> componentType = value.getClass().getComponentType();
+        final List<Expression> elements = new ArrayList<>();
+        for (int i = 0; i < Array.getLength(value); i++) {
+          elements.add(Expressions.constant(Array.get(value, i), componentType));
+        }
+        emit(Expressions.newArrayInit(componentType, elements));
+      } else if (value instanceof BigDecimal) {
+        // "new java.math.BigDecimal(123L)"
+        code.typeOp(NEW, type);
+        code.op(DUP, 1);
+        code.pushLong(((BigDecimal) value).longValueExact());
+        code.invoke(INVOKESPECIAL, type, "<init>",
+            Collections.<Type>singletonList(long.class), void.class, false);
+      } else if (value instanceof BigInteger) {
+        // "new java.math.BigInteger(\"123\")"
+        code.typeOp(NEW, type);
+        code.op(DUP, 1);
+        code.pushString(value.toString());
+        code.invoke(INVOKESPECIAL, type, "<init>",
+            Collections.<Type>singletonList(String.class), void.class, false);
+      } else {
+        final Type clazz =
+            value instanceof Class
+                ? checkAccessible((Class) value)
+                : resolve((Types.RecordType) value);
+        if (isPrimitive(clazz)) {
+          // "int.class" is "java.lang.Integer.TYPE"
+          final Class<?> box = box((Class) clazz);
+          code.field(GETSTATIC, box, "TYPE", Class.class);
+        } else {
+          code.pushClass(clazz);
+        }
+      }
+      return type;
+    }
+
+    private void pushPrimitive(Class<?> type, Object value) {
+      switch (Primitive.of(type)) {
+      case BOOLEAN:
+        code.pushInt((Boolean) value ? 1 : 0);
+        break;
+      case CHAR:
+        code.pushInt((Character) value);
+        break;
+      case BYTE:
+      case SHORT:
+      case INT:
+        code.pushInt(((Number) value).intValue());
+        break;
+      case LONG:
+        code.pushLong(((Number) value).longValue());
+        break;
+      case FLOAT:
+        code.pushFloat(((Number) value).floatValue());
+        break;
+      case DOUBLE:
+        code.pushDouble(((Number) value).doubleValue());
+        break;
+      default:
+        throw new UnsupportedException("constant " + value);
+      }
+    }
+
+    private boolean isArrayLength(MemberExpression member) {
+      return member.field instanceof ArrayLengthRecordField
+          || member.expression != null
+          && member.field.getName().equals("length")
+          && typeOf(member.expression) instanceof Class
+          && ((Class) typeOf(member.expression)).isArray();
+    }
+
+    private FieldRef memberField(MemberExpression member) {
+      final Type type =
+          member.expression == null
+              ? member.field.getDeclaringClass()
+              : typeOf(member.expression);
+      final FieldRef field = field(type, member.field.getName());
+      if (field == null) {
+        throw new UnsupportedException("field " + member.field.getName());
+      }
+      return field;
+    }
+
+    private Type member(MemberExpression member) {
+      if (isArrayLength(member)) {
+        emit(member.expression);
+        code.op(ARRAYLENGTH, 0);
+        return int.class;
+      }
+      final Variable variable = fieldVariable(member);
+      variable.prefix();
+      variable.load();
+      return variable.type;
+    }
+
+    private Variable fieldVariable(MemberExpression member) {
+      final FieldRef field = memberField(member);
+      if (member.expression == null) {
+        if (!field.isStatic()) {
+          throw new UnsupportedException(member);
+        }
+        return new FieldVariable(field, member.field.getDeclaringClass(),
+            null, null);
+      }
+      return new FieldVariable(field, typeOf(member.expression),
+          member.expression, null);
+    }
+
+    private MethodRef method(MethodCallExpression call) {
+      final Type type =
+          call.targetExpression == null
+              ? call.method.getDeclaringClass()
+              : typeOf(call.targetExpression);
+      final List<Type> argumentTypes = new ArrayList<>();
+      for (Expression argument : call.expressions) {
+        argumentTypes.add(typeOf(argument));
+      }
+      return choose(methods(type, call.method.getName()), argumentTypes,
+          call.method.getName());
+    }
+
+    private Type call(MethodCallExpression call) {
+      final MethodRef method = method(call);
+      Type type;
+      if (call.targetExpression == null) {
+        if (!method.isStatic()) {
+          throw new UnsupportedException(call);
+        }
+        type = checkAccessible(call.method.getDeclaringClass());
+      } else {
+        type = emit(call.targetExpression);
+        if (isPrimitive(type) || type == NULL_TYPE) {
+          throw new UnsupportedException(call);
+        }
+        if (method.isStatic()) {
+          code.op(POP, -1);
+        }
+      }
+      checkAccess(owner, method.owner, method.modifiers,
+          method.isStatic() ? null : type, method);
+      if (type instanceof Class
+          && (((Class) type).getModifiers() & Modifier.PUBLIC) == 0) {
+        type = checkAccessible(method.owner);
+      }
+      arguments(call.expressions, method);
+      if (method.isStatic()) {
+        if (method.owner instanceof Class
+            && ((Class) method.owner).isInterface()) {
+          throw new UnsupportedException("static interface method");
+        }
+        code.invoke(INVOKESTATIC, type, method.name, method.parameterTypes,
+            method.returnType, false);
+      } else if (method.owner == Object.class
+          || type instanceof GenClass
+          || !((Class) type).isInterface()) {
+        code.invoke(
+            (method.modifiers & Modifier.PRIVATE) != 0
+                ? INVOKESPECIAL : INVOKEVIRTUAL,
+            method.owner == Object.class ? Object.class : type,
+            method.name, method.parameterTypes, method.returnType, false);
+      } else {
+        code.invoke(INVOKEINTERFACE, type, method.name, method.parameterTypes,
+            method.returnType, true);
+      }
+      return method.returnType;
+    }
+
+    /** Emits the arguments to a method or constructor. */
+    private void arguments(List<Expression> arguments, MethodRef method) {
+      final List<Type> parameterTypes = method.parameterTypes;
+      final int n = parameterTypes.size();
+      if (!method.invokedAsVarArgs) {
+        for (int i = 0; i < n; i++) {
+          coerce(emit(arguments.get(i)), parameterTypes.get(i));
+        }
+        return;
+      }
+      for (int i = 0; i < n - 1; i++) {
+        coerce(emit(arguments.get(i)), parameterTypes.get(i));
+      }
+      final Class<?> component =
+          ((Class) parameterTypes.get(n - 1)).getComponentType();
+      code.pushInt(arguments.size() - n + 1);
+      code.newArray(checkAccessible(component));
+      for (int i = n - 1; i < arguments.size(); i++) {
+        code.op(DUP, 1);
+        code.pushInt(i - n + 1);
+        coerce(emit(arguments.get(i)), component);
+        code.arrayStore(component);
+      }
+    }
+
+    private Type newObject(NewExpression e) {
+      final Type type = resolve(e.type);
+      if (e.memberDeclarations != null) {
+        return anonymous(toClass(type), e.arguments, e.memberDeclarations,
+            null);
+      }
+      final List<MethodRef> constructors = new ArrayList<>();
+      if (type instanceof GenClass) {
+        constructors.addAll(((GenClass) type).constructors);
+        if (constructors.isEmpty()) {
+          constructors.add(
+              new MethodRef(type, "<init>", Collections.<Type>emptyList(),
+                  void.class, Modifier.PUBLIC, false));
+        }
+      } else {
+        final Class<?> c = checkAccessible(toClass(type));
+        if (c.isInterface() || Modifier.isAbstract(c.getModifiers())) {
+          throw new UnsupportedException("abstract class " + c);
+        }
+        for (Constructor<?> constructor : c.getConstructors()) {
+          constructors.add(new MethodRef(constructor));
+        }
+      }
+      final MethodRef constructor =
+          choose(constructors, argumentTypes(e.arguments), type);
+      code.typeOp(NEW, type);
+      code.op(DUP, 1);
+      arguments(e.arguments, constructor);
+      code.invoke(INVOKESPECIAL, type, "<init>", constructor.parameterTypes,
+          void.class, false);
+      return type;
+    }
+
+    private List<Type> argumentTypes(List<Expression> arguments) {
+      final List<Type> types = new ArrayList<>();
+      for (Expression argument : arguments) {
+        types.add(typeOf(argument));
+      }
+      return types;
+    }
+
+    /** Generates an anonymous class, and emits code that creates an
+     * instance of it. */
+    private Type anonymous(Class<?> type, List<Expression> arguments,
+        List<MemberDeclaration> members, FunctionExpression<?> function) {
+      checkAccessible(type);
+      if (Modifier.isFinal(type.getModifiers())) {
+        throw new UnsupportedException("final class " + type);
+      }
+      final Class<?> superclass = type.isInterface() ? Object.class : type;
+      final List<Class<?>> interfaces =
+          type.isInterface()
+              ? Collections.<Class<?>>singletonList(type)
+              : Collections.<Class<?>>emptyList();
+      final GenClass c =
+          new GenClass(className + "$" + ++anonymousClassCount,
+              ACC_SUPER | ACC_FINAL, superclass, interfaces, owner);
+
+      final List<MethodRef> constructors = new ArrayList<>();
+      for (Constructor<?> constructor : superclass.getDeclaredConstructors()) {
+        if ((constructor.getModifiers()
+            & (Modifier.PUBLIC | Modifier.PROTECTED)) != 0) {
+          constructors.add(new MethodRef(constructor));
+        }
+      }
+      final MethodRef superConstructor =
+          choose(constructors, argumentTypes(arguments), type);
+      if (superConstructor.invokedAsVarArgs) {
+        throw new UnsupportedException("variable arity constructor");
+      }
+
+      // Find the variables of the enclosing scope that the class uses. A
+      // local variable is copied into a field of the class; a field of an
+      // enclosing class is accessed via the enclosing instance.
+      final Set<String> used = new LinkedHashSet<>();
+      collectMembers(members, Collections.<String>emptySet(), used);
+      for (String name : used) {
+        if (name.equals("this")
+            || inheritedField(c, name) != null) {
+          continue;
+        }
+        final Variable variable = variableOrNull(name);
+        if (variable instanceof LocalVariable
+            || variable instanceof FieldVariable
+            && ((FieldVariable) variable).isCapture()) {
+          c.captures.put(name,
+              new FieldRef(c, "val$" + name, variable.type, Modifier.FINAL));
+        } else if (variable instanceof FieldVariable
+            && !((FieldVariable) variable).field.isStatic()
+            || variable instanceof ThisVariable) {
+          if (isStatic) {
+            throw new UnsupportedException("no enclosing instance");
+          }
+          c.outerThis =
+              new FieldRef(c, "this$0", owner, Modifier.FINAL);
+        }
+      }
+
+      declareMembers(c, members);
+      compileClass(c, members, superConstructor, function);
+
+      code.typeOp(NEW, c);
+      code.op(DUP, 1);
+      if (c.outerThis != null) {
+        code.load(owner, 0);
+      }
+      for (String name : c.captures.keySet()) {
+        final Variable variable = variable(name);
+        variable.prefix();
+        variable.load();
+      }
+      arguments(arguments, superConstructor);
+      code.invoke(INVOKESPECIAL, c, "<init>",
+          c.constructorParameterTypes(superConstructor), void.class, false);
+      return c;
+    }
+
+    /** Generates an anonymous class that implements a function, and emits
+     * code that creates an instance of it. */
+    private Type function(FunctionExpression<?> function) {
+      if (function.body == null) {
+        throw new UnsupportedException("function without body");
+      }
+      final Method abstractMethod = abstractMethod(function.type);
+      Type bridgeResultType =
+          Functions.FUNCTION_RESULT_TYPES.get(function.type);
+      if (bridgeResultType == null) {
+        bridgeResultType = function.body.getType();
+      }
+      Type resultType = bridgeResultType;
+      boolean object = true;
+      for (ParameterExpression parameter : function.parameterList) {
+        object &= parameter.getType() == Object.class;
+      }
+      if (bridgeResultType == Object.class
+          && !object
+          && !(function.body.getType() instanceof TypeVariable)) {
+        resultType = function.body.getType();
+      }
+      final MethodDeclaration method =
+          Expressions.methodDecl(Modifier.PUBLIC, resultType,
+              abstractMethod.getName(), function.parameterList,
+              Blocks.toFunctionBlock(function.body));
+      anonymous((Class) function.type, Collections.<Expression>emptyList(),
+          Collections.<MemberDeclaration>singletonList(method), function);
+      return resolve(function.type);
+    }
+
+    private Class<?> componentTypeN(Type type) {
+      for (;;) {
+        final Type component = Types.getComponentType(type);
+        if (component == null) {
+          return toClass(resolve(type));
+        }
+        type = component;
+      }
+    }
+
+    private Type newArray(NewArrayExpression e) {
+      final Class<?> type = (Class) typeOf(e);
+      final Class<?> component = type.getComponentType();
+      checkAccessible(type);
+      if (e.bound != null && e.expressions == null) {
+        coerce(emit(e.bound), int.class);
+        code.newArray(component);
+      } else if (e.bound == null && e.expressions != null) {
+        code.pushInt(e.expressions.size());
+        code.newArray(component);
+        for (int i = 0; i < e.expressions.size(); i++) {
+          code.op(DUP, 1);
+          code.pushInt(i);
+          coerce(emit(e.expressions.get(i)), component);
+          code.arrayStore(component);
+        }
+      } else {
+        throw new UnsupportedException(e);
+      }
+      return type;
+    }
+
+    private Type elementType(IndexExpression e) {
+      final Type type = typeOf(e.array);
+      if (e.indexExpressions.size() != 1
+          || !(type instanceof Class)
+          || !((Class) type).isArray()) {
+        throw new UnsupportedException(e);
+      }
+      return ((Class) type).getComponentType();
+    }
+
+    private Variable element(IndexExpression e) {
+      return new ElementVariable((Class) elementType(e), e);
+    }
+
+    private Type unary(UnaryExpression e) {
+      final Type type = typeOf(e);
+      switch (e.getNodeType()) {
+      case Convert:
+        final Type from = emit(e.expression);
+        if (from == NULL_TYPE && isPrimitive(type)) {
+          throw new UnsupportedException(e);
+        }
+        coerce(from, checkAccessible(type));
+        return type;
+      case Not:
+        return emitCondition(e);
+      case Negate:
+      case NegateChecked:
+        coerce(emit(e.expression), type);
+        code.op(INEG + kind(type), 0);
+        return type;
+      case UnaryPlus:
+        coerce(emit(e.expression), type);
+        return type;
+      case OnesComplement:
+        if (!isIntegral((Class) type)) {
+          throw new UnsupportedException(e);
+        }
+        coerce(emit(e.expression), type);
+        if (type == long.class) {
+          code.pushLong(-1L);
+        } else {
+          code.pushInt(-1);
+        }
+        code.op(IXOR + kind(type), -size(type));
+        return type;
+      case PreIncrementAssign:
+      case PreDecrementAssign:
+      case PostIncrementAssign:
+      case PostDecrementAssign:
+        return increment(e, true);
+      default:
+        throw new UnsupportedException(e);
+      }
+    }
+
+    /** Emits "++", "--" or another increment operator. */
+    private Type increment(UnaryExpression e, boolean needValue) {
+      final ExpressionType op = e.getNodeType();
+      final boolean post =
+          op == ExpressionType.PostIncrementAssign
+              || op == ExpressionType.PostDecrementAssign;
+      final int delta =
+          op == ExpressionType.PreIncrementAssign
+              || op == ExpressionType.PostIncrementAssign ? 1 : -1;
+      final Variable variable = variable(e.expression);
+      final Type type = variable.type;
+      if (variable instanceof LocalVariable && type == int.class) {
+        final int slot = ((LocalVariable) variable).local.slot;
+        if (needValue && post) {
+          code.load(type, slot);
+        }
+        code.iinc(slot, delta);
+        if (needValue && !post) {
+          code.load(type, slot);
+        }
+        return needValue ? type : void.class;
+      }
+      final Class<?> promoted = unaryPromote(numeric(type));
+      variable.prefix();
+      variable.dupPrefix();
+      variable.load();
+      if (needValue && post) {
+        variable.dupValue();
+      }
+      coerce(type, promoted);
+      pushOne(promoted);
+      code.op((delta > 0 ? IADD : ISUB) + kind(promoted), -size(promoted));
+      coerce(promoted, type);
+      if (needValue && !post) {
+        variable.dupValue();
+      }
+      variable.store();
+      return needValue ? type : void.class;
+    }
+
+    private void pushOne(Class<?> type) {
+      if (type == long.class) {
+        code.pushLong(1L);
+      } else if (type == float.class) {
+        code.pushFloat(1f);
+      } else if (type == double.class) {
+        code.pushDouble(1d);
+      } else {
+        code.pushInt(1);
+      }
+    }
+
+    private Type binaryType(BinaryExpression e) {
+      switch (e.getNodeType()) {
+      case AndAlso:
+      case OrElse:
+      case Equal:
+      case NotEqual:
+      case LessThan:
+      case LessThanOrEqual:
+      case GreaterThan:
+      case GreaterThanOrEqual:
+        return boolean.class;
+      case Assign:
+      case AddAssign:
+      case AddAssignChecked:
+      case AndAssign:
+      case DivideAssign:
+      case ExclusiveOrAssign:
+      case LeftShiftAssign:
+      case ModuloAssign:
+      case MultiplyAssign:
+      case MultiplyAssignChecked:
+      case OrAssign:
+      case RightShiftAssign:
+      case SubtractAssign:
+      case SubtractAssignChecked:
+        return typeOf(e.expression0);
+      }
+      final Type t0 = typeOf(e.expression0);
+      final Type t1 = typeOf(e.expression1);
+      return operatorType(e.getNodeType(), t0, t1);
+    }
+
+    /** Returns the type of the result of a binary operator, or
+     * {@code String} for string concatenation. */
+    private Class<?> operatorType(ExpressionType op, Type t0, Type t1) {
+      switch (op) {
+      case Add:
+      case AddChecked:
+        if (t0 == String.class || t1 == String.class) {
+          return String.class;
+        }
+        // fall through
+      case Subtract:
+      case SubtractChecked:
+      case Multiply:
+      case MultiplyChecked:
+      case Divide:
+      case Mod:
+      case Modulo:
+        return binaryPromote(numeric(t0), numeric(t1));
+      case And:
+      case Or:
+      case ExclusiveOr:
+        if (primitive(t0) == boolean.class && primitive(t1) == boolean.class) {
+          return boolean.class;
+        }
+        final Class<?> type = binaryPromote(numeric(t0), numeric(t1));
+        if (!isIntegral(type)) {
+          throw new UnsupportedException("operator " + op + " on " + type);
+        }
+        return type;
+      case LeftShift:
+      case RightShift:
+        final Class<?> shifted = unaryPromote(numeric(t0));
+        if (!isIntegral(shifted) || !isIntegral(unaryPromote(numeric(t1)))) {
+          throw new UnsupportedException("operator " + op + " on " + t0);
+        }
+        return shifted;
+      default:
+        throw new UnsupportedException("operator " + op);
+      }
+    }
+
+    private Type binary(BinaryExpression e) {
+      final Type type = typeOf(e);
+      switch (e.getNodeType()) {
+      case AndAlso:
+      case OrElse:
+      case Equal:
+      case NotEqual:
+      case LessThan:
+      case LessThanOrEqual:
+      case GreaterThan:
+      case GreaterThanOrEqual:
+        return emitCondition(e);
+      case Assign:
+      case AddAssign:
+      case AddAssignChecked:
+      case AndAssign:
+      case DivideAssign:
+      case ExclusiveOrAssign:
+      case LeftShiftAssign:
+      case ModuloAssign:
+      case MultiplyAssign:
+      case MultiplyAssignChecked:
+      case OrAssign:
+      case RightShiftAssign:
+      case SubtractAssign:
+      case SubtractAssignChecked:
+        return assign(e, true);
+      }
+      if (type == String.class) {
+        // "a + b" becomes "new StringBuilder().append(a).append(b).toString()"
+        code.typeOp(NEW, StringBuilder.class);
+        code.op(DUP, 1);
+        code.invoke(INVOKESPECIAL, StringBuilder.class, "<init>",
+            Collections.<Type>emptyList(), void.class, false);
+        append(e);
+        code.invoke(INVOKEVIRTUAL, StringBuilder.class, "toString",
+            Collections.<Type>emptyList(), String.class, false);
+        return type;
+      }
+      final Class<?> operandType =
+          type == boolean.class ? boolean.class : (Class) type;
+      coerce(emit(e.expression0), operandType);
+      emit1(e.getNodeType(), e.expression1, operandType);
+      operator(e.getNodeType(), operandType);
+      return type;
+    }
+
+    /** Emits the second operand of a binary operator, converted to the
+     * type that the operator requires. */
+    private void emit1(ExpressionType op, Expression e, Class<?> type) {
+      switch (op) {
+      case LeftShift:
+      case RightShift:
+      case LeftShiftAssign:
+      case RightShiftAssign:
+        final Class<?> shift = unaryPromote(numeric(emit(e)));
+        coerce(typeOf(e), shift);
+        coerce(shift, int.class);
+        return;
+      default:
+        coerce(emit(e), type);
+      }
+    }
+
+    /** Emits the instruction of an arithmetic, bitwise or shift operator
+     * whose operands are on the stack. */
+    private void operator(ExpressionType op, Class<?> type) {
+      final int kind = type == boolean.class ? 0 : kind(type);
+      switch (op) {
+      case Add:
+      case AddChecked:
+      case AddAssign:
+      case AddAssignChecked:
+        code.op(IADD + kind, -size(type));
+        break;
+      case Subtract:
+      case SubtractChecked:
+      case SubtractAssign:
+      case SubtractAssignChecked:
+        code.op(ISUB + kind, -size(type));
+        break;
+      case Multiply:
+      case MultiplyChecked:
+      case MultiplyAssign:
+      case MultiplyAssignChecked:
+        code.op(IMUL + kind, -size(type));
+        break;
+      case Divide:
+      case DivideAssign:
+        code.op(IDIV + kind, -size(type));
+        break;
+      case Mod:
+      case Modulo:
+      case ModuloAssign:
+        code.op(IREM + kind, -size(type));
+        break;
+      case And:
+      case AndAssign:
+        code.op(IAND + kind, -size(type));
+        break;
+      case Or:
+      case OrAssign:
+        code.op(IOR + kind, -size(type));
+        break;
+      case ExclusiveOr:
+      case ExclusiveOrAssign:
+        code.op(IXOR + kind, -size(type));
+        break;
+      case LeftShift:
+      case LeftShiftAssign:
+        code.op(ISHL + kind, -1);
+        break;
+      case RightShift:
+      case RightShiftAssign:
+        code.op(ISHR + kind, -1);
+        break;
+      default:
+        throw new UnsupportedException("operator " + op);
+      }
+    }
+
+    /** Appends the operands of a string concatenation to the
+     * {@link StringBuilder} on top of the stack. */
+    private void append(Expression e) {
+      if ((e.getNodeType() == ExpressionType.Add
+          || e.getNodeType() == ExpressionType.AddChecked)
+          && typeOf(e) == String.class) {
+        append(((BinaryExpression) e).expression0);
+        append(((BinaryExpression) e).expression1);
+        return;
+      }
+      final Type type = emit(e);
+      appendValue(type);
+    }
+
+    private void appendValue(Type type) {
+      final Type parameterType;
+      if (type == byte.class || type == short.class) {
+        parameterType = int.class;
+      } else if (isPrimitive(type) || type == String.class) {
+        if (type == void.class) {
+          throw new UnsupportedException("void in string concatenation");
+        }
+        parameterType = type;
+      } else {
+        parameterType = Object.class;
+      }
+      code.invoke(INVOKEVIRTUAL, StringBuilder.class, "append",
+          Collections.singletonList(parameterType), StringBuilder.class,
+          false);
+    }
+
+    /** Emits "=" or a compound assignment operator such as "+=". */
+    private Type assign(BinaryExpression e, boolean needValue) {
+      final Variable variable = variable(e.expression0);
+      final Type type = variable.type;
+      variable.prefix();
+      if (e.getNodeType() == ExpressionType.Assign) {
+        coerce(emit(e.expression1), type);
+      } else {
+        variable.dupPrefix();
+        variable.load();
+        final Type t1 = typeOf(e.expression1);
+        if (type == String.class
+            && (e.getNodeType() == ExpressionType.AddAssign
+                || e.getNodeType() == ExpressionType.AddAssignChecked)) {
+          // "s += x" becomes "s = new StringBuilder(String.valueOf(s))
+          // .append(x).toString()"
+          code.invoke(INVOKESTATIC, String.class, "valueOf",
+              Collections.<Type>singletonList(Object.class), String.class,
+              false);
+          code.typeOp(NEW, StringBuilder.class);
+          code.op(DUP_X1, 1);
+          code.op(SWAP, 0);
+          code.invoke(INVOKESPECIAL, StringBuilder.class, "<init>",
+              Collections.<Type>singletonList(String.class), void.class,
+              false);
+          appendValue(emit(e.expression1));
+          code.invoke(INVOKEVIRTUAL, StringBuilder.class, "toString",
+              Collections.<Type>emptyList(), String.class, false);
+        } else {
+          final Class<?> operandType =
+              operatorType(binaryOperator(e.getNodeType()), type, t1);
+          coerce(type, operandType);
+          emit1(e.getNodeType(), e.expression1, operandType);
+          operator(e.getNodeType(), operandType);
+          coerce(operandType, primitive(type));
+          coerce(primitive(type), type);
+        }
+      }
+      if (needValue) {
+        variable.dupValue();
+      }
+      variable.store();
+      return needValue ? type : void.class;
+    }
+
+    private ExpressionType binaryOperator(ExpressionType op) {
+      switch (op) {
+      case AddAssign:
+      case AddAssignChecked:
+        return ExpressionType.Add;
+      case SubtractAssign:
+      case SubtractAssignChecked:
+        return ExpressionType.Subtract;
+      case MultiplyAssign:
+      case MultiplyAssignChecked:
+        return ExpressionType.Multiply;
+      case DivideAssign:
+        return ExpressionType.Divide;
+      case ModuloAssign:
+        return ExpressionType.Modulo;
+      case AndAssign:
+        return ExpressionType.And;
+      case OrAssign:
+        return ExpressionType.Or;
+      case ExclusiveOrAssign:
+        return ExpressionType.ExclusiveOr;
+      case LeftShiftAssign:
+        return ExpressionType.LeftShift;
+      case RightShiftAssign:
+        return ExpressionType.RightShift;
+      default:
+        throw new UnsupportedException("operator " + op);
+      }
+    }
+
+    /** Converts the value on top of the stack from one type to another, as
+     * in an assignment or cast. */
+    void coerce(Type from, Type to) {
+      if (from.equals(to)) {
+        return;
+      }
+      if (to == void.class) {
+        if (size(from) > 0) {
+          code.op(size(from) == 2 ? POP2 : POP, -size(from));
+        }
+        return;
+      }
+      if (from == NULL_TYPE) {
+        if (isPrimitive(to)) {
+          throw new UnsupportedException("null to " + to);
+        }
+        return;
+      }
+      if (isPrimitive(from) && isPrimitive(to)) {
+        convert((Class) from, (Class) to);
+      } else if (isPrimitive(from)) {
+        final Class<?> primitive = primitive(to);
+        if (primitive != null) {
+          convert((Class) from, primitive);
+          boxValue(primitive);
+        } else {
+          final Class<?> box = box((Class) from);
+          boxValue((Class) from);
+          if (!isSubtype(box, to)) {
+            code.typeOp(CHECKCAST, checkAccessible(to));
+          }
+        }
+      } else if (isPrimitive(to)) {
+        Class<?> primitive = primitive(from);
+        if (primitive == null) {
+          final Class<?> box = box((Class) to);
+          if (!isSubtype(box, from)) {
+            throw new UnsupportedException("convert " + from + " to " + to);
+          }
+          code.typeOp(CHECKCAST, box);
+          primitive = (Class) to;
+        }
+        unboxValue(primitive);
+        convert(primitive, (Class) to);
+      } else if (!isSubtype(from, to)) {
+        code.typeOp(CHECKCAST, checkAccessible(to));
+      }
+    }
+
+    private void boxValue(Class<?> primitive) {
+      final Class<?> box = box(primitive);
+      code.invoke(INVOKESTATIC, box, "valueOf",
+          Collections.<Type>singletonList(primitive), box, false);
+    }
+
+    private void unboxValue(Class<?> primitive) {
+      code.invoke(INVOKEVIRTUAL, box(primitive),
+          primitive.getName() + "Value", Collections.<Type>emptyList(),
+          primitive, false);
+    }
+
+    /** Converts a value from one primitive type to another. */
+    private void convert(Class<?> from, Class<?> to) {
+      if (from == to) {
+        return;
+      }
+      if (from == boolean.class || to == boolean.class
+          || from == void.class || to == void.class) {
+        throw new UnsupportedException("convert " + from + " to " + to);
+      }
+      final Class<?> from2 = unaryPromote(from);
+      final Class<?> to2 = unaryPromote(to);
+      if (from2 != to2) {
+        final int[][] opcodes = {
+            // to int, long, float, double
+            {0, I2L, I2F, I2D},
+            {L2I, 0, L2F, L2D},
+            {F2I, F2L, 0, F2D},
+            {D2I, D2L, D2F, 0},
+        };
+        code.op(opcodes[kind(from2)][kind(to2)], size(to2) - size(from2));
+      }
+      if (to == byte.class && from != byte.class) {
+        code.op(I2B, 0);
+      } else if (to == char.class) {
+        code.op(I2C, 0);
+      } else if (to == short.class
+          && from != byte.class && from != short.class) {
+        code.op(I2S, 0);
+      }
+    }
+
+    // Variables
+
+    /** Returns the variable that a name refers to. */
+    private Variable variable(String name) {
+      final Variable variable = variableOrNull(name);
+      if (variable == null) {
+        throw new UnsupportedException("unknown variable " + name);
+      }
+      return variable;
+    }
+
+    /** Returns the variable that a name refers to, or null. The rules are as
+     * in Java: a local variable, then a field of the current class or of a
+     * class it inherits from, then a field of an enclosing class. */
+    private Variable variableOrNull(String name) {
+      if (name.equals("this")) {
+        if (isStatic) {
+          throw new UnsupportedException("this in static context");
+        }
+        return new ThisVariable(owner);
+      }
+      for (int i = scopes.size() - 1; i >= 0; i--) {
+        final Local local = scopes.get(i).get(name);
+        if (local != null) {
+          return new LocalVariable(local);
+        }
+      }
+      final List<FieldRef> path = new ArrayList<>();
+      for (GenClass c = owner; c != null; c = c.outer) {
+        final FieldRef field = field(c, name);
+        if (field != null) {
+          if (!field.isStatic() && isStatic) {
+            throw new UnsupportedException("instance field " + name
+                + " in static context");
+          }
+          return new FieldVariable(field, c, null, path);
+        }
+        if (c.outerThis == null) {
+          break;
+        }
+        path.add(c.outerThis);
+      }
+      return null;
+    }
+
+    /** Returns the variable that an expression on the left side of an
+     * assignment refers to. */
+    private Variable variable(Expression e) {
+      if (e instanceof ParameterExpression) {
+        return variable(((ParameterExpression) e).name);
+      } else if (e instanceof MemberExpression
+          && !isArrayLength((MemberExpression) e)) {
+        return fieldVariable((MemberExpression) e);
+      } else if (e instanceof IndexExpression) {
+        return element((IndexExpression) e);
+      }
+      throw new UnsupportedException("not assignable: " + e);
+    }
+
+    /** Something that an expression can read or assign: a local variable,
+     * a field, or an element of an array. Reading or writing a variable may
+     * need values on the operand stack, such as the object that contains a
+     * field; {@link #prefix()} emits them. */
+    private abstract class Variable {
+      final Type type;
+
+      Variable(Type type) {
+        this.type = type;
+      }
+
+      /** Returns the number of words that {@link #prefix()} pushes. */
+      abstract int prefixSize();
+
+      abstract void prefix();
+
+      /** Pops the prefix and pushes the value. */
+      abstract void load();
+
+      /** Pops the prefix and a value, and stores the value. */
+      abstract void store();
+
+      void dupPrefix() {
+        switch (prefixSize()) {
+        case 1:
+          code.op(DUP, 1);
+          break;
+        case 2:
+          code.op(DUP2, 2);
+          break;
+        }
+      }
+
+      /** Copies the value on top of the stack to below the prefix. */
+      void dupValue() {
+        final int[][] opcodes = {
+            {DUP, DUP_X1, DUP_X2},
+            {DUP2, DUP2_X1, DUP2_X2},
+        };
+        code.op(opcodes[size(type) - 1][prefixSize()], size(type));
+      }
+    }
+
+    /** Local variable. */
+    private class LocalVariable extends Variable {
+      final Local local;
+
+      LocalVariable(Local local) {
+        super(local.type);
+        this.local = local;
+      }
+
+      int prefixSize() {
+        return 0;
+      }
+
+      void prefix() {
+      }
+
+      void load() {
+        code.load(type, local.slot);
+      }
+
+      void store() {
+        code.store(type, local.slot);
+      }
+    }
+
+    /** The current instance, "this". */
+    private class ThisVariable extends Variable {
+      ThisVariable(GenClass c) {
+        super(c);
+      }
+
+      int prefixSize() {
+        return 0;
+      }
+
+      void prefix() {
+      }
+
+      void load() {
+        code.load(type, 0);
+      }
+
+      void store() {
+        throw new UnsupportedException("assignment to this");
+      }
+    }
+
+    /** Field. It is accessed either via an expression, or (if it belongs to
+     * the current class or an enclosing class) via "this" and zero or more
+     * enclosing instances. */
+    private class FieldVariable extends Variable {
+      final FieldRef field;
+      /** Type via which the field is accessed; the field belongs to this
+       * class or a class that it inherits from. */
+      final Type qualifier;
+      final Expression target;
+      final List<FieldRef> path;
+
+      FieldVariable(FieldRef field, Type qualifier, Expression target,
+          List<FieldRef> path) {
+        super(field.type);
+        this.field = field;
+        this.qualifier = qualifier;
+        this.target = target;
+        this.path = path;
+        checkAccess(owner, field.owner, field.modifiers,
+            field.isStatic() ? null : qualifier, field.name);
+      }
+
+      /** Returns whether this field holds the value of a local variable of
+       * an enclosing method. */
+      boolean isCapture() {
+        return field.owner instanceof GenClass
+            && ((GenClass) field.owner).captures.containsValue(field);
+      }
+
+      int prefixSize() {
+        return field.isStatic() ? 0 : 1;
+      }
+
+      void prefix() {
+        if (target != null) {
+          final Type type = emit(target);
+          if (field.isStatic()) {
+            code.op(POP, -1);
+          } else if (type == NULL_TYPE || isPrimitive(type)) {
+            throw new UnsupportedException("field of " + type);
+          }
+        } else if (!field.isStatic()) {
+          code.load(owner, 0);
+          for (FieldRef hop : path) {
+            code.field(GETFIELD, hop.owner, hop.name, hop.type);
+          }
+        }
+      }
+
+      private Type fieldOwner() {
+        if (qualifier instanceof Class
+            && (((Class) qualifier).getModifiers() & Modifier.PUBLIC) == 0) {
+          return checkAccessible(field.owner);
+        }
+        return qualifier;
+      }
+
+      void load() {
+        code.field(field.isStatic() ? GETSTATIC : GETFIELD, fieldOwner(),
+            field.name, field.type);
+      }
+
+      void store() {
+        if ((field.modifiers & Modifier.FINAL) != 0) {
+          // Final fields are only assigned by their initializers
+          throw new UnsupportedException("assignment to final field "
+              + field.name);
+        }
+        code.field(field.isStatic() ? PUTSTATIC : PUTFIELD, fieldOwner(),
+            field.name, field.type);
+      }
+    }
+
+    /** Element of an array. */
+    private class ElementVariable extends Variable {
+      final IndexExpression e;
+
+      ElementVariable(Class<?> type, IndexExpression e) {
+        super(type);
+        this.e = e;
+      }
+
+      int prefixSize() {
+        return 2;
+      }
+
+      void prefix() {
+        emit(e.array);
+        coerce(emit(e.indexExpressions.get(0)), int.class);
+      }
+
+      void load() {
+        code.arrayLoad((Class) type);
+      }
+
+      void store() {
+        code.arrayStore((Class) type);
+      }
+    }
+  }
+}
+
+// End BytecodeCompiler.java
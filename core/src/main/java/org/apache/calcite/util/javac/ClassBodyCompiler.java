@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.util.javac;
+
+import org.apache.calcite.avatica.DriverVersion;
+import org.apache.calcite.avatica.util.ByteString;
+import org.apache.calcite.jdbc.Driver;
+import org.apache.calcite.util.SaffronProperties;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.compiler.CompilerFactoryFactory;
+import org.codehaus.commons.compiler.IClassBodyEvaluator;
+import org.codehaus.commons.compiler.ICompilerFactory;
+import org.codehaus.janino.ByteArrayClassLoader;
+import org.codehaus.janino.ClassLoaderIClassLoader;
+import org.codehaus.janino.Java;
+import org.codehaus.janino.Parser;
+import org.codehaus.janino.Scanner;
+import org.codehaus.janino.UnitCompiler;
+import org.codehaus.janino.util.ClassFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiles the body of a Java class, such as the code that Calcite generates
+ * for a query or a metadata handler, using
+ * <a href="http://www.janino.net">Janino</a>.
+ *
+ * <p>If a compiler has a cache directory, the bytecode of each class is
+ * stored in a file in that directory, whose name is a hash of the source
+ * code and of the version of Calcite. If a JVM later compiles the same source
+ * code, it loads the bytecode from the file rather than compiling it again,
+ * so that a restarted server does not have to wait for Janino to compile the
+ * code for the queries that it executes.
+ *
+ * <p>The {@link #INSTANCE} compiler has a cache directory if the property
+ * "saffron.code.cache.directory" is set; see
+ * {@link SaffronProperties#codeCacheDirectory()}.
+ */
+public class ClassBodyCompiler {
+  private static final String UNKNOWN_VERSION = "unknown version";
+
+  /** Version of Calcite. Bytecode may call methods of Calcite, so bytecode
+   * that was compiled against one version is not used by another version.
+   *
+   * <p>In a development build, which has no version number, includes when the
+   * build was last modified; null if that is not known, in which case
+   * bytecode is not cached. Computed only if bytecode is cached. */
+  private static final Supplier<String> VERSION =
+      Suppliers.memoize(
+          new Supplier<String>() {
+            public String get() {
+              return version();
+            }
+          });
+
+  /** Compiler that caches bytecode in the directory given by the
+   * "saffron.code.cache.directory" property, if set. */
+  public static final ClassBodyCompiler INSTANCE =
+      new ClassBodyCompiler(
+          directory(SaffronProperties.INSTANCE.codeCacheDirectory().get(null)));
+
+  private final File directory;
+
+  /** Creates a ClassBodyCompiler.
+   *
+   * @param directory Directory in which to cache bytecode, or null */
+  public ClassBodyCompiler(File directory) {
+    this.directory = directory;
+  }
+
+  private static File directory(String path) {
+    return path == null || path.isEmpty() ? null : new File(path);
+  }
+
+  private static String version() {
+    final DriverVersion version =
+        DriverVersion.load(Driver.class, "org-apache-calcite-jdbc.properties",
+            "Calcite JDBC Driver", UNKNOWN_VERSION, "Calcite",
+            UNKNOWN_VERSION);
+    if (!version.productVersion.equals(UNKNOWN_VERSION)) {
+      return version.productVersion;
+    }
+    // A development build, whose classes change without the version
+    // changing. Identify the build by the jar file or class directory that
+    // contains this class, and by when it was last modified.
+    final long lastModified = lastModified(location());
+    return lastModified < 0
+        ? null
+        : version.productVersion + "/" + location() + "/" + lastModified;
+  }
+
+  /** Returns the jar file or directory from which this class was loaded, or
+   * null if it is not known. */
+  private static File location() {
+    try {
+      final CodeSource codeSource =
+          ClassBodyCompiler.class.getProtectionDomain().getCodeSource();
+      if (codeSource == null || codeSource.getLocation() == null) {
+        return null;
+      }
+      return new File(codeSource.getLocation().toURI());
+    } catch (URISyntaxException | IllegalArgumentException
+        | SecurityException e) {
+      return null;
+    }
+  }
+
+  /** Returns when a file, or the most recent file under a directory, was last
+   * modified; or -1 if not known. */
+  private static long lastModified(File file) {
+    if (file == null || !file.exists()) {
+      return -1;
+    }
+    long lastModified = file.lastModified();
+    final File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        lastModified = Math.max(lastModified, lastModified(f));
+      }
+    }
+    return lastModified;
+  }
+
+  /** Compiles the body of a class, and returns the class.
+   *
+   * <p>The class is public, and is loaded by a new class loader that is a
+   * child of {@code parentClassLoader}; so it can be unloaded when it and its
+   * instances are no longer used.
+   *
+   * @param className Name of the class
+   * @param extendedClass Class that the class extends, or null
+   * @param implementedInterfaces Interfaces that the class implements
+   * @param parentClassLoader Class loader of the classes that the code uses
+   * @param debug Whether to add debugging information, such as line numbers
+   * @param body Body of the class
+   */
+  public Class<?> compile(String className, Class<?> extendedClass,
+      Class<?>[] implementedInterfaces, ClassLoader parentClassLoader,
+      boolean debug, String body) throws CompileException, IOException {
+    final String version = directory == null ? null : VERSION.get();
+    if (version == null) {
+      return evaluate(className, extendedClass, implementedInterfaces,
+          parentClassLoader, debug, body);
+    }
+    final StringBuilder buf = new StringBuilder()
+        .append("public class ").append(className);
+    if (extendedClass != null) {
+      buf.append(" extends ").append(extendedClass.getCanonicalName());
+    }
+    for (int i = 0; i < implementedInterfaces.length; i++) {
+      buf.append(i == 0 ? " implements " : ", ")
+          .append(implementedInterfaces[i].getCanonicalName());
+    }
+    buf.append(" {\n").append(body).append("\n}\n");
+    final String source = buf.toString();
+
+    final File file =
+        new File(directory, hash(version + "/" + debug + "/" + source));
+    Map<String, byte[]> bytecodes = read(file);
+    if (bytecodes == null) {
+      bytecodes = compileUnit(source, parentClassLoader, debug);
+      write(file, bytecodes);
+    }
+    try {
+      return new ByteArrayClassLoader(bytecodes, parentClassLoader)
+          .loadClass(className);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("class not found in " + file, e);
+    }
+  }
+
+  /** Compiles the body of a class without the code cache. */
+  private static Class<?> evaluate(String className, Class<?> extendedClass,
+      Class<?>[] implementedInterfaces, ClassLoader parentClassLoader,
+      boolean debug, String body) throws CompileException, IOException {
+    final ICompilerFactory compilerFactory;
+    try {
+      compilerFactory = CompilerFactoryFactory.getDefaultCompilerFactory();
+    } catch (Exception e) {
+      throw new IllegalStateException(
+          "Unable to instantiate java compiler", e);
+    }
+    final IClassBodyEvaluator cbe = compilerFactory.newClassBodyEvaluator();
+    cbe.setClassName(className);
+    if (extendedClass != null) {
+      cbe.setExtendedClass(extendedClass);
+    }
+    cbe.setImplementedInterfaces(implementedInterfaces);
+    cbe.setParentClassLoader(parentClassLoader);
+    if (debug) {
+      // Add line numbers to the generated janino class
+      cbe.setDebuggingInformation(true, true, true);
+    }
+    cbe.cook(new StringReader(body));
+    return cbe.getClazz();
+  }
+
+  /** Compiles a compilation unit, and returns the bytecode of each class,
+   * keyed by class name. */
+  private static Map<String, byte[]> compileUnit(String source,
+      ClassLoader parentClassLoader, boolean debug)
+      throws CompileException, IOException {
+    final Java.CompilationUnit unit =
+        new Parser(new Scanner(null, new StringReader(source)))
+            .parseCompilationUnit();
+    final ClassFile[] classFiles =
+        new UnitCompiler(unit, new ClassLoaderIClassLoader(parentClassLoader))
+            .compileUnit(debug, debug, debug);
+    final Map<String, byte[]> bytecodes = new HashMap<>();
+    for (ClassFile classFile : classFiles) {
+      bytecodes.put(classFile.getThisClassName(), classFile.toByteArray());
+    }
+    return bytecodes;
+  }
+
+  private static String hash(String s) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return new ByteString(digest.digest(s.getBytes(StandardCharsets.UTF_8)))
+          .toString() + ".bytecode";
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /** Reads the bytecode of classes from a file, or returns null if the file
+   * does not exist or cannot be read. */
+  private static Map<String, byte[]> read(File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    // Check each count and length against the size of the file before
+    // allocating, so that a corrupt file cannot cause OutOfMemoryError.
+    long remaining = file.length();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)))) {
+      final int n = in.readInt();
+      remaining -= 4;
+      if (n < 0 || n > remaining) {
+        throw new IOException("invalid class count " + n + " in " + file);
+      }
+      final Map<String, byte[]> bytecodes = new HashMap<>();
+      for (int i = 0; i < n; i++) {
+        final String name = in.readUTF();
+        final int length = in.readInt();
+        remaining -= 2 + name.getBytes(StandardCharsets.UTF_8).length + 4;
+        if (length < 0 || length > remaining) {
+          throw new IOException("invalid class length " + length + " in "
+              + file);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        remaining -= length;
+        bytecodes.put(name, bytes);
+      }
+      return bytecodes;
+    } catch (IOException e) {
+      // The file is incomplete or corrupt; compile again, and overwrite it.
+      return null;
+    }
+  }
+
+  /** Writes the bytecode of classes to a file. Writes to a temporary file
+   * and renames it, so that another JVM never reads an incomplete file. */
+  private static void write(File file, Map<String, byte[]> bytecodes) {
+    try {
+      final File dir = file.getParentFile();
+      if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+        return;
+      }
+      final File tempFile = File.createTempFile("bytecode", ".tmp", dir);
+      try {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+          out.writeInt(bytecodes.size());
+          for (Map.Entry<String, byte[]> entry : bytecodes.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+          }
+        }
+        try {
+          Files.move(tempFile.toPath(), file.toPath(),
+              StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tempFile.toPath(), file.toPath(),
+              StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        if (tempFile.exists()) {
+          //noinspection ResultOfMethodCallIgnored
+          tempFile.delete();
+        }
+      }
+    } catch (IOException e) {
+      // The cache is an optimization; the class has been compiled, so
+      // carry on without caching it.
+    }
+  }
+}
+
+// End ClassBodyCompiler.java
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.batch;
+
+import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.test.CalciteAssert;
+import org.apache.calcite.test.JdbcTest;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for {@link BatchConvention batch calling convention}.
+ */
+public class BatchTest {
+  /** Tests that rows survive conversion to batches and back, including
+   * null values and more rows than fit in one batch. */
+  @Test public void testRowsOperator() {
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < ColumnBatch.DEFAULT_SIZE * 2 + 3; i++) {
+      rows.add(new Object[] {i, i % 3 == 0 ? null : (long) i, "r" + i});
+    }
+    final BatchOperator operator =
+        new Batches.RowsOperator(0,
+            ImmutableList.of(Primitive.INT, Primitive.LONG, Primitive.OTHER));
+    final Enumerable<Object[]> result =
+        Batches.toEnumerable(operator, null, Linq4j.asEnumerable(rows));
+    int i = 0;
+    for (Object[] row : result) {
+      assertThat(Arrays.toString(row),
+          equalTo(Arrays.toString(rows.get(i++))));
+    }
+    assertThat(i, is(rows.size()));
+  }
+
+  /** Tests a filter and project over a table that is read as rows, with
+   * three-valued logic on a nullable column. */
+  @Test public void testCalc() {
+    hr()
+        .query("select empid, commission * 2 as c from emps\n"
+            + "where commission is null or commission < 1000")
+        .explainContains("BatchCalc")
+        .returnsUnordered(
+            "empid=200; c=1000",
+            "empid=150; c=null",
+            "empid=110; c=500");
+  }
+
+  @Test public void testAggregate() {
+    hr()
+        .query("select deptno, count(*) as c, count(commission) as cc,\n"
+            + " sum(commission) as s, min(name) as m, max(empid) as x\n"
+            + "from emps group by deptno")
+        .explainContains("BatchAggregate")
+        .returnsUnordered(
+            "deptno=10; c=3; cc=2; s=1250; m=Bill; x=150",
+            "deptno=20; c=1; cc=1; s=500; m=Eric; x=200");
+  }
+
+  /** Tests that an aggregate with no group keys returns one row even if its
+   * input is empty. */
+  @Test public void testAggregateEmpty() {
+    hr()
+        .query("select count(*) as c, sum(empid) as s from emps\n"
+            + "where empid < 0")
+        .explainContains("BatchAggregate(group=[{}]")
+        .returnsUnordered("c=0; s=null");
+  }
+
+  @Test public void testLeftJoin() {
+    hr()
+        .query("select e.empid, d.name from emps as e\n"
+            + "left join depts as d on e.deptno = d.deptno")
+        .explainContains("BatchHashJoin")
+        .returnsUnordered(
+            "empid=100; name=Sales",
+            "empid=200; name=null",
+            "empid=150; name=Sales",
+            "empid=110; name=Sales");
+  }
+
+  /** Tests that a clone table, which holds its data in columns, is scanned
+   * in batches. */
+  @Test public void testTableScan() {
+    CalciteAssert.that()
+        .with(CalciteAssert.SchemaSpec.SCOTT)
+        .with("batchExecution", "true")
+        .query("select e.\"ENAME\", d.\"DNAME\"\n"
+            + "from \"scott\".\"EMP\" as e\n"
+            + "join \"scott\".\"DEPT\" as d on e.\"DEPTNO\" = d.\"DEPTNO\"\n"
+            + "where e.\"DEPTNO\" = 10")
+        .explainContains("BatchTableScan(table=[[scott, EMP]])")
+        .returnsUnordered(
+            "ENAME=CLARK; DNAME=ACCOUNTING",
+            "ENAME=KING; DNAME=ACCOUNTING",
+            "ENAME=MILLER; DNAME=ACCOUNTING");
+  }
+
+  /** Tests that batch operators are not used unless the
+   * {@code batchExecution} connection property is set. */
+  @Test public void testDisabled() {
+    CalciteAssert.that()
+        .with("lex", "JAVA")
+        .withSchema("s", new ReflectiveSchema(new JdbcTest.HrSchema()))
+        .query("select deptno, count(*) as c from emps group by deptno")
+        .explainContains("EnumerableAggregate")
+        .returnsUnordered("deptno=10; c=3", "deptno=20; c=1");
+  }
+
+  private CalciteAssert.AssertThat hr() {
+    return CalciteAssert.that()
+        .with("lex", "JAVA")
+        .with("batchExecution", "true")
+        .withSchema("s", new ReflectiveSchema(new JdbcTest.HrSchema()));
+  }
+}
+
+// End BatchTest.java
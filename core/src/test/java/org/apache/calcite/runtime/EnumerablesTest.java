@@ -28,10 +28,13 @@
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -50,6 +53,25 @@ public class EnumerablesTest {
           new Dept(20, "Sales"),
           new Dept(15, "Marketing")));
 
+  private static final Enumerable<Dept> SORTED_DEPTS = Linq4j.asEnumerable(
+      Arrays.asList(
+          new Dept(15, "Marketing"),
+          new Dept(20, "Sales")));
+
+  private static final Function1<Emp, Integer> EMP_DEPTNO =
+      new Function1<Emp, Integer>() {
+        public Integer apply(Emp e) {
+          return e.deptno;
+        }
+      };
+
+  private static final Function1<Dept, Integer> DEPT_DEPTNO =
+      new Function1<Dept, Integer>() {
+        public Integer apply(Dept d) {
+          return d.deptno;
+        }
+      };
+
   private static final Function2<Emp, Dept, String> EMP_DEPT_TO_STRING =
       new Function2<Emp, Dept, String>() {
         public String apply(Emp v0, Dept v1) {
@@ -184,6 +206,80 @@ public T apply(T v0, T v1) {
         }, false, false);
   }
 
+  @Test public void testMergeLeftJoin() {
+    assertThat(
+        EnumerableDefaults.mergeJoin(EMPS, SORTED_DEPTS, EMP_DEPTNO,
+            DEPT_DEPTNO, EMP_DEPT_TO_STRING, false, true).toList().toString(),
+        equalTo("[{Fred, 10, null, null}, {Theodore, 20, 20, Sales}, "
+            + "{Sebastian, 20, 20, Sales}, {Joe, 30, null, null}]"));
+  }
+
+  @Test public void testMergeRightJoin() {
+    assertThat(
+        EnumerableDefaults.mergeJoin(EMPS, SORTED_DEPTS, EMP_DEPTNO,
+            DEPT_DEPTNO, EMP_DEPT_TO_STRING, true, false).toList().toString(),
+        equalTo("[{null, null, 15, Marketing}, {Theodore, 20, 20, Sales}, "
+            + "{Sebastian, 20, 20, Sales}]"));
+  }
+
+  @Test public void testMergeFullJoin() {
+    final Enumerable<String> join =
+        EnumerableDefaults.mergeJoin(EMPS, SORTED_DEPTS, EMP_DEPTNO,
+            DEPT_DEPTNO, EMP_DEPT_TO_STRING, true, true);
+    final String expected = "[{Fred, 10, null, null}, "
+        + "{null, null, 15, Marketing}, {Theodore, 20, 20, Sales}, "
+        + "{Sebastian, 20, 20, Sales}, {Joe, 30, null, null}]";
+    assertThat(join.toList().toString(), equalTo(expected));
+    // Enumerate again, to check that the enumerator resets its state
+    assertThat(join.toList().toString(), equalTo(expected));
+    assertThat(
+        EnumerableDefaults.mergeJoin(EMPS.take(0), SORTED_DEPTS, EMP_DEPTNO,
+            DEPT_DEPTNO, EMP_DEPT_TO_STRING, true, true).toList().toString(),
+        equalTo("[{null, null, 15, Marketing}, {null, null, 20, Sales}]"));
+  }
+
+  /** Tests that a null key matches nothing, wherever it occurs in the
+   * input. */
+  @Test public void testMergeFullJoinNullKeys() {
+    final Enumerable<String> join =
+        EnumerableDefaults.mergeJoin(
+            Linq4j.asEnumerable(Arrays.asList(null, 1, 2, 2, null, 4)),
+            Linq4j.asEnumerable(Arrays.asList(1, null, 2, 3, null)),
+            Functions.<Integer>identitySelector(),
+            Functions.<Integer>identitySelector(),
+            new Function2<Integer, Integer, String>() {
+              public String apply(Integer v0, Integer v1) {
+                return v0 + "-" + v1;
+              }
+            }, true, true);
+    assertThat(join.toList().toString(),
+        equalTo("[null-null, 1-1, null-null, 2-2, 2-2, null-null, null-3,"
+            + " null-null, 4-null]"));
+  }
+
+  @Test public void testMergeSemiJoin() {
+    final List<Integer> lefts = Arrays.asList(null, 1, 1, 2, 3, 3, 5, null);
+    final List<Integer> rights = Arrays.asList(null, 1, 3, 3, 4, null);
+    assertThat(
+        EnumerableDefaults.mergeSemiJoin(Linq4j.asEnumerable(lefts),
+            Linq4j.asEnumerable(rights),
+            Functions.<Integer>identitySelector(),
+            Functions.<Integer>identitySelector()).toList().toString(),
+        equalTo("[1, 1, 3, 3]"));
+    assertThat(
+        EnumerableDefaults.mergeAntiJoin(Linq4j.asEnumerable(lefts),
+            Linq4j.asEnumerable(rights),
+            Functions.<Integer>identitySelector(),
+            Functions.<Integer>identitySelector()).toList().toString(),
+        equalTo("[null, 2, 5, null]"));
+    assertThat(
+        EnumerableDefaults.mergeAntiJoin(Linq4j.asEnumerable(lefts),
+            Linq4j.asEnumerable(Collections.<Integer>emptyList()),
+            Functions.<Integer>identitySelector(),
+            Functions.<Integer>identitySelector()).count(),
+        equalTo(lefts.size()));
+  }
+
   @Test public void testThetaJoin() {
     assertThat(
         EnumerableDefaults.thetaJoin(EMPS, DEPTS, EQUAL_DEPTNO,
@@ -239,6 +335,62 @@ public T apply(T v0, T v1) {
         equalTo("[]"));
   }
 
+  /** Tests that a runtime filter accepts every key it was built from, and
+   * rejects nulls, keys out of range, and most other keys. */
+  @Test public void testRuntimeFilter() {
+    final List<Object> keys = new ArrayList<>();
+    for (int i = 0; i < 1000; i += 2) {
+      keys.add(i);
+    }
+    keys.add(null);
+    final RuntimeFilter filter = RuntimeFilter.create(keys);
+    assertThat(filter.getMin(), equalTo((Comparable) 0));
+    assertThat(filter.getMax(), equalTo((Comparable) 998));
+    for (int i = 0; i < 1000; i += 2) {
+      assertThat(filter.mightContain(i), is(true));
+    }
+    assertThat(filter.mightContain(null), is(false));
+    assertThat(filter.mightContain(-1), is(false));
+    assertThat(filter.mightContain(1000), is(false));
+    int falsePositiveCount = 0;
+    for (int i = 1; i < 1000; i += 2) {
+      if (filter.mightContain(i)) {
+        ++falsePositiveCount;
+      }
+    }
+    assertThat(falsePositiveCount < 50, is(true));
+
+    final RuntimeFilter empty =
+        RuntimeFilter.create(Collections.<Object>emptyList());
+    assertThat(empty.mightContain(0), is(false));
+  }
+
+  /** Tests that a filter published by the build input of a join is applied
+   * to the probe input, if the build input is read first. */
+  @Test public void testPublishRuntimeFilter() {
+    final Function1<Emp, Object> empDeptno =
+        new Function1<Emp, Object>() {
+          public Object apply(Emp e) {
+            return e.deptno;
+          }
+        };
+    final Function1<Dept, Object> deptDeptno =
+        new Function1<Dept, Object>() {
+          public Object apply(Dept d) {
+            return d.deptno;
+          }
+        };
+    final RuntimeFilter.Slot slot = new RuntimeFilter.Slot(0);
+    final Enumerable<Emp> emps =
+        Enumerables.applyRuntimeFilter(EMPS, empDeptno, slot);
+    assertThat(emps.count(), equalTo(4));
+    assertThat(
+        Enumerables.publishRuntimeFilter(DEPTS, deptDeptno, slot).count(),
+        equalTo(2));
+    assertThat(emps.toList().toString(),
+        equalTo("[Emp(20, Theodore), Emp(20, Sebastian)]"));
+  }
+
   /** Employee record. */
   private static class Emp {
     final int deptno;
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.function.Function2;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link org.apache.calcite.runtime.SegmentTree}.
+ */
+public class SegmentTreeTest {
+  @Test public void testMinMax() {
+    final Object[] values = {5, 3, null, 8, 1, null, 9, 4};
+    final SegmentTree min = new SegmentTree(values, SegmentTree.min());
+    final SegmentTree max = new SegmentTree(values, SegmentTree.max());
+    assertThat(min.query(0, 7), is((Object) 1));
+    assertThat(max.query(0, 7), is((Object) 9));
+    assertThat(min.query(0, 1), is((Object) 3));
+    assertThat(max.query(1, 3), is((Object) 8));
+    assertThat(min.query(5, 7), is((Object) 4));
+    assertThat(min.query(2, 2), nullValue());
+    assertThat(min.query(5, 5), nullValue());
+    assertThat(min.query(3, 2), nullValue());
+    assertThat(min.query(-1, -1), nullValue());
+  }
+
+  @Test public void testEmpty() {
+    final SegmentTree tree = new SegmentTree(new Object[0], SegmentTree.min());
+    assertThat(tree.query(0, -1), nullValue());
+  }
+
+  /** Tests that the combiner is applied to values in order, by
+   * concatenating strings, which is associative but not commutative. */
+  @Test public void testRandom() {
+    final Function2<Object, Object, Object> concat =
+        new Function2<Object, Object, Object>() {
+          public Object apply(Object v0, Object v1) {
+            return (String) v0 + v1;
+          }
+        };
+    final Random random = new Random(0);
+    for (int size = 1; size < 40; size++) {
+      final Object[] values = new Object[size];
+      for (int i = 0; i < size; i++) {
+        values[i] = random.nextInt(4) == 0 ? null : "" + (char) ('a' + i);
+      }
+      final SegmentTree tree = new SegmentTree(values, concat);
+      for (int start = 0; start < size; start++) {
+        for (int end = start; end < size; end++) {
+          final StringBuilder buf = new StringBuilder();
+          for (int i = start; i <= end; i++) {
+            if (values[i] != null) {
+              buf.append(values[i]);
+            }
+          }
+          assertThat(tree.query(start, end),
+              buf.length() == 0 ? nullValue() : is((Object) buf.toString()));
+        }
+      }
+    }
+  }
+}
+
+// End SegmentTreeTest.java
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.test;
 
+import org.apache.calcite.adapter.batch.BatchTest;
 import org.apache.calcite.adapter.clone.ArrayTableTest;
 import org.apache.calcite.jdbc.CalciteRemoteDriverTest;
 import org.apache.calcite.plan.RelOptPlanReaderTest;
@@ -37,6 +38,7 @@
 import org.apache.calcite.rex.RexExecutorTest;
 import org.apache.calcite.runtime.BinarySearchTest;
 import org.apache.calcite.runtime.EnumerablesTest;
+import org.apache.calcite.runtime.SegmentTreeTest;
 import org.apache.calcite.sql.SqlSetOptionOperatorTest;
 import org.apache.calcite.sql.parser.SqlParserTest;
 import org.apache.calcite.sql.parser.SqlUnParserTest;
@@ -48,7 +50,13 @@
 import org.apache.calcite.sql.type.SqlTypeFactoryTest;
 import org.apache.calcite.sql.validate.LexCaseSensitiveTest;
 import org.apache.calcite.sql.validate.SqlValidatorUtilTest;
+import org.apache.calcite.test.enumerable.EnumerableAggregateTest;
+import org.apache.calcite.test.enumerable.EnumerableCalcTest;
 import org.apache.calcite.test.enumerable.EnumerableCorrelateTest;
+import org.apache.calcite.test.enumerable.EnumerableExchangeTest;
+import org.apache.calcite.test.enumerable.EnumerableJoinTest;
+import org.apache.calcite.test.enumerable.EnumerableLimitSortTest;
+import org.apache.calcite.test.enumerable.EnumerableSortTest;
 import org.apache.calcite.tools.FrameworksTest;
 import org.apache.calcite.tools.PlannerTest;
 import org.apache.calcite.util.BitSetsTest;
@@ -108,6 +116,7 @@
     RexTransformerTest.class,
     BinarySearchTest.class,
     EnumerablesTest.class,
+    SegmentTreeTest.class,
     ExceptionMessageTest.class,
     InduceGroupingTypeTest.class,
     RelOptPlanReaderTest.class,
@@ -137,7 +146,14 @@
     SqlOperatorTest.class,
     ChunkListTest.class,
     FrameworksTest.class,
+    EnumerableAggregateTest.class,
+    EnumerableCalcTest.class,
     EnumerableCorrelateTest.class,
+    EnumerableExchangeTest.class,
+    EnumerableJoinTest.class,
+    EnumerableLimitSortTest.class,
+    EnumerableSortTest.class,
+    BatchTest.class,
     LookupOperatorOverloadsTest.class,
     LexCaseSensitiveTest.class,
     CollationConversionTest.class,
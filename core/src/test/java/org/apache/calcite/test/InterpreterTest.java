@@ -19,6 +19,7 @@
 import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.interpreter.Interpreter;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.schema.SchemaPlus;
@@ -37,14 +38,28 @@
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * Unit tests for {@link org.apache.calcite.interpreter.Interpreter}.
  */
 public class InterpreterTest {
+  /** WITH clause that defines a table of departments, for join tests. */
+  private static final String WITH_DEPTS =
+      "with depts (\"deptno\", \"floor\") as\n"
+      + "  (values (10, 1), (30, 3), (40, 4))\n";
+
+  /** Query that filters and projects more rows than fit in one batch. */
+  private static final String BATCHES_SQL =
+      "select count(*), sum(y), min(y), max(y)\n"
+      + "from (select x * 2 as y from " + values(200) + " as t(x)\n"
+      + "  where mod(x, 3) = 0)";
+
   private SchemaPlus rootSchema;
   private Planner planner;
   private MyDataContext dataContext;
@@ -266,6 +281,176 @@ private static void assertRows(Interpreter interpreter,
     final Interpreter interpreter = new Interpreter(dataContext, convert);
     assertRows(interpreter, "[0]", "[10]", "[20]", "[30]");
   }
+
+  /** Tests executing a plan with an equi-join using an interpreter. */
+  @Test public void testInterpretJoin() throws Exception {
+    final String sql = WITH_DEPTS
+        + "select e.\"name\", d.\"floor\"\n"
+        + "from \"emps\" as e\n"
+        + "join depts as d on e.\"deptno\" = d.\"deptno\"";
+    assertRowsUnordered(interpret(sql),
+        "[Bill, 1]", "[Sebastian, 1]", "[Theodore, 1]");
+  }
+
+  /** Tests an equi-join whose condition also has a non-equi part. */
+  @Test public void testInterpretJoinRemainingCondition() throws Exception {
+    final String sql = WITH_DEPTS
+        + "select e.\"name\", d.\"floor\"\n"
+        + "from \"emps\" as e\n"
+        + "join depts as d\n"
+        + "on e.\"deptno\" = d.\"deptno\" and e.\"empid\" < 150";
+    assertRowsUnordered(interpret(sql), "[Bill, 1]", "[Theodore, 1]");
+  }
+
+  /** Tests a join whose condition has no equi-join keys. */
+  @Test public void testInterpretThetaJoin() throws Exception {
+    final String sql = WITH_DEPTS
+        + "select e.\"name\", d.\"floor\"\n"
+        + "from \"emps\" as e\n"
+        + "join depts as d on e.\"deptno\" > d.\"deptno\"";
+    assertRows(interpret(sql), "[Eric, 1]");
+  }
+
+  @Test public void testInterpretLeftJoin() throws Exception {
+    final String sql = WITH_DEPTS
+        + "select e.\"name\", d.\"floor\"\n"
+        + "from \"emps\" as e\n"
+        + "left join depts as d on e.\"deptno\" = d.\"deptno\"";
+    assertRowsUnordered(interpret(sql),
+        "[Bill, 1]", "[Eric, null]", "[Sebastian, 1]",
+        "[Theodore, 1]");
+  }
+
+  @Test public void testInterpretRightJoin() throws Exception {
+    final String sql = WITH_DEPTS
+        + "select e.\"name\", d.\"floor\"\n"
+        + "from \"emps\" as e\n"
+        + "right join depts as d\n"
+        + "on e.\"deptno\" = d.\"deptno\" and e.\"empid\" < 150";
+    assertRowsUnordered(interpret(sql),
+        "[Bill, 1]", "[Theodore, 1]", "[null, 3]",
+        "[null, 4]");
+  }
+
+  @Test public void testInterpretFullJoin() throws Exception {
+    final String sql = WITH_DEPTS
+        + "select e.\"name\", d.\"floor\"\n"
+        + "from \"emps\" as e\n"
+        + "full join depts as d on e.\"deptno\" = d.\"deptno\"";
+    assertRowsUnordered(interpret(sql),
+        "[Bill, 1]", "[Eric, null]", "[Sebastian, 1]",
+        "[Theodore, 1]", "[null, 3]", "[null, 4]");
+  }
+
+  /** Tests a sort with a fetch over enough rows that the interpreter
+   * discards rows that cannot be in the result before it has read all of
+   * its input. */
+  @Test public void testInterpretOrderFetch() throws Exception {
+    final StringBuilder sql = new StringBuilder("select x from (values ");
+    for (int i = 0; i < 50; i++) {
+      sql.append(i == 0 ? "" : ", ").append("(").append(i * 7 % 50)
+          .append(")");
+    }
+    sql.append(") as t(x)\n")
+        .append("order by x desc offset 2 rows fetch next 3 rows only");
+    assertRows(interpret(sql.toString()), "[47]", "[46]", "[45]");
+  }
+
+  @Test public void testAggregateSumMinMax() throws Exception {
+    final String sql = "select \"deptno\", sum(\"empid\"),\n"
+        + "  sum(\"commission\"), min(\"name\"), max(\"empid\")\n"
+        + "from \"emps\" group by \"deptno\"";
+    assertRowsUnordered(interpret(sql),
+        "[10, 360, 1250, Bill, 150]",
+        "[20, 200, 500, Eric, 200]");
+  }
+
+  /** Tests that an aggregate with no GROUP BY returns a row even if its
+   * input is empty. */
+  @Test public void testAggregateEmpty() throws Exception {
+    final String sql = "select count(*), sum(\"empid\")\n"
+        + "from \"emps\" where \"empid\" < 0";
+    assertRows(interpret(sql), "[0, null]");
+  }
+
+  /** Tests a join, aggregate and sort in a pipelined interpreter. */
+  @Test public void testInterpretPipelined() throws Exception {
+    final String sql = WITH_DEPTS
+        + "select d.\"floor\", count(*) as c\n"
+        + "from \"emps\" as e\n"
+        + "join depts as d on e.\"deptno\" = d.\"deptno\"\n"
+        + "group by d.\"floor\"\n"
+        + "order by 1";
+    assertRows(interpret(sql, true), "[1, 3]");
+  }
+
+  /** Tests a pipelined interpreter whose nodes produce more rows than the
+   * queues between them can hold. */
+  @Test public void testInterpretPipelinedLarge() throws Exception {
+    final String sql = "select count(*), min(x * 100 + y)\n"
+        + "from " + values(50) + " as t1(x)\n"
+        + "join " + values(50) + " as t2(y) on x < y";
+    assertRows(interpret(sql, true), "[1225, 1]");
+  }
+
+  /** Tests that closing a pipelined interpreter before it has returned all
+   * of its rows stops its threads, even those waiting for a full queue. */
+  @Test(timeout = 20_000)
+  public void testInterpretPipelinedClose() throws Exception {
+    final String sql = "select x, y\n"
+        + "from " + values(50) + " as t1(x)\n"
+        + "cross join " + values(50) + " as t2(y)";
+    final Interpreter interpreter = interpret(sql, true);
+    final Enumerator<Object[]> enumerator = interpreter.enumerator();
+    assertThat(enumerator.moveNext(), is(true));
+    enumerator.close();
+    interpreter.close();
+    assertThat(interpreter.awaitTermination(10, TimeUnit.SECONDS), is(true));
+  }
+
+  /** Tests that an error in a node of a pipelined interpreter is thrown to
+   * the reader of its results. */
+  @Test public void testInterpretPipelinedError() throws Exception {
+    final String sql = "select 10 / (x - 2) from (values 1, 2, 3) as t(x)";
+    try {
+      final List<Object[]> rows = interpret(sql, true).toList();
+      fail("expected error, got " + rows.size() + " rows");
+    } catch (ArithmeticException e) {
+      assertThat(e.getMessage(), is("/ by zero"));
+    }
+  }
+
+  /** Tests a filter and project over more rows than fit in one batch. */
+  @Test public void testInterpretBatches() throws Exception {
+    assertRows(interpret(BATCHES_SQL, false), "[67, 13266, 0, 396]");
+  }
+
+  /** As {@link #testInterpretBatches()}, but in pipelined mode, where
+   * batches cross thread boundaries. */
+  @Test public void testInterpretBatchesPipelined() throws Exception {
+    assertRows(interpret(BATCHES_SQL, true), "[67, 13266, 0, 396]");
+  }
+
+  /** Returns a VALUES clause with the integers from 0 to n - 1. */
+  private static String values(int n) {
+    final StringBuilder buf = new StringBuilder("(values ");
+    for (int i = 0; i < n; i++) {
+      buf.append(i == 0 ? "" : ", ").append(i);
+    }
+    return buf.append(")").toString();
+  }
+
+  private Interpreter interpret(String sql) throws Exception {
+    return interpret(sql, false);
+  }
+
+  private Interpreter interpret(String sql, boolean pipelined)
+      throws Exception {
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).project();
+    return new Interpreter(dataContext, convert, pipelined);
+  }
 }
 
 // End InterpreterTest.java
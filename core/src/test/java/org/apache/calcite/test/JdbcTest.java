@@ -42,6 +42,8 @@
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.Queryable;
 import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.tree.ClassDeclaration;
+import org.apache.calcite.linq4j.tree.Expressions;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelOptTable;
@@ -96,6 +98,7 @@
 import org.apache.calcite.util.Util;
 
 import com.google.common.base.Function;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
@@ -139,6 +142,7 @@
 import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import javax.sql.DataSource;
 
@@ -967,6 +971,192 @@ private void checkResultSetMetaData(Connection connection, String sql)
         .returns("EXPR$0=1\n");
   }
 
+  /** Tests that a query that generates the same code as a previous query
+   * reuses the class that was compiled for it.
+   *
+   * <p>The cache is shared by all queries in the JVM, and other tests run in
+   * parallel, so the query contains a literal that no other query uses, and
+   * the test counts only compilations of code that contains it. */
+  @Test public void testBindableCache() {
+    final String tag = "testBindableCache" + System.nanoTime();
+    final AtomicInteger compileCount = new AtomicInteger();
+    final CalciteAssert.AssertQuery query = CalciteAssert.hr()
+        .query("select \"empid\" from \"hr\".\"emps\"\n"
+            + "where \"deptno\" = 10 and \"name\" <> '" + tag + "'")
+        .withHook(Hook.BINDABLE_COMPILE,
+            new Function<ClassDeclaration, Void>() {
+              public Void apply(ClassDeclaration expr) {
+                if (Expressions.toString(expr).contains(tag)) {
+                  compileCount.incrementAndGet();
+                }
+                return null;
+              }
+            });
+    query.returnsUnordered("empid=100", "empid=110", "empid=150");
+    assertThat(compileCount.get(), is(1));
+    query.returnsUnordered("empid=100", "empid=110", "empid=150");
+    assertThat(compileCount.get(), is(1));
+  }
+
+  /** Tests that queries compiled by the bytecode compiler return the same
+   * results as queries compiled from Java source code by Janino, and that
+   * the bytecode compiler does not fall back to Janino. */
+  @Test public void testBytecodeCompiler() {
+    final String[] sqls = {
+        // CASE
+        "select \"empid\",\n"
+            + " case when \"salary\" > 9000 then 'high'\n"
+            + "   when \"commission\" is null then 'none'\n"
+            + "   else 'low' end as c\n"
+            + "from \"hr\".\"emps\"\n"
+            + "order by \"empid\"",
+        // nulls
+        "select \"empid\", coalesce(\"commission\", -1) as c,\n"
+            + " nullif(\"deptno\", 10) as d, \"commission\" + 1 as e,\n"
+            + " \"commission\" is not null as f\n"
+            + "from \"hr\".\"emps\"\n"
+            + "order by \"empid\"",
+        // DECIMAL
+        "select \"empid\", cast(\"salary\" as decimal(10, 2)) * 1.5 as s,\n"
+            + " cast(\"commission\" as decimal(6, 1)) / 3 as c\n"
+            + "from \"hr\".\"emps\"\n"
+            + "order by \"empid\"",
+        // strings
+        "select \"empid\", upper(\"name\") as u,\n"
+            + " substring(\"name\" from 2 for 3) as s,\n"
+            + " \"name\" || '-' || cast(\"deptno\" as varchar(3)) as c,\n"
+            + " char_length(\"name\") as l, \"name\" like '%o%' as b\n"
+            + "from \"hr\".\"emps\"\n"
+            + "order by \"empid\"",
+        // correlated sub-query
+        "select \"empid\", \"name\" from \"hr\".\"emps\"\n"
+            + "where exists (\n"
+            + "  select 1 from \"hr\".\"depts\"\n"
+            + "  where \"emps\".\"deptno\" = \"depts\".\"deptno\")\n"
+            + "order by \"empid\""};
+    for (String sql : sqls) {
+      final List<String> fallbacks = new ArrayList<>();
+      final String expected = checkCompilerBackend(sql, "janino", fallbacks);
+      final String actual = checkCompilerBackend(sql, "bytecode", fallbacks);
+      assertThat(expected.isEmpty(), is(false));
+      assertThat(sql, actual, is(expected));
+      assertThat(sql, fallbacks, is(Collections.<String>emptyList()));
+    }
+  }
+
+  /** Executes a query using a given compiler back-end, and returns its
+   * results as a string. Adds to {@code fallbacks} the reason each time the
+   * bytecode compiler falls back to Janino. */
+  private String checkCompilerBackend(String sql, String backend,
+      final List<String> fallbacks) {
+    final StringBuilder buf = new StringBuilder();
+    CalciteAssert.hr()
+        .with("forceDecorrelate", false)
+        .query(sql)
+        .withProperty(Hook.COMPILER_BACKEND, backend)
+        .withHook(Hook.COMPILER_FALLBACK,
+            new Function<String, Void>() {
+              public Void apply(String reason) {
+                fallbacks.add(reason);
+                return null;
+              }
+            })
+        .returns(
+            new Function<ResultSet, Void>() {
+              public Void apply(ResultSet resultSet) {
+                try {
+                  buf.append(CalciteAssert.toString(resultSet));
+                } catch (SQLException e) {
+                  throw new RuntimeException(e);
+                }
+                return null;
+              }
+            });
+    return buf.toString();
+  }
+
+  /** Tests that a statement that has been prepared before is retrieved from
+   * the plan cache, until a schema changes. */
+  @Test public void testPlanCache() throws Exception {
+    final Properties info = new Properties();
+    info.setProperty("planCache", "true");
+    try (Connection connection =
+             DriverManager.getConnection("jdbc:calcite:", info)) {
+      final CalciteConnection calciteConnection =
+          connection.unwrap(CalciteConnection.class);
+      final SchemaPlus rootSchema = calciteConnection.getRootSchema();
+      rootSchema.add("hr", new ReflectiveSchema(new HrSchema()));
+      final String sql = "select \"empid\" from \"hr\".\"emps\"\n"
+          + "where \"deptno\" = ? and \"name\" <> 'testPlanCache'";
+      final CacheStats stats = CalcitePrepareImpl.planCacheStats();
+      checkPlanCache(connection, sql);
+      checkPlanCache(connection, sql);
+      final CacheStats stats2 = CalcitePrepareImpl.planCacheStats();
+      assertThat(stats2.hitCount(), is(stats.hitCount() + 1));
+      assertThat(stats2.missCount(), is(stats.missCount() + 1));
+
+      // After the schema changes, the statement is prepared again
+      rootSchema.add("hr2", new ReflectiveSchema(new HrSchema()));
+      checkPlanCache(connection, sql);
+      checkPlanCache(connection, sql);
+      final CacheStats stats3 = CalcitePrepareImpl.planCacheStats();
+      assertThat(stats3.hitCount(), is(stats2.hitCount() + 1));
+      assertThat(stats3.missCount(), is(stats2.missCount() + 1));
+    }
+  }
+
+  /** Tests that connections whose schemas contain the same objects share
+   * statements in the plan cache, and connections whose schemas contain
+   * different objects do not. */
+  @Test public void testPlanCacheSharedByConnections() throws Exception {
+    final Schema hr = new ReflectiveSchema(new HrSchema());
+    final String sql = "select \"empid\" from \"hr\".\"emps\"\n"
+        + "where \"deptno\" = ? and \"name\" <> '"
+        + "testPlanCacheSharedByConnections" + System.nanoTime() + "'";
+    final AtomicInteger parseCount = new AtomicInteger();
+    try (Hook.Closeable ignore = Hook.PARSE_TREE.addThread(
+        new Function<Object[], Void>() {
+          public Void apply(Object[] args) {
+            if (sql.equals(args[0])) {
+              parseCount.incrementAndGet();
+            }
+            return null;
+          }
+        })) {
+      checkPlanCache(hr, sql);
+      assertThat(parseCount.get(), is(1));
+      checkPlanCache(hr, sql);
+      assertThat(parseCount.get(), is(1));
+
+      // A connection whose schema has a different object prepares the
+      // statement again
+      checkPlanCache(new ReflectiveSchema(new HrSchema()), sql);
+      assertThat(parseCount.get(), is(2));
+    }
+  }
+
+  /** Creates a connection that uses the plan cache and whose root schema
+   * contains a given schema "hr", and executes a query in it. */
+  private void checkPlanCache(Schema hr, String sql) throws SQLException {
+    final Properties info = new Properties();
+    info.setProperty("planCache", "true");
+    try (Connection connection =
+             DriverManager.getConnection("jdbc:calcite:", info)) {
+      connection.unwrap(CalciteConnection.class).getRootSchema()
+          .add("hr", hr);
+      checkPlanCache(connection, sql);
+    }
+  }
+
+  private void checkPlanCache(Connection connection, String sql)
+      throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setInt(1, 10);
+      assertThat(statement.executeQuery(),
+          Matchers.returnsUnordered("empid=100", "empid=110", "empid=150"));
+    }
+  }
+
   /** Tests accessing columns by name. */
   @Test public void testGetByName() throws Exception {
     // JDBC 3.0 specification: "Column names supplied to getter methods are case
@@ -3582,6 +3772,9 @@ public Void apply(ResultSet resultSet) {
    * {@link org.apache.calcite.adapter.enumerable.JavaRowFormat#SCALAR} inputs.
    * Window aggregates use temporary buffers, thus need to check if
    * primitives are properly boxed and un-boxed.
+   *
+   * <p>The lower bound of the frame does not move, so MIN is computed using
+   * an accumulator; see {@link #testWinAggScalarNonNullPhysTypeSliding()}.
    */
   @Test public void testWinAggScalarNonNullPhysType() {
     String planLine =
@@ -3592,15 +3785,16 @@ public Void apply(ResultSet resultSet) {
     CalciteAssert.hr()
         .query("select min(\"salary\"+1) over w as m\n"
             + "from \"hr\".\"emps\"\n"
-            + "window w as (order by \"salary\"+1 rows 1 preceding)\n")
+            + "window w as (order by \"salary\"+1\n"
+            + "  rows between unbounded preceding and 1 preceding)\n")
         .typeIs(
             "[M REAL]")
         .planContains(planLine)
         .returnsUnordered(
+            "M=null",
             "M=7001.0",
             "M=7001.0",
-            "M=8001.0",
-            "M=10001.0");
+            "M=7001.0");
   }
 
   /**
@@ -3614,6 +3808,46 @@ public Void apply(ResultSet resultSet) {
     if (CalcitePrepareImpl.DEBUG) {
       planLine = planLine.replaceAll("a0s0w0", "MINa0s0w0");
     }
+    CalciteAssert.hr()
+        .query("select 1+min(\"salary\"+1) over w as m\n"
+            + "from \"hr\".\"emps\"\n"
+            + "window w as (order by \"salary\"+1\n"
+            + "  rows between unbounded preceding and 1 preceding)\n")
+        .typeIs(
+            "[M REAL]")
+        .planContains(planLine)
+        .returnsUnordered(
+            "M=null",
+            "M=7002.0",
+            "M=7002.0",
+            "M=7002.0");
+  }
+
+  /** As {@link #testWinAggScalarNonNullPhysType()}, but the frame slides, so
+   * MIN is evaluated using a segment tree whose values are read from the
+   * scalar rows. */
+  @Test public void testWinAggScalarNonNullPhysTypeSliding() {
+    final String planLine =
+        "_values[k] = Float.valueOf(org.apache.calcite.runtime.SqlFunctions.toFloat(_rows[k]));";
+    CalciteAssert.hr()
+        .query("select min(\"salary\"+1) over w as m\n"
+            + "from \"hr\".\"emps\"\n"
+            + "window w as (order by \"salary\"+1 rows 1 preceding)\n")
+        .typeIs(
+            "[M REAL]")
+        .planContains(planLine)
+        .returnsUnordered(
+            "M=7001.0",
+            "M=7001.0",
+            "M=8001.0",
+            "M=10001.0");
+  }
+
+  /** As {@link #testWinAggScalarNonNullPhysTypePlusOne()}, but the frame
+   * slides, so MIN is evaluated using a segment tree. */
+  @Test public void testWinAggScalarNonNullPhysTypePlusOneSliding() {
+    final String planLine =
+        "_values[k] = Float.valueOf(org.apache.calcite.runtime.SqlFunctions.toFloat(_rows[k]));";
     CalciteAssert.hr()
         .query("select 1+min(\"salary\"+1) over w as m\n"
             + "from \"hr\".\"emps\"\n"
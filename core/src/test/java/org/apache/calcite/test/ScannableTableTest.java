@@ -27,8 +27,11 @@
 import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.runtime.RuntimeFilter;
 import org.apache.calcite.schema.FilterableTable;
 import org.apache.calcite.schema.ProjectableFilterableTable;
+import org.apache.calcite.schema.RuntimeFilterableTable;
 import org.apache.calcite.schema.ScannableTable;
 import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaPlus;
@@ -39,6 +42,7 @@
 import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.test.CalciteAssert.ConnectionPostProcessor;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableMap;
 
 import org.junit.Assert;
@@ -55,6 +59,9 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -342,6 +349,37 @@ private static Integer getFilter(boolean cooperative, List<RexNode> filters) {
     assertThat(buf.toString(), is("returnCount=4"));
   }
 
+  /** A join whose larger input is a table that uses the runtime filter that
+   * the join builds from the keys of its smaller input to skip rows. */
+  @Test public void testRuntimeFilterableTable() throws Exception {
+    final StringBuilder buf = new StringBuilder();
+    final Table table = new BeatlesRuntimeFilterableTable(buf);
+    CalciteAssert.that()
+        .with(newSchema("s", "beatles", table))
+        .query("select b.\"j\" from \"s\".\"beatles\" as b\n"
+            + "join (values (5), (6)) as t (x) on b.\"i\" = t.x")
+        .returnsUnordered("j=George",
+            "j=Ringo");
+    // Only 2 rows came out of the table. If the value is 4, it means that the
+    // runtime filter was not passed to the table.
+    assertThat(buf.toString(),
+        is("returnCount=2, projects=[0, 1], runtimeFilter=[5, 6]"));
+  }
+
+  /** As {@link #testRuntimeFilterableTable()}, but the table does not apply
+   * runtime filters, so Calcite applies the filter to the rows it returns. */
+  @Test public void testRuntimeFilterNonCooperative() throws Exception {
+    final StringBuilder buf = new StringBuilder();
+    final Table table = new BeatlesProjectableFilterableTable(buf, true);
+    CalciteAssert.that()
+        .with(newSchema("s", "beatles", table))
+        .query("select b.\"j\" from \"s\".\"beatles\" as b\n"
+            + "join (values (5), (6)) as t (x) on b.\"i\" = t.x")
+        .returnsUnordered("j=George",
+            "j=Ringo");
+    assertThat(buf.toString(), is("returnCount=4, projects=[0, 1]"));
+  }
+
   /** Test case for
    * <a href="https://issues.apache.org/jira/browse/CALCITE-1031">[CALCITE-1031]
    * In prepared statement, CsvScannableTable.scan is called twice</a>. */
@@ -412,6 +450,86 @@ public Enumerator<Object[]> enumerator() {
     }
   }
 
+  /** Tests tiered execution, where a statement is interpreted until the code
+   * generated for it has compiled. Holds up compilation until the statement
+   * has been executed a few times, to ensure that the interpreter is used.
+   *
+   * <p>The hook is global, and other tests compile code in parallel, so the
+   * query contains a literal that is unique to this run of this test, and
+   * the hook ignores code that does not contain it. Because the literal is
+   * unique, the code is not already in the cache of compiled classes if the
+   * test is run again in the same JVM. */
+  @Test public void testTieredExecution() throws Exception {
+    final String tag = "testTieredExecution" + System.nanoTime();
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicInteger compileCount = new AtomicInteger();
+    final AtomicBoolean timedOut = new AtomicBoolean();
+    final Properties properties = new Properties();
+    properties.setProperty("tieredExecution", "true");
+    try (final Connection connection =
+             DriverManager.getConnection("jdbc:calcite:", properties);
+         Hook.Closeable hook = Hook.TIERED_COMPILE.add(
+             new Function<String, Void>() {
+               public Void apply(String code) {
+                 if (!code.contains(tag)) {
+                   return null;
+                 }
+                 compileCount.incrementAndGet();
+                 try {
+                   if (!latch.await(10, TimeUnit.SECONDS)) {
+                     timedOut.set(true);
+                   }
+                 } catch (InterruptedException e) {
+                   throw new RuntimeException(e);
+                 }
+                 return null;
+               }
+             })) {
+      final CalciteConnection calciteConnection = connection.unwrap(
+          CalciteConnection.class);
+      final SchemaPlus schema =
+          calciteConnection.getRootSchema().add("s", new AbstractSchema());
+      schema.add("tens", new SimpleTable());
+      final String sql = "select \"i\", '" + tag + "' as \"t\"\n"
+          + "from \"s\".\"tens\"\n"
+          + "where \"i\" < ? order by \"i\" desc";
+      final PreparedStatement statement =
+          calciteConnection.prepareStatement(sql);
+
+      // Interpreted, because the code has not compiled
+      for (int i = 0; i < 3; i++) {
+        statement.setInt(1, 20);
+        assertThat(statement.executeQuery(),
+            Matchers.returnsUnordered("i=10; t=" + tag, "i=0; t=" + tag));
+      }
+
+      // Compiled, or interpreted until compilation finishes
+      latch.countDown();
+      for (int i = 0; i < 3; i++) {
+        statement.setInt(1, 40);
+        assertThat(statement.executeQuery(),
+            Matchers.returnsUnordered("i=30; t=" + tag, "i=20; t=" + tag,
+                "i=10; t=" + tag, "i=0; t=" + tag));
+      }
+      assertThat(compileCount.get(), is(1));
+      assertThat(timedOut.get(), is(false));
+    }
+  }
+
+  /** Tests tiered execution of an aggregate query over a table with two
+   * columns. */
+  @Test public void testTieredExecutionAggregate() throws Exception {
+    CalciteAssert.that()
+        .with("tieredExecution", true)
+        .with(newSchema("s", "beatles", new BeatlesTable()))
+        .query("select \"i\", count(*) as c, min(\"j\") as j\n"
+            + "from \"s\".\"beatles\"\n"
+            + "group by \"i\"")
+        .returnsUnordered("i=4; C=2; J=John",
+            "i=5; C=1; J=Ringo",
+            "i=6; C=1; J=George");
+  }
+
   protected ConnectionPostProcessor newSchema(final String schemaName,
       final String tableName, final Table table) {
     return new ConnectionPostProcessor() {
@@ -527,6 +645,30 @@ public Enumerator<Object[]> enumerator() {
     }
   }
 
+  /** Table that returns columns via the
+   * {@link ProjectableFilterableTable} interface, and skips rows using
+   * runtime filters. */
+  public static class BeatlesRuntimeFilterableTable
+      extends BeatlesProjectableFilterableTable
+      implements RuntimeFilterableTable {
+    private final StringBuilder buf;
+
+    public BeatlesRuntimeFilterableTable(StringBuilder buf) {
+      super(buf, true);
+      this.buf = buf;
+    }
+
+    public Enumerable<Object[]> scan(DataContext root, List<RexNode> filters,
+        final int[] projects, final List<RuntimeFilter.Slot> runtimeFilters) {
+      final Integer filter = getFilter(true, filters);
+      return new AbstractEnumerable<Object[]>() {
+        public Enumerator<Object[]> enumerator() {
+          return beatles(buf, filter, projects, runtimeFilters.get(0));
+        }
+      };
+    }
+  }
+
   private static Enumerator<Object[]> tens() {
     return new Enumerator<Object[]>() {
       int row = -1;
@@ -564,6 +706,13 @@ public void close() {
 
   private static Enumerator<Object[]> beatles(final StringBuilder buf,
       final Integer filter, final int[] projects) {
+    return beatles(buf, filter, projects, null);
+  }
+
+  private static Enumerator<Object[]> beatles(final StringBuilder buf,
+      final Integer filter, final int[] projects,
+      final RuntimeFilter.Slot slot) {
+    final RuntimeFilter runtimeFilter = slot == null ? null : slot.get();
     return new Enumerator<Object[]>() {
       int row = -1;
       int returnCount = 0;
@@ -576,7 +725,9 @@ public Object[] current() {
       public boolean moveNext() {
         while (++row < 4) {
           Object[] current = BEATLES[row % 4];
-          if (filter == null || filter.equals(current[0])) {
+          if ((filter == null || filter.equals(current[0]))
+              && (runtimeFilter == null
+                  || runtimeFilter.mightContain(current[slot.column]))) {
             if (projects == null) {
               this.current = current;
             } else {
@@ -606,6 +757,10 @@ public void close() {
         if (projects != null) {
           buf.append(", projects=").append(Arrays.toString(projects));
         }
+        if (runtimeFilter != null) {
+          buf.append(", runtimeFilter=[").append(runtimeFilter.getMin())
+              .append(", ").append(runtimeFilter.getMax()).append("]");
+        }
       }
     };
   }
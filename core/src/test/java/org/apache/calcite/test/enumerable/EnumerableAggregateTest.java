@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.test.enumerable;
+
+import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.config.CalciteConnectionProperty;
+import org.apache.calcite.test.CalciteAssert;
+import org.apache.calcite.test.JdbcTest;
+
+import org.junit.Test;
+
+/**
+ * Unit test for
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableAggregate}.
+ */
+public class EnumerableAggregateTest {
+  /** Tests an aggregate whose keys are primitive, and are therefore packed
+   * into a {@code long}. */
+  @Test public void hashAggregatePackedKeys() {
+    tester(0L)
+        .query("select deptno, empid, count(*) as c, sum(salary) as s\n"
+            + "from emps\n"
+            + "group by deptno, empid")
+        .planContains("EnumerableDefaults.hashAggregate(")
+        .planContains("protected long longKey(Object element)")
+        .returnsUnordered(
+            "deptno=10; empid=100; c=1; s=10000.0",
+            "deptno=10; empid=110; c=1; s=11500.0",
+            "deptno=10; empid=150; c=1; s=7000.0",
+            "deptno=20; empid=200; c=1; s=8000.0");
+  }
+
+  /** Tests an aggregate whose key is nullable, and is therefore held in the
+   * table as an object. */
+  @Test public void hashAggregateObjectKeys() {
+    tester(0L)
+        .query("select commission, min(name) as mi, max(deptno) as ma\n"
+            + "from emps\n"
+            + "group by commission")
+        .planContains("protected Object key(Object element)")
+        .returnsUnordered(
+            "commission=1000; mi=Bill; ma=10",
+            "commission=500; mi=Eric; ma=20",
+            "commission=null; mi=Sebastian; ma=10",
+            "commission=250; mi=Theodore; ma=10");
+  }
+
+  /** Tests an aggregate whose groups do not fit within the memory budget,
+   * and which therefore spills rows to disk. */
+  @Test public void hashAggregateSpill() {
+    tester(1L)
+        .query("select deptno, count(*) as c, sum(empid) as s\n"
+            + "from (select deptno, empid from emps where empid > 0)\n"
+            + "group by deptno")
+        .planContains("EnumerableDefaults.hashAggregate(")
+        .returnsUnordered(
+            "deptno=10; c=3; s=360",
+            "deptno=20; c=1; s=200");
+  }
+
+  /** Tests an aggregate whose input is sorted on the group keys, and which
+   * therefore streams its groups in order without a hash table. */
+  @Test public void sortedAggregate() {
+    tester(0L)
+        .query("select y, x, count(*) as c, sum(z) as s\n"
+            + "from (values (1, 'a', 10), (1, 'a', 20), (1, 'b', 30),\n"
+            + "  (2, 'a', 40), (3, 'c', 50), (3, 'c', 60)) as t(x, y, z)\n"
+            + "group by x, y")
+        .explainContains("EnumerableSortedAggregate(group=[{0, 1}]")
+        .planContains("EnumerableDefaults.sortedGroupBy(")
+        .returnsOrdered(
+            "y=a; x=1; c=2; s=30",
+            "y=b; x=1; c=1; s=30",
+            "y=a; x=2; c=1; s=40",
+            "y=c; x=3; c=2; s=110");
+  }
+
+  /** Tests that an aggregate whose input is sorted on only some of the group
+   * keys does not use a sorted aggregate. */
+  @Test public void sortedAggregateNotOnAllKeys() {
+    tester(0L)
+        .query("select deptno, empid, count(*) as c\n"
+            + "from (select * from emps order by deptno limit 10)\n"
+            + "group by deptno, empid")
+        .explainContains("EnumerableAggregate(group=[{0, 1}]")
+        .returnsUnordered(
+            "deptno=10; empid=100; c=1",
+            "deptno=10; empid=110; c=1",
+            "deptno=10; empid=150; c=1",
+            "deptno=20; empid=200; c=1");
+  }
+
+  /** Tests an aggregate that cannot use a hash aggregator, and whose two
+   * keys are held in instances of a generated class. */
+  @Test public void groupByCompositeKey() {
+    tester(0L)
+        .query("select deptno, name, collect(empid) as c\n"
+            + "from emps\n"
+            + "group by deptno, name")
+        .planContains("new Key2_")
+        .returnsUnordered(
+            "deptno=10; name=Bill; c=[100]",
+            "deptno=10; name=Sebastian; c=[150]",
+            "deptno=10; name=Theodore; c=[110]",
+            "deptno=20; name=Eric; c=[200]");
+  }
+
+  private CalciteAssert.AssertThat tester(long memoryBudget) {
+    return CalciteAssert.that()
+        .with("lex", "JAVA")
+        .with(CalciteConnectionProperty.MEMORY_BUDGET.camelName(),
+            Long.toString(memoryBudget))
+        .withSchema("s", new ReflectiveSchema(new JdbcTest.HrSchema()));
+  }
+}
+
+// End EnumerableAggregateTest.java
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.test.enumerable;
+
+import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.test.CalciteAssert;
+import org.apache.calcite.test.JdbcTest;
+
+import org.junit.Test;
+
+/**
+ * Unit test for
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableCalc}.
+ */
+public class EnumerableCalcTest {
+  /** Tests a projection so wide that the generated method that computes
+   * each row is split into several methods. */
+  @Test public void wideProjection() {
+    final StringBuilder sql = new StringBuilder("select ");
+    final StringBuilder row = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      sql.append(i == 0 ? "" : ", ")
+          .append("empid + ").append(i).append(" as c").append(i);
+      row.append(i == 0 ? "" : "; ")
+          .append("c").append(i).append("=").append(110 + i);
+    }
+    sql.append(" from emps where empid = 110");
+    tester()
+        .query(sql.toString())
+        .planContains(".apply(frame)")
+        .returns(row.append("\n").toString());
+  }
+
+  /** Tests an aggregate query with many aggregate functions, whose
+   * generated methods are split. */
+  @Test public void manyAggregateFunctions() {
+    final StringBuilder sql = new StringBuilder("select deptno");
+    final StringBuilder row10 = new StringBuilder("deptno=10");
+    final StringBuilder row20 = new StringBuilder("deptno=20");
+    for (int i = 0; i < 200; i++) {
+      sql.append(", sum(empid + ").append(i).append(") as s").append(i);
+      row10.append("; s").append(i).append("=").append(360 + 3 * i);
+      row20.append("; s").append(i).append("=").append(200 + i);
+    }
+    sql.append(" from emps group by deptno");
+    tester()
+        .query(sql.toString())
+        .planContains("frame")
+        .returnsUnordered(row10.toString(), row20.toString());
+  }
+
+  private CalciteAssert.AssertThat tester() {
+    return CalciteAssert.that()
+        .with("lex", "JAVA")
+        .withSchema("s", new ReflectiveSchema(new JdbcTest.HrSchema()));
+  }
+}
+
+// End EnumerableCalcTest.java
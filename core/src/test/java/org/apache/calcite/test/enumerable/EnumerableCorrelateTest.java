@@ -17,6 +17,7 @@
 package org.apache.calcite.test.enumerable;
 
 import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.config.CalciteConnectionProperty;
 import org.apache.calcite.test.CalciteAssert;
 import org.apache.calcite.test.JdbcTest;
 
@@ -61,6 +62,27 @@ public class EnumerableCorrelateTest {
             "empid=150; name=Sebastian");
   }
 
+  /** Tests that the correlate caches the rows of its right input for each
+   * value of the correlation variable, and gives the same results as without
+   * a cache. */
+  @Test public void correlateCache() {
+    final String sql = "select empid, name from emps e\n"
+        + "where exists (select 1 from depts d where d.deptno=e.deptno)";
+    final String[] rows = {
+        "empid=100; name=Bill",
+        "empid=110; name=Theodore",
+        "empid=150; name=Sebastian"};
+    tester(false, new JdbcTest.HrSchema())
+        .query(sql)
+        .planContains("EnumerableDefaults.correlateJoin(")
+        .returnsUnordered(rows);
+    tester(false, new JdbcTest.HrSchema())
+        .with(CalciteConnectionProperty.CORRELATE_CACHE_SIZE.camelName(), "0")
+        .query(sql)
+        .planContains("left.correlateJoin(")
+        .returnsUnordered(rows);
+  }
+
   private CalciteAssert.AssertThat tester(boolean forceDecorrelate,
       Object schema) {
     return CalciteAssert.that()
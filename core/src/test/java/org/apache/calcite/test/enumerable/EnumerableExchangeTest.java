@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.test.enumerable;
+
+import org.apache.calcite.test.CalciteAssert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableExchange} and the
+ * rules that parallelize aggregates and joins.
+ */
+public class EnumerableExchangeTest {
+  /** Tests an aggregate with no group keys, which is split into a partial
+   * aggregate over round-robin partitions and a final aggregate. */
+  @Test public void aggregate() {
+    tester()
+        .query("select count(*) as c, sum(\"unit_sales\") as s,\n"
+            + " min(\"promotion_id\") as m\n"
+            + "from \"sales_fact_1997\"")
+        .explainContains("EnumerableExchange(distribution=[rr])")
+        .returnsUnordered("C=86837; S=266773.0000; M=0");
+  }
+
+  /** Tests a join whose inputs are partitioned on the hash of their keys,
+   * beneath an aggregate. */
+  @Test public void join() {
+    tester()
+        .query("select \"gender\", count(*) as c, sum(s.\"unit_sales\") as s\n"
+            + "from \"sales_fact_1997\" as s\n"
+            + "join \"customer\" as c on s.\"customer_id\" = c.\"customer_id\"\n"
+            + "group by \"gender\"")
+        .explainContains("EnumerableExchange(distribution=[hash[0]])")
+        .returnsUnordered(
+            "gender=F; C=42831; S=131558.0000",
+            "gender=M; C=44006; S=135215.0000");
+  }
+
+  /** Tests that an outer join gives the same result when its inputs are
+   * partitioned. */
+  @Test public void leftJoin() {
+    tester()
+        .query("select s.\"store_id\", count(*) as c,\n"
+            + " max(c.\"customer_id\") as m\n"
+            + "from \"sales_fact_1997\" as s\n"
+            + "left join \"customer\" as c\n"
+            + "on s.\"customer_id\" = c.\"customer_id\"\n"
+            + "where s.\"store_id\" < 4\n"
+            + "group by s.\"store_id\"")
+        .explainContains("EnumerableExchange(distribution=[single])")
+        .returnsUnordered(
+            "store_id=2; C=1380; M=10261",
+            "store_id=3; C=7876; M=10240");
+  }
+
+  /** Tests that exchanges are not added unless the {@code parallelism}
+   * connection property is greater than 1. */
+  @Test public void disabled() {
+    CalciteAssert.that()
+        .with(CalciteAssert.Config.FOODMART_CLONE)
+        .query("select count(*) as c from \"sales_fact_1997\"")
+        .explainContains("EnumerableAggregate(group=[{}], C=[COUNT()])\n"
+            + "  EnumerableTableScan")
+        .returnsUnordered("C=86837");
+  }
+
+  private CalciteAssert.AssertThat tester() {
+    return CalciteAssert.that()
+        .with(CalciteAssert.Config.FOODMART_CLONE)
+        .with("parallelism", 4);
+  }
+}
+
+// End EnumerableExchangeTest.java
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.test.enumerable;
+
+import org.apache.calcite.adapter.enumerable.EnumerableRules;
+import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.config.CalciteConnectionProperty;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.test.CalciteAssert;
+import org.apache.calcite.test.JdbcTest;
+
+import com.google.common.base.Function;
+
+import org.junit.Test;
+
+/**
+ * Unit test for
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableJoin},
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableMergeJoin} and
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableBandJoin}.
+ */
+public class EnumerableJoinTest {
+  /** Tests a join whose right input does not fit within the memory budget,
+   * and therefore spills to disk. */
+  @Test public void joinSpill() {
+    tester(1L)
+        .query("select e.empid, d.name\n"
+            + "from (select empid, deptno from emps) as e\n"
+            + "full join (select deptno, name from depts) as d\n"
+            + "on e.deptno = d.deptno")
+        .planContains("EnumerableDefaults.hashJoin(")
+        .returnsUnordered(
+            "empid=100; name=Sales",
+            "empid=110; name=Sales",
+            "empid=150; name=Sales",
+            "empid=200; name=null",
+            "empid=null; name=HR",
+            "empid=null; name=Marketing");
+  }
+
+  /** Tests that a join does not use the spilling implementation if there is
+   * no memory budget, and that it holds an {@code int} key without boxing. */
+  @Test public void joinNoBudget() {
+    tester(0L)
+        .query("select e.empid, d.name\n"
+            + "from (select empid, deptno from emps) as e\n"
+            + "join (select deptno, name from depts) as d\n"
+            + "on e.deptno = d.deptno")
+        .planContains("EnumerableDefaults.hashJoinLong(")
+        .returnsUnordered(
+            "empid=100; name=Sales",
+            "empid=110; name=Sales",
+            "empid=150; name=Sales");
+  }
+
+  /** Tests a join on a key that is not of a primitive type, which is
+   * boxed. */
+  @Test public void joinStringKey() {
+    tester(0L)
+        .query("select e.empid, d.deptno\n"
+            + "from (select empid, name from emps) as e\n"
+            + "join (select deptno, name from depts) as d\n"
+            + "on e.name = d.name")
+        .planContains(".join(")
+        .returnsCount(0);
+  }
+
+  /** Tests a full join on a nullable {@code int} key; null keys match no
+   * row, and are returned by the {@code long}-keyed join. */
+  @Test public void fullJoinNullableLongKey() {
+    tester(0L)
+        .query("select l.x, r.y\n"
+            + "from (values (1, 'a'), (cast(null as integer), 'b'), (0, 'c'),"
+            + " (1, 'd')) as l(k, x)\n"
+            + "full join (values (1, 'A'), (cast(null as integer), 'B'),"
+            + " (-1, 'C'), (1, 'D')) as r(k, y)\n"
+            + "on l.k = r.k")
+        .planContains("EnumerableDefaults.hashJoinLong(")
+        .returnsUnordered(
+            "x=a; y=A",
+            "x=a; y=D",
+            "x=d; y=A",
+            "x=d; y=D",
+            "x=b; y=null",
+            "x=c; y=null",
+            "x=null; y=B",
+            "x=null; y=C");
+  }
+
+  /** Tests a join on two keys, which are held in instances of a generated
+   * class. */
+  @Test public void joinCompositeKey() {
+    tester(0L)
+        .query("select l.x, r.y\n"
+            + "from (values (1, 'a', 'p'), (1, 'b', 'q'), (2, 'a', 'r'),"
+            + " (1, 'a', 's')) as l(k1, k2, x)\n"
+            + "join (values (1, 'a', 'P'), (2, 'b', 'Q'), (2, 'a', 'R'))"
+            + " as r(k1, k2, y)\n"
+            + "on l.k1 = r.k1 and l.k2 = r.k2")
+        .planContains("new Key2_")
+        .returnsUnordered(
+            "x=p; y=P",
+            "x=s; y=P",
+            "x=r; y=R");
+  }
+
+  /** Tests an outer join whose condition has a key and another condition;
+   * it hashes on the key and evaluates the other condition on each pair of
+   * rows with equal keys, rather than using a nested-loop join. */
+  @Test public void joinWithPredicate() {
+    final String sql = "select e.empid, d.name\n"
+        + "from (select empid, deptno from emps) as e\n"
+        + "full join (select deptno, name from depts) as d\n"
+        + "on e.deptno = d.deptno and e.empid <> d.deptno * 11";
+    for (long memoryBudget : new long[] {0L, 1L}) {
+      tester(memoryBudget)
+          .query(sql)
+          .explainContains("EnumerableJoin(condition=[AND(=(")
+          .planContains(memoryBudget > 0
+              ? "EnumerableDefaults.hashJoin("
+              : "EnumerableDefaults.hashJoinLong(")
+          .returnsUnordered(
+              "empid=100; name=Sales",
+              "empid=110; name=null",
+              "empid=150; name=Sales",
+              "empid=200; name=null",
+              "empid=null; name=HR",
+              "empid=null; name=Marketing");
+    }
+  }
+
+  /** Tests a join that builds a runtime filter from the keys of its smaller
+   * input, and applies it to the scan beneath its larger input. */
+  @Test public void joinRuntimeFilter() {
+    tester(0L)
+        .query("select e.empid, d.name\n"
+            + "from (select empid, deptno from emps) as e\n"
+            + "join (select deptno, name from depts where name = 'Sales') as d\n"
+            + "on e.deptno = d.deptno")
+        .planContains("Enumerables.publishRuntimeFilter")
+        .planContains("Enumerables.applyRuntimeFilter(")
+        .returnsUnordered(
+            "empid=100; name=Sales",
+            "empid=110; name=Sales",
+            "empid=150; name=Sales");
+  }
+
+  /** Tests a left join whose inputs are sorted on the join key, and which
+   * is therefore evaluated by merging them. */
+  @Test public void mergeLeftJoin() {
+    tester(0L)
+        .query("select l.k, l.x, r.y\n"
+            + "from (values (1, 'a'), (2, 'b'), (4, 'd')) as l(k, x)\n"
+            + "left join (values (2, 'B'), (3, 'C'), (4, 'D'), (4, 'E'))"
+            + " as r(k, y)\n"
+            + "on l.k = r.k")
+        .planContains("EnumerableDefaults.mergeJoin(")
+        .returnsOrdered(
+            "k=1; x=a; y=null",
+            "k=2; x=b; y=B",
+            "k=4; x=d; y=D",
+            "k=4; x=d; y=E");
+  }
+
+  /** Tests a full join whose inputs are sorted on the join key. */
+  @Test public void mergeFullJoin() {
+    tester(0L)
+        .query("select l.k as lk, l.x, r.k as rk, r.y\n"
+            + "from (values (1, 'a'), (2, 'b'), (4, 'd')) as l(k, x)\n"
+            + "full join (values (2, 'B'), (3, 'C'), (4, 'D'), (4, 'E'))"
+            + " as r(k, y)\n"
+            + "on l.k = r.k")
+        .planContains("EnumerableDefaults.mergeJoin(")
+        .returnsUnordered(
+            "lk=1; x=a; rk=null; y=null",
+            "lk=2; x=b; rk=2; y=B",
+            "lk=null; x=null; rk=3; y=C",
+            "lk=4; x=d; rk=4; y=D",
+            "lk=4; x=d; rk=4; y=E");
+  }
+
+  /** Tests a right merge join with a filter on its left input, which
+   * converts it to an inner join. The inner join must be sorted on the left
+   * keys as well as the right keys.
+   *
+   * <p>The hash join rule is removed, so that the planner must use a merge
+   * join; {@link org.apache.calcite.rel.rules.FilterJoinRule} then pushes the
+   * filter into it by calling
+   * {@link org.apache.calcite.adapter.enumerable.EnumerableMergeJoin#copy}
+   * with a different join type. The planner may choose either join. */
+  @Test public void mergeRightJoinFilteredToInner() {
+    tester(0L)
+        .query("select l.k, l.x, r.y\n"
+            + "from (values (1, 'a'), (2, 'b'), (4, 'd')) as l(k, x)\n"
+            + "right join (values (2, 'B'), (3, 'C'), (4, 'D'), (4, 'E'))"
+            + " as r(k, y)\n"
+            + "on l.k = r.k\n"
+            + "where l.x <> 'b'")
+        .withHook(Hook.PLANNER,
+            new Function<RelOptPlanner, Void>() {
+              public Void apply(RelOptPlanner planner) {
+                planner.removeRule(EnumerableRules.ENUMERABLE_JOIN_RULE);
+                return null;
+              }
+            })
+        .explainContains("EnumerableMergeJoin(condition=[=($0, $2)]")
+        .planContains("EnumerableDefaults.mergeJoin(")
+        .returnsUnordered(
+            "k=4; x=d; y=D",
+            "k=4; x=d; y=E");
+  }
+
+  /** Tests a semi-join whose inputs are sorted on the join key, and which
+   * is therefore evaluated by merging them. */
+  @Test public void mergeSemiJoin() {
+    tester(0L)
+        .query("select e.empid, e.deptno\n"
+            + "from (select * from emps order by deptno limit 10) as e\n"
+            + "where exists (\n"
+            + "  select 1 from (select * from depts order by deptno limit 10)"
+            + " as d\n"
+            + "  where d.deptno = e.deptno)")
+        .explainContains("EnumerableSemiJoin")
+        .planContains("EnumerableDefaults.mergeSemiJoin(")
+        .returnsUnordered(
+            "empid=100; deptno=10",
+            "empid=110; deptno=10",
+            "empid=150; deptno=10");
+  }
+
+  /** Tests a join whose condition is a range, and which is therefore
+   * evaluated by probing an interval index on the right input rather than
+   * by a nested-loop join. */
+  @Test public void bandJoin() {
+    tester(0L)
+        .query("select e.t, w.name\n"
+            + "from (values 1, 5, 12, 20, 40) as e(t)\n"
+            + "join (values (0, 10, 'a'), (5, 15, 'b'), (18, 30, 'c'))"
+            + " as w(lo, hi, name)\n"
+            + "on e.t between w.lo and w.hi")
+        .explainContains("EnumerableBandJoin")
+        .planContains("EnumerableDefaults.bandJoin(")
+        .returnsUnordered(
+            "t=1; name=a",
+            "t=5; name=a",
+            "t=5; name=b",
+            "t=12; name=b",
+            "t=20; name=c");
+  }
+
+  /** Tests a left band join with a one-sided range and another
+   * condition. */
+  @Test public void bandLeftJoin() {
+    tester(0L)
+        .query("select e.empid, d.deptno\n"
+            + "from (select empid, deptno from emps) as e\n"
+            + "left join (select deptno from depts) as d\n"
+            + "on e.deptno < d.deptno and e.empid > 120")
+        .explainContains("EnumerableBandJoin")
+        .returnsUnordered(
+            "empid=100; deptno=null",
+            "empid=110; deptno=null",
+            "empid=150; deptno=30",
+            "empid=150; deptno=40",
+            "empid=200; deptno=30",
+            "empid=200; deptno=40");
+  }
+
+  private CalciteAssert.AssertThat tester(long memoryBudget) {
+    return CalciteAssert.that()
+        .with("lex", "JAVA")
+        .with(CalciteConnectionProperty.MEMORY_BUDGET.camelName(),
+            Long.toString(memoryBudget))
+        .withSchema("s", new ReflectiveSchema(new JdbcTest.HrSchema()));
+  }
+}
+
+// End EnumerableJoinTest.java
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.test.enumerable;
+
+import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.test.CalciteAssert;
+import org.apache.calcite.test.JdbcTest;
+
+import org.junit.Test;
+
+/**
+ * Unit test for
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableLimitSort}.
+ */
+public class EnumerableLimitSortTest {
+  /** Tests that a sort with a literal fetch keeps only the top rows, rather
+   * than sorting its whole input and then applying a limit. */
+  @Test public void fetch() {
+    tester()
+        .query("select empid, name from emps\n"
+            + "order by name desc limit 2")
+        .explainContains("EnumerableLimitSort(sort0=[$2], dir0=[DESC], "
+            + "fetch=[2])")
+        .returnsOrdered(
+            "empid=110; name=Theodore",
+            "empid=150; name=Sebastian");
+  }
+
+  /** Tests a sort with a literal offset and fetch. */
+  @Test public void offsetFetch() {
+    tester()
+        .query("select empid, name from emps\n"
+            + "order by name desc offset 1 fetch next 2 rows only")
+        .planContains("EnumerableDefaults.orderBy(")
+        .returnsOrdered(
+            "empid=150; name=Sebastian",
+            "empid=200; name=Eric");
+  }
+
+  /** Tests that rows with equal sort keys are returned in input order, as
+   * they would be by a full sort. */
+  @Test public void fetchTies() {
+    tester()
+        .query("select empid, deptno from emps\n"
+            + "order by deptno limit 3")
+        .returnsOrdered(
+            "empid=100; deptno=10",
+            "empid=150; deptno=10",
+            "empid=110; deptno=10");
+  }
+
+  private CalciteAssert.AssertThat tester() {
+    return CalciteAssert.that()
+        .with("lex", "JAVA")
+        .withSchema("s", new ReflectiveSchema(new JdbcTest.HrSchema()));
+  }
+}
+
+// End EnumerableLimitSortTest.java
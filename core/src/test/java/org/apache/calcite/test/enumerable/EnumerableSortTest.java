@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.test.enumerable;
+
+import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.config.CalciteConnectionProperty;
+import org.apache.calcite.test.CalciteAssert;
+import org.apache.calcite.test.JdbcTest;
+
+import org.junit.Test;
+
+/**
+ * Unit test for
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableSort}.
+ */
+public class EnumerableSortTest {
+  /** Tests a sort whose input does not fit within the memory budget, and
+   * therefore writes sorted runs to disk and merges them. */
+  @Test public void sortSpill() {
+    tester(1L)
+        .query("select empid, name from (select empid, name from emps)\n"
+            + "order by name desc, empid")
+        .planContains("EnumerableDefaults.orderBy(")
+        .returnsOrdered(
+            "empid=110; name=Theodore",
+            "empid=150; name=Sebastian",
+            "empid=200; name=Eric",
+            "empid=100; name=Bill");
+  }
+
+  /** Tests that a sort does not use the spilling implementation if there is
+   * no memory budget. */
+  @Test public void sortNoBudget() {
+    tester(0L)
+        .query("select empid, name from (select empid, name from emps)\n"
+            + "order by name desc, empid")
+        .planContains(".orderBy(")
+        .returnsOrdered(
+            "empid=110; name=Theodore",
+            "empid=150; name=Sebastian",
+            "empid=200; name=Eric",
+            "empid=100; name=Bill");
+  }
+
+  /** Tests a sort on primitive keys, which sorts by a normalized key
+   * rather than calling a comparator. */
+  @Test public void sortNormalizedKey() {
+    tester(0L)
+        .query("select empid, deptno from emps\n"
+            + "order by deptno desc, empid")
+        .planContains("EnumerableDefaults.orderByNormalizedKey(")
+        .returnsOrdered(
+            "empid=200; deptno=20",
+            "empid=100; deptno=10",
+            "empid=110; deptno=10",
+            "empid=150; deptno=10");
+    tester(0L)
+        .query("select empid, salary from emps order by salary desc")
+        .planContains("EnumerableDefaults.orderByNormalizedKey(")
+        .returnsOrdered(
+            "empid=110; salary=11500.0",
+            "empid=100; salary=10000.0",
+            "empid=200; salary=8000.0",
+            "empid=150; salary=7000.0");
+  }
+
+  /** Tests a sort by normalized key on a nullable key. */
+  @Test public void sortNormalizedKeyNullable() {
+    tester(0L)
+        .query("select empid, commission from emps\n"
+            + "order by commission desc nulls first")
+        .planContains("EnumerableDefaults.orderByNormalizedKey(")
+        .returnsOrdered(
+            "empid=150; commission=null",
+            "empid=100; commission=1000",
+            "empid=200; commission=500",
+            "empid=110; commission=250");
+    tester(0L)
+        .query("select empid, commission from emps\n"
+            + "order by commission")
+        .planContains("EnumerableDefaults.orderByNormalizedKey(")
+        .returnsOrdered(
+            "empid=110; commission=250",
+            "empid=200; commission=500",
+            "empid=100; commission=1000",
+            "empid=150; commission=null");
+  }
+
+  private CalciteAssert.AssertThat tester(long memoryBudget) {
+    return CalciteAssert.that()
+        .with("lex", "JAVA")
+        .with(CalciteConnectionProperty.MEMORY_BUDGET.camelName(),
+            Long.toString(memoryBudget))
+        .withSchema("s", new ReflectiveSchema(new JdbcTest.HrSchema()));
+  }
+}
+
+// End EnumerableSortTest.java
@@ -25,6 +25,12 @@
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.function.Parameter;
+import org.apache.calcite.linq4j.tree.BlockStatement;
+import org.apache.calcite.linq4j.tree.Blocks;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.MemberDeclaration;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
 import org.apache.calcite.runtime.ConsList;
 import org.apache.calcite.runtime.FlatLists;
 import org.apache.calcite.runtime.Resources;
@@ -35,6 +41,8 @@
 import org.apache.calcite.sql.util.SqlBuilder;
 import org.apache.calcite.sql.util.SqlString;
 import org.apache.calcite.test.DiffTestCase;
+import org.apache.calcite.util.javac.BytecodeCompiler;
+import org.apache.calcite.util.javac.ClassBodyCompiler;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
@@ -47,6 +55,9 @@
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
@@ -54,6 +65,7 @@
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
+import java.nio.file.Files;
 import java.sql.Timestamp;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -77,6 +89,7 @@
 import java.util.SortedSet;
 import java.util.TimeZone;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import javax.annotation.Nullable;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -2075,6 +2088,151 @@ private boolean checkLitmus(int i, Litmus litmus) {
         + "</root>\n";
     assertThat(Util.toLinux(s), is(expected));
   }
+
+  /** Tests that {@link ClassBodyCompiler} stores bytecode in its cache
+   * directory, and that a compiler with the same directory (say in a JVM that
+   * has restarted) loads it. */
+  @Test public void testClassBodyCompilerCache() throws Exception {
+    final File dir = Files.createTempDirectory("code-cache").toFile();
+    try {
+      final String body = "public Object call() {\n"
+          + "  return new java.util.concurrent.Callable() {\n"
+          + "    public Object call() { return \"hello\"; }\n"
+          + "  }.call();\n"
+          + "}\n";
+      final Class<?>[] interfaces = {Callable.class};
+      final ClassLoader classLoader = UtilTest.class.getClassLoader();
+      final Class<?> c1 = new ClassBodyCompiler(dir)
+          .compile("Foo", null, interfaces, classLoader, false, body);
+      assertThat(((Callable) c1.newInstance()).call(), is((Object) "hello"));
+      final File[] files = dir.listFiles();
+      assertThat(files.length, is(1));
+      assertThat(files[0].getName().endsWith(".bytecode"), is(true));
+      final long modified = files[0].lastModified();
+
+      final Class<?> c2 = new ClassBodyCompiler(dir)
+          .compile("Foo", null, interfaces, classLoader, false, body);
+      assertThat(c2, not(sameInstance((Object) c1)));
+      assertThat(((Callable) c2.newInstance()).call(), is((Object) "hello"));
+      assertThat(dir.listFiles().length, is(1));
+      assertThat(files[0].lastModified(), is(modified));
+    } finally {
+      for (File file : dir.listFiles()) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+      }
+      //noinspection ResultOfMethodCallIgnored
+      dir.delete();
+    }
+  }
+
+  /** Tests that {@link ClassBodyCompiler} compiles again, rather than running
+   * out of memory, if a file in its cache directory is corrupt. */
+  @Test public void testClassBodyCompilerCorruptCache() throws Exception {
+    final File dir = Files.createTempDirectory("code-cache").toFile();
+    try {
+      final String body = "public Object call() { return \"hello\"; }\n";
+      final Class<?>[] interfaces = {Callable.class};
+      final ClassLoader classLoader = UtilTest.class.getClassLoader();
+      new ClassBodyCompiler(dir)
+          .compile("Foo", null, interfaces, classLoader, false, body);
+      final File[] files = dir.listFiles();
+      assertThat(files.length, is(1));
+
+      // One class, whose length is much larger than the file
+      try (DataOutputStream out =
+               new DataOutputStream(new FileOutputStream(files[0]))) {
+        out.writeInt(1);
+        out.writeUTF("Foo");
+        out.writeInt(Integer.MAX_VALUE - 8);
+      }
+      final Class<?> c = new ClassBodyCompiler(dir)
+          .compile("Foo", null, interfaces, classLoader, false, body);
+      assertThat(((Callable) c.newInstance()).call(), is((Object) "hello"));
+      assertThat(dir.listFiles().length, is(1));
+      assertThat(files[0].length() > 20, is(true));
+    } finally {
+      for (File file : dir.listFiles()) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+      }
+      //noinspection ResultOfMethodCallIgnored
+      dir.delete();
+    }
+  }
+
+  /** Tests {@link BytecodeCompiler}, comparing the class it generates with
+   * the class that Janino compiles from the equivalent Java source code. */
+  @Test public void testBytecodeCompiler() throws Exception {
+    // int sum = 0;
+    // for (int i = 0; i < 5; ++i) {
+    //   sum += i < 3 ? i : 10 * i;
+    // }
+    // final String s = "sum=" + sum;
+    // final Function1 f = new Function1() {...x.concat("!")...};
+    // return new Callable() {
+    //   public Object call() {
+    //     return (String) f.apply(s) + " " + s.length();
+    //   }
+    // }.call();
+    final ParameterExpression sum = Expressions.parameter(int.class, "sum");
+    final ParameterExpression i = Expressions.parameter(int.class, "i");
+    final ParameterExpression s = Expressions.parameter(String.class, "s");
+    final ParameterExpression x = Expressions.parameter(String.class, "x");
+    final ParameterExpression f = Expressions.parameter(Function1.class, "f");
+    final Expression callable =
+        Expressions.new_(Callable.class, ImmutableList.<Expression>of(),
+            ImmutableList.<MemberDeclaration>of(
+                Expressions.methodDecl(Modifier.PUBLIC, Object.class, "call",
+                    ImmutableList.<ParameterExpression>of(),
+                    Blocks.toFunctionBlock(
+                        Expressions.add(
+                            Expressions.add(
+                                Expressions.convert_(
+                                    Expressions.call(f,
+                                        BuiltInMethod.FUNCTION1_APPLY.method, s),
+                                    String.class),
+                                Expressions.constant(" ")),
+                            Expressions.call(s, "length"))))));
+    final BlockStatement body =
+        Expressions.block(
+            Expressions.declare(0, sum, Expressions.constant(0)),
+            Expressions.for_(
+                Expressions.declare(0, i, Expressions.constant(0)),
+                Expressions.lessThan(i, Expressions.constant(5)),
+                Expressions.preIncrementAssign(i),
+                Expressions.statement(
+                    Expressions.addAssign(sum,
+                        Expressions.condition(
+                            Expressions.lessThan(i, Expressions.constant(3)),
+                            i,
+                            Expressions.multiply(Expressions.constant(10),
+                                i))))),
+            Expressions.declare(Modifier.FINAL, s,
+                Expressions.add(Expressions.constant("sum="), sum)),
+            Expressions.declare(Modifier.FINAL, f,
+                Expressions.lambda(Function1.class,
+                    Expressions.call(x, "concat", Expressions.constant("!")),
+                    x)),
+            Expressions.return_(null, Expressions.call(callable, "call")));
+    final List<MemberDeclaration> members =
+        ImmutableList.<MemberDeclaration>of(
+            Expressions.methodDecl(Modifier.PUBLIC, Object.class, "call",
+                ImmutableList.<ParameterExpression>of(), body));
+    final Class<?>[] interfaces = {Callable.class};
+    final ClassLoader classLoader = UtilTest.class.getClassLoader();
+    final Class<?> c1 = BytecodeCompiler.compile("Foo", Utilities.class,
+        interfaces, classLoader, members);
+    assertThat(((Callable) c1.newInstance()).call(), is((Object) "sum=73! 6"));
+
+    final StringBuilder buf = new StringBuilder();
+    for (MemberDeclaration member : members) {
+      buf.append(Expressions.toString(member));
+    }
+    final Class<?> c2 = new ClassBodyCompiler(null).compile("Foo",
+        Utilities.class, interfaces, classLoader, false, buf.toString());
+    assertThat(((Callable) c2.newInstance()).call(), is((Object) "sum=73! 6"));
+  }
 }
 
 // End UtilTest.java
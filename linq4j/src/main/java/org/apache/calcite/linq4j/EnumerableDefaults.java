@@ -34,7 +34,7 @@
 import org.apache.calcite.linq4j.function.Predicate1;
 import org.apache.calcite.linq4j.function.Predicate2;
 
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
@@ -49,15 +49,16 @@
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.RandomAccess;
 import java.util.Set;
-import java.util.TreeMap;
 
 import static org.apache.calcite.linq4j.Linq4j.CollectionEnumerable;
 import static org.apache.calcite.linq4j.Linq4j.ListEnumerable;
@@ -469,6 +470,38 @@ public static <TSource> Enumerable<TSource> distinct(
     return Linq4j.asEnumerable(set).select(unwrapper);
   }
 
+  /**
+   * Returns distinct elements from a sequence, comparing elements by a
+   * {@code long} key.
+   *
+   * <p>Behaves the same as {@link #distinct(Enumerable)} if two elements are
+   * equal if and only if their keys are equal, but does not box the keys.
+   * The first element of each key is returned. If {@code nullKey} is not
+   * null, it identifies elements whose key is null, to which
+   * {@code keySelector} is not applied; such elements are all equal.
+   */
+  public static <TSource> Enumerable<TSource> distinctLong(
+      Enumerable<TSource> enumerable, LongFunction1<TSource> keySelector,
+      Predicate1<TSource> nullKey) {
+    final LongHashSet set = new LongHashSet();
+    final List<TSource> list = new ArrayList<>();
+    boolean seenNull = false;
+    try (Enumerator<TSource> os = enumerable.enumerator()) {
+      while (os.moveNext()) {
+        final TSource o = os.current();
+        if (nullKey != null && nullKey.apply(o)) {
+          if (!seenNull) {
+            seenNull = true;
+            list.add(o);
+          }
+        } else if (set.add(keySelector.apply(o))) {
+          list.add(o);
+        }
+      }
+    }
+    return Linq4j.asEnumerable(list);
+  }
+
   /**
    * Returns the element at a specified index in a
    * sequence.
@@ -573,6 +606,48 @@ public static <TSource> Enumerable<TSource> except(
     return Linq4j.asEnumerable(set).select(unwrapper);
   }
 
+  /**
+   * Produces the set difference of two sequences, comparing elements by a
+   * {@code long} key.
+   *
+   * <p>Behaves the same as {@link #except(Enumerable, Enumerable)} if two
+   * elements are equal if and only if their keys are equal, but does not box
+   * the keys. See {@link #distinctLong(Enumerable, LongFunction1, Predicate1)}
+   * for the meaning of {@code nullKey}.
+   */
+  public static <TSource> Enumerable<TSource> exceptLong(
+      Enumerable<TSource> source0, Enumerable<TSource> source1,
+      LongFunction1<TSource> keySelector, Predicate1<TSource> nullKey) {
+    // Keys to exclude: those of source1, and those already returned.
+    final LongHashSet set = new LongHashSet();
+    boolean excludeNull = false;
+    try (Enumerator<TSource> os = source1.enumerator()) {
+      while (os.moveNext()) {
+        final TSource o = os.current();
+        if (nullKey != null && nullKey.apply(o)) {
+          excludeNull = true;
+        } else {
+          set.add(keySelector.apply(o));
+        }
+      }
+    }
+    final List<TSource> list = new ArrayList<>();
+    try (Enumerator<TSource> os = source0.enumerator()) {
+      while (os.moveNext()) {
+        final TSource o = os.current();
+        if (nullKey != null && nullKey.apply(o)) {
+          if (!excludeNull) {
+            excludeNull = true;
+            list.add(o);
+          }
+        } else if (set.add(keySelector.apply(o))) {
+          list.add(o);
+        }
+      }
+    }
+    return Linq4j.asEnumerable(list);
+  }
+
   /**
    * Returns the first element of a sequence. (Defined
    * by Enumerable.)
@@ -815,6 +890,64 @@ public Map<Wrapped<TKey>, TAccumulate> apply() {
         resultSelector);
   }
 
+  /**
+   * Groups the elements of a sequence and computes aggregates for each group
+   * using a {@link HashAggregator}. Each enumeration creates a new
+   * aggregator by calling {@code aggregatorFactory}.
+   */
+  public static <TSource, TResult> Enumerable<TResult> hashAggregate(
+      final Enumerable<TSource> enumerable,
+      final Function0<HashAggregator<TSource, TResult>> aggregatorFactory) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        return aggregatorFactory.apply().aggregate(enumerable);
+      }
+    };
+  }
+
+  /**
+   * Groups the elements of a sequence whose elements with equal keys are
+   * adjacent, such as a sequence sorted on the key, initializing an
+   * accumulator for each group and adding to it each time an element with
+   * the same key is seen. Creates a result value from each accumulator and
+   * its key using a specified function.
+   *
+   * <p>Unlike {@link #groupBy(Enumerable, Function1, Function0, Function2, Function2)},
+   * holds only one accumulator at a time, emits each group as soon as the
+   * key changes, and returns the groups in the order of the input.
+   */
+  public static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult> sortedGroupBy(
+      final Enumerable<TSource> enumerable,
+      final Function1<TSource, TKey> keySelector,
+      final Function0<TAccumulate> accumulatorInitializer,
+      final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+      final Function2<TKey, TAccumulate, TResult> resultSelector) {
+    return sortedGroupBy(enumerable, keySelector, accumulatorInitializer,
+        accumulatorAdder, resultSelector, null);
+  }
+
+  /**
+   * Groups the elements of a sequence whose elements with equal keys are
+   * adjacent, comparing keys using a specified comparer.
+   *
+   * @see #sortedGroupBy(Enumerable, Function1, Function0, Function2, Function2)
+   */
+  public static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult> sortedGroupBy(
+      final Enumerable<TSource> enumerable,
+      final Function1<TSource, TKey> keySelector,
+      final Function0<TAccumulate> accumulatorInitializer,
+      final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+      final Function2<TKey, TAccumulate, TResult> resultSelector,
+      final EqualityComparer<TKey> comparer) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        return new SortedAggregateEnumerator<>(enumerable.enumerator(),
+            keySelector, accumulatorInitializer, accumulatorAdder,
+            resultSelector, comparer);
+      }
+    };
+  }
+
   private static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult> groupBy_(
       final Map<TKey, TAccumulate> map, Enumerable<TSource> enumerable,
       Function1<TSource, TKey> keySelector,
@@ -1014,6 +1147,52 @@ public static <TSource> Enumerable<TSource> intersect(
     return Linq4j.asEnumerable(set1).select(unwrapper);
   }
 
+  /**
+   * Produces the set intersection of two sequences, comparing elements by a
+   * {@code long} key.
+   *
+   * <p>Behaves the same as {@link #intersect(Enumerable, Enumerable)} if two
+   * elements are equal if and only if their keys are equal, but does not box
+   * the keys. See {@link #distinctLong(Enumerable, LongFunction1, Predicate1)}
+   * for the meaning of {@code nullKey}.
+   */
+  public static <TSource> Enumerable<TSource> intersectLong(
+      Enumerable<TSource> source0, Enumerable<TSource> source1,
+      LongFunction1<TSource> keySelector, Predicate1<TSource> nullKey) {
+    final LongHashSet set0 = new LongHashSet();
+    boolean null0 = false;
+    try (Enumerator<TSource> os = source0.enumerator()) {
+      while (os.moveNext()) {
+        final TSource o = os.current();
+        if (nullKey != null && nullKey.apply(o)) {
+          null0 = true;
+        } else {
+          set0.add(keySelector.apply(o));
+        }
+      }
+    }
+    final LongHashSet set1 = new LongHashSet();
+    boolean null1 = false;
+    final List<TSource> list = new ArrayList<>();
+    try (Enumerator<TSource> os = source1.enumerator()) {
+      while (os.moveNext()) {
+        final TSource o = os.current();
+        if (nullKey != null && nullKey.apply(o)) {
+          if (null0 && !null1) {
+            null1 = true;
+            list.add(o);
+          }
+        } else {
+          final long key = keySelector.apply(o);
+          if (set0.contains(key) && set1.add(key)) {
+            list.add(o);
+          }
+        }
+      }
+    }
+    return Linq4j.asEnumerable(list);
+  }
+
   /**
    * Correlates the elements of two sequences based on
    * matching keys. The default equality comparer is used to compare
@@ -1077,18 +1256,52 @@ public static <TSource, TInner, TKey, TResult> Enumerable<TResult> join(
         resultSelector,
         comparer,
         generateNullsOnLeft,
-        generateNullsOnRight);
+        generateNullsOnRight,
+        null);
+  }
+
+  /**
+   * Correlates the elements of two sequences based on matching keys and a
+   * predicate. A specified {@code EqualityComparer<TSource>} is used to
+   * compare keys.
+   *
+   * <p>Elements match if their keys are equal and {@code predicate} returns
+   * true. The predicate is evaluated only on pairs of elements whose keys are
+   * equal, so a join whose condition has equality conditions and other
+   * conditions costs little more than an equi-join. If
+   * {@code generateNullsOnLeft} or {@code generateNullsOnRight} is set,
+   * elements with no match are returned with nulls, as in an outer join.
+   */
+  public static <TSource, TInner, TKey, TResult> Enumerable<TResult> join(
+      Enumerable<TSource> outer, Enumerable<TInner> inner,
+      Function1<TSource, TKey> outerKeySelector,
+      Function1<TInner, TKey> innerKeySelector,
+      Function2<TSource, TInner, TResult> resultSelector,
+      EqualityComparer<TKey> comparer, boolean generateNullsOnLeft,
+      boolean generateNullsOnRight, Predicate2<TSource, TInner> predicate) {
+    return join_(
+        outer,
+        inner,
+        outerKeySelector,
+        innerKeySelector,
+        resultSelector,
+        comparer,
+        generateNullsOnLeft,
+        generateNullsOnRight,
+        predicate);
   }
 
   /** Implementation of join that builds the right input and probes with the
-   * left. */
+   * left. If {@code predicate} is not null, elements match only if their
+   * keys are equal and the predicate returns true. */
   private static <TSource, TInner, TKey, TResult> Enumerable<TResult> join_(
       final Enumerable<TSource> outer, final Enumerable<TInner> inner,
       final Function1<TSource, TKey> outerKeySelector,
       final Function1<TInner, TKey> innerKeySelector,
       final Function2<TSource, TInner, TResult> resultSelector,
       final EqualityComparer<TKey> comparer, final boolean generateNullsOnLeft,
-      final boolean generateNullsOnRight) {
+      final boolean generateNullsOnRight,
+      final Predicate2<TSource, TInner> predicate) {
     return new AbstractEnumerable<TResult>() {
       public Enumerator<TResult> enumerator() {
         final Lookup<TKey, TInner> innerLookup =
@@ -1100,9 +1313,19 @@ public Enumerator<TResult> enumerator() {
           Enumerator<TSource> outers = outer.enumerator();
           Enumerator<TInner> inners = Linq4j.emptyEnumerator();
           Set<TKey> unmatchedKeys =
-              generateNullsOnLeft
+              generateNullsOnLeft && predicate == null
                   ? new HashSet<>(innerLookup.keySet())
                   : null;
+          // If there is a predicate, an inner element whose key matches may
+          // still not match, so we track matched elements rather than keys.
+          // Elements are compared by identity, and so are equal elements;
+          // that is harmless, because equal elements match the same outer
+          // elements.
+          Set<TInner> matchedInners =
+              generateNullsOnLeft && predicate != null
+                  ? Collections.newSetFromMap(
+                      new IdentityHashMap<TInner, Boolean>())
+                  : null;
 
           public TResult current() {
             return resultSelector.apply(outers.current(), inners.current());
@@ -1130,10 +1353,25 @@ public boolean moveNext() {
                   unmatchedKeys = null; // don't do the 'leftovers' again
                   continue;
                 }
+                if (matchedInners != null) {
+                  List<TInner> list = new ArrayList<>();
+                  for (Enumerable<TInner> tInners : innerLookup.values()) {
+                    for (TInner tInner : tInners) {
+                      if (!matchedInners.contains(tInner)) {
+                        list.add(tInner);
+                      }
+                    }
+                  }
+                  inners = Linq4j.enumerator(list);
+                  outers = Linq4j.singletonNullEnumerator();
+                  outers.moveNext();
+                  matchedInners = null; // don't do the 'leftovers' again
+                  continue;
+                }
                 return false;
               }
               final TSource outer = outers.current();
-              final Enumerable<TInner> innerEnumerable;
+              Enumerable<TInner> innerEnumerable;
               if (outer == null) {
                 innerEnumerable = null;
               } else {
@@ -1147,6 +1385,18 @@ public boolean moveNext() {
                   innerEnumerable = innerLookup.get(outerKey);
                 }
               }
+              if (innerEnumerable != null && predicate != null) {
+                final List<TInner> matches = new ArrayList<>();
+                for (TInner tInner : innerEnumerable) {
+                  if (predicate.apply(outer, tInner)) {
+                    matches.add(tInner);
+                    if (matchedInners != null) {
+                      matchedInners.add(tInner);
+                    }
+                  }
+                }
+                innerEnumerable = Linq4j.asEnumerable(matches);
+              }
               if (innerEnumerable == null
                   || !innerEnumerable.any()) {
                 if (generateNullsOnRight) {
@@ -1172,6 +1422,302 @@ public void close() {
     };
   }
 
+  /**
+   * Correlates the elements of two sequences based on matching keys, holding
+   * no more than a given number of bytes of the inner sequence in memory.
+   *
+   * <p>If the inner sequence fits within {@code memoryBudget}, behaves the
+   * same as
+   * {@link #join(Enumerable, Enumerable, Function1, Function1, Function2, EqualityComparer, boolean, boolean)}.
+   * Otherwise performs a Grace hash join: partitions both sequences on the
+   * hash of their keys into {@link SpillFile}s, then joins each pair of
+   * partitions in turn, partitioning again if a partition is still too
+   * large.
+   *
+   * <p>If {@code memoryBudget} is zero or negative, never spills.
+   */
+  public static <TSource, TInner, TKey, TResult> Enumerable<TResult> hashJoin(
+      final Enumerable<TSource> outer, final Enumerable<TInner> inner,
+      final Function1<TSource, TKey> outerKeySelector,
+      final Function1<TInner, TKey> innerKeySelector,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final EqualityComparer<TKey> comparer, final boolean generateNullsOnLeft,
+      final boolean generateNullsOnRight, final long memoryBudget) {
+    return hashJoin(outer, inner, outerKeySelector, innerKeySelector,
+        resultSelector, comparer, generateNullsOnLeft, generateNullsOnRight,
+        memoryBudget, null);
+  }
+
+  /**
+   * Correlates the elements of two sequences based on matching keys and a
+   * predicate, holding no more than a given number of bytes of the inner
+   * sequence in memory.
+   *
+   * <p>Behaves the same as
+   * {@link #join(Enumerable, Enumerable, Function1, Function1, Function2, EqualityComparer, boolean, boolean, Predicate2)},
+   * but spills in the same way as
+   * {@link #hashJoin(Enumerable, Enumerable, Function1, Function1, Function2, EqualityComparer, boolean, boolean, long)}.
+   * If {@code predicate} is null, elements match if their keys are equal.
+   */
+  public static <TSource, TInner, TKey, TResult> Enumerable<TResult> hashJoin(
+      final Enumerable<TSource> outer, final Enumerable<TInner> inner,
+      final Function1<TSource, TKey> outerKeySelector,
+      final Function1<TInner, TKey> innerKeySelector,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final EqualityComparer<TKey> comparer, final boolean generateNullsOnLeft,
+      final boolean generateNullsOnRight, final long memoryBudget,
+      final Predicate2<TSource, TInner> predicate) {
+    if (memoryBudget <= 0) {
+      return join_(outer, inner, outerKeySelector, innerKeySelector,
+          resultSelector, comparer, generateNullsOnLeft, generateNullsOnRight,
+          predicate);
+    }
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        return hashJoinEnumerator(outer, inner, outerKeySelector,
+            innerKeySelector, resultSelector, comparer, generateNullsOnLeft,
+            generateNullsOnRight, memoryBudget, predicate, 0);
+      }
+    };
+  }
+
+  /** Reads the inner sequence into memory, and if it exceeds the budget,
+   * partitions both sequences to disk. */
+  private static <TSource, TInner, TKey, TResult> Enumerator<TResult>
+      hashJoinEnumerator(final Enumerable<TSource> outer,
+      final Enumerable<TInner> inner,
+      final Function1<TSource, TKey> outerKeySelector,
+      final Function1<TInner, TKey> innerKeySelector,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final EqualityComparer<TKey> comparer, final boolean generateNullsOnLeft,
+      final boolean generateNullsOnRight, final long memoryBudget,
+      final Predicate2<TSource, TInner> predicate, final int depth) {
+    final List<TInner> buffer = new ArrayList<>();
+    final List<SpillFile> innerFiles = new ArrayList<>();
+    final List<SpillFile> outerFiles = new ArrayList<>();
+    try (Enumerator<TInner> inners = inner.enumerator()) {
+      long bytes = 0;
+      while (inners.moveNext()) {
+        final TInner o = inners.current();
+        buffer.add(o);
+        bytes += SpillFile.estimateSize(o);
+        if (bytes > memoryBudget && depth < GraceJoinEnumerator.MAX_DEPTH) {
+          break;
+        }
+      }
+      if (bytes <= memoryBudget || depth >= GraceJoinEnumerator.MAX_DEPTH) {
+        // The inner sequence fits in memory (or we have partitioned so many
+        // times that the keys must be heavily skewed); join in memory.
+        return join_(outer, Linq4j.asEnumerable(buffer), outerKeySelector,
+            innerKeySelector, resultSelector, comparer, generateNullsOnLeft,
+            generateNullsOnRight, predicate).enumerator();
+      }
+      for (int i = 0; i < GraceJoinEnumerator.FAN_OUT; i++) {
+        innerFiles.add(SpillFile.create());
+        outerFiles.add(SpillFile.create());
+      }
+      for (TInner o : buffer) {
+        final TKey key = innerKeySelector.apply(o);
+        innerFiles.get(partition(key, comparer, depth)).add(o);
+      }
+      buffer.clear();
+      while (inners.moveNext()) {
+        final TInner o = inners.current();
+        final TKey key = innerKeySelector.apply(o);
+        innerFiles.get(partition(key, comparer, depth)).add(o);
+      }
+      try (Enumerator<TSource> outers = outer.enumerator()) {
+        while (outers.moveNext()) {
+          final TSource o = outers.current();
+          final TKey key = o == null ? null : outerKeySelector.apply(o);
+          outerFiles.get(partition(key, comparer, depth)).add(o);
+        }
+      }
+      SpillStatistics.INSTANCE.joinPartitionsWritten(
+          GraceJoinEnumerator.FAN_OUT);
+    } catch (RuntimeException | Error e) {
+      for (SpillFile file : Iterables.concat(innerFiles, outerFiles)) {
+        file.close();
+      }
+      throw e;
+    }
+    return new GraceJoinEnumerator<TResult>(outerFiles, innerFiles) {
+      Enumerator<TResult> join(Enumerable<Object> outerPartition,
+          Enumerable<Object> innerPartition) {
+        //noinspection unchecked
+        return hashJoinEnumerator((Enumerable<TSource>) outerPartition,
+            (Enumerable<TInner>) innerPartition, outerKeySelector,
+            innerKeySelector, resultSelector, comparer, generateNullsOnLeft,
+            generateNullsOnRight, memoryBudget, predicate, depth + 1);
+      }
+
+      boolean canMatch(SpillFile outerFile, SpillFile innerFile) {
+        return outerFile.count() > 0 && innerFile.count() > 0
+            || generateNullsOnRight && outerFile.count() > 0
+            || generateNullsOnLeft && innerFile.count() > 0;
+      }
+    };
+  }
+
+  /** Returns the partition that a key belongs to in a Grace hash join. Null
+   * keys, which never match, belong to partition 0. At each level of
+   * recursion the hash is salted differently, so that a partition that was too
+   * large is split. */
+  private static <TKey> int partition(TKey key, EqualityComparer<TKey> comparer,
+      int depth) {
+    if (key == null) {
+      return 0;
+    }
+    int h = comparer == null ? key.hashCode() : comparer.hashCode(key);
+    h = Integer.rotateLeft(h, depth * 7) ^ depth;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return (h & Integer.MAX_VALUE) % GraceJoinEnumerator.FAN_OUT;
+  }
+
+  /**
+   * Correlates the elements of two sequences based on matching {@code long}
+   * keys and an optional predicate.
+   *
+   * <p>Behaves the same as
+   * {@link #join(Enumerable, Enumerable, Function1, Function1, Function2, EqualityComparer, boolean, boolean, Predicate2)}
+   * if two keys are equal if and only if their {@code long} values are
+   * equal, but does not box the keys or create a list for each key; the
+   * inner sequence is held in a {@link LongMultiMap}.
+   *
+   * <p>If {@code outerNullKey} (or {@code innerNullKey}) is not null, it
+   * identifies elements whose key is null, to which the key selector is not
+   * applied. An element whose key is null matches no element.
+   */
+  public static <TSource, TInner, TResult> Enumerable<TResult> hashJoinLong(
+      final Enumerable<TSource> outer, final Enumerable<TInner> inner,
+      final LongFunction1<TSource> outerKeySelector,
+      final Predicate1<TSource> outerNullKey,
+      final LongFunction1<TInner> innerKeySelector,
+      final Predicate1<TInner> innerNullKey,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final boolean generateNullsOnLeft, final boolean generateNullsOnRight,
+      final Predicate2<TSource, TInner> predicate) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        final LongMultiMap<TInner> map = new LongMultiMap<>();
+        // Inner elements whose key is null; only needed for RIGHT and FULL
+        // joins, which return them.
+        final List<TInner> nullInners = new ArrayList<>();
+        try (Enumerator<TInner> inners = inner.enumerator()) {
+          while (inners.moveNext()) {
+            final TInner o = inners.current();
+            if (innerNullKey != null && innerNullKey.apply(o)) {
+              if (generateNullsOnLeft) {
+                nullInners.add(o);
+              }
+            } else {
+              map.put(innerKeySelector.apply(o), o);
+            }
+          }
+        }
+        // Whether each inner element has matched, by its index in the map.
+        final boolean[] matched =
+            generateNullsOnLeft ? new boolean[map.size()] : null;
+
+        return new Enumerator<TResult>() {
+          final Enumerator<TSource> outers = outer.enumerator();
+          TSource outerValue;
+          TInner innerValue;
+          /** Index in the map of the next candidate for the current outer
+           * element, or -1. */
+          int index = -1;
+          /** Whether the current outer element has not yet been returned. */
+          boolean outerPending;
+          /** Position in the scan of unmatched inner elements, which starts
+           * when the outer sequence is exhausted. */
+          int leftover = -1;
+
+          public TResult current() {
+            return resultSelector.apply(outerValue, innerValue);
+          }
+
+          public boolean moveNext() {
+            if (leftover >= 0) {
+              return moveNextLeftover();
+            }
+            for (;;) {
+              while (index >= 0) {
+                final int i = index;
+                final TInner o = map.value(i);
+                index = map.next(i);
+                if (predicate == null || predicate.apply(outerValue, o)) {
+                  outerPending = false;
+                  if (matched != null) {
+                    matched[i] = true;
+                  }
+                  innerValue = o;
+                  return true;
+                }
+              }
+              if (outerPending && generateNullsOnRight) {
+                outerPending = false;
+                innerValue = null;
+                return true;
+              }
+              if (!outers.moveNext()) {
+                outerValue = null;
+                leftover = 0;
+                return moveNextLeftover();
+              }
+              outerValue = outers.current();
+              outerPending = true;
+              if (outerValue == null
+                  || outerNullKey != null && outerNullKey.apply(outerValue)) {
+                index = -1;
+              } else {
+                index = map.first(outerKeySelector.apply(outerValue));
+              }
+            }
+          }
+
+          /** Moves to the next inner element that matched no outer element,
+           * if this is a RIGHT or FULL join. */
+          private boolean moveNextLeftover() {
+            if (matched == null) {
+              return false;
+            }
+            while (leftover < matched.length) {
+              final int i = leftover++;
+              if (!matched[i]) {
+                innerValue = map.value(i);
+                return true;
+              }
+            }
+            final int j = leftover - matched.length;
+            if (j < nullInners.size()) {
+              ++leftover;
+              innerValue = nullInners.get(j);
+              return true;
+            }
+            return false;
+          }
+
+          public void reset() {
+            outers.reset();
+            outerValue = null;
+            index = -1;
+            outerPending = false;
+            leftover = -1;
+            if (matched != null) {
+              Arrays.fill(matched, false);
+            }
+          }
+
+          public void close() {
+            outers.close();
+          }
+        };
+      }
+    };
+  }
+
   /**
    * Returns elements of {@code outer} for which there is a member of
    * {@code inner} with a matching key. A specified
@@ -1271,6 +1817,207 @@ private void closeInner() {
     };
   }
 
+  /**
+   * Returns elements of {@code outer} for which the function {@code inner}
+   * returns elements, as
+   * {@link #correlateJoin(CorrelateJoinType, Enumerable, Function1, Function2)},
+   * but caches the elements returned by {@code inner}.
+   *
+   * <p>The elements returned by {@code inner} must depend only on the key of
+   * the outer element, as returned by {@code keySelector}. If an outer element
+   * has the same key as an element seen recently, {@code inner} is not
+   * applied again. The cache holds the elements for at most
+   * {@code cacheSize} keys, discarding the least recently used.
+   */
+  public static <TSource, TInner, TKey, TResult> Enumerable<TResult> correlateJoin(
+      final CorrelateJoinType joinType, final Enumerable<TSource> outer,
+      final Function1<TSource, Enumerable<TInner>> inner,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final Function1<TSource, TKey> keySelector, final int cacheSize) {
+    final Function1<List<TSource>, List<Enumerable<TInner>>> batchInner =
+        new Function1<List<TSource>, List<Enumerable<TInner>>>() {
+          public List<Enumerable<TInner>> apply(List<TSource> sources) {
+            final List<Enumerable<TInner>> list = new ArrayList<>();
+            for (TSource source : sources) {
+              list.add(inner.apply(source));
+            }
+            return list;
+          }
+        };
+    return correlateBatchJoin(joinType, outer, batchInner, resultSelector,
+        keySelector, 1, cacheSize);
+  }
+
+  /**
+   * Returns elements of {@code outer} for which the function {@code inner}
+   * returns elements, evaluating {@code inner} for many outer elements at a
+   * time.
+   *
+   * <p>Reads up to {@code batchSize} elements of {@code outer}, and calls
+   * {@code inner} once with a list of those whose key, as returned by
+   * {@code keySelector}, is not in the cache, one element per key. The
+   * function must return a list of the same size, each member of which
+   * contains the inner elements for the outer element in the same position.
+   * The elements returned by {@code inner} must depend only on the key. The
+   * cache holds the elements for at most {@code cacheSize} keys, discarding
+   * the least recently used.
+   */
+  public static <TSource, TInner, TKey, TResult> Enumerable<TResult> correlateBatchJoin(
+      final CorrelateJoinType joinType, final Enumerable<TSource> outer,
+      final Function1<List<TSource>, List<Enumerable<TInner>>> inner,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final Function1<TSource, TKey> keySelector, final int batchSize,
+      final int cacheSize) {
+    assert batchSize > 0;
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        return new Enumerator<TResult>() {
+          private final Enumerator<TSource> outerEnumerator =
+              outer.enumerator();
+          private final Map<TKey, List<TInner>> cache =
+              new LinkedHashMap<TKey, List<TInner>>(16, 0.75f, true) {
+                @Override protected boolean removeEldestEntry(
+                    Map.Entry<TKey, List<TInner>> eldest) {
+                  return size() > cacheSize;
+                }
+              };
+          private final List<TSource> batch = new ArrayList<>();
+          private final List<List<TInner>> batchInners = new ArrayList<>();
+          private int i; // index of current outer element within batch
+          private int j = -1; // index of next inner element; -1 if done
+          TSource outerValue;
+          TInner innerValue;
+
+          public TResult current() {
+            return resultSelector.apply(outerValue, innerValue);
+          }
+
+          public boolean moveNext() {
+            for (;;) {
+              if (j < 0) {
+                // move outer
+                if (++i >= batch.size() && !fillBatch()) {
+                  return false;
+                }
+                j = 0;
+              }
+              final List<TInner> inners = batchInners.get(i);
+              outerValue = batch.get(i);
+              innerValue = null;
+              switch (joinType) {
+              case INNER:
+              case LEFT:
+                if (j < inners.size()) {
+                  innerValue = inners.get(j++);
+                  return true;
+                }
+                final boolean empty = j == 0;
+                j = -1;
+                if (empty && joinType == CorrelateJoinType.LEFT) {
+                  return true;
+                }
+                continue;
+              case SEMI:
+                j = -1;
+                if (!inners.isEmpty()) {
+                  return true;
+                }
+                continue;
+              case ANTI:
+                j = -1;
+                if (inners.isEmpty()) {
+                  return true;
+                }
+                continue;
+              default:
+                throw new AssertionError(joinType);
+              }
+            }
+          }
+
+          /** Reads the next batch of outer elements, and finds the inner
+           * elements of each, from the cache or by calling {@code inner}.
+           * Returns false if there are no more outer elements. */
+          private boolean fillBatch() {
+            batch.clear();
+            batchInners.clear();
+            i = 0;
+            final List<TSource> misses = new ArrayList<>();
+            final Map<TKey, Integer> missOrdinals = new HashMap<>();
+            final List<Integer> ordinals = new ArrayList<>();
+            while (batch.size() < batchSize && outerEnumerator.moveNext()) {
+              final TSource source = outerEnumerator.current();
+              final TKey key = keySelector.apply(source);
+              batch.add(source);
+              // Look up the cache now; it may discard the entry when we add
+              // the inner elements of the misses.
+              final List<TInner> inners = cache.get(key);
+              batchInners.add(inners);
+              if (inners != null) {
+                ordinals.add(-1);
+              } else {
+                Integer ordinal = missOrdinals.get(key);
+                if (ordinal == null) {
+                  ordinal = misses.size();
+                  missOrdinals.put(key, ordinal);
+                  misses.add(source);
+                }
+                ordinals.add(ordinal);
+              }
+            }
+            if (batch.isEmpty()) {
+              return false;
+            }
+            if (!misses.isEmpty()) {
+              final List<Enumerable<TInner>> results = inner.apply(misses);
+              assert results.size() == misses.size();
+              final List<List<TInner>> missInners = new ArrayList<>();
+              for (int k = 0; k < misses.size(); k++) {
+                final List<TInner> inners = toList(results.get(k));
+                missInners.add(inners);
+                cache.put(keySelector.apply(misses.get(k)), inners);
+              }
+              for (int k = 0; k < batch.size(); k++) {
+                final int ordinal = ordinals.get(k);
+                if (ordinal >= 0) {
+                  batchInners.set(k, missInners.get(ordinal));
+                }
+              }
+            }
+            return true;
+          }
+
+          /** Copies inner elements into a list; for a semi- or anti-join,
+           * only whether there are any elements matters. */
+          private List<TInner> toList(Enumerable<TInner> enumerable) {
+            if (enumerable == null) {
+              return Collections.emptyList();
+            }
+            switch (joinType) {
+            case SEMI:
+            case ANTI:
+              return enumerable.take(1).toList();
+            default:
+              return enumerable.toList();
+            }
+          }
+
+          public void reset() {
+            outerEnumerator.reset();
+            batch.clear();
+            batchInners.clear();
+            i = 0;
+            j = -1;
+          }
+
+          public void close() {
+            outerEnumerator.close();
+          }
+        };
+      }
+    };
+  }
+
   /**
    * Returns the last element of a sequence. (Defined
    * by Enumerable.)
@@ -1338,6 +2085,52 @@ public boolean apply(TSource v0) {
     };
   }
 
+  /**
+   * Returns elements of {@code outer} for which there is a member of
+   * {@code inner} with a matching {@code long} key.
+   *
+   * <p>Behaves the same as
+   * {@link #semiJoin(Enumerable, Enumerable, Function1, Function1)} if two
+   * keys are equal if and only if their {@code long} values are equal, but
+   * does not box the keys. If {@code outerNullKey} (or {@code innerNullKey})
+   * is not null, it identifies elements whose key is null; as in
+   * {@code semiJoin}, an outer element whose key is null matches if there is
+   * an inner element whose key is null.
+   */
+  public static <TSource, TInner> Enumerable<TSource> semiJoinLong(
+      final Enumerable<TSource> outer, final Enumerable<TInner> inner,
+      final LongFunction1<TSource> outerKeySelector,
+      final Predicate1<TSource> outerNullKey,
+      final LongFunction1<TInner> innerKeySelector,
+      final Predicate1<TInner> innerNullKey) {
+    return new AbstractEnumerable<TSource>() {
+      public Enumerator<TSource> enumerator() {
+        final LongHashSet set = new LongHashSet();
+        boolean innerNull = false;
+        try (Enumerator<TInner> inners = inner.enumerator()) {
+          while (inners.moveNext()) {
+            final TInner o = inners.current();
+            if (innerNullKey != null && innerNullKey.apply(o)) {
+              innerNull = true;
+            } else {
+              set.add(innerKeySelector.apply(o));
+            }
+          }
+        }
+        final boolean matchNull = innerNull;
+        return EnumerableDefaults.where(outer.enumerator(),
+            new Predicate1<TSource>() {
+              public boolean apply(TSource v0) {
+                if (outerNullKey != null && outerNullKey.apply(v0)) {
+                  return matchNull;
+                }
+                return set.contains(outerKeySelector.apply(v0));
+              }
+            });
+      }
+    };
+  }
+
   /**
    * Correlates the elements of two sequences based on a predicate.
    */
@@ -1387,22 +2180,180 @@ public static <TSource, TInner, TResult> Enumerable<TResult> thetaJoin(
     return Linq4j.asEnumerable(result);
   }
 
-  /** Joins two inputs that are sorted on the key. */
+  /**
+   * Correlates the elements of two sequences whose keys lie in overlapping
+   * ranges; for example, joins events to the time windows or address ranges
+   * that contain them.
+   *
+   * <p>An inner element is a candidate for an outer element if
+   * {@code innerLow <= outerHigh} and {@code innerHigh >= outerLow}, each
+   * condition applying only if its pair of selectors is not null, and if
+   * none of the keys involved is null. The candidates come from an index on
+   * the inner sequence, so the cost of each probe is proportional to the log
+   * of the size of the inner sequence plus the number of candidates, rather
+   * than to the size of the inner sequence, as in
+   * {@link #thetaJoin(Enumerable, Enumerable, Predicate2, Function2, boolean, boolean)}.
+   *
+   * <p>A pair of elements matches if it is a candidate and
+   * {@code predicate} returns true; the predicate must return false for any
+   * pair that is not a candidate. If {@code generateNullsOnLeft} or
+   * {@code generateNullsOnRight} is set, elements with no match are returned
+   * with nulls, as in an outer join.
+   */
+  public static <TSource, TInner, TResult> Enumerable<TResult> bandJoin(
+      final Enumerable<TSource> outer, final Enumerable<TInner> inner,
+      final Function1<TSource, Comparable> outerLowSelector,
+      final Function1<TSource, Comparable> outerHighSelector,
+      final Function1<TInner, Comparable> innerLowSelector,
+      final Function1<TInner, Comparable> innerHighSelector,
+      final Predicate2<TSource, TInner> predicate,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final boolean generateNullsOnLeft, final boolean generateNullsOnRight) {
+    assert (outerHighSelector == null) == (innerLowSelector == null);
+    assert (outerLowSelector == null) == (innerHighSelector == null);
+    assert innerLowSelector != null || innerHighSelector != null;
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        final List<TInner> innerList = inner.toList();
+        final IntervalIndex<TInner> index =
+            new IntervalIndex<>(innerList, innerLowSelector,
+                innerHighSelector);
+
+        return new Enumerator<TResult>() {
+          Enumerator<TSource> outers = outer.enumerator();
+          Enumerator<TInner> inners = Linq4j.emptyEnumerator();
+          Set<TInner> matchedInners =
+              generateNullsOnLeft
+                  ? Collections.newSetFromMap(
+                      new IdentityHashMap<TInner, Boolean>())
+                  : null;
+
+          public TResult current() {
+            return resultSelector.apply(outers.current(), inners.current());
+          }
+
+          public boolean moveNext() {
+            for (;;) {
+              if (inners.moveNext()) {
+                return true;
+              }
+              if (!outers.moveNext()) {
+                if (matchedInners != null) {
+                  final List<TInner> list = new ArrayList<>();
+                  for (TInner tInner : innerList) {
+                    if (!matchedInners.contains(tInner)) {
+                      list.add(tInner);
+                    }
+                  }
+                  inners = Linq4j.enumerator(list);
+                  outers = Linq4j.singletonNullEnumerator();
+                  outers.moveNext();
+                  matchedInners = null; // don't do the 'leftovers' again
+                  continue;
+                }
+                return false;
+              }
+              final TSource outer = outers.current();
+              final List<TInner> matches = new ArrayList<>();
+              if (outer != null) {
+                final Comparable low = outerLowSelector == null
+                    ? null : outerLowSelector.apply(outer);
+                final Comparable high = outerHighSelector == null
+                    ? null : outerHighSelector.apply(outer);
+                if ((low != null || outerLowSelector == null)
+                    && (high != null || outerHighSelector == null)) {
+                  for (TInner tInner : index.overlapping(low, high)) {
+                    if (predicate.apply(outer, tInner)) {
+                      matches.add(tInner);
+                      if (matchedInners != null) {
+                        matchedInners.add(tInner);
+                      }
+                    }
+                  }
+                }
+              }
+              if (!matches.isEmpty()) {
+                inners = Linq4j.enumerator(matches);
+              } else if (generateNullsOnRight) {
+                inners = Linq4j.singletonNullEnumerator();
+              } else {
+                inners = Linq4j.emptyEnumerator();
+              }
+            }
+          }
+
+          public void reset() {
+            outers.reset();
+          }
+
+          public void close() {
+            outers.close();
+          }
+        };
+      }
+    };
+  }
+
+  /** Joins two inputs that are sorted on the key.
+   *
+   * <p>Both inputs must be sorted in ascending order of key; rows whose key
+   * is null may appear anywhere, and match no rows. Only the rows of one key
+   * value from each input are held in memory at a time.
+   *
+   * <p>If {@code generateNullsOnRight}, returns rows of {@code outer} that
+   * match no row of {@code inner}, paired with null (a left join); if
+   * {@code generateNullsOnLeft}, returns rows of {@code inner} that match no
+   * row of {@code outer}, paired with null (a right join); if both, a full
+   * join. */
   public static <TSource, TInner, TKey extends Comparable<TKey>, TResult> Enumerable<TResult>
       mergeJoin(final Enumerable<TSource> outer,
       final Enumerable<TInner> inner,
       final Function1<TSource, TKey> outerKeySelector,
       final Function1<TInner, TKey> innerKeySelector,
       final Function2<TSource, TInner, TResult> resultSelector,
-      boolean generateNullsOnLeft,
-      boolean generateNullsOnRight) {
-    assert !generateNullsOnLeft : "not implemented";
-    assert !generateNullsOnRight : "not implemented";
+      final boolean generateNullsOnLeft,
+      final boolean generateNullsOnRight) {
     return new AbstractEnumerable<TResult>() {
       public Enumerator<TResult> enumerator() {
         return new MergeJoinEnumerator<>(outer.enumerator(),
             inner.enumerator(), outerKeySelector, innerKeySelector,
-            resultSelector);
+            resultSelector, generateNullsOnLeft, generateNullsOnRight);
+      }
+    };
+  }
+
+  /** Returns elements of {@code outer} for which there is a member of
+   * {@code inner} with a matching key; both inputs must be sorted on the key,
+   * as for {@link #mergeJoin}.
+   *
+   * <p>Unlike {@link #semiJoin(Enumerable, Enumerable, Function1, Function1)},
+   * uses constant memory; and a null key matches nothing. */
+  public static <TSource, TInner, TKey extends Comparable<TKey>> Enumerable<TSource>
+      mergeSemiJoin(final Enumerable<TSource> outer,
+      final Enumerable<TInner> inner,
+      final Function1<TSource, TKey> outerKeySelector,
+      final Function1<TInner, TKey> innerKeySelector) {
+    return new AbstractEnumerable<TSource>() {
+      public Enumerator<TSource> enumerator() {
+        return new MergeSemiJoinEnumerator<>(outer.enumerator(),
+            inner.enumerator(), outerKeySelector, innerKeySelector, false);
+      }
+    };
+  }
+
+  /** Returns elements of {@code outer} for which there is no member of
+   * {@code inner} with a matching key; both inputs must be sorted on the
+   * key, as for {@link #mergeJoin}. A row whose key is null is always
+   * returned. */
+  public static <TSource, TInner, TKey extends Comparable<TKey>> Enumerable<TSource>
+      mergeAntiJoin(final Enumerable<TSource> outer,
+      final Enumerable<TInner> inner,
+      final Function1<TSource, TKey> outerKeySelector,
+      final Function1<TInner, TKey> innerKeySelector) {
+    return new AbstractEnumerable<TSource>() {
+      public Enumerator<TSource> enumerator() {
+        return new MergeSemiJoinEnumerator<>(outer.enumerator(),
+            inner.enumerator(), outerKeySelector, innerKeySelector, true);
       }
     };
   }
@@ -1804,38 +2755,378 @@ public static <TSource, TResult extends Comparable<TResult>> TResult min(
    * @param clazz Target type
    * @param <TResult> Target type
    *
-   * @return Collection of T2
-   */
-  public static <TSource, TResult> Enumerable<TResult> ofType(
-      Enumerable<TSource> enumerable, Class<TResult> clazz) {
+   * @return Collection of T2
+   */
+  public static <TSource, TResult> Enumerable<TResult> ofType(
+      Enumerable<TSource> enumerable, Class<TResult> clazz) {
+    //noinspection unchecked
+    return (Enumerable) where(enumerable,
+        Functions.<TSource, TResult>ofTypePredicate(clazz));
+  }
+
+  /**
+   * Sorts the elements of a sequence in ascending
+   * order according to a key.
+   */
+  public static <TSource, TKey extends Comparable> Enumerable<TSource> orderBy(
+      Enumerable<TSource> source, Function1<TSource, TKey> keySelector) {
+    return orderBy(source, keySelector, null);
+  }
+
+  /**
+   * Sorts the elements of a sequence in ascending
+   * order by using a specified comparer.
+   */
+  public static <TSource, TKey> Enumerable<TSource> orderBy(
+      final Enumerable<TSource> source,
+      final Function1<TSource, TKey> keySelector,
+      Comparator<TKey> comparator) {
+    // The caller of this method must supply a comparator if the key does not
+    // extend Comparable. Otherwise there will be a ClassCastException.
+    final Comparator<TKey> keyComparator = comparator != null
+        ? comparator
+        : EnumerableDefaults.<TKey>naturalOrder();
+    return new AbstractEnumerable<TSource>() {
+      public Enumerator<TSource> enumerator() {
+        return Linq4j.enumerator(
+            sortRun(source.toList(), keySelector, keyComparator));
+      }
+    };
+  }
+
+  /**
+   * Sorts the elements of a sequence in ascending order according to a
+   * normalized key.
+   *
+   * <p>The normalized key of an element is a {@code long} whose order,
+   * compared as an unsigned value, is the desired order of the elements. For
+   * example, an {@code int} value {@code i} has normalized key
+   * {@code (long) i - Integer.MIN_VALUE}, and a key of two {@code int} values
+   * can be formed by shifting the first key 32 bits to the left.
+   *
+   * <p>Evaluates each key once, and sorts using a radix sort, which neither
+   * compares keys nor allocates an object per element. Like
+   * {@link #orderBy(Enumerable, Function1, Comparator)}, the sort is stable.
+   */
+  public static <TSource> Enumerable<TSource> orderByNormalizedKey(
+      final Enumerable<TSource> source,
+      final LongFunction1<TSource> keySelector) {
+    return new AbstractEnumerable<TSource>() {
+      public Enumerator<TSource> enumerator() {
+        Object[] elements = new Object[16];
+        long[] keys = new long[16];
+        int n = 0;
+        try (Enumerator<TSource> os = source.enumerator()) {
+          while (os.moveNext()) {
+            if (n == elements.length) {
+              elements = Arrays.copyOf(elements, n * 2);
+              keys = Arrays.copyOf(keys, n * 2);
+            }
+            final TSource o = os.current();
+            elements[n] = o;
+            keys[n++] = keySelector.apply(o);
+          }
+        }
+        final int[] permutation = radixSort(keys, n);
+        final Object[] sorted = new Object[n];
+        for (int i = 0; i < n; i++) {
+          sorted[i] = elements[permutation[i]];
+        }
+        //noinspection unchecked
+        return Linq4j.enumerator((List<TSource>) Arrays.asList(sorted));
+      }
+    };
+  }
+
+  /** Returns the permutation that sorts the first {@code n} keys, compared
+   * as unsigned values. Keys that are equal keep their relative order.
+   *
+   * <p>Uses a least-significant-digit radix sort, one byte per pass, and
+   * skips the pass for a byte that has the same value in every key. */
+  private static int[] radixSort(long[] keys, int n) {
+    long[] keys2 = new long[n];
+    int[] permutation = new int[n];
+    int[] permutation2 = new int[n];
+    for (int i = 0; i < n; i++) {
+      permutation[i] = i;
+    }
+    final int[] offsets = new int[257];
+    for (int shift = 0; shift < 64; shift += 8) {
+      Arrays.fill(offsets, 0);
+      for (int i = 0; i < n; i++) {
+        ++offsets[((int) (keys[i] >>> shift) & 0xFF) + 1];
+      }
+      if (offsets[((int) (keys[0] >>> shift) & 0xFF) + 1] == n) {
+        continue;
+      }
+      for (int b = 0; b < 256; b++) {
+        offsets[b + 1] += offsets[b];
+      }
+      for (int i = 0; i < n; i++) {
+        final int j = offsets[(int) (keys[i] >>> shift) & 0xFF]++;
+        keys2[j] = keys[i];
+        permutation2[j] = permutation[i];
+      }
+      final long[] keys3 = keys;
+      keys = keys2;
+      keys2 = keys3;
+      final int[] permutation3 = permutation;
+      permutation = permutation2;
+      permutation2 = permutation3;
+    }
+    return permutation;
+  }
+
+  /**
+   * Sorts the elements of a sequence in ascending order by using a specified
+   * comparer, holding no more than a given number of bytes of the sequence in
+   * memory.
+   *
+   * <p>If the sequence fits within {@code memoryBudget}, sorts in memory.
+   * Otherwise performs an external merge sort: sorts each chunk that fits
+   * within the budget and writes it as a run to a {@link SpillFile}, then
+   * merges the runs. The sort is stable, like
+   * {@link #orderBy(Enumerable, Function1, Comparator)}.
+   *
+   * <p>If {@code comparator} is null, keys must implement
+   * {@link Comparable}. If {@code memoryBudget} is zero or negative, never
+   * spills.
+   */
+  public static <TSource, TKey> Enumerable<TSource> orderBy(
+      final Enumerable<TSource> source,
+      final Function1<TSource, TKey> keySelector,
+      Comparator<TKey> comparator, final long memoryBudget) {
+    if (memoryBudget <= 0) {
+      return orderBy(source, keySelector, comparator);
+    }
+    final Comparator<TKey> keyComparator = comparator != null
+        ? comparator
+        : EnumerableDefaults.<TKey>naturalOrder();
+    return new AbstractEnumerable<TSource>() {
+      public Enumerator<TSource> enumerator() {
+        final List<SpillFile> runs = new ArrayList<>();
+        final List<TSource> buffer = new ArrayList<>();
+        try (Enumerator<TSource> os = source.enumerator()) {
+          long bytes = 0;
+          while (os.moveNext()) {
+            final TSource o = os.current();
+            buffer.add(o);
+            bytes += SpillFile.estimateSize(o);
+            if (bytes > memoryBudget) {
+              final SpillFile run = SpillFile.create();
+              runs.add(run);
+              for (TSource o2 : sortRun(buffer, keySelector, keyComparator)) {
+                run.add(o2);
+              }
+              SpillStatistics.INSTANCE.sortRunWritten();
+              buffer.clear();
+              bytes = 0;
+            }
+          }
+        } catch (RuntimeException | Error e) {
+          for (SpillFile run : runs) {
+            run.close();
+          }
+          throw e;
+        }
+        final List<TSource> lastRun =
+            sortRun(buffer, keySelector, keyComparator);
+        if (runs.isEmpty()) {
+          return Linq4j.enumerator(lastRun);
+        }
+        // If there are too many runs to read at once, merge groups of runs
+        // into longer runs.
+        while (runs.size() >= MergeSortEnumerator.FAN_IN) {
+          final List<SpillFile> mergedRuns = new ArrayList<>();
+          for (List<SpillFile> group
+              : Lists.partition(runs, MergeSortEnumerator.FAN_IN)) {
+            final SpillFile mergedRun = SpillFile.create();
+            mergedRuns.add(mergedRun);
+            try (Enumerator<TSource> merge =
+                     new MergeSortEnumerator<>(runEnumerators(group),
+                         keySelector, keyComparator)) {
+              while (merge.moveNext()) {
+                mergedRun.add(merge.current());
+              }
+            }
+            SpillStatistics.INSTANCE.sortRunWritten();
+            for (SpillFile run : group) {
+              run.close();
+            }
+          }
+          runs.clear();
+          runs.addAll(mergedRuns);
+        }
+        final List<Enumerator<TSource>> enumerators = runEnumerators(runs);
+        enumerators.add(Linq4j.enumerator(lastRun));
+        return new MergeSortEnumerator<TSource, TKey>(enumerators,
+            keySelector, keyComparator) {
+          @Override public void close() {
+            super.close();
+            for (SpillFile run : runs) {
+              run.close();
+            }
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Sorts the elements of a sequence in ascending order by using a specified
+   * comparer, and returns {@code fetch} elements after skipping
+   * {@code offset} elements.
+   *
+   * <p>Equivalent to
+   * {@code orderBy(source, keySelector, comparator).skip(offset).take(fetch)},
+   * but holds at most {@code offset + fetch} elements in memory, in a
+   * bounded heap, rather than sorting the whole sequence. Like
+   * {@link #orderBy(Enumerable, Function1, Comparator)}, the sort is stable.
+   *
+   * <p>If {@code comparator} is null, keys must implement
+   * {@link Comparable}.
+   */
+  public static <TSource, TKey> Enumerable<TSource> orderBy(
+      final Enumerable<TSource> source,
+      final Function1<TSource, TKey> keySelector,
+      Comparator<TKey> comparator, final int offset, final int fetch) {
+    final Comparator<TKey> keyComparator = comparator != null
+        ? comparator
+        : EnumerableDefaults.<TKey>naturalOrder();
+    return new AbstractEnumerable<TSource>() {
+      public Enumerator<TSource> enumerator() {
+        final int limit = offset + fetch;
+        if (fetch <= 0 || limit < 0) {
+          // "limit < 0" means that "offset + fetch" overflowed; it would
+          // not be sensible to hold that many rows in a heap.
+          return fetch <= 0
+              ? Linq4j.<TSource>emptyEnumerator()
+              : EnumerableDefaults.orderBy(source, keySelector, keyComparator)
+                  .skip(offset).take(fetch).enumerator();
+        }
+        // Max-heap of the best "limit" elements seen so far; its root is
+        // the worst of them. Of elements with equal keys, the one that
+        // arrived later is worse, so that the sort is stable.
+        final Comparator<Object[]> worstFirst = new Comparator<Object[]>() {
+          public int compare(Object[] o1, Object[] o2) {
+            //noinspection unchecked
+            final int c = keyComparator.compare((TKey) o2[0], (TKey) o1[0]);
+            return c != 0 ? c : Long.compare((Long) o2[1], (Long) o1[1]);
+          }
+        };
+        final PriorityQueue<Object[]> heap =
+            new PriorityQueue<>(Math.min(limit, 1024), worstFirst);
+        long ordinal = 0;
+        try (Enumerator<TSource> os = source.enumerator()) {
+          while (os.moveNext()) {
+            final TSource o = os.current();
+            final TKey key = keySelector.apply(o);
+            if (heap.size() < limit) {
+              heap.add(new Object[] {key, ordinal++, o});
+            } else {
+              //noinspection unchecked
+              if (keyComparator.compare(key, (TKey) heap.peek()[0]) < 0) {
+                heap.poll();
+                heap.add(new Object[] {key, ordinal++, o});
+              }
+            }
+          }
+        }
+        final Object[][] entries = heap.toArray(new Object[heap.size()][]);
+        Arrays.sort(entries, Collections.reverseOrder(worstFirst));
+        final List<TSource> list = new ArrayList<>();
+        for (int i = offset; i < entries.length; i++) {
+          //noinspection unchecked
+          list.add((TSource) entries[i][2]);
+        }
+        return Linq4j.enumerator(list);
+      }
+    };
+  }
+
+  private static <TSource> List<Enumerator<TSource>> runEnumerators(
+      List<SpillFile> runs) {
+    final List<Enumerator<TSource>> enumerators = new ArrayList<>();
+    for (SpillFile run : runs) {
+      enumerators.add(run.<TSource>asEnumerable().enumerator());
+    }
+    return enumerators;
+  }
+
+  /** Sorts a list of elements by key, evaluating each key only once.
+   *
+   * <p>Stores keys in an array, and sorts an array of element ordinals, so
+   * that it allocates no object per element. */
+  private static <TSource, TKey> List<TSource> sortRun(List<TSource> list,
+      Function1<TSource, TKey> keySelector, Comparator<TKey> comparator) {
+    final Object[] elements = list.toArray();
+    final int n = elements.length;
+    final Object[] keys = new Object[n];
+    final int[] permutation = new int[n];
+    for (int i = 0; i < n; i++) {
+      //noinspection unchecked
+      keys[i] = keySelector.apply((TSource) elements[i]);
+      permutation[i] = i;
+    }
+    mergeSort(permutation.clone(), permutation, 0, n, keys, comparator);
+    final Object[] sorted = new Object[n];
+    for (int i = 0; i < n; i++) {
+      sorted[i] = elements[permutation[i]];
+    }
     //noinspection unchecked
-    return (Enumerable) where(enumerable,
-        Functions.<TSource, TResult>ofTypePredicate(clazz));
+    return (List<TSource>) Arrays.asList(sorted);
+  }
+
+  /** Sorts the ordinals in {@code dest} between {@code low} (inclusive) and
+   * {@code high} (exclusive) by their keys, using {@code src}, which
+   * initially has the same contents, as a work area. The sort is stable. */
+  private static <TKey> void mergeSort(int[] src, int[] dest, int low,
+      int high, Object[] keys, Comparator<TKey> comparator) {
+    if (high - low < 7) {
+      // Insertion sort on small ranges
+      for (int i = low + 1; i < high; i++) {
+        for (int j = i; j > low && compareKeys(keys, dest[j - 1], dest[j],
+            comparator) > 0; j--) {
+          final int t = dest[j];
+          dest[j] = dest[j - 1];
+          dest[j - 1] = t;
+        }
+      }
+      return;
+    }
+    final int mid = (low + high) >>> 1;
+    mergeSort(dest, src, low, mid, keys, comparator);
+    mergeSort(dest, src, mid, high, keys, comparator);
+    if (compareKeys(keys, src[mid - 1], src[mid], comparator) <= 0) {
+      // Halves are already in order
+      System.arraycopy(src, low, dest, low, high - low);
+      return;
+    }
+    for (int i = low, p = low, q = mid; i < high; i++) {
+      if (q >= high
+          || p < mid && compareKeys(keys, src[p], src[q], comparator) <= 0) {
+        dest[i] = src[p++];
+      } else {
+        dest[i] = src[q++];
+      }
+    }
   }
 
-  /**
-   * Sorts the elements of a sequence in ascending
-   * order according to a key.
-   */
-  public static <TSource, TKey extends Comparable> Enumerable<TSource> orderBy(
-      Enumerable<TSource> source, Function1<TSource, TKey> keySelector) {
-    return orderBy(source, keySelector, null);
+  private static <TKey> int compareKeys(Object[] keys, int i, int j,
+      Comparator<TKey> comparator) {
+    //noinspection unchecked
+    return comparator.compare((TKey) keys[i], (TKey) keys[j]);
   }
 
-  /**
-   * Sorts the elements of a sequence in ascending
-   * order by using a specified comparer.
-   */
-  public static <TSource, TKey> Enumerable<TSource> orderBy(
-      Enumerable<TSource> source, Function1<TSource, TKey> keySelector,
-      Comparator<TKey> comparator) {
-    // NOTE: TreeMap allows null comparator. But the caller of this method
-    // must supply a comparator if the key does not extend Comparable.
-    // Otherwise there will be a ClassCastException while retrieving.
-    final Map<TKey, List<TSource>> map = new TreeMap<>(comparator);
-    LookupImpl<TKey, TSource> lookup = toLookup_(map, source, keySelector,
-        Functions.<TSource>identitySelector());
-    return lookup.valuesEnumerable();
+  /** Returns a comparator that uses the natural order of its arguments,
+   * which must implement {@link Comparable}. */
+  private static <T> Comparator<T> naturalOrder() {
+    return new Comparator<T>() {
+      public int compare(T o1, T o2) {
+        //noinspection unchecked
+        return ((Comparable) o1).compareTo(o2);
+      }
+    };
   }
 
   /**
@@ -3222,6 +4513,179 @@ public void remove() {
     }
   }
 
+  /** Index of elements, each of which has a range of keys
+   * [{@code low}, {@code high}], that finds the elements whose range overlaps
+   * a given range. If there is no low key, the range is unbounded below; if
+   * there is no high key, unbounded above. Elements with a null key are not
+   * indexed.
+   *
+   * <p>The elements are sorted by low key (or, if there is no low key, by
+   * high key), so that if only one of the keys is present, the matching
+   * elements are a prefix or suffix of the array, found by binary search.
+   * If both keys are present, the array is an implicit binary search tree,
+   * the root of each sub-range being its middle element, and each node knows
+   * the greatest high key in its subtree; a search skips the subtrees whose
+   * greatest high key is less than the low bound, and the right subtrees of
+   * nodes whose low key is greater than the high bound.
+   *
+   * @param <T> Element type */
+  private static class IntervalIndex<T> {
+    private final Object[] elements;
+    private final Comparable[] lows;
+    private final Comparable[] highs;
+    private final Comparable[] maxHighs;
+
+    IntervalIndex(List<T> list, Function1<T, Comparable> lowSelector,
+        Function1<T, Comparable> highSelector) {
+      final List<T> indexed = new ArrayList<>(list.size());
+      final List<Comparable> lowList = new ArrayList<>(list.size());
+      final List<Comparable> highList = new ArrayList<>(list.size());
+      for (T t : list) {
+        final Comparable low = lowSelector == null ? null : lowSelector.apply(t);
+        final Comparable high =
+            highSelector == null ? null : highSelector.apply(t);
+        if (low == null && lowSelector != null
+            || high == null && highSelector != null) {
+          continue;
+        }
+        indexed.add(t);
+        lowList.add(low);
+        highList.add(high);
+      }
+      final int n = indexed.size();
+      final Comparable[] keys =
+          (lowSelector != null ? lowList : highList).toArray(new Comparable[n]);
+      final int[] permutation = new int[n];
+      for (int i = 0; i < n; i++) {
+        permutation[i] = i;
+      }
+      mergeSort(permutation.clone(), permutation, 0, n, keys,
+          EnumerableDefaults.<Comparable>naturalOrder());
+      elements = new Object[n];
+      lows = lowSelector == null ? null : new Comparable[n];
+      highs = highSelector == null ? null : new Comparable[n];
+      for (int i = 0; i < n; i++) {
+        final int j = permutation[i];
+        elements[i] = indexed.get(j);
+        if (lows != null) {
+          lows[i] = lowList.get(j);
+        }
+        if (highs != null) {
+          highs[i] = highList.get(j);
+        }
+      }
+      if (lows != null && highs != null) {
+        maxHighs = new Comparable[n];
+        computeMaxHighs(0, n);
+      } else {
+        maxHighs = null;
+      }
+    }
+
+    /** Computes the greatest high key in the subtree whose elements are
+     * {@code [start, end)}, storing it at the root of the subtree. */
+    private Comparable computeMaxHighs(int start, int end) {
+      if (start >= end) {
+        return null;
+      }
+      final int mid = (start + end) >>> 1;
+      Comparable max = highs[mid];
+      final Comparable left = computeMaxHighs(start, mid);
+      if (left != null && compare(left, max) > 0) {
+        max = left;
+      }
+      final Comparable right = computeMaxHighs(mid + 1, end);
+      if (right != null && compare(right, max) > 0) {
+        max = right;
+      }
+      maxHighs[mid] = max;
+      return max;
+    }
+
+    /** Returns the elements whose range overlaps [{@code low}, {@code high}];
+     * a null bound is ignored. */
+    List<T> overlapping(Comparable low, Comparable high) {
+      final List<T> list = new ArrayList<>();
+      if (highs == null) {
+        // Elements are sorted by low key; return those whose low key is not
+        // greater than the high bound.
+        final int end = high == null ? elements.length : upperBound(lows, high);
+        for (int i = 0; i < end; i++) {
+          list.add(element(i));
+        }
+      } else if (lows == null) {
+        // Elements are sorted by high key; return those whose high key is not
+        // less than the low bound.
+        final int start = low == null ? 0 : lowerBound(highs, low);
+        for (int i = start; i < elements.length; i++) {
+          list.add(element(i));
+        }
+      } else {
+        search(0, elements.length, low, high, list);
+      }
+      return list;
+    }
+
+    private void search(int start, int end, Comparable low, Comparable high,
+        List<T> list) {
+      if (start >= end) {
+        return;
+      }
+      final int mid = (start + end) >>> 1;
+      if (low != null && compare(maxHighs[mid], low) < 0) {
+        return; // no range in this subtree reaches the low bound
+      }
+      search(start, mid, low, high, list);
+      if (high != null && compare(lows[mid], high) > 0) {
+        return; // this and later ranges start after the high bound
+      }
+      if (low == null || compare(highs[mid], low) >= 0) {
+        list.add(element(mid));
+      }
+      search(mid + 1, end, low, high, list);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T element(int i) {
+      return (T) elements[i];
+    }
+
+    /** Returns the index of the first key that is greater than {@code v}. */
+    private static int upperBound(Comparable[] keys, Comparable v) {
+      int low = 0;
+      int high = keys.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (compare(keys[mid], v) <= 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /** Returns the index of the first key that is not less than {@code v}. */
+    private static int lowerBound(Comparable[] keys, Comparable v) {
+      int low = 0;
+      int high = keys.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (compare(keys[mid], v) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Comparable v0, Comparable v1) {
+      return v0.compareTo(v1);
+    }
+  }
+
   /** Enumerator that performs a merge join on its sorted inputs.
    *
    * @param <TResult> result type
@@ -3230,136 +4694,451 @@ public void remove() {
    * @param <TInner> right input record type */
   private static class MergeJoinEnumerator<TResult, TSource, TInner, TKey extends Comparable<TKey>>
       implements Enumerator<TResult> {
+    /** Rows of the left input whose key is the current key. */
     final List<TSource> lefts = new ArrayList<>();
+    /** Rows of the right input whose key is the current key. */
     final List<TInner> rights = new ArrayList<>();
     private final Enumerator<TSource> leftEnumerator;
     private final Enumerator<TInner> rightEnumerator;
     private final Function1<TSource, TKey> outerKeySelector;
     private final Function1<TInner, TKey> innerKeySelector;
     private final Function2<TSource, TInner, TResult> resultSelector;
-    boolean done;
-    Enumerator<List<Object>> cartesians;
+    private final boolean generateNullsOnLeft;
+    private final boolean generateNullsOnRight;
+    private boolean leftHas;
+    private TSource left;
+    private TKey leftKey;
+    private boolean rightHas;
+    private TInner right;
+    private TKey rightKey;
+    /** Position in the cross product of {@link #lefts} and
+     * {@link #rights}. */
+    private int i;
+    private int j;
+    private TResult current;
 
     MergeJoinEnumerator(Enumerator<TSource> leftEnumerator,
         Enumerator<TInner> rightEnumerator,
         Function1<TSource, TKey> outerKeySelector,
         Function1<TInner, TKey> innerKeySelector,
-        Function2<TSource, TInner, TResult> resultSelector) {
+        Function2<TSource, TInner, TResult> resultSelector,
+        boolean generateNullsOnLeft,
+        boolean generateNullsOnRight) {
       this.leftEnumerator = leftEnumerator;
       this.rightEnumerator = rightEnumerator;
       this.outerKeySelector = outerKeySelector;
       this.innerKeySelector = innerKeySelector;
       this.resultSelector = resultSelector;
+      this.generateNullsOnLeft = generateNullsOnLeft;
+      this.generateNullsOnRight = generateNullsOnRight;
       start();
     }
 
     private void start() {
-      if (!leftEnumerator.moveNext()
-          || !rightEnumerator.moveNext()
-          || !advance()) {
-        done = true;
-        cartesians = Linq4j.emptyEnumerator();
-      }
-    }
-
-    /** Moves to the next key that is present in both sides. Populates
-     * lefts and rights with the rows. Restarts the cross-join
-     * enumerator. */
-    private boolean advance() {
-      TSource left = leftEnumerator.current();
-      TKey leftKey = outerKeySelector.apply(left);
-      TInner right = rightEnumerator.current();
-      TKey rightKey = innerKeySelector.apply(right);
+      lefts.clear();
+      rights.clear();
+      i = 0;
+      j = 0;
+      moveLeft();
+      moveRight();
+    }
+
+    private void moveLeft() {
+      leftHas = leftEnumerator.moveNext();
+      left = leftHas ? leftEnumerator.current() : null;
+      leftKey = leftHas ? outerKeySelector.apply(left) : null;
+    }
+
+    private void moveRight() {
+      rightHas = rightEnumerator.moveNext();
+      right = rightHas ? rightEnumerator.current() : null;
+      rightKey = rightHas ? innerKeySelector.apply(right) : null;
+    }
+
+    public TResult current() {
+      return current;
+    }
+
+    public boolean moveNext() {
       for (;;) {
-        int c = leftKey.compareTo(rightKey);
-        if (c == 0) {
-          break;
+        if (i < lefts.size()) {
+          current = resultSelector.apply(lefts.get(i), rights.get(j));
+          if (++j == rights.size()) {
+            j = 0;
+            ++i;
+          }
+          return true;
         }
-        if (c < 0) {
-          if (!leftEnumerator.moveNext()) {
-            done = true;
+        final int c;
+        if (leftHas && leftKey == null) {
+          c = -1;
+        } else if (rightHas && rightKey == null) {
+          c = 1;
+        } else if (!rightHas) {
+          if (!leftHas || !generateNullsOnRight) {
             return false;
           }
-          left = leftEnumerator.current();
-          leftKey = outerKeySelector.apply(left);
-        } else {
-          if (!rightEnumerator.moveNext()) {
-            done = true;
+          c = -1;
+        } else if (!leftHas) {
+          if (!generateNullsOnLeft) {
             return false;
           }
-          right = rightEnumerator.current();
-          rightKey = innerKeySelector.apply(right);
-        }
-      }
-      lefts.clear();
-      lefts.add(left);
-      for (;;) {
-        if (!leftEnumerator.moveNext()) {
-          done = true;
-          break;
+          c = 1;
+        } else {
+          c = leftKey.compareTo(rightKey);
         }
-        left = leftEnumerator.current();
-        TKey leftKey2 = outerKeySelector.apply(left);
-        int c = leftKey.compareTo(leftKey2);
-        if (c != 0) {
-          assert c < 0 : "not sorted";
-          break;
+        if (c < 0) {
+          // The left row matches no right row
+          final TSource unmatched = left;
+          moveLeft();
+          if (generateNullsOnRight) {
+            current = resultSelector.apply(unmatched, null);
+            return true;
+          }
+        } else if (c > 0) {
+          // The right row matches no left row
+          final TInner unmatched = right;
+          moveRight();
+          if (generateNullsOnLeft) {
+            current = resultSelector.apply(null, unmatched);
+            return true;
+          }
+        } else {
+          // Gather the rows of each input that have the current key, and
+          // return their cross product
+          final TKey key = leftKey;
+          lefts.clear();
+          do {
+            lefts.add(left);
+            moveLeft();
+          } while (leftHas && leftKey != null && key.compareTo(leftKey) == 0);
+          rights.clear();
+          do {
+            rights.add(right);
+            moveRight();
+          } while (rightHas && rightKey != null
+              && key.compareTo(rightKey) == 0);
+          i = 0;
+          j = 0;
         }
-        lefts.add(left);
       }
-      rights.clear();
-      rights.add(right);
-      for (;;) {
-        if (!rightEnumerator.moveNext()) {
-          done = true;
-          break;
+    }
+
+    public void reset() {
+      leftEnumerator.reset();
+      rightEnumerator.reset();
+      start();
+    }
+
+    public void close() {
+      leftEnumerator.close();
+      rightEnumerator.close();
+    }
+  }
+
+  /** Enumerator that performs a semi-join or anti-join on its sorted inputs.
+   *
+   * @param <TSource> left input record type
+   * @param <TKey> key type
+   * @param <TInner> right input record type */
+  private static class MergeSemiJoinEnumerator<TSource, TInner, TKey extends Comparable<TKey>>
+      implements Enumerator<TSource> {
+    private final Enumerator<TSource> leftEnumerator;
+    private final Enumerator<TInner> rightEnumerator;
+    private final Function1<TSource, TKey> outerKeySelector;
+    private final Function1<TInner, TKey> innerKeySelector;
+    private final boolean anti;
+    private boolean rightHas;
+    private TKey rightKey;
+    private boolean started;
+    private TSource current;
+
+    MergeSemiJoinEnumerator(Enumerator<TSource> leftEnumerator,
+        Enumerator<TInner> rightEnumerator,
+        Function1<TSource, TKey> outerKeySelector,
+        Function1<TInner, TKey> innerKeySelector, boolean anti) {
+      this.leftEnumerator = leftEnumerator;
+      this.rightEnumerator = rightEnumerator;
+      this.outerKeySelector = outerKeySelector;
+      this.innerKeySelector = innerKeySelector;
+      this.anti = anti;
+    }
+
+    private void moveRight() {
+      rightHas = rightEnumerator.moveNext();
+      rightKey = rightHas
+          ? innerKeySelector.apply(rightEnumerator.current())
+          : null;
+    }
+
+    public TSource current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (!started) {
+        started = true;
+        moveRight();
+      }
+      while (leftEnumerator.moveNext()) {
+        final TSource left = leftEnumerator.current();
+        final TKey leftKey = outerKeySelector.apply(left);
+        boolean matched = false;
+        if (leftKey != null) {
+          // Skip right rows whose key is null or less than the left key.
+          // Stop at an equal key; the next left row may have the same key.
+          while (rightHas
+              && (rightKey == null || rightKey.compareTo(leftKey) < 0)) {
+            moveRight();
+          }
+          matched = rightHas && rightKey.compareTo(leftKey) == 0;
         }
-        right = rightEnumerator.current();
-        TKey rightKey2 = innerKeySelector.apply(right);
-        int c = rightKey.compareTo(rightKey2);
-        if (c != 0) {
-          assert c < 0 : "not sorted";
-          break;
+        if (matched != anti) {
+          current = left;
+          return true;
+        }
+        if (!rightHas && !anti) {
+          return false;
         }
-        rights.add(right);
       }
-      cartesians = Linq4j.product(
-          ImmutableList.of(Linq4j.<Object>enumerator(lefts),
-              Linq4j.<Object>enumerator(rights)));
-      return true;
+      return false;
+    }
+
+    public void reset() {
+      leftEnumerator.reset();
+      rightEnumerator.reset();
+      started = false;
+    }
+
+    public void close() {
+      leftEnumerator.close();
+      rightEnumerator.close();
+    }
+  }
+
+  /** Enumerator that joins, one pair at a time, the partitions that a Grace
+   * hash join has written to disk.
+   *
+   * @param <TResult> result type */
+  private abstract static class GraceJoinEnumerator<TResult>
+      implements Enumerator<TResult> {
+    /** Number of partitions that each input is split into. */
+    static final int FAN_OUT = 16;
+
+    /** Maximum number of times that a partition is re-partitioned. */
+    static final int MAX_DEPTH = 4;
+
+    private final List<SpillFile> outerFiles;
+    private final List<SpillFile> innerFiles;
+    private int i = -1;
+    private Enumerator<TResult> current = Linq4j.emptyEnumerator();
+
+    GraceJoinEnumerator(List<SpillFile> outerFiles,
+        List<SpillFile> innerFiles) {
+      this.outerFiles = outerFiles;
+      this.innerFiles = innerFiles;
     }
 
+    /** Joins a pair of partitions. */
+    abstract Enumerator<TResult> join(Enumerable<Object> outerPartition,
+        Enumerable<Object> innerPartition);
+
+    /** Returns whether joining a pair of partitions can produce any rows. */
+    abstract boolean canMatch(SpillFile outerFile, SpillFile innerFile);
+
     public TResult current() {
-      final List<Object> list = cartesians.current();
-      @SuppressWarnings("unchecked") final TSource left =
-          (TSource) list.get(0);
-      @SuppressWarnings("unchecked") final TInner right =
-          (TInner) list.get(1);
-      return resultSelector.apply(left, right);
+      return current.current();
     }
 
     public boolean moveNext() {
       for (;;) {
-        if (cartesians.moveNext()) {
+        if (current.moveNext()) {
           return true;
         }
-        if (done) {
-          return false;
+        current.close();
+        if (i >= 0) {
+          outerFiles.get(i).close();
+          innerFiles.get(i).close();
         }
-        if (!advance()) {
+        if (++i >= outerFiles.size()) {
+          current = Linq4j.emptyEnumerator();
           return false;
         }
+        final SpillFile outerFile = outerFiles.get(i);
+        final SpillFile innerFile = innerFiles.get(i);
+        current = canMatch(outerFile, innerFile)
+            ? join(outerFile.asEnumerable(), innerFile.asEnumerable())
+            : Linq4j.<TResult>emptyEnumerator();
       }
     }
 
     public void reset() {
-      done = false;
-      leftEnumerator.reset();
-      rightEnumerator.reset();
-      start();
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      current.close();
+      for (SpillFile file : Iterables.concat(outerFiles, innerFiles)) {
+        file.close();
+      }
+    }
+  }
+
+  /** Enumerator that aggregates groups of adjacent elements with equal
+   * keys.
+   *
+   * @param <TSource> element type
+   * @param <TKey> key type
+   * @param <TAccumulate> accumulator type
+   * @param <TResult> result type */
+  private static class SortedAggregateEnumerator<TSource, TKey, TAccumulate,
+      TResult> implements Enumerator<TResult> {
+    private final Enumerator<TSource> enumerator;
+    private final Function1<TSource, TKey> keySelector;
+    private final Function0<TAccumulate> accumulatorInitializer;
+    private final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder;
+    private final Function2<TKey, TAccumulate, TResult> resultSelector;
+    private final EqualityComparer<TKey> comparer;
+    /** Whether the input is positioned on the first element of the next
+     * group. */
+    private boolean hasNext;
+    private TResult current;
+
+    SortedAggregateEnumerator(Enumerator<TSource> enumerator,
+        Function1<TSource, TKey> keySelector,
+        Function0<TAccumulate> accumulatorInitializer,
+        Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+        Function2<TKey, TAccumulate, TResult> resultSelector,
+        EqualityComparer<TKey> comparer) {
+      this.enumerator = enumerator;
+      this.keySelector = keySelector;
+      this.accumulatorInitializer = accumulatorInitializer;
+      this.accumulatorAdder = accumulatorAdder;
+      this.resultSelector = resultSelector;
+      this.comparer = comparer;
+      this.hasNext = enumerator.moveNext();
+    }
+
+    public TResult current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (!hasNext) {
+        return false;
+      }
+      TSource element = enumerator.current();
+      final TKey key = keySelector.apply(element);
+      TAccumulate accumulator = accumulatorInitializer.apply();
+      for (;;) {
+        accumulator = accumulatorAdder.apply(accumulator, element);
+        if (!enumerator.moveNext()) {
+          hasNext = false;
+          break;
+        }
+        element = enumerator.current();
+        if (!equal(key, keySelector.apply(element))) {
+          break;
+        }
+      }
+      current = resultSelector.apply(key, accumulator);
+      return true;
+    }
+
+    private boolean equal(TKey key0, TKey key1) {
+      return comparer == null
+          ? Objects.equals(key0, key1)
+          : comparer.equal(key0, key1);
+    }
+
+    public void reset() {
+      enumerator.reset();
+      hasNext = enumerator.moveNext();
+      current = null;
+    }
+
+    public void close() {
+      enumerator.close();
+    }
+  }
+
+  /** Enumerator that merges several sorted enumerators, such as the runs
+   * of an external sort. When elements have equal keys, returns the element
+   * from the earlier enumerator first, so that the merge is stable.
+   *
+   * @param <TSource> element type
+   * @param <TKey> key type */
+  private static class MergeSortEnumerator<TSource, TKey>
+      implements Enumerator<TSource> {
+    /** Maximum number of runs that an external sort merges at a time. */
+    static final int FAN_IN = 64;
+
+    private final List<Enumerator<TSource>> enumerators;
+    private final Function1<TSource, TKey> keySelector;
+    private final PriorityQueue<Head> queue;
+    private TSource current;
+
+    MergeSortEnumerator(List<Enumerator<TSource>> enumerators,
+        Function1<TSource, TKey> keySelector,
+        final Comparator<TKey> comparator) {
+      this.enumerators = enumerators;
+      this.keySelector = keySelector;
+      this.queue = new PriorityQueue<>(enumerators.size() + 1,
+          new Comparator<Head>() {
+            public int compare(Head o1, Head o2) {
+              final int c = comparator.compare(o1.key, o2.key);
+              return c != 0 ? c : Integer.compare(o1.i, o2.i);
+            }
+          });
+      for (int i = 0; i < enumerators.size(); i++) {
+        advance(i);
+      }
+    }
+
+    private void advance(int i) {
+      final Enumerator<TSource> enumerator = enumerators.get(i);
+      if (enumerator.moveNext()) {
+        final TSource o = enumerator.current();
+        queue.add(new Head(i, keySelector.apply(o), o));
+      }
+    }
+
+    public TSource current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      final Head head = queue.poll();
+      if (head == null) {
+        return false;
+      }
+      current = head.element;
+      advance(head.i);
+      return true;
+    }
+
+    public void reset() {
+      throw new UnsupportedOperationException();
     }
 
     public void close() {
+      for (Enumerator<TSource> enumerator : enumerators) {
+        enumerator.close();
+      }
+      queue.clear();
+    }
+
+    /** Next element of one of the input enumerators. */
+    private class Head {
+      final int i;
+      final TKey key;
+      final TSource element;
+
+      Head(int i, TKey key, TSource element) {
+        this.i = i;
+        this.key = key;
+        this.element = element;
+      }
     }
   }
 }
@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.linq4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Hash table that groups the elements of a sequence by key and computes
+ * aggregates for each group.
+ *
+ * <p>Unlike {@link EnumerableDefaults#groupBy}, which stores an accumulator
+ * object for each group in a {@link java.util.HashMap}, a
+ * {@code HashAggregator} uses open addressing with linear probing, and
+ * identifies each group by a dense ordinal. A sub-class, usually generated,
+ * stores the key columns and accumulator state of each group in arrays
+ * indexed by that ordinal; a group whose accumulators are primitive
+ * therefore costs no allocation beyond growing those arrays.
+ *
+ * <p>A key is either an object, returned by {@link #key(Object)}, or, if all
+ * key columns are primitive, the columns packed into a {@code long}, returned
+ * by {@link #longKey(Object)}.
+ *
+ * <p>If the memory budget is positive, and the groups in the table use more
+ * than the budget, the table stops creating groups. Elements that belong to
+ * a group already in the table are still aggregated; other elements are
+ * written to spill files, partitioned by the hash of their key. After the
+ * groups in the table have been returned, each partition is aggregated in
+ * the same way. Every element of a group is either aggregated in memory or
+ * spilled, so accumulators never need to be merged.
+ *
+ * @param <TSource> Element type
+ * @param <TResult> Result type
+ */
+public abstract class HashAggregator<TSource, TResult> {
+  /** Number of partitions that spilled elements are split into. */
+  static final int FAN_OUT = 16;
+
+  /** Maximum number of times that a partition is re-partitioned. */
+  static final int MAX_DEPTH = 4;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Estimated number of bytes used by the table for each group, in
+   * addition to the bytes used by the sub-class. */
+  private static final int BYTES_PER_GROUP = 24;
+
+  private final boolean longKeys;
+  private final long memoryBudget;
+  private final long bytesPerGroup;
+
+  /** Open-addressing table; each slot holds a group ordinal plus one, or
+   * zero if it is empty. Its length is a power of two. */
+  private int[] slots;
+  private int[] hashes;
+  private Object[] keys;
+  private long[] longKeyValues;
+  private int capacity;
+  private int groupCount;
+  private int freeSlot;
+
+  /**
+   * Creates a HashAggregator.
+   *
+   * @param longKeys Whether keys are packed into a {@code long} and returned
+   *                 by {@link #longKey(Object)}, rather than returned by
+   *                 {@link #key(Object)}
+   * @param memoryBudget Number of bytes that groups may occupy before
+   *                     elements are spilled to disk, or 0 if unlimited
+   * @param bytesPerGroup Estimated number of bytes that the sub-class uses
+   *                      to store each group
+   */
+  protected HashAggregator(boolean longKeys, long memoryBudget,
+      long bytesPerGroup) {
+    this.longKeys = longKeys;
+    this.memoryBudget = memoryBudget;
+    this.bytesPerGroup = bytesPerGroup + BYTES_PER_GROUP;
+  }
+
+  /** Returns the key of an element. Sub-classes that do not pack keys into
+   * a {@code long} must override. */
+  protected Object key(TSource element) {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Returns the key of an element, packed into a {@code long}. Sub-classes
+   * that pack keys must override. */
+  protected long longKey(TSource element) {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Grows the arrays that store the state of each group to a given
+   * capacity, retaining the state of the first {@code groupCount} groups. */
+  protected abstract void grow(int groupCount, int capacity);
+
+  /** Initializes the state of a new group, given its first element. The
+   * element is subsequently passed to {@link #add}. */
+  protected abstract void init(int group, TSource element);
+
+  /** Adds an element to the accumulators of a group. */
+  protected abstract void add(int group, TSource element);
+
+  /** Returns the result for a group. */
+  protected abstract TResult result(int group);
+
+  /** Returns an enumerator that aggregates a sequence.
+   *
+   * <p>The enumerator reads the whole sequence when {@code moveNext} is
+   * first called. A {@code HashAggregator} holds the state of a single
+   * enumerator, so create a new {@code HashAggregator} for each call. */
+  public Enumerator<TResult> aggregate(Enumerable<TSource> source) {
+    return new AggregateEnumerator(source);
+  }
+
+  /** Removes all groups from the table, retaining its arrays. */
+  private void clear() {
+    if (slots == null) {
+      slots = new int[INITIAL_CAPACITY * 2];
+      hashes = new int[INITIAL_CAPACITY];
+      if (longKeys) {
+        longKeyValues = new long[INITIAL_CAPACITY];
+      } else {
+        keys = new Object[INITIAL_CAPACITY];
+      }
+      capacity = INITIAL_CAPACITY;
+      grow(0, capacity);
+    } else {
+      Arrays.fill(slots, 0);
+      if (keys != null) {
+        Arrays.fill(keys, 0, groupCount, null);
+      }
+    }
+    groupCount = 0;
+  }
+
+  /** Returns the ordinal of the group with a given key, or -1 if there is no
+   * such group; in which case, sets {@link #freeSlot} to the slot where the
+   * group should be inserted. */
+  private int find(int hash, Object key, long longKey) {
+    final int mask = slots.length - 1;
+    for (int i = hash & mask;; i = (i + 1) & mask) {
+      final int slot = slots[i];
+      if (slot == 0) {
+        freeSlot = i;
+        return -1;
+      }
+      final int group = slot - 1;
+      if (hashes[group] == hash
+          && (longKeys
+              ? longKeyValues[group] == longKey
+              : Objects.equals(keys[group], key))) {
+        return group;
+      }
+    }
+  }
+
+  /** Creates a group in the slot found by the previous call to
+   * {@link #find}, and returns its ordinal. */
+  private int insert(int hash, Object key, long longKey) {
+    if (groupCount == capacity) {
+      final int newCapacity = capacity * 2;
+      hashes = Arrays.copyOf(hashes, newCapacity);
+      if (longKeys) {
+        longKeyValues = Arrays.copyOf(longKeyValues, newCapacity);
+      } else {
+        keys = Arrays.copyOf(keys, newCapacity);
+      }
+      grow(groupCount, newCapacity);
+      capacity = newCapacity;
+    }
+    final int group = groupCount++;
+    hashes[group] = hash;
+    if (longKeys) {
+      longKeyValues[group] = longKey;
+    } else {
+      keys[group] = key;
+    }
+    slots[freeSlot] = group + 1;
+    if (groupCount * 2 > slots.length) {
+      rehash(slots.length * 2);
+    }
+    return group;
+  }
+
+  private void rehash(int slotCount) {
+    slots = new int[slotCount];
+    final int mask = slotCount - 1;
+    for (int group = 0; group < groupCount; group++) {
+      int i = hashes[group] & mask;
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      slots[i] = group + 1;
+    }
+  }
+
+  /** Reads a sequence into the table, spilling elements whose groups do not
+   * fit within the memory budget into partitions, which are added to
+   * {@code partitions}. */
+  private void load(Enumerable<TSource> source, int depth,
+      List<SpillFile> partitions) {
+    clear();
+    final boolean canSpill = memoryBudget > 0 && depth < MAX_DEPTH;
+    boolean spilling = false;
+    try (Enumerator<TSource> enumerator = source.enumerator()) {
+      while (enumerator.moveNext()) {
+        final TSource element = enumerator.current();
+        final Object key;
+        final long longKey;
+        final int hash;
+        if (longKeys) {
+          key = null;
+          longKey = longKey(element);
+          hash = hash(longKey, depth);
+        } else {
+          key = key(element);
+          longKey = 0L;
+          hash = hash(key == null ? 0L : key.hashCode(), depth);
+        }
+        int group = find(hash, key, longKey);
+        if (group < 0) {
+          if (!spilling
+              && canSpill
+              && (groupCount + 1) * bytesPerGroup > memoryBudget) {
+            spilling = true;
+            for (int i = 0; i < FAN_OUT; i++) {
+              partitions.add(SpillFile.create());
+            }
+            SpillStatistics.INSTANCE.aggregatePartitionsWritten(FAN_OUT);
+          }
+          if (spilling) {
+            // Use the high bits of the hash, which do not determine the
+            // slot, so that each partition is spread over its table.
+            partitions.get(partitions.size() - FAN_OUT + (hash >>> 28))
+                .add(element);
+            continue;
+          }
+          group = insert(hash, key, longKey);
+          init(group, element);
+        }
+        add(group, element);
+      }
+    }
+  }
+
+  /** Hashes a key. Each level of partitioning uses a different hash
+   * function, so that a partition does not put all of its elements into the
+   * same sub-partition. */
+  private static int hash(long v, int depth) {
+    v ^= depth * 0x9E3779B97F4A7C15L;
+    v ^= v >>> 33;
+    v *= 0xFF51AFD7ED558CCDL;
+    v ^= v >>> 33;
+    v *= 0xC4CEB9FE1A85EC53L;
+    v ^= v >>> 33;
+    return (int) v;
+  }
+
+  /** Enumerator that returns the groups in the table, then aggregates and
+   * returns the groups in each spilled partition. */
+  private class AggregateEnumerator implements Enumerator<TResult> {
+    private final Deque<SpillFile> pendingFiles = new ArrayDeque<>();
+    private final Deque<Integer> pendingDepths = new ArrayDeque<>();
+    private Enumerable<TSource> source;
+    private SpillFile file;
+    private int depth;
+    private boolean loaded;
+    private int group;
+    private TResult current;
+
+    AggregateEnumerator(Enumerable<TSource> source) {
+      this.source = source;
+    }
+
+    public TResult current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      for (;;) {
+        if (!loaded) {
+          final List<SpillFile> partitions = new ArrayList<>();
+          try {
+            load(source, depth, partitions);
+          } finally {
+            for (SpillFile partition : partitions) {
+              pendingFiles.push(partition);
+              pendingDepths.push(depth + 1);
+            }
+          }
+          loaded = true;
+          group = -1;
+        }
+        if (++group < groupCount) {
+          current = result(group);
+          return true;
+        }
+        if (file != null) {
+          file.close();
+          file = null;
+        }
+        for (;;) {
+          if (pendingFiles.isEmpty()) {
+            current = null;
+            return false;
+          }
+          file = pendingFiles.pop();
+          depth = pendingDepths.pop();
+          if (file.count() > 0) {
+            break;
+          }
+          file.close();
+        }
+        source = file.asEnumerable();
+        loaded = false;
+      }
+    }
+
+    public void reset() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      if (file != null) {
+        file.close();
+        file = null;
+      }
+      for (SpillFile pendingFile : pendingFiles) {
+        pendingFile.close();
+      }
+      pendingFiles.clear();
+      pendingDepths.clear();
+    }
+  }
+}
+
+// End HashAggregator.java
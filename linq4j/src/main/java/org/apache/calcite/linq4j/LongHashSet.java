@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.linq4j;
+
+/**
+ * Set of {@code long} values.
+ *
+ * <p>Unlike a {@link java.util.HashSet} of {@link Long}, does not box its
+ * values; it stores them in an array, using open addressing with linear
+ * probing. Values of other primitive types, such as {@code int} and
+ * {@code double}, can be stored by converting them to {@code long}.
+ *
+ * @see LongMultiMap
+ */
+public class LongHashSet {
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Open-addressing table. Zero means an empty slot; the value zero is
+   * recorded in {@link #containsZero}. Its length is a power of two. */
+  private long[] values;
+  private boolean containsZero;
+  private int size;
+
+  /** Creates an empty LongHashSet. */
+  public LongHashSet() {
+    values = new long[INITIAL_CAPACITY];
+  }
+
+  /** Returns the number of values in this set. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns whether this set contains a given value. */
+  public boolean contains(long value) {
+    if (value == 0L) {
+      return containsZero;
+    }
+    final int mask = values.length - 1;
+    for (int i = hash(value) & mask;; i = (i + 1) & mask) {
+      final long v = values[i];
+      if (v == value) {
+        return true;
+      }
+      if (v == 0L) {
+        return false;
+      }
+    }
+  }
+
+  /** Adds a value to this set; returns whether it was not already present. */
+  public boolean add(long value) {
+    if (value == 0L) {
+      if (containsZero) {
+        return false;
+      }
+      containsZero = true;
+      ++size;
+      return true;
+    }
+    final int mask = values.length - 1;
+    int i = hash(value) & mask;
+    for (;;) {
+      final long v = values[i];
+      if (v == value) {
+        return false;
+      }
+      if (v == 0L) {
+        break;
+      }
+      i = (i + 1) & mask;
+    }
+    values[i] = value;
+    if (++size * 2 > values.length) {
+      rehash(values.length * 2);
+    }
+    return true;
+  }
+
+  private void rehash(int capacity) {
+    final long[] oldValues = values;
+    values = new long[capacity];
+    final int mask = capacity - 1;
+    for (long v : oldValues) {
+      if (v != 0L) {
+        int i = hash(v) & mask;
+        while (values[i] != 0L) {
+          i = (i + 1) & mask;
+        }
+        values[i] = v;
+      }
+    }
+  }
+
+  /** Hashes a value. Mixes the bits, so that values that differ only in
+   * their high bits, such as the bits of {@code double} values, do not
+   * collide. */
+  static int hash(long v) {
+    v ^= v >>> 33;
+    v *= 0xFF51AFD7ED558CCDL;
+    v ^= v >>> 33;
+    return (int) v;
+  }
+}
+
+// End LongHashSet.java
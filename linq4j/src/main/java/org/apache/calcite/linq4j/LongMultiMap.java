@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.linq4j;
+
+import java.util.Arrays;
+
+/**
+ * Map from {@code long} keys to any number of values of each key.
+ *
+ * <p>Unlike a {@link Lookup} whose keys are {@link Long}, does not box its
+ * keys or create a list for each key. Keys are stored in an array, using
+ * open addressing with linear probing; values are stored in an array in the
+ * order they were added, each with the index of the next value with the same
+ * key.
+ *
+ * <p>A value is identified by its index; the first value of a key is given
+ * by {@link #first(long)}, and subsequent values by {@link #next(int)}. For
+ * example,
+ *
+ * <blockquote><pre>
+ * for (int i = map.first(key); i &ge; 0; i = map.next(i)) {
+ *   V v = map.value(i);
+ * }</pre></blockquote>
+ *
+ * @param <V> Value type
+ *
+ * @see LongHashSet
+ */
+public class LongMultiMap<V> {
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Open-addressing table of keys. Each slot of {@link #heads} holds the
+   * index of the first value of the key plus one, or zero if the slot is
+   * empty. Their length is a power of two. */
+  private long[] keys;
+  private int[] heads;
+  private int[] tails;
+  private int keyCount;
+
+  private Object[] values;
+  private int[] nexts;
+  private int size;
+
+  /** Creates an empty LongMultiMap. */
+  public LongMultiMap() {
+    keys = new long[INITIAL_CAPACITY];
+    heads = new int[INITIAL_CAPACITY];
+    tails = new int[INITIAL_CAPACITY];
+    values = new Object[INITIAL_CAPACITY];
+    nexts = new int[INITIAL_CAPACITY];
+  }
+
+  /** Returns the number of values in this map. */
+  public int size() {
+    return size;
+  }
+
+  /** Adds a value for a key, after any existing values of the key. */
+  public void put(long key, V value) {
+    if (size == values.length) {
+      values = Arrays.copyOf(values, size * 2);
+      nexts = Arrays.copyOf(nexts, size * 2);
+    }
+    final int index = size++;
+    values[index] = value;
+    nexts[index] = -1;
+    final int slot = slot(key);
+    if (heads[slot] == 0) {
+      keys[slot] = key;
+      heads[slot] = index + 1;
+      tails[slot] = index;
+      if (++keyCount * 2 > keys.length) {
+        rehash(keys.length * 2);
+      }
+    } else {
+      nexts[tails[slot]] = index;
+      tails[slot] = index;
+    }
+  }
+
+  /** Returns the index of the first value of a key, or -1 if there are no
+   * values. */
+  public int first(long key) {
+    return heads[slot(key)] - 1;
+  }
+
+  /** Returns the index of the value after a given value with the same key,
+   * or -1 if it is the last. */
+  public int next(int index) {
+    return nexts[index];
+  }
+
+  /** Returns the value at a given index. Indexes are assigned in the order
+   * that values were added, starting at 0. */
+  @SuppressWarnings("unchecked")
+  public V value(int index) {
+    return (V) values[index];
+  }
+
+  /** Returns the slot that holds a given key, or the empty slot where it
+   * would be added. */
+  private int slot(long key) {
+    final int mask = keys.length - 1;
+    for (int i = LongHashSet.hash(key) & mask;; i = (i + 1) & mask) {
+      if (heads[i] == 0 || keys[i] == key) {
+        return i;
+      }
+    }
+  }
+
+  private void rehash(int capacity) {
+    final long[] oldKeys = keys;
+    final int[] oldHeads = heads;
+    final int[] oldTails = tails;
+    keys = new long[capacity];
+    heads = new int[capacity];
+    tails = new int[capacity];
+    for (int j = 0; j < oldHeads.length; j++) {
+      if (oldHeads[j] != 0) {
+        final int i = slot(oldKeys[j]);
+        keys[i] = oldKeys[j];
+        heads[i] = oldHeads[j];
+        tails[i] = oldTails[j];
+      }
+    }
+  }
+}
+
+// End LongMultiMap.java
@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.linq4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Temporary file to which a memory-intensive operator writes values that do
+ * not fit within its memory budget.
+ *
+ * <p>Values are appended using {@link #add(Object)}, and read back, in the
+ * same order, by enumerating {@link #asEnumerable()}. The file is deleted
+ * when it is closed.
+ *
+ * <p>Values of the types that commonly occur in rows ({@code null},
+ * {@link Boolean}, {@link Byte}, {@link Short}, {@link Integer},
+ * {@link Long}, {@link Float}, {@link Double}, {@link Character},
+ * {@link String}, {@link BigDecimal}, {@code Object[]} and {@link List}) are
+ * written in a compact binary format; lists are read back as
+ * {@link ArrayList}. Values of any other type must implement
+ * {@link Serializable}.
+ */
+public class SpillFile implements Closeable {
+  private static final byte NULL = 0;
+  private static final byte TRUE = 1;
+  private static final byte FALSE = 2;
+  private static final byte BYTE = 3;
+  private static final byte SHORT = 4;
+  private static final byte INT = 5;
+  private static final byte LONG = 6;
+  private static final byte FLOAT = 7;
+  private static final byte DOUBLE = 8;
+  private static final byte CHAR = 9;
+  private static final byte STRING = 10;
+  private static final byte DECIMAL = 11;
+  private static final byte ARRAY = 12;
+  private static final byte LIST = 13;
+  private static final byte SERIALIZED = 14;
+
+  private final File file;
+  private DataOutputStream out;
+  private int count;
+
+  private SpillFile(File file) throws IOException {
+    this.file = file;
+    this.out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)));
+  }
+
+  /** Creates a spill file in the default temporary-file directory. */
+  public static SpillFile create() {
+    try {
+      final File file = File.createTempFile("calcite-spill", ".bin");
+      file.deleteOnExit();
+      return new SpillFile(file);
+    } catch (IOException e) {
+      throw new RuntimeException("Error while creating spill file", e);
+    }
+  }
+
+  /** Appends a value to this file. */
+  public void add(Object o) {
+    if (out == null) {
+      throw new IllegalStateException("spill file is closed for writing");
+    }
+    try {
+      write(out, o);
+    } catch (IOException e) {
+      throw new RuntimeException("Error while writing spill file " + file, e);
+    }
+    ++count;
+  }
+
+  /** Returns the number of values that have been written to this file. */
+  public int count() {
+    return count;
+  }
+
+  /** Returns the number of bytes that have been written to this file. */
+  public long byteCount() {
+    return out != null ? out.size() : file.length();
+  }
+
+  /** Finishes writing and returns an enumerable that reads the values back
+   * in the order they were written.
+   *
+   * <p>The enumerable may be enumerated several times, but only until this
+   * file is closed. */
+  public <T> Enumerable<T> asEnumerable() {
+    flip();
+    return new AbstractEnumerable<T>() {
+      public Enumerator<T> enumerator() {
+        return new SpillEnumerator<>(file, count);
+      }
+    };
+  }
+
+  private void flip() {
+    if (out != null) {
+      try {
+        out.close();
+        SpillStatistics.INSTANCE.fileWritten(file.length());
+      } catch (IOException e) {
+        throw new RuntimeException("Error while writing spill file " + file,
+            e);
+      } finally {
+        out = null;
+      }
+    }
+  }
+
+  /** Closes and deletes this file. */
+  public void close() {
+    try {
+      flip();
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  /** Returns a rough estimate of the number of bytes of heap occupied by a
+   * value. Operators use it to decide when they have exceeded their memory
+   * budget. */
+  public static long estimateSize(Object o) {
+    if (o == null) {
+      return 8;
+    } else if (o instanceof Object[]) {
+      final Object[] objects = (Object[]) o;
+      long size = 16;
+      for (Object object : objects) {
+        size += estimateSize(object);
+      }
+      return size;
+    } else if (o instanceof String) {
+      return 48 + 2 * ((String) o).length();
+    } else if (o instanceof List) {
+      final List<?> list = (List<?>) o;
+      long size = 24;
+      for (Object object : list) {
+        size += estimateSize(object);
+      }
+      return size;
+    } else if (o instanceof BigDecimal) {
+      return 64;
+    } else {
+      return 24;
+    }
+  }
+
+  private static void write(DataOutputStream out, Object o)
+      throws IOException {
+    if (o == null) {
+      out.writeByte(NULL);
+    } else if (o instanceof Boolean) {
+      out.writeByte((Boolean) o ? TRUE : FALSE);
+    } else if (o instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt((Integer) o);
+    } else if (o instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) o);
+    } else if (o instanceof String) {
+      final byte[] bytes = ((String) o).getBytes(StandardCharsets.UTF_8);
+      out.writeByte(STRING);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } else if (o instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) o);
+    } else if (o instanceof Object[]) {
+      final Object[] objects = (Object[]) o;
+      out.writeByte(ARRAY);
+      out.writeInt(objects.length);
+      for (Object object : objects) {
+        write(out, object);
+      }
+    } else if (o instanceof BigDecimal) {
+      final BigDecimal decimal = (BigDecimal) o;
+      final byte[] bytes = decimal.unscaledValue().toByteArray();
+      out.writeByte(DECIMAL);
+      out.writeInt(decimal.scale());
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } else if (o instanceof Float) {
+      out.writeByte(FLOAT);
+      out.writeFloat((Float) o);
+    } else if (o instanceof Short) {
+      out.writeByte(SHORT);
+      out.writeShort((Short) o);
+    } else if (o instanceof Byte) {
+      out.writeByte(BYTE);
+      out.writeByte((Byte) o);
+    } else if (o instanceof Character) {
+      out.writeByte(CHAR);
+      out.writeChar((Character) o);
+    } else if (o instanceof List) {
+      final List<?> list = (List<?>) o;
+      out.writeByte(LIST);
+      out.writeInt(list.size());
+      for (Object object : list) {
+        write(out, object);
+      }
+    } else if (o instanceof Serializable) {
+      final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(buf)) {
+        oos.writeObject(o);
+      }
+      out.writeByte(SERIALIZED);
+      out.writeInt(buf.size());
+      buf.writeTo(out);
+    } else {
+      throw new IllegalArgumentException("cannot spill value of "
+          + o.getClass());
+    }
+  }
+
+  private static Object read(DataInputStream in) throws IOException {
+    final byte tag = in.readByte();
+    switch (tag) {
+    case NULL:
+      return null;
+    case TRUE:
+      return Boolean.TRUE;
+    case FALSE:
+      return Boolean.FALSE;
+    case BYTE:
+      return in.readByte();
+    case SHORT:
+      return in.readShort();
+    case INT:
+      return in.readInt();
+    case LONG:
+      return in.readLong();
+    case FLOAT:
+      return in.readFloat();
+    case DOUBLE:
+      return in.readDouble();
+    case CHAR:
+      return in.readChar();
+    case STRING:
+      return new String(readBytes(in), StandardCharsets.UTF_8);
+    case DECIMAL:
+      final int scale = in.readInt();
+      return new BigDecimal(new BigInteger(readBytes(in)), scale);
+    case ARRAY:
+      final Object[] objects = new Object[in.readInt()];
+      for (int i = 0; i < objects.length; i++) {
+        objects[i] = read(in);
+      }
+      return objects;
+    case LIST:
+      final int size = in.readInt();
+      final List<Object> list = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        list.add(read(in));
+      }
+      return list;
+    case SERIALIZED:
+      return deserialize(readBytes(in));
+    default:
+      throw new IOException("corrupt spill file: unknown tag " + tag);
+    }
+  }
+
+  private static Object deserialize(byte[] bytes) throws IOException {
+    try (ObjectInputStream ois =
+             new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return ois.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /** Enumerator that reads the values of a spill file.
+   *
+   * @param <T> element type */
+  private static class SpillEnumerator<T> implements Enumerator<T> {
+    private final File file;
+    private final int count;
+    private DataInputStream in;
+    private int i;
+    private T current;
+
+    SpillEnumerator(File file, int count) {
+      this.file = file;
+      this.count = count;
+    }
+
+    public T current() {
+      if (i == 0) {
+        throw new NoSuchElementException();
+      }
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (i >= count) {
+        close();
+        return false;
+      }
+      try {
+        if (in == null) {
+          in = new DataInputStream(
+              new BufferedInputStream(new FileInputStream(file)));
+        }
+        //noinspection unchecked
+        current = (T) read(in);
+      } catch (EOFException e) {
+        throw new RuntimeException("spill file " + file + " is truncated", e);
+      } catch (IOException e) {
+        throw new RuntimeException("Error while reading spill file " + file,
+            e);
+      }
+      ++i;
+      return true;
+    }
+
+    public void reset() {
+      close();
+      i = 0;
+      current = null;
+    }
+
+    public void close() {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+        in = null;
+      }
+    }
+  }
+}
+
+// End SpillFile.java
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.linq4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters that describe how much work operators have done spilling to
+ * disk because their input did not fit within their memory budget.
+ *
+ * <p>{@link #INSTANCE} accumulates statistics for all operators in the JVM.
+ */
+public class SpillStatistics {
+  /** Statistics for all operators in the JVM. */
+  public static final SpillStatistics INSTANCE = new SpillStatistics();
+
+  private final AtomicLong fileCount = new AtomicLong();
+  private final AtomicLong byteCount = new AtomicLong();
+  private final AtomicLong sortRunCount = new AtomicLong();
+  private final AtomicLong joinPartitionCount = new AtomicLong();
+  private final AtomicLong aggregatePartitionCount = new AtomicLong();
+
+  /** Returns the number of spill files that have been written. */
+  public long fileCount() {
+    return fileCount.get();
+  }
+
+  /** Returns the number of bytes that have been written to spill files. */
+  public long byteCount() {
+    return byteCount.get();
+  }
+
+  /** Returns the number of sorted runs that external sorts have written. */
+  public long sortRunCount() {
+    return sortRunCount.get();
+  }
+
+  /** Returns the number of partitions that hash joins have written. */
+  public long joinPartitionCount() {
+    return joinPartitionCount.get();
+  }
+
+  /** Returns the number of partitions that hash aggregations have
+   * written. */
+  public long aggregatePartitionCount() {
+    return aggregatePartitionCount.get();
+  }
+
+  /** Sets all counters to zero. */
+  public void reset() {
+    fileCount.set(0);
+    byteCount.set(0);
+    sortRunCount.set(0);
+    joinPartitionCount.set(0);
+    aggregatePartitionCount.set(0);
+  }
+
+  void fileWritten(long bytes) {
+    fileCount.incrementAndGet();
+    byteCount.addAndGet(bytes);
+  }
+
+  void sortRunWritten() {
+    sortRunCount.incrementAndGet();
+  }
+
+  void joinPartitionsWritten(int count) {
+    joinPartitionCount.addAndGet(count);
+  }
+
+  void aggregatePartitionsWritten(int count) {
+    aggregatePartitionCount.addAndGet(count);
+  }
+
+  @Override public String toString() {
+    return "SpillStatistics{files: " + fileCount
+        + ", bytes: " + byteCount
+        + ", sortRuns: " + sortRunCount
+        + ", joinPartitions: " + joinPartitionCount
+        + ", aggregatePartitions: " + aggregatePartitionCount + "}";
+  }
+}
+
+// End SpillStatistics.java
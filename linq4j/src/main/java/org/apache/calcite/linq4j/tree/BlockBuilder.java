@@ -248,7 +248,27 @@ protected void addExpressionForReuse(DeclarationStatement decl) {
   }
 
   private boolean isCostly(DeclarationStatement decl) {
-    return decl.initializer instanceof NewExpression;
+    return decl.initializer instanceof NewExpression
+        && isConstantNew((NewExpression) decl.initializer);
+  }
+
+  /** Returns whether an expression creates an object from constant
+   * arguments, such as "new MyFunction()" or "new BigDecimal(3)", and can
+   * therefore later be made static.
+   *
+   * <p>An expression such as "new BigDecimal(x.intValue())" is not; it must
+   * be inlined like any other expression, otherwise its declaration would be
+   * evaluated before a condition such as "x == null ? null : ..." that
+   * guards it. */
+  private static boolean isConstantNew(NewExpression expr) {
+    for (Expression argument : expr.arguments) {
+      if (!(argument instanceof ConstantExpression
+          || argument instanceof NewExpression
+          && isConstantNew((NewExpression) argument))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -17,21 +17,26 @@
 package org.apache.calcite.linq4j.test;
 
 import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.CorrelateJoinType;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.EnumerableDefaults;
 import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.ExtendedEnumerable;
 import org.apache.calcite.linq4j.Grouping;
+import org.apache.calcite.linq4j.HashAggregator;
 import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.Lookup;
 import org.apache.calcite.linq4j.Queryable;
 import org.apache.calcite.linq4j.QueryableDefaults;
+import org.apache.calcite.linq4j.SpillFile;
+import org.apache.calcite.linq4j.SpillStatistics;
 import org.apache.calcite.linq4j.function.EqualityComparer;
 import org.apache.calcite.linq4j.function.Function0;
 import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.function.Function2;
 import org.apache.calcite.linq4j.function.Functions;
 import org.apache.calcite.linq4j.function.IntegerFunction1;
+import org.apache.calcite.linq4j.function.LongFunction1;
 import org.apache.calcite.linq4j.function.Predicate1;
 import org.apache.calcite.linq4j.function.Predicate2;
 import org.apache.calcite.linq4j.tree.ConstantExpression;
@@ -49,6 +54,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -56,6 +62,8 @@
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import static org.hamcrest.CoreMatchers.endsWith;
@@ -839,6 +847,50 @@ public String apply(Integer v1, String v2) {
         s);
   }
 
+  /** Tests {@link EnumerableDefaults#sortedGroupBy}, which emits a group
+   * each time the key changes. */
+  @Test public void testSortedGroupBy() {
+    final Function0<String> init =
+        new Function0<String>() {
+          public String apply() {
+            return null;
+          }
+        };
+    final Function2<String, Employee, String> add =
+        new Function2<String, Employee, String>() {
+          public String apply(String v1, Employee e0) {
+            return v1 == null ? e0.name : (v1 + "+" + e0.name);
+          }
+        };
+    final Function2<Integer, String, String> result =
+        new Function2<Integer, String, String>() {
+          public String apply(Integer v1, String v2) {
+            return v1 + ": " + v2;
+          }
+        };
+    final Enumerable<String> sorted =
+        EnumerableDefaults.sortedGroupBy(
+            Linq4j.asEnumerable(emps).orderBy(EMP_DEPTNO_SELECTOR),
+            EMP_DEPTNO_SELECTOR, init, add, result);
+    assertThat(sorted.toList().toString(),
+        is("[10: Fred+Eric+Janet, 30: Bill]"));
+    // Enumerate again, to check that the enumerator resets its state
+    assertThat(sorted.toList().toString(),
+        is("[10: Fred+Eric+Janet, 30: Bill]"));
+
+    // If the input is not sorted, rows with the same key that are not
+    // adjacent go into different groups
+    assertThat(
+        EnumerableDefaults.sortedGroupBy(Linq4j.asEnumerable(emps),
+            EMP_DEPTNO_SELECTOR, init, add, result).toList().toString(),
+        is("[10: Fred, 30: Bill, 10: Eric+Janet]"));
+
+    assertThat(
+        EnumerableDefaults.sortedGroupBy(Linq4j.<Employee>emptyEnumerable(),
+            EMP_DEPTNO_SELECTOR, init, add, result).count(),
+        is(0));
+  }
+
   /**
    * Tests the version of
    * {@link ExtendedEnumerable#aggregate}
@@ -1270,6 +1322,702 @@ public String apply(Employee v1, Department v2) {
     assertEquals(12, n); // 4 employees times 3 departments
   }
 
+  /** Tests {@link EnumerableDefaults#hashJoin} with a memory budget so small
+   * that it has to partition both inputs to disk; the results must be the
+   * same as an in-memory join. */
+  @Test public void testHashJoinSpill() {
+    final List<Object[]> lefts = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      lefts.add(new Object[] {i, i % 7 == 0 ? null : i % 37});
+    }
+    final List<Object[]> rights = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      rights.add(new Object[] {i % 13 == 0 ? null : i, "r" + i});
+    }
+    final Function1<Object[], Object> leftKey =
+        new Function1<Object[], Object>() {
+          public Object apply(Object[] row) {
+            return row[1];
+          }
+        };
+    final Function1<Object[], Object> rightKey =
+        new Function1<Object[], Object>() {
+          public Object apply(Object[] row) {
+            return row[0];
+          }
+        };
+    final Function2<Object[], Object[], String> resultSelector =
+        new Function2<Object[], Object[], String>() {
+          public String apply(Object[] v0, Object[] v1) {
+            return (v0 == null ? null : v0[0]) + ":"
+                + (v1 == null ? null : v1[1]);
+          }
+        };
+    for (boolean generateNullsOnLeft : new boolean[] {false, true}) {
+      for (boolean generateNullsOnRight : new boolean[] {false, true}) {
+        final List<String> expected =
+            EnumerableDefaults.join(Linq4j.asEnumerable(lefts),
+                Linq4j.asEnumerable(rights), leftKey, rightKey,
+                resultSelector, null, generateNullsOnLeft,
+                generateNullsOnRight)
+                .orderBy(Functions.<String>identitySelector())
+                .toList();
+        for (long memoryBudget : new long[] {1L, 200L, 1000000L}) {
+          final List<String> actual =
+              EnumerableDefaults.hashJoin(Linq4j.asEnumerable(lefts),
+                  Linq4j.asEnumerable(rights), leftKey, rightKey,
+                  resultSelector, null, generateNullsOnLeft,
+                  generateNullsOnRight, memoryBudget)
+                  .orderBy(Functions.<String>identitySelector())
+                  .toList();
+          assertThat(actual, equalTo(expected));
+        }
+      }
+    }
+  }
+
+  /** Tests
+   * {@link EnumerableDefaults#hashJoin(Enumerable, Enumerable, Function1, Function1, Function2, EqualityComparer, boolean, boolean, long, Predicate2)},
+   * with and without spilling; the results must be the same as a nested-loop
+   * join whose condition is the key equality and the predicate. */
+  @Test public void testHashJoinWithPredicate() {
+    final List<Object[]> lefts = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      lefts.add(new Object[] {i, i % 7 == 0 ? null : i % 37});
+    }
+    final List<Object[]> rights = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      rights.add(new Object[] {i % 13 == 0 ? null : i % 25, "r" + i});
+    }
+    final Function1<Object[], Object> leftKey =
+        new Function1<Object[], Object>() {
+          public Object apply(Object[] row) {
+            return row[1];
+          }
+        };
+    final Function1<Object[], Object> rightKey =
+        new Function1<Object[], Object>() {
+          public Object apply(Object[] row) {
+            return row[0];
+          }
+        };
+    final Predicate2<Object[], Object[]> predicate =
+        new Predicate2<Object[], Object[]>() {
+          public boolean apply(Object[] v0, Object[] v1) {
+            return (Integer) v0[0] % 3 != ((String) v1[1]).length() % 3;
+          }
+        };
+    final Predicate2<Object[], Object[]> condition =
+        new Predicate2<Object[], Object[]>() {
+          public boolean apply(Object[] v0, Object[] v1) {
+            return v0[1] != null
+                && v0[1].equals(v1[0])
+                && predicate.apply(v0, v1);
+          }
+        };
+    final Function2<Object[], Object[], String> resultSelector =
+        new Function2<Object[], Object[], String>() {
+          public String apply(Object[] v0, Object[] v1) {
+            return (v0 == null ? null : v0[0]) + ":"
+                + (v1 == null ? null : v1[1]);
+          }
+        };
+    for (boolean generateNullsOnLeft : new boolean[] {false, true}) {
+      for (boolean generateNullsOnRight : new boolean[] {false, true}) {
+        final List<String> expected =
+            EnumerableDefaults.thetaJoin(Linq4j.asEnumerable(lefts),
+                Linq4j.asEnumerable(rights), condition, resultSelector,
+                generateNullsOnLeft, generateNullsOnRight)
+                .orderBy(Functions.<String>identitySelector())
+                .toList();
+        for (long memoryBudget : new long[] {0L, 1L, 200L, 1000000L}) {
+          final List<String> actual =
+              EnumerableDefaults.hashJoin(Linq4j.asEnumerable(lefts),
+                  Linq4j.asEnumerable(rights), leftKey, rightKey,
+                  resultSelector, null, generateNullsOnLeft,
+                  generateNullsOnRight, memoryBudget, predicate)
+                  .orderBy(Functions.<String>identitySelector())
+                  .toList();
+          assertThat(actual, equalTo(expected));
+        }
+      }
+    }
+  }
+  /** Tests
+   * {@link EnumerableDefaults#bandJoin(Enumerable, Enumerable, Function1, Function1, Function1, Function1, Predicate2, Function2, boolean, boolean)};
+   * the results must be the same as a nested-loop join. Each right row has a
+   * range [lo, hi]; a left row matches if its value is in the range, and, if
+   * there is only a lower or upper bound, if it is on the right side of it. */
+  @Test public void testBandJoin() {
+    final Random random = new Random(1234);
+    final List<Object[]> lefts = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      lefts.add(new Object[] {i, i % 11 == 0 ? null : random.nextInt(1000)});
+    }
+    final List<Object[]> rights = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      final int lo = random.nextInt(1000);
+      rights.add(
+          new Object[] {i % 17 == 0 ? null : lo, lo + random.nextInt(60),
+              "r" + i});
+    }
+    final Function1<Object[], Comparable> leftKey =
+        new Function1<Object[], Comparable>() {
+          public Comparable apply(Object[] row) {
+            return (Comparable) row[1];
+          }
+        };
+    final Function1<Object[], Comparable> rightLow =
+        new Function1<Object[], Comparable>() {
+          public Comparable apply(Object[] row) {
+            return (Comparable) row[0];
+          }
+        };
+    final Function1<Object[], Comparable> rightHigh =
+        new Function1<Object[], Comparable>() {
+          public Comparable apply(Object[] row) {
+            return (Comparable) row[1];
+          }
+        };
+    final Function2<Object[], Object[], String> resultSelector =
+        new Function2<Object[], Object[], String>() {
+          public String apply(Object[] v0, Object[] v1) {
+            return (v0 == null ? null : v0[0]) + ":"
+                + (v1 == null ? null : v1[2]);
+          }
+        };
+    for (final boolean low : new boolean[] {false, true}) {
+      for (final boolean high : new boolean[] {false, true}) {
+        if (!low && !high) {
+          continue;
+        }
+        // Odd left rows match only if their value is strictly in the range
+        final Predicate2<Object[], Object[]> condition =
+            new Predicate2<Object[], Object[]>() {
+              public boolean apply(Object[] v0, Object[] v1) {
+                final Integer v = (Integer) v0[1];
+                final int strict = (Integer) v0[0] % 2;
+                return v != null
+                    && (!low || v1[0] != null && (Integer) v1[0] + strict <= v)
+                    && (!high || v <= (Integer) v1[1] - strict);
+              }
+            };
+        for (boolean generateNullsOnLeft : new boolean[] {false, true}) {
+          for (boolean generateNullsOnRight : new boolean[] {false, true}) {
+            final List<String> expected =
+                EnumerableDefaults.thetaJoin(Linq4j.asEnumerable(lefts),
+                    Linq4j.asEnumerable(rights), condition, resultSelector,
+                    generateNullsOnLeft, generateNullsOnRight)
+                    .orderBy(Functions.<String>identitySelector())
+                    .toList();
+            final List<String> actual =
+                EnumerableDefaults.bandJoin(Linq4j.asEnumerable(lefts),
+                    Linq4j.asEnumerable(rights),
+                    high ? leftKey : null, low ? leftKey : null,
+                    low ? rightLow : null, high ? rightHigh : null,
+                    condition, resultSelector, generateNullsOnLeft,
+                    generateNullsOnRight)
+                    .orderBy(Functions.<String>identitySelector())
+                    .toList();
+            assertThat(actual, equalTo(expected));
+          }
+        }
+      }
+    }
+  }
+
+  /** Tests that
+   * {@link EnumerableDefaults#correlateJoin(CorrelateJoinType, Enumerable, Function1, Function2, Function1, int)}
+   * and
+   * {@link EnumerableDefaults#correlateBatchJoin(CorrelateJoinType, Enumerable, Function1, Function2, Function1, int, int)}
+   * return the same results as an uncached correlate join, and evaluate the
+   * inner function once per key while the key is in the cache. */
+  @Test public void testCorrelateJoinCached() {
+    final List<Integer> outers = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      outers.add(i);
+    }
+    final int[] calls = {0};
+    final Function1<Integer, Integer> keySelector =
+        new Function1<Integer, Integer>() {
+          public Integer apply(Integer v0) {
+            return v0 % 5;
+          }
+        };
+    // Key 0 has no inner elements; key k has k
+    final Function1<Integer, Enumerable<String>> inner =
+        new Function1<Integer, Enumerable<String>>() {
+          public Enumerable<String> apply(Integer v0) {
+            ++calls[0];
+            final int key = keySelector.apply(v0);
+            final List<String> list = new ArrayList<>();
+            for (int i = 0; i < key; i++) {
+              list.add(key + "." + i);
+            }
+            return Linq4j.asEnumerable(list);
+          }
+        };
+    final Function1<List<Integer>, List<Enumerable<String>>> batchInner =
+        new Function1<List<Integer>, List<Enumerable<String>>>() {
+          public List<Enumerable<String>> apply(List<Integer> v0) {
+            final List<Enumerable<String>> list = new ArrayList<>();
+            for (Integer v : v0) {
+              list.add(inner.apply(v));
+            }
+            return list;
+          }
+        };
+    final Function2<Integer, String, String> resultSelector =
+        new Function2<Integer, String, String>() {
+          public String apply(Integer v0, String v1) {
+            return v0 + ":" + v1;
+          }
+        };
+    for (CorrelateJoinType joinType : CorrelateJoinType.values()) {
+      final List<String> expected =
+          EnumerableDefaults.correlateJoin(joinType,
+              Linq4j.asEnumerable(outers), inner, resultSelector).toList();
+      assertThat(expected.isEmpty(), is(false));
+
+      calls[0] = 0;
+      assertThat(
+          EnumerableDefaults.correlateJoin(joinType,
+              Linq4j.asEnumerable(outers), inner, resultSelector,
+              keySelector, 10).toList(),
+          equalTo(expected));
+      assertThat(calls[0], is(5));
+
+      // With a cache of 1 key, and a different key on each row, the inner
+      // function is called for every row
+      calls[0] = 0;
+      assertThat(
+          EnumerableDefaults.correlateJoin(joinType,
+              Linq4j.asEnumerable(outers), inner, resultSelector,
+              keySelector, 1).toList(),
+          equalTo(expected));
+      assertThat(calls[0], is(100));
+
+      // With batches of 7 rows, and no cache, the inner function is called
+      // once per distinct key in each batch
+      calls[0] = 0;
+      assertThat(
+          EnumerableDefaults.correlateBatchJoin(joinType,
+              Linq4j.asEnumerable(outers), batchInner, resultSelector,
+              keySelector, 7, 0).toList(),
+          equalTo(expected));
+      assertThat(calls[0], is(14 * 5 + 2));
+    }
+  }
+
+  /** Tests
+   * {@link EnumerableDefaults#hashJoinLong(Enumerable, Enumerable, LongFunction1, Predicate1, LongFunction1, Predicate1, Function2, boolean, boolean, Predicate2)}
+   * and
+   * {@link EnumerableDefaults#semiJoinLong(Enumerable, Enumerable, LongFunction1, Predicate1, LongFunction1, Predicate1)}
+   * against the corresponding joins on boxed keys. */
+  @Test public void testHashJoinLong() {
+    final Random random = new Random(5678);
+    final List<Object[]> lefts = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      lefts.add(new Object[] {i, i % 13 == 0 ? null : random.nextInt(50)});
+    }
+    final List<Object[]> rights = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      rights.add(
+          new Object[] {i % 7 == 0 ? null : random.nextInt(50) - 10, "r" + i});
+    }
+    final Function1<Object[], Integer> leftKey =
+        new Function1<Object[], Integer>() {
+          public Integer apply(Object[] row) {
+            return (Integer) row[1];
+          }
+        };
+    final Function1<Object[], Integer> rightKey =
+        new Function1<Object[], Integer>() {
+          public Integer apply(Object[] row) {
+            return (Integer) row[0];
+          }
+        };
+    final LongFunction1<Object[]> leftLongKey =
+        new LongFunction1<Object[]>() {
+          public long apply(Object[] row) {
+            return (Integer) row[1];
+          }
+        };
+    final LongFunction1<Object[]> rightLongKey =
+        new LongFunction1<Object[]>() {
+          public long apply(Object[] row) {
+            return (Integer) row[0];
+          }
+        };
+    final Predicate1<Object[]> leftNull =
+        new Predicate1<Object[]>() {
+          public boolean apply(Object[] row) {
+            return row[1] == null;
+          }
+        };
+    final Predicate1<Object[]> rightNull =
+        new Predicate1<Object[]>() {
+          public boolean apply(Object[] row) {
+            return row[0] == null;
+          }
+        };
+    final Function2<Object[], Object[], String> resultSelector =
+        new Function2<Object[], Object[], String>() {
+          public String apply(Object[] v0, Object[] v1) {
+            return (v0 == null ? null : v0[0]) + ":"
+                + (v1 == null ? null : v1[1]);
+          }
+        };
+    // Even left rows match only right rows whose name has odd length
+    final Predicate2<Object[], Object[]> predicate =
+        new Predicate2<Object[], Object[]>() {
+          public boolean apply(Object[] v0, Object[] v1) {
+            return (Integer) v0[0] % 2 == 1 || ((String) v1[1]).length() % 2 == 1;
+          }
+        };
+    for (Predicate2<Object[], Object[]> p : Arrays.asList(null, predicate)) {
+      for (boolean generateNullsOnLeft : new boolean[] {false, true}) {
+        for (boolean generateNullsOnRight : new boolean[] {false, true}) {
+          final List<String> expected =
+              EnumerableDefaults.join(Linq4j.asEnumerable(lefts),
+                  Linq4j.asEnumerable(rights), leftKey, rightKey,
+                  resultSelector, null, generateNullsOnLeft,
+                  generateNullsOnRight, p)
+                  .orderBy(Functions.<String>identitySelector())
+                  .toList();
+          final List<String> actual =
+              EnumerableDefaults.hashJoinLong(Linq4j.asEnumerable(lefts),
+                  Linq4j.asEnumerable(rights), leftLongKey, leftNull,
+                  rightLongKey, rightNull, resultSelector,
+                  generateNullsOnLeft, generateNullsOnRight, p)
+                  .orderBy(Functions.<String>identitySelector())
+                  .toList();
+          assertThat(actual, equalTo(expected));
+        }
+      }
+    }
+    assertThat(
+        EnumerableDefaults.semiJoinLong(Linq4j.asEnumerable(lefts),
+            Linq4j.asEnumerable(rights), leftLongKey, leftNull, rightLongKey,
+            rightNull).toList(),
+        equalTo(
+            EnumerableDefaults.semiJoin(Linq4j.asEnumerable(lefts),
+                Linq4j.asEnumerable(rights), leftKey, rightKey).toList()));
+  }
+
+  /** Tests
+   * {@link EnumerableDefaults#distinctLong(Enumerable, LongFunction1, Predicate1)},
+   * {@link EnumerableDefaults#exceptLong(Enumerable, Enumerable, LongFunction1, Predicate1)}
+   * and
+   * {@link EnumerableDefaults#intersectLong(Enumerable, Enumerable, LongFunction1, Predicate1)},
+   * including zero, negative zero, NaN and null keys. */
+  @Test public void testSetOpsLong() {
+    final Enumerable<Double> e0 =
+        Linq4j.asEnumerable(
+            Arrays.asList(1.5, 0d, null, 1.5, -0d, Double.NaN, 3d, 0d, null,
+                Double.NaN, 1e300));
+    final Enumerable<Double> e1 =
+        Linq4j.asEnumerable(Arrays.asList(3d, -0d, 7d, Double.NaN, 3d));
+    final Enumerable<Double> e2 =
+        Linq4j.asEnumerable(Arrays.asList(null, 1e300, 3d));
+    final LongFunction1<Double> key =
+        new LongFunction1<Double>() {
+          public long apply(Double v0) {
+            return Double.doubleToLongBits(v0);
+          }
+        };
+    final Predicate1<Double> nullKey =
+        new Predicate1<Double>() {
+          public boolean apply(Double v0) {
+            return v0 == null;
+          }
+        };
+    assertThat(
+        EnumerableDefaults.distinctLong(e0, key, nullKey).toList().toString(),
+        is("[1.5, 0.0, null, -0.0, NaN, 3.0, 1.0E300]"));
+    assertThat(
+        EnumerableDefaults.exceptLong(e0, e1, key, nullKey).toList().toString(),
+        is("[1.5, 0.0, null, 1.0E300]"));
+    assertThat(
+        EnumerableDefaults.exceptLong(e0, e2, key, nullKey).toList().toString(),
+        is("[1.5, 0.0, -0.0, NaN]"));
+    assertThat(
+        EnumerableDefaults.intersectLong(e0, e1, key, nullKey).toList()
+            .toString(),
+        is("[3.0, -0.0, NaN]"));
+    assertThat(
+        EnumerableDefaults.intersectLong(e0, e2, key, nullKey).toList()
+            .toString(),
+        is("[null, 1.0E300, 3.0]"));
+    // The results are the same as for boxed values
+    assertThat(
+        EnumerableDefaults.distinctLong(e0, key, nullKey).toList().size(),
+        is(e0.distinct().count()));
+  }
+
+
+
+  /** Tests {@link EnumerableDefaults#orderBy(Enumerable, Function1, Comparator, long)}
+   * with memory budgets small enough that it has to write sorted runs to disk
+   * and merge them; the results must be the same, and in the same order, as
+   * an in-memory sort. */
+  @Test public void testOrderBySpill() {
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      rows.add(new Object[] {(i * 7919) % 101, i});
+    }
+    final Function1<Object[], Integer> keySelector =
+        new Function1<Object[], Integer>() {
+          public Integer apply(Object[] row) {
+            return (Integer) row[0];
+          }
+        };
+    final Function1<Object[], String> toString =
+        new Function1<Object[], String>() {
+          public String apply(Object[] row) {
+            return Arrays.toString(row);
+          }
+        };
+    final List<String> expected =
+        EnumerableDefaults.orderBy(Linq4j.asEnumerable(rows), keySelector,
+            Collections.<Integer>reverseOrder())
+            .select(toString)
+            .toList();
+    for (long memoryBudget : new long[] {1L, 1000L, 10000000L}) {
+      final long runCount = SpillStatistics.INSTANCE.sortRunCount();
+      final List<String> actual =
+          EnumerableDefaults.orderBy(Linq4j.asEnumerable(rows), keySelector,
+              Collections.<Integer>reverseOrder(), memoryBudget)
+              .select(toString)
+              .toList();
+      assertThat(actual, equalTo(expected));
+      assertThat(SpillStatistics.INSTANCE.sortRunCount() > runCount,
+          is(memoryBudget < 10000000L));
+    }
+
+    // Null comparator means keys are compared using their natural order
+    final List<String> expected2 =
+        EnumerableDefaults.orderBy(Linq4j.asEnumerable(rows), keySelector)
+            .select(toString)
+            .toList();
+    final List<String> actual2 =
+        EnumerableDefaults.orderBy(Linq4j.asEnumerable(rows), keySelector,
+            null, 100L)
+            .select(toString)
+            .toList();
+    assertThat(actual2, equalTo(expected2));
+  }
+
+  /** Tests {@link EnumerableDefaults#orderBy(Enumerable, Function1, Comparator, int, int)},
+   * which keeps the first rows in a bounded heap; the results must be the
+   * same, and in the same order, as a full sort followed by skip and take. */
+  @Test public void testOrderByOffsetFetch() {
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      rows.add(new Object[] {(i * 7919) % 23, i});
+    }
+    final Function1<Object[], Integer> keySelector =
+        new Function1<Object[], Integer>() {
+          public Integer apply(Object[] row) {
+            return (Integer) row[0];
+          }
+        };
+    final Function1<Object[], String> toString =
+        new Function1<Object[], String>() {
+          public String apply(Object[] row) {
+            return Arrays.toString(row);
+          }
+        };
+    for (int offset : new int[] {0, 1, 5, 199, 250}) {
+      for (int fetch : new int[] {0, 1, 10, 100, 1000, Integer.MAX_VALUE}) {
+        final List<String> expected =
+            EnumerableDefaults.orderBy(Linq4j.asEnumerable(rows), keySelector)
+                .skip(offset)
+                .take(fetch)
+                .select(toString)
+                .toList();
+        final List<String> actual =
+            EnumerableDefaults.orderBy(Linq4j.asEnumerable(rows), keySelector,
+                null, offset, fetch)
+                .select(toString)
+                .toList();
+        assertThat(actual, equalTo(expected));
+      }
+    }
+  }
+
+  /** Tests {@link EnumerableDefaults#orderByNormalizedKey(Enumerable, LongFunction1)},
+   * which radix-sorts rows by a {@code long} key; the results must be the
+   * same, and in the same order, as a sort with a comparator. */
+  @Test public void testOrderByNormalizedKey() {
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      // Keys are negative and positive, and differ in several bytes
+      rows.add(new Object[] {(i * 7919) % 101 * 1000003 - 50000000, i});
+    }
+    final Function1<Object[], Integer> keySelector =
+        new Function1<Object[], Integer>() {
+          public Integer apply(Object[] row) {
+            return (Integer) row[0];
+          }
+        };
+    final LongFunction1<Object[]> normalizedKeySelector =
+        new LongFunction1<Object[]>() {
+          public long apply(Object[] row) {
+            return (long) (Integer) row[0] - Integer.MIN_VALUE;
+          }
+        };
+    final Function1<Object[], String> toString =
+        new Function1<Object[], String>() {
+          public String apply(Object[] row) {
+            return Arrays.toString(row);
+          }
+        };
+    for (int n : new int[] {0, 1, 10, 1000}) {
+      final Enumerable<Object[]> source =
+          Linq4j.asEnumerable(rows.subList(0, n));
+      final List<String> expected =
+          EnumerableDefaults.orderBy(source, keySelector)
+              .select(toString)
+              .toList();
+      final List<String> actual =
+          EnumerableDefaults.orderByNormalizedKey(source,
+              normalizedKeySelector)
+              .select(toString)
+              .toList();
+      assertThat(actual, equalTo(expected));
+    }
+
+    // Keys are compared as unsigned values
+    final List<Long> keys = Arrays.asList(-1L, Long.MIN_VALUE, 0L,
+        Long.MAX_VALUE, 1L << 40, 1L);
+    assertThat(
+        EnumerableDefaults.orderByNormalizedKey(Linq4j.asEnumerable(keys),
+            new LongFunction1<Long>() {
+              public long apply(Long v) {
+                return v;
+              }
+            }).toList(),
+        equalTo(
+            Arrays.asList(0L, 1L, 1L << 40, Long.MAX_VALUE, Long.MIN_VALUE,
+                -1L)));
+  }
+
+  /** Tests {@link HashAggregator}, with and without packed keys, with and
+   * without spilling. */
+  @Test public void testHashAggregate() {
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      rows.add(new Object[] {(i * 7919) % 97, i % 13 == 0 ? null : "k" + i % 5,
+          i});
+    }
+    final Map<String, String> expected = new TreeMap<>();
+    final Map<String, String> expected2 = new TreeMap<>();
+    for (Object[] row : rows) {
+      final String key = String.valueOf(row[0]);
+      final String key2 = String.valueOf(row[1]);
+      expected.put(key, sumCount(expected.get(key), (Integer) row[2]));
+      expected2.put(key2, sumCount(expected2.get(key2), (Integer) row[2]));
+    }
+    for (long memoryBudget : new long[] {0L, 1L, 1000L}) {
+      final long partitionCount =
+          SpillStatistics.INSTANCE.aggregatePartitionCount();
+      for (boolean longKeys : new boolean[] {true, false}) {
+        final Map<String, String> actual = new TreeMap<>();
+        final Enumerable<Object[]> results =
+            EnumerableDefaults.hashAggregate(Linq4j.asEnumerable(rows),
+                sumCountFactory(0, longKeys, memoryBudget));
+        for (Object[] result : results) {
+          final String key = String.valueOf(result[0]);
+          assertNull(actual.put(key, result[1] + "/" + result[2]));
+        }
+        assertThat(actual, equalTo(expected));
+      }
+      final Map<String, String> actual2 = new TreeMap<>();
+      final Enumerable<Object[]> results2 =
+          EnumerableDefaults.hashAggregate(Linq4j.asEnumerable(rows),
+              sumCountFactory(1, false, memoryBudget));
+      for (Object[] result : results2) {
+        final String key = String.valueOf(result[0]);
+        assertNull(actual2.put(key, result[1] + "/" + result[2]));
+      }
+      assertThat(actual2, equalTo(expected2));
+      assertThat(SpillStatistics.INSTANCE.aggregatePartitionCount()
+              > partitionCount,
+          is(memoryBudget > 0L));
+    }
+  }
+
+  private static String sumCount(String sumCount, int value) {
+    if (sumCount == null) {
+      return value + "/1";
+    }
+    final String[] strings = sumCount.split("/");
+    return (Long.parseLong(strings[0]) + value) + "/"
+        + (Integer.parseInt(strings[1]) + 1);
+  }
+
+  /** Returns a factory for aggregators that compute {@code SUM(row[2])} and
+   * {@code COUNT(*)} grouped by {@code row[keyField]}. */
+  private static Function0<HashAggregator<Object[], Object[]>> sumCountFactory(
+      final int keyField, final boolean longKeys, final long memoryBudget) {
+    return new Function0<HashAggregator<Object[], Object[]>>() {
+      public HashAggregator<Object[], Object[]> apply() {
+        return new HashAggregator<Object[], Object[]>(longKeys, memoryBudget,
+            24) {
+          Object[] keys = new Object[0];
+          long[] sums = new long[0];
+          int[] counts = new int[0];
+
+          @Override protected Object key(Object[] row) {
+            return row[keyField];
+          }
+
+          @Override protected long longKey(Object[] row) {
+            return (Integer) row[keyField];
+          }
+
+          protected void grow(int groupCount, int capacity) {
+            keys = Arrays.copyOf(keys, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+          }
+
+          protected void init(int group, Object[] row) {
+            keys[group] = row[keyField];
+            sums[group] = 0L;
+            counts[group] = 0;
+          }
+
+          protected void add(int group, Object[] row) {
+            sums[group] += (Integer) row[2];
+            ++counts[group];
+          }
+
+          protected Object[] result(int group) {
+            return new Object[] {keys[group], sums[group], counts[group]};
+          }
+        };
+      }
+    };
+  }
+
+  @Test public void testSpillFile() {
+    final List<Object> values = Arrays.<Object>asList(null, true, 1, 2L,
+        3.5D, 4.5F, (short) 5, (byte) 6, 'x', "hello", new BigDecimal("-7.25"),
+        Arrays.asList("a", null), new java.sql.Date(0L));
+    try (SpillFile file = SpillFile.create()) {
+      file.add(values.toArray());
+      file.add("second");
+      assertThat(file.count(), is(2));
+      final List<Object> list = file.asEnumerable().toList();
+      assertThat(list.size(), is(2));
+      assertThat(Arrays.asList((Object[]) list.get(0)), equalTo(values));
+      assertThat(list.get(1), equalTo((Object) "second"));
+      assertThat(file.byteCount() > 0, is(true));
+    }
+  }
+
   @SuppressWarnings("unchecked")
   @Test public void testCartesianProductEnumerator() {
     final Enumerable<String> abc =
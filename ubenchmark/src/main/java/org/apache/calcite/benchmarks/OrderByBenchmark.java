@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.benchmarks;
+
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.EnumerableDefaults;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Functions;
+import org.apache.calcite.linq4j.function.LongFunction1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks implementations of
+ * {@link EnumerableDefaults#orderBy(Enumerable, Function1, Comparator)}
+ * on an integer key: the former implementation, which inserts each row into
+ * a {@link TreeMap}; the array sort with a comparator; and the radix sort of
+ * normalized keys.
+ */
+@Fork(value = 1, jvmArgsPrepend = "-Xmx1g")
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Threads(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OrderByBenchmark {
+  private static final Function1<Object[], Integer> KEY =
+      new Function1<Object[], Integer>() {
+        public Integer apply(Object[] row) {
+          return (Integer) row[0];
+        }
+      };
+
+  private static final LongFunction1<Object[]> NORMALIZED_KEY =
+      new LongFunction1<Object[]>() {
+        public long apply(Object[] row) {
+          return (long) (Integer) row[0] - Integer.MIN_VALUE;
+        }
+      };
+
+  @Param({ "1000", "1000000" })
+  int rowCount;
+
+  /** Number of distinct keys, as a fraction of the number of rows. */
+  @Param({ "0.01", "1" })
+  double distinct;
+
+  Enumerable<Object[]> rows;
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(424242);
+    final int keyCount = Math.max((int) (rowCount * distinct), 1);
+    final List<Object[]> list = new ArrayList<>(rowCount);
+    for (int i = 0; i < rowCount; i++) {
+      list.add(new Object[] {random.nextInt(keyCount), "row " + i});
+    }
+    rows = Linq4j.asEnumerable(list);
+  }
+
+  @Benchmark
+  public List<Object[]> treeMap() {
+    final Map<Integer, List<Object[]>> map =
+        new TreeMap<>(Functions.<Integer>nullsComparator(false, false));
+    for (Object[] row : rows) {
+      final Integer key = KEY.apply(row);
+      List<Object[]> list = map.get(key);
+      if (list == null) {
+        list = new ArrayList<>();
+        map.put(key, list);
+      }
+      list.add(row);
+    }
+    final List<Object[]> result = new ArrayList<>(rowCount);
+    for (List<Object[]> list : map.values()) {
+      result.addAll(list);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public List<Object[]> orderBy() {
+    return EnumerableDefaults.orderBy(rows, KEY,
+        Functions.<Integer>nullsComparator(false, false)).toList();
+  }
+
+  @Benchmark
+  public List<Object[]> orderByNormalizedKey() {
+    return EnumerableDefaults.orderByNormalizedKey(rows, NORMALIZED_KEY)
+        .toList();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(OrderByBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .detectJvmArgs()
+        .build();
+
+    new Runner(opt).run();
+  }
+
+}
+
+// End OrderByBenchmark.java
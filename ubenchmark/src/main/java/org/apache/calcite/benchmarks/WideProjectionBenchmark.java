@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.benchmarks;
+
+import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.jdbc.CalciteConnection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a query that projects 500 columns.
+ *
+ * <p>The generated method that computes each row is larger than the JVM's
+ * limit for compiling methods to native code unless it is split into smaller
+ * methods; {@link #split()} uses the default limit, and {@link #unsplit()}
+ * sets "saffron.generated.method.maximum.size" to 0 to disable splitting.
+ */
+@Fork(value = 1, jvmArgsPrepend = "-Xmx1g")
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Threads(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WideProjectionBenchmark {
+  private static final int COLUMN_COUNT = 500;
+  private static final int ROW_COUNT = 10000;
+
+  Connection connection;
+  PreparedStatement statement;
+
+  @Setup
+  public void setup() throws SQLException {
+    final Properties info = new Properties();
+    info.put("lex", "JAVA");
+    connection = DriverManager.getConnection("jdbc:calcite:", info);
+    final CalciteConnection calciteConnection =
+        connection.unwrap(CalciteConnection.class);
+    calciteConnection.getRootSchema()
+        .add("s", new ReflectiveSchema(new Schema()));
+    final StringBuilder sql = new StringBuilder("select ");
+    for (int i = 0; i < COLUMN_COUNT; i++) {
+      sql.append(i == 0 ? "" : ", ")
+          .append("case when x > ").append(i)
+          .append(" then x + ").append(i)
+          .append(" else x * ").append(i).append(" end");
+    }
+    sql.append(" from s.numbers");
+    statement = connection.prepareStatement(sql.toString());
+  }
+
+  @TearDown
+  public void tearDown() throws SQLException {
+    statement.close();
+    connection.close();
+  }
+
+  private long run() throws SQLException {
+    long sum = 0;
+    try (ResultSet resultSet = statement.executeQuery()) {
+      while (resultSet.next()) {
+        sum += resultSet.getInt(COLUMN_COUNT);
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long split() throws SQLException {
+    return run();
+  }
+
+  @Benchmark
+  @Fork(value = 1,
+      jvmArgsPrepend = {"-Xmx1g", "-Dsaffron.generated.method.maximum.size=0"})
+  public long unsplit() throws SQLException {
+    return run();
+  }
+
+  /** Schema that contains a table of integers. */
+  public static class Schema {
+    public final Row[] numbers = new Row[ROW_COUNT];
+
+    public Schema() {
+      for (int i = 0; i < numbers.length; i++) {
+        numbers[i] = new Row(i % 1000);
+      }
+    }
+  }
+
+  /** Row of the table. */
+  public static class Row {
+    public final int x;
+
+    public Row(int x) {
+      this.x = x;
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(WideProjectionBenchmark.class.getSimpleName())
+        .detectJvmArgs()
+        .build();
+
+    new Runner(opt).run();
+  }
+
+}
+
+// End WideProjectionBenchmark.java